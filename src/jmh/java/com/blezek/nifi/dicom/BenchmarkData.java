@@ -0,0 +1,84 @@
+package com.blezek.nifi.dicom;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.util.UIDUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks, the LGG-104_SPGR test images and synthetic
+ * multiframe objects built from them.
+ */
+final class BenchmarkData {
+
+  static final String SMALL = "small";
+  static final String MULTIFRAME = "multiframe";
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * Load an instance by size, "small" is a single LGG-104_SPGR slice,
+   * "multiframe" is a 200 frame 512x512 object of roughly 100 MB.
+   */
+  static byte[] load(String size) throws IOException {
+    switch (size) {
+    case SMALL:
+      return resource("/dicom/LGG-104_SPGR_000.dcm");
+    case MULTIFRAME:
+      return multiframe(200, 512, 512);
+    default:
+      throw new IllegalArgumentException("unknown benchmark input: " + size);
+    }
+  }
+
+  static byte[] resource(String path) throws IOException {
+    try (InputStream in = BenchmarkData.class.getResourceAsStream(path)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        out.write(buffer, 0, count);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  /**
+   * Build a multiframe instance from the header of an LGG-104_SPGR slice, with
+   * random 16 bit pixel data.
+   */
+  static byte[] multiframe(int frames, int rows, int columns) throws IOException {
+    Attributes attributes;
+    try (DicomInputStream dis = new DicomInputStream(
+        new ByteArrayInputStream(resource("/dicom/LGG-104_SPGR_000.dcm")))) {
+      attributes = dis.readDataset(-1, Tag.PixelData);
+    }
+    attributes.setString(Tag.SOPInstanceUID, VR.UI, UIDUtils.createUID());
+    attributes.setInt(Tag.NumberOfFrames, VR.IS, frames);
+    attributes.setInt(Tag.Rows, VR.US, rows);
+    attributes.setInt(Tag.Columns, VR.US, columns);
+    attributes.setInt(Tag.BitsAllocated, VR.US, 16);
+    attributes.setInt(Tag.BitsStored, VR.US, 16);
+    attributes.setInt(Tag.HighBit, VR.US, 15);
+
+    byte[] pixels = new byte[frames * rows * columns * 2];
+    new Random(42).nextBytes(pixels);
+    attributes.setBytes(Tag.PixelData, VR.OW, pixels);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(pixels.length + 65536);
+    try (DicomOutputStream dos = new DicomOutputStream(out, UID.ExplicitVRLittleEndian)) {
+      dos.writeDataset(attributes.createFileMetaInformation(UID.ExplicitVRLittleEndian), attributes);
+    }
+    return out.toByteArray();
+  }
+}
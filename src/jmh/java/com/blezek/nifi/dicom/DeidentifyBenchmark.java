@@ -0,0 +1,80 @@
+package com.blezek.nifi.dicom;
+
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DeidentifyDICOM.deidentifyUsingPixelMed and
+ * DeidentifyEncryptDICOM.deifentifyAndEncrypt, one instance per invocation
+ * through the mock framework.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DeidentifyBenchmark {
+
+  @Param({ BenchmarkData.SMALL, BenchmarkData.MULTIFRAME })
+  public String size;
+
+  private byte[] instance;
+  private File dbDirectory;
+  private TestRunner deidentify;
+  private TestRunner encrypt;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    instance = BenchmarkData.load(size);
+    dbDirectory = Files.createTempDirectory("deidentify-benchmark").toFile();
+
+    deidentify = TestRunners.newTestRunner(DeidentifyDICOM.class);
+    DeidentificationController controller = new DeidentificationController();
+    deidentify.addControllerService("dc", controller);
+    deidentify.setProperty(controller, DeidentificationController.DB_DIRECTORY, dbDirectory.getAbsolutePath());
+    deidentify.enableControllerService(controller);
+    deidentify.setProperty(DeidentifyDICOM.DEIDENTIFICATION_STORAGE_CONTROLLER, "dc");
+    deidentify.setProperty(DeidentifyDICOM.generateIfNotMatchedProperty, "true");
+
+    encrypt = TestRunners.newTestRunner(DeidentifyEncryptDICOM.class);
+    encrypt.setProperty(DeidentifyEncryptDICOM.PASSWORD, "password");
+
+    // Schedule once so @OnScheduled runs, the benchmarks only trigger
+    deidentify.run(1, false, true);
+    encrypt.run(1, false, true);
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    deidentify.shutdown();
+    encrypt.shutdown();
+  }
+
+  @Benchmark
+  public void deidentifyUsingPixelMed() {
+    run(deidentify);
+  }
+
+  @Benchmark
+  public void deidentifyAndEncrypt() {
+    run(encrypt);
+  }
+
+  private void run(TestRunner runner) {
+    runner.enqueue(instance);
+    runner.run(1, false, false);
+    runner.clearTransferState();
+  }
+}
@@ -0,0 +1,56 @@
+package com.blezek.nifi.dicom;
+
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExtractDICOMTags with all tags and with a handful of selected tags.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExtractDICOMTagsBenchmark {
+
+  @Param({ BenchmarkData.SMALL, BenchmarkData.MULTIFRAME })
+  public String size;
+
+  @Param({ "true", "false" })
+  public String allTags;
+
+  private byte[] instance;
+  private TestRunner runner;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    instance = BenchmarkData.load(size);
+    runner = TestRunners.newTestRunner(ExtractDICOMTags.class);
+    runner.setProperty(ExtractDICOMTags.ALL_TAGS, allTags);
+    if (!Boolean.parseBoolean(allTags)) {
+      runner.setProperty("Modality", "unknown");
+      runner.setProperty("PatientID", "unknown");
+      runner.setProperty("StudyInstanceUID", "unknown");
+      runner.setProperty("SeriesDescription", "unknown");
+    }
+
+    // Schedule once so @OnScheduled runs, the benchmark only triggers
+    runner.run(1, false, true);
+  }
+
+  @Benchmark
+  public void extract() {
+    runner.enqueue(instance);
+    runner.run(1, false, false);
+    runner.clearTransferState();
+  }
+}
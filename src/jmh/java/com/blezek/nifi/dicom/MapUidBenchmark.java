@@ -0,0 +1,63 @@
+package com.blezek.nifi.dicom;
+
+import org.apache.nifi.util.NoOpProcessor;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.dcm4che3.util.UIDUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DeidentificationController.mapUid from 8 threads. With a small UID pool
+ * most calls are cache hits, with a large pool most calls go to the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class MapUidBenchmark {
+
+  @Param({ "1000", "1000000" })
+  public int uidPoolSize;
+
+  private String[] uids;
+  private TestRunner runner;
+  private DeidentificationController controller;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    uids = new String[uidPoolSize];
+    for (int i = 0; i < uids.length; i++) {
+      uids[i] = UIDUtils.createUID();
+    }
+    runner = TestRunners.newTestRunner(NoOpProcessor.class);
+    controller = new DeidentificationController();
+    runner.addControllerService("dc", controller);
+    runner.setProperty(controller, DeidentificationController.DB_DIRECTORY,
+        Files.createTempDirectory("mapuid-benchmark").toAbsolutePath().toString());
+    runner.enableControllerService(controller);
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() {
+    runner.disableControllerService(controller);
+  }
+
+  @Benchmark
+  public String mapUid() {
+    return controller.mapUid(uids[ThreadLocalRandom.current().nextInt(uids.length)]);
+  }
+}
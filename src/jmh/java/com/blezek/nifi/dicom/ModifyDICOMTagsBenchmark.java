@@ -0,0 +1,53 @@
+package com.blezek.nifi.dicom;
+
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ModifyDICOMTags with a constant and an expression language modification,
+ * with and without streaming the pixel data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModifyDICOMTagsBenchmark {
+
+  @Param({ BenchmarkData.SMALL, BenchmarkData.MULTIFRAME })
+  public String size;
+
+  @Param({ "true", "false" })
+  public String streaming;
+
+  private byte[] instance;
+  private TestRunner runner;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    instance = BenchmarkData.load(size);
+    runner = TestRunners.newTestRunner(ModifyDICOMTags.class);
+    runner.setProperty(ModifyDICOMTags.STREAMING, streaming);
+    runner.setProperty("SeriesDescription", "modified");
+    runner.setProperty("StudyID", "${filename}");
+
+    // Schedule once so @OnScheduled runs, the benchmark only triggers
+    runner.run(1, false, true);
+  }
+
+  @Benchmark
+  public void modify() {
+    runner.enqueue(instance);
+    runner.run(1, false, false);
+    runner.clearTransferState();
+  }
+}
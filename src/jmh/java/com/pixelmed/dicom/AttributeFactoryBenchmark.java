@@ -0,0 +1,63 @@
+package com.pixelmed.dicom;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>{@link AttributeFactory#newAttribute(AttributeTag,byte[],SpecificCharacterSet,boolean,int) AttributeFactory.newAttribute()}
+ * for every top level attribute of an object in the {@link BenchmarkCorpus BenchmarkCorpus}, with the VR from the dictionary.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AttributeFactoryBenchmark {
+
+	@Param({ BenchmarkCorpus.CT, BenchmarkCorpus.DEEP_SR })
+	public String corpus;
+
+	private AttributeTag[] tags;
+	private byte[][] vrs;
+	private SpecificCharacterSet specificCharacterSet;
+
+	@Setup(Level.Trial)
+	public void setup() throws DicomException, IOException {
+		AttributeList list = BenchmarkCorpus.build(corpus);
+		DicomDictionary dictionary = AttributeList.getDictionary();
+		List<AttributeTag> tagList = new ArrayList<AttributeTag>();
+		Iterator<AttributeTag> i = list.keySet().iterator();
+		while (i.hasNext()) {
+			AttributeTag tag = i.next();
+			if (dictionary.getValueRepresentationFromTag(tag) != null) {
+				tagList.add(tag);
+			}
+		}
+		tags = tagList.toArray(new AttributeTag[tagList.size()]);
+		vrs = new byte[tags.length][];
+		for (int t=0; t<tags.length; ++t) {
+			vrs[t] = dictionary.getValueRepresentationFromTag(tags[t]);
+		}
+		specificCharacterSet = new SpecificCharacterSet(new String[] { "ISO_IR 100" });
+	}
+
+	@Benchmark
+	public void newAttribute(Blackhole blackhole) throws DicomException {
+		for (int t=0; t<tags.length; ++t) {
+			blackhole.consume(AttributeFactory.newAttribute(tags[t],vrs[t],specificCharacterSet,true/*explicit*/,2/*bytesPerSample*/));
+		}
+	}
+}
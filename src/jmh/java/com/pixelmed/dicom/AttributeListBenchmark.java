@@ -0,0 +1,65 @@
+package com.pixelmed.dicom;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * <p>{@link AttributeList#read(DicomInputStream) AttributeList.read()}, with and without a stop tag, and
+ * {@link AttributeList#write(java.io.OutputStream,String,boolean,boolean) AttributeList.write()} over the
+ * {@link BenchmarkCorpus BenchmarkCorpus}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AttributeListBenchmark {
+
+	@Param({ BenchmarkCorpus.SMALL_CR, BenchmarkCorpus.CT, BenchmarkCorpus.ENHANCED_MR, BenchmarkCorpus.DEEP_SR })
+	public String corpus;
+
+	private byte[] encoded;
+	private AttributeList list;
+	private AttributeTag stopTag;
+	private ByteArrayOutputStream out;
+
+	@Setup(Level.Trial)
+	public void setup() throws DicomException, IOException {
+		encoded = BenchmarkCorpus.encode(corpus);
+		list = BenchmarkCorpus.build(corpus);
+		stopTag = BenchmarkCorpus.stopTag(corpus);
+		out = new ByteArrayOutputStream(encoded.length);
+	}
+
+	@Benchmark
+	public AttributeList read() throws DicomException, IOException {
+		AttributeList read = new AttributeList();
+		read.read(new DicomInputStream(new ByteArrayInputStream(encoded)));
+		return read;
+	}
+
+	@Benchmark
+	public AttributeList readToStopTag() throws DicomException, IOException {
+		AttributeList read = new AttributeList();
+		read.read(new DicomInputStream(new ByteArrayInputStream(encoded)),stopTag);
+		return read;
+	}
+
+	@Benchmark
+	public int write() throws DicomException, IOException {
+		out.reset();
+		list.write(out,TransferSyntax.ExplicitVRLittleEndian,true/*useMeta*/,true/*useBufferedStream*/);
+		return out.size();
+	}
+}
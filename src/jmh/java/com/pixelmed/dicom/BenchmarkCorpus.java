@@ -0,0 +1,230 @@
+package com.pixelmed.dicom;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.Random;
+
+/**
+ * <p>Synthetic DICOM objects used as input to the PixelMed benchmarks, built in memory so that results are repeatable
+ * without distributing patient images.</p>
+ *
+ * <ul>
+ * <li>{@link #SMALL_CR} - a 256x256 computed radiograph with a minimal header</li>
+ * <li>{@link #CT} - a 512x512 CT slice with a typical header</li>
+ * <li>{@link #ENHANCED_MR} - a 64 frame 256x256 enhanced MR with per-frame functional groups</li>
+ * <li>{@link #DEEP_SR} - a comprehensive SR whose content tree is a binary tree 10 levels deep</li>
+ * </ul>
+ */
+final class BenchmarkCorpus {
+
+	static final String SMALL_CR = "smallCR";
+	static final String CT = "CT";
+	static final String ENHANCED_MR = "enhancedMR";
+	static final String DEEP_SR = "deepSR";
+
+	private BenchmarkCorpus() {}
+
+	/**
+	 * <p>Build the named object.</p>
+	 *
+	 * @param	name	one of {@link #SMALL_CR}, {@link #CT}, {@link #ENHANCED_MR} or {@link #DEEP_SR}
+	 * @return		the object with file meta information
+	 * @throws	DicomException
+	 */
+	static AttributeList build(String name) throws DicomException {
+		AttributeList list;
+		if (name.equals(SMALL_CR)) {
+			list = image(SOPClass.ComputedRadiographyImageStorage,"CR",256,256);
+		}
+		else if (name.equals(CT)) {
+			list = image(SOPClass.CTImageStorage,"CT",512,512);
+			put(list,TagFromName.SliceThickness,"1.25");
+			put(list,TagFromName.KVP,"120");
+			put(list,TagFromName.RescaleIntercept,"-1024");
+			put(list,TagFromName.RescaleSlope,"1");
+			put(list,TagFromName.ConvolutionKernel,"STANDARD");
+			put(list,TagFromName.ImagePositionPatient,"-250","-250","100");
+			put(list,TagFromName.ImageOrientationPatient,"1","0","0","0","1","0");
+			put(list,TagFromName.PixelSpacing,"0.976","0.976");
+			put(list,TagFromName.WindowCenter,"40");
+			put(list,TagFromName.WindowWidth,"400");
+		}
+		else if (name.equals(ENHANCED_MR)) {
+			list = enhancedMR(64,256,256);
+		}
+		else if (name.equals(DEEP_SR)) {
+			list = deepSR(10);
+		}
+		else {
+			throw new IllegalArgumentException("Unknown benchmark object "+name);
+		}
+		FileMetaInformation.addFileMetaInformation(list,TransferSyntax.ExplicitVRLittleEndian,"BENCHMARK");
+		return list;
+	}
+
+	/**
+	 * <p>Build the named object and write it in Explicit VR Little Endian with file meta information.</p>
+	 *
+	 * @param	name	see {@link #build(String)}
+	 * @return		the encoded object
+	 * @throws	DicomException
+	 * @throws	IOException
+	 */
+	static byte[] encode(String name) throws DicomException, IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		build(name).write(out,TransferSyntax.ExplicitVRLittleEndian,true/*useMeta*/,true/*useBufferedStream*/);
+		return out.toByteArray();
+	}
+
+	/**
+	 * <p>The tag at which a partial read of the named object stops, the pixel data for images and the content tree for SR.</p>
+	 *
+	 * @param	name	see {@link #build(String)}
+	 * @return		the tag
+	 */
+	static AttributeTag stopTag(String name) {
+		return name.equals(DEEP_SR) ? TagFromName.ContentSequence : TagFromName.PixelData;
+	}
+
+	private static void put(AttributeList list,AttributeTag tag,String... values) throws DicomException {
+		Attribute a = AttributeFactory.newAttribute(tag);
+		for (String value : values) {
+			a.addValue(value);
+		}
+		list.put(a);
+	}
+
+	private static AttributeList common(String sopClassUID,String modality) throws DicomException {
+		UIDGenerator u = new UIDGenerator();
+		AttributeList list = new AttributeList();
+		put(list,TagFromName.SpecificCharacterSet,"ISO_IR 100");
+		put(list,TagFromName.SOPClassUID,sopClassUID);
+		put(list,TagFromName.SOPInstanceUID,u.getAnotherNewUID());
+		put(list,TagFromName.StudyInstanceUID,u.getAnotherNewUID());
+		put(list,TagFromName.SeriesInstanceUID,u.getAnotherNewUID());
+		put(list,TagFromName.FrameOfReferenceUID,u.getAnotherNewUID());
+		put(list,TagFromName.Modality,modality);
+		put(list,TagFromName.PatientName,"Buc^Jérôme");
+		put(list,TagFromName.PatientID,"BENCH0001");
+		put(list,TagFromName.PatientBirthDate,"19700101");
+		put(list,TagFromName.PatientSex,"O");
+		put(list,TagFromName.StudyDate,"20240101");
+		put(list,TagFromName.StudyTime,"120000");
+		put(list,TagFromName.StudyID,"1");
+		put(list,TagFromName.AccessionNumber,"A0001");
+		put(list,TagFromName.ReferringPhysicianName,"");
+		put(list,TagFromName.SeriesNumber,"1");
+		put(list,TagFromName.InstanceNumber,"1");
+		put(list,TagFromName.Manufacturer,"PixelMed Benchmark");
+		return list;
+	}
+
+	private static void pixels(AttributeList list,int frames,int rows,int columns) throws DicomException {
+		put(list,TagFromName.SamplesPerPixel,"1");
+		put(list,TagFromName.PhotometricInterpretation,"MONOCHROME2");
+		put(list,TagFromName.Rows,Integer.toString(rows));
+		put(list,TagFromName.Columns,Integer.toString(columns));
+		put(list,TagFromName.BitsAllocated,"16");
+		put(list,TagFromName.BitsStored,"12");
+		put(list,TagFromName.HighBit,"11");
+		put(list,TagFromName.PixelRepresentation,"0");
+		short[] values = new short[frames*rows*columns];
+		Random random = new Random(42);
+		for (int i=0; i<values.length; ++i) {
+			values[i] = (short)random.nextInt(4096);
+		}
+		OtherWordAttribute a = new OtherWordAttribute(TagFromName.PixelData);
+		a.setValues(values);
+		list.put(a);
+	}
+
+	private static AttributeList image(String sopClassUID,String modality,int rows,int columns) throws DicomException {
+		AttributeList list = common(sopClassUID,modality);
+		pixels(list,1,rows,columns);
+		return list;
+	}
+
+	private static AttributeList enhancedMR(int frames,int rows,int columns) throws DicomException {
+		AttributeList list = common(SOPClass.EnhancedMRImageStorage,"MR");
+		put(list,TagFromName.NumberOfFrames,Integer.toString(frames));
+		{
+			SequenceAttribute shared = new SequenceAttribute(TagFromName.SharedFunctionalGroupsSequence);
+			AttributeList item = new AttributeList();
+			SequenceAttribute measures = new SequenceAttribute(TagFromName.PixelMeasuresSequence);
+			AttributeList measuresItem = new AttributeList();
+			put(measuresItem,TagFromName.PixelSpacing,"0.9375","0.9375");
+			put(measuresItem,TagFromName.SliceThickness,"1.5");
+			measures.addItem(measuresItem);
+			item.put(measures);
+			shared.addItem(item);
+			list.put(shared);
+		}
+		{
+			SequenceAttribute perFrame = new SequenceAttribute(TagFromName.PerFrameFunctionalGroupsSequence);
+			for (int f=0; f<frames; ++f) {
+				AttributeList item = new AttributeList();
+				{
+					SequenceAttribute content = new SequenceAttribute(TagFromName.FrameContentSequence);
+					AttributeList contentItem = new AttributeList();
+					put(contentItem,TagFromName.InStackPositionNumber,Integer.toString(f+1));
+					content.addItem(contentItem);
+					item.put(content);
+				}
+				{
+					SequenceAttribute position = new SequenceAttribute(TagFromName.PlanePositionSequence);
+					AttributeList positionItem = new AttributeList();
+					put(positionItem,TagFromName.ImagePositionPatient,"-120","-120",Double.toString(f*1.5));
+					position.addItem(positionItem);
+					item.put(position);
+				}
+				perFrame.addItem(item);
+			}
+			list.put(perFrame);
+		}
+		pixels(list,frames,rows,columns);
+		return list;
+	}
+
+	private static AttributeList deepSR(int depth) throws DicomException {
+		AttributeList list = common(SOPClass.ComprehensiveSRStorage,"SR");
+		put(list,TagFromName.ValueType,"CONTAINER");
+		put(list,TagFromName.ContinuityOfContent,"SEPARATE");
+		put(list,TagFromName.CompletionFlag,"COMPLETE");
+		put(list,TagFromName.VerificationFlag,"UNVERIFIED");
+		list.put(conceptName("126000","DCM","Imaging Measurement Report"));
+		list.put(content(depth,0));
+		return list;
+	}
+
+	private static SequenceAttribute conceptName(String value,String scheme,String meaning) throws DicomException {
+		SequenceAttribute a = new SequenceAttribute(TagFromName.ConceptNameCodeSequence);
+		AttributeList item = new AttributeList();
+		put(item,TagFromName.CodeValue,value);
+		put(item,TagFromName.CodingSchemeDesignator,scheme);
+		put(item,TagFromName.CodeMeaning,meaning);
+		a.addItem(item);
+		return a;
+	}
+
+	private static SequenceAttribute content(int depth,int level) throws DicomException {
+		SequenceAttribute a = new SequenceAttribute(TagFromName.ContentSequence);
+		for (int i=0; i<2; ++i) {
+			AttributeList item = new AttributeList();
+			put(item,TagFromName.RelationshipType,"CONTAINS");
+			if (level+1 < depth) {
+				put(item,TagFromName.ValueType,"CONTAINER");
+				put(item,TagFromName.ContinuityOfContent,"SEPARATE");
+				item.put(conceptName("125007","DCM","Measurement Group"));
+				item.put(content(depth,level+1));
+			}
+			else {
+				put(item,TagFromName.ValueType,"TEXT");
+				item.put(conceptName("121071","DCM","Finding"));
+				put(item,TagFromName.TextValue,"Finding at level "+level+" item "+i);
+			}
+			a.addItem(item);
+		}
+		return a;
+	}
+}
@@ -0,0 +1,61 @@
+package com.pixelmed.dicom;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * <p>{@link BinaryInputStream#readUnsigned16(short[],int) BinaryInputStream.readUnsigned16()} through a
+ * {@link DicomInputStream DicomInputStream}, reading the pixel data of a 512x512 slice or 64 frames of 256x256,
+ * as a bulk array read and one value at a time.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BinaryInputStreamBenchmark {
+
+	@Param({ "262144", "4194304" })
+	public int values;
+
+	private byte[] bytes;
+	private short[] buffer;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		bytes = new byte[values*2];
+		new Random(42).nextBytes(bytes);
+		buffer = new short[values];
+	}
+
+	private DicomInputStream open() throws IOException {
+		return new DicomInputStream(new ByteArrayInputStream(bytes),TransferSyntax.ExplicitVRLittleEndian,false/*tryMeta*/);
+	}
+
+	@Benchmark
+	public short[] readUnsigned16Array() throws IOException {
+		open().readUnsigned16(buffer,values);
+		return buffer;
+	}
+
+	@Benchmark
+	public int readUnsigned16Single() throws IOException {
+		DicomInputStream i = open();
+		int sum = 0;
+		for (int n=0; n<values; ++n) {
+			sum += i.readUnsigned16();
+		}
+		return sum;
+	}
+}
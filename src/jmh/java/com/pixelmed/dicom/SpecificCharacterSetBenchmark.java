@@ -0,0 +1,56 @@
+package com.pixelmed.dicom;
+
+import java.io.UnsupportedEncodingException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * <p>{@link SpecificCharacterSet#translateByteArrayToString(byte[],int,int) SpecificCharacterSet.translateByteArrayToString()}
+ * for the default repertoire, Latin-1, UTF-8 and ISO 2022 Japanese, decoding person names like those in PS3.5 Annex H and I.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpecificCharacterSetBenchmark {
+
+	@Param({ "default", "ISO_IR 100", "ISO_IR 192", "\\ISO 2022 IR 87" })
+	public String characterSet;
+
+	private SpecificCharacterSet specificCharacterSet;
+	private byte[] bytes;
+
+	@Setup(Level.Trial)
+	public void setup() throws UnsupportedEncodingException {
+		if (characterSet.equals("default")) {
+			specificCharacterSet = new SpecificCharacterSet((String[])null);
+			bytes = "Smith^John^^Dr.^".getBytes("US-ASCII");
+		}
+		else {
+			specificCharacterSet = new SpecificCharacterSet(characterSet.split("\\\\",-1));
+			if (characterSet.equals("ISO_IR 100")) {
+				bytes = "Buc^Jérôme".getBytes("ISO-8859-1");
+			}
+			else if (characterSet.equals("ISO_IR 192")) {
+				bytes = "Wang^XiaoDong=王^小東=".getBytes("UTF-8");
+			}
+			else {
+				bytes = "Yamada^Tarou=山田^太郎=やまだ^たろう".getBytes("ISO-2022-JP");
+			}
+		}
+	}
+
+	@Benchmark
+	public String translateByteArrayToString() {
+		return specificCharacterSet.translateByteArrayToString(bytes,0,bytes.length);
+	}
+}
@@ -0,0 +1,116 @@
+package com.blezek.nifi.dicom;
+
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
+import org.dcm4che3.util.StreamUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads one record per DICOM instance, created by the {@link DICOMRecordReader}
+ * controller service.
+ *
+ * The header is read up to the Pixel Data, and the Pixel Data value is skipped
+ * without being read into memory. For concatenated instances the next instance
+ * starts directly after the Pixel Data of the previous one.
+ */
+class DICOMInstanceRecordReader implements RecordReader {
+
+  private final BufferedInputStream in;
+  private final int[] tags;
+  private final RecordSchema schema;
+  private final boolean concatenated;
+  private boolean done = false;
+
+  DICOMInstanceRecordReader(InputStream in, int[] tags, RecordSchema schema, boolean concatenated) {
+    // DicomInputStream uses mark/reset on the stream it is given, a shared
+    // BufferedInputStream keeps read-ahead bytes available to the next instance
+    this.in = new BufferedInputStream(in);
+    this.tags = tags;
+    this.schema = schema;
+    this.concatenated = concatenated;
+  }
+
+  @Override
+  public Record nextRecord(boolean coerceTypes, boolean dropUnknownFields)
+      throws IOException, MalformedRecordException {
+    if (done || !hasMoreInput()) {
+      done = true;
+      return null;
+    }
+    done = !concatenated;
+
+    Attributes attributes;
+    try {
+      // Not closed, closing would close the underlying stream
+      DicomInputStream dis = new DicomInputStream(in);
+      dis.setIncludeBulkData(IncludeBulkData.NO);
+      attributes = dis.readDataset(-1, Tag.PixelData);
+      if (concatenated) {
+        skipPixelData(dis);
+      }
+    } catch (IOException e) {
+      done = true;
+      throw new MalformedRecordException("Could not read DICOM instance", e);
+    }
+
+    Map<String, Object> values = new HashMap<>();
+    for (int i = 0; i < tags.length; i++) {
+      String[] strings = attributes.getStrings(tags[i]);
+      if (strings != null) {
+        values.put(schema.getField(i).getFieldName(), String.join("\\", strings));
+      }
+    }
+    return new MapRecord(schema, values);
+  }
+
+  private boolean hasMoreInput() throws IOException {
+    in.mark(1);
+    int b = in.read();
+    in.reset();
+    return b != -1;
+  }
+
+  /**
+   * Skip the value of the Pixel Data element whose header has just been read,
+   * either a defined length or encapsulated fragments.
+   */
+  private static void skipPixelData(DicomInputStream dis) throws IOException {
+    if (dis.tag() != Tag.PixelData) {
+      return;
+    }
+    if (dis.length() != -1) {
+      StreamUtils.skipFully(dis, dis.length() & 0xffffffffL);
+      return;
+    }
+    while (true) {
+      dis.readHeader();
+      if (dis.tag() == Tag.SequenceDelimitationItem) {
+        return;
+      }
+      StreamUtils.skipFully(dis, dis.length() & 0xffffffffL);
+    }
+  }
+
+  @Override
+  public RecordSchema getSchema() {
+    return schema;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+}
@@ -0,0 +1,106 @@
+package com.blezek.nifi.dicom;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.dcm4che3.data.ElementDictionary;
+import org.dcm4che3.util.TagUtils;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@Tags({ "dicom", "imaging", "record", "reader", "parse" })
+@CapabilityDescription("Parses DICOM FlowFiles into records.  Each DICOM instance becomes one record whose fields are the configured DICOM tags, "
+    + "read as strings with multiple values separated by '\\'.  Parsing stops at the pixel data, which is skipped.")
+@SeeAlso(ExtractDICOMTags.class)
+public class DICOMRecordReader extends AbstractControllerService implements RecordReaderFactory {
+
+  static final PropertyDescriptor TAGS = new PropertyDescriptor.Builder().name("DICOM_TAGS").displayName("DICOM tags")
+      .description(
+          "Comma separated list of DICOM tags to include as record fields, given as tag names (e.g. 'PatientID') or hex values (e.g. '00100020').  "
+              + "Fields are named by the tag name.")
+      .required(true)
+      .defaultValue(
+          "PatientID,PatientName,StudyInstanceUID,SeriesInstanceUID,SOPInstanceUID,SOPClassUID,Modality,StudyDate,SeriesNumber,InstanceNumber")
+      .addValidator(StandardValidators.NON_BLANK_VALIDATOR)
+      .addValidator((String subject, String input, ValidationContext context) -> {
+        for (String name : input.split(",")) {
+          if (TagUtils.forName(name.trim()) == -1) {
+            return new ValidationResult.Builder().subject(subject).input(input).valid(false)
+                .explanation("'" + name.trim() + "' is not recognized as a valid DICOM tag.").build();
+          }
+        }
+        return new ValidationResult.Builder().subject(subject).input(input).explanation(null).valid(true).build();
+      }).build();
+
+  static final PropertyDescriptor CONCATENATED = new PropertyDescriptor.Builder().name("CONCATENATED")
+      .displayName("Concatenated instances")
+      .description(
+          "If true, the FlowFile content is a bundle of DICOM Part 10 files written one after another and one record is produced per instance.  "
+              + "Instances are delimited by their Pixel Data, so every instance in the bundle must contain Pixel Data.  "
+              + "If false, the FlowFile content is a single DICOM instance.")
+      .required(true).allowableValues("true", "false").defaultValue("false")
+      .addValidator(StandardValidators.BOOLEAN_VALIDATOR).build();
+
+  @Override
+  protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+    List<PropertyDescriptor> descriptors = new ArrayList<>();
+    descriptors.add(TAGS);
+    descriptors.add(CONCATENATED);
+    return Collections.unmodifiableList(descriptors);
+  }
+
+  private volatile int[] tags;
+  private volatile RecordSchema schema;
+  private volatile boolean concatenated;
+
+  @OnEnabled
+  public void enabled(ConfigurationContext context) {
+    String[] names = context.getProperty(TAGS).getValue().split(",");
+    int[] configuredTags = new int[names.length];
+    List<RecordField> fields = new ArrayList<>();
+    for (int i = 0; i < names.length; i++) {
+      configuredTags[i] = TagUtils.forName(names[i].trim());
+      fields.add(new RecordField(fieldName(configuredTags[i]), RecordFieldType.STRING.getDataType(), true));
+    }
+    tags = configuredTags;
+    schema = new SimpleRecordSchema(fields);
+    concatenated = context.getProperty(CONCATENATED).asBoolean();
+  }
+
+  /**
+   * Name the record field after the tag keyword, falling back to the hex value
+   * for tags not in the dictionary.
+   */
+  static String fieldName(int tag) {
+    String keyword = ElementDictionary.getStandardElementDictionary().keywordOf(tag);
+    if (keyword == null || keyword.isEmpty()) {
+      return TagUtils.toHexString(tag);
+    }
+    return keyword;
+  }
+
+  @Override
+  public RecordReader createRecordReader(Map<String, String> variables, InputStream in, long inputLength,
+      ComponentLog logger) {
+    return new DICOMInstanceRecordReader(in, tags, schema, concatenated);
+  }
+
+}
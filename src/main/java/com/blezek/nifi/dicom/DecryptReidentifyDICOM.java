@@ -1,6 +1,8 @@
 package com.blezek.nifi.dicom;
 
+import com.blezek.nifi.dicom.util.DerivedKeyCache;
 import com.blezek.nifi.dicom.util.Encryption;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.SideEffectFree;
@@ -8,6 +10,8 @@ import org.apache.nifi.annotation.behavior.SupportsBatching;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
@@ -17,6 +21,7 @@ import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
+import org.bouncycastle.cms.CMSEnvelopedData;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
@@ -27,6 +32,7 @@ import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
 import org.dcm4che3.io.DicomOutputStream;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.DecimalFormat;
@@ -34,7 +40,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Tags({ "deidentify", "dicom", "imaging", "encrypt", "reidentify", "decrypt" })
 @SupportsBatching
@@ -65,6 +76,11 @@ public class DecryptReidentifyDICOM extends AbstractProcessor {
       .description("Number of DICOM files to process in batch").required(false)
       .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR).expressionLanguageSupported(ExpressionLanguageScope.ENVIRONMENT).build();
 
+  static final PropertyDescriptor THREADS = new PropertyDescriptor.Builder().name("Decryption threads")
+      .defaultValue("4").description("Number of threads decrypting the DICOM files of a batch in parallel")
+      .required(true).addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+      .expressionLanguageSupported(ExpressionLanguageScope.ENVIRONMENT).build();
+
   static final PropertyDescriptor ACCEPT_NEW_SERIES = new PropertyDescriptor.Builder().name("accept")
       .displayName("Accept new series")
       .description(
@@ -90,19 +106,46 @@ public class DecryptReidentifyDICOM extends AbstractProcessor {
     descriptors.add(PASSWORD);
     descriptors.add(ACCEPT_NEW_SERIES);
     descriptors.add(BATCH_SIZE);
+    descriptors.add(THREADS);
     return Collections.unmodifiableList(descriptors);
   }
 
+  private volatile char[] password;
+  private volatile boolean acceptNewSeries;
+  private volatile ExecutorService executor;
+  private final DerivedKeyCache keyCache = new DerivedKeyCache(1000);
+
+  @OnScheduled
+  public void startup(ProcessContext context) {
+    password = context.getProperty(PASSWORD).evaluateAttributeExpressions().getValue().toCharArray();
+    acceptNewSeries = context.getProperty(ACCEPT_NEW_SERIES).evaluateAttributeExpressions().asBoolean();
+    executor = Executors.newFixedThreadPool(context.getProperty(THREADS).evaluateAttributeExpressions().asInteger());
+  }
+
+  @OnStopped
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
   @Override
   public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException {
 
-    Integer batchSize = context.getProperty(BATCH_SIZE).asInteger();
-    for (FlowFile flowFile : session.get(batchSize)) {
+    Integer batchSize = context.getProperty(BATCH_SIZE).evaluateAttributeExpressions().asInteger();
+    List<FlowFile> flowFiles = session.get(batchSize);
+
+    // The session is not thread safe, read on this thread and decrypt in parallel.
+    // Only the attributes before the Pixel Data are held for the batch, the Pixel
+    // Data is streamed from the input when the reidentified file is written.
+    List<FlowFile> pending = new ArrayList<>();
+    List<Future<Attributes>> decrypted = new ArrayList<>();
+    for (FlowFile flowFile : flowFiles) {
       try {
-        boolean success = decryptAndReidentify(context, session, flowFile);
-        if (!success) {
-          session.transfer(flowFile, RELATIONSHIP_NOT_DECRYPTED);
-        }
+        Attributes tags = readTags(session, flowFile);
+        decrypted.add(executor.submit(() -> decryptAndReidentify(tags)));
+        pending.add(flowFile);
       } catch (Exception e) {
         flowFile = session.penalize(flowFile);
         session.transfer(flowFile, RELATIONSHIP_REJECT);
@@ -110,32 +153,109 @@ public class DecryptReidentifyDICOM extends AbstractProcessor {
       }
     }
 
+    for (int i = 0; i < pending.size(); i++) {
+      FlowFile flowFile = pending.get(i);
+      Attributes tags;
+      try {
+        tags = getUninterruptibly(decrypted.get(i));
+      } catch (Exception e) {
+        flowFile = session.penalize(flowFile);
+        session.transfer(flowFile, RELATIONSHIP_NOT_DECRYPTED);
+        getLogger().error("Could not decrypt the encrypted attributes of the DICOM file", e);
+        continue;
+      }
+      if (tags == null) {
+        session.transfer(flowFile, RELATIONSHIP_NOT_DECRYPTED);
+        continue;
+      }
+      try {
+        // Great! everything back together
+        flowFile = session.write(flowFile,
+            (InputStream in, OutputStream out) -> writeReidentified(tags, in, out));
+        session.transfer(flowFile, RELATIONSHIP_SUCCESS);
+      } catch (Exception e) {
+        flowFile = session.penalize(flowFile);
+        session.transfer(flowFile, RELATIONSHIP_REJECT);
+        getLogger().error("Could not write the reidentified DICOM file", e);
+      }
+    }
+
     session.commitAsync();
   }
 
-  /**
-   * decryptAndReidentify saves a FlowFile with reidentified DICOM.
-   * 
-   * Output flowfile is saved to RELATIONSHIP_SUCCESS if decryption and
-   * reidentification is successful.
-   * 
-   * @param context
-   * @param session
-   * @param flowFile
-   * @return true if successful, false if there was no encryption data
-   * @throws Exception
-   */
-  private boolean decryptAndReidentify(ProcessContext context, ProcessSession session, FlowFile flowFile)
-      throws Exception {
-    String password = context.getProperty(PASSWORD).evaluateAttributeExpressions().toString();
-    boolean acceptNewSeries = context.getProperty(ACCEPT_NEW_SERIES).evaluateAttributeExpressions().asBoolean();
+  private static Attributes getUninterruptibly(Future<Attributes> future) throws Exception {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+  }
 
-    Attributes tags;
+  private static Attributes readTags(ProcessSession session, FlowFile flowFile) throws IOException {
     try (InputStream is = session.read(flowFile)) {
       try (DicomInputStream dis = new DicomInputStream(is)) {
-        tags = dis.readDataset(-1, -1);
+        return dis.readDataset(-1, Tag.PixelData);
       }
     }
+  }
+
+  /**
+   * writeReidentified writes tags, followed by the Pixel Data and trailing
+   * attributes copied from the deidentified file, in its transfer syntax.
+   * Original attributes that follow the Pixel Data are written with the trailing
+   * attributes, so that the data set stays in tag order.
+   *
+   * @param tags
+   *          the reidentified attributes, which are those read before the Pixel
+   *          Data merged with the original attributes
+   * @param in
+   *          the deidentified DICOM file
+   * @param out
+   *          the reidentified DICOM file, closed by the session
+   * @throws IOException
+   *           if the deidentified file can not be read
+   */
+  private static void writeReidentified(Attributes tags, InputStream in, OutputStream out) throws IOException {
+    DicomInputStream dis = new DicomInputStream(in);
+    dis.setIncludeBulkData(IncludeBulkData.YES);
+    dis.readFileMetaInformation();
+    dis.readDataset(-1, Tag.PixelData);
+    String tsuid = dis.getTransferSyntax();
+
+    // writeDataset switches from the meta header encoding to tsuid
+    DicomOutputStream dos = new DicomOutputStream(out, UID.ExplicitVRLittleEndian);
+    Attributes trailing = new Attributes();
+    if (dis.tag() == Tag.PixelData) {
+      for (int tag : tags.tags()) {
+        if ((tag & 0xffffffffL) > Tag.PixelData) {
+          trailing.setValue(tag, tags.getVR(tag), tags.remove(tag));
+        }
+      }
+    }
+    dos.writeDataset(tags.createFileMetaInformation(tsuid), tags);
+    if (dis.tag() == Tag.PixelData) {
+      ModifyDICOMTags.copyPixelData(dis, dos);
+      Attributes rest = dis.readDataset(-1, -1);
+      rest.addAll(trailing);
+      dos.writeDataset(null, rest);
+    }
+    dos.finish();
+    dos.flush();
+  }
+
+  /**
+   * decryptAndReidentify merges the decrypted original tags into tags.
+   * 
+   * Runs on the worker pool, derived keys are shared between files through the
+   * key cache.
+   * 
+   * @param tags
+   *          attributes of the deidentified DICOM file
+   * @return the reidentified tags, or null if there was no encryption data that
+   *         could be decrypted
+   * @throws Exception
+   */
+  Attributes decryptAndReidentify(Attributes tags) throws Exception {
     if (tags.contains(Tag.EncryptedAttributesSequence)) {
 
       Sequence eas = tags.getSequence(Tag.EncryptedAttributesSequence);
@@ -144,9 +264,15 @@ public class DecryptReidentifyDICOM extends AbstractProcessor {
         if (attributes.contains(Tag.EncryptedContent) && attributes.contains(Tag.EncryptedContentTransferSyntaxUID)
             && attributes.getString(Tag.EncryptedContentTransferSyntaxUID, "null").equals(UID.ExplicitVRLittleEndian)) {
           // Check to see if we can pull out the data...
-          byte[] content = attributes.getBytes(Tag.EncryptedContent);
-          if (Encryption.isPasswordRecipient(content)) {
-            content = Encryption.extractPasswordEnvelopedData(password.toCharArray(), content);
+          CMSEnvelopedData envelope = Encryption.parse(attributes.getBytes(Tag.EncryptedContent));
+          if (Encryption.isPasswordRecipient(envelope)) {
+            byte[] content;
+            try {
+              content = Encryption.extractPasswordEnvelopedData(password, envelope, keyCache);
+            } catch (Exception e) {
+              getLogger().debug("Could not decrypt with password");
+              continue;
+            }
             try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(content),
                 UID.ExplicitVRLittleEndian)) {
               dis.setIncludeBulkData(IncludeBulkData.NO);
@@ -172,49 +298,38 @@ public class DecryptReidentifyDICOM extends AbstractProcessor {
 
               // We are accepting of new series, so don't replace the SeriesInstanceUID, i.e.
               // fake value in originalTags
-              if (!tags.getString(Tag.SeriesInstanceUID).equals(expectedSeriesInstanceUID)) {
+              if (!Objects.equals(tags.getString(Tag.SeriesInstanceUID), expectedSeriesInstanceUID)) {
                 if (acceptNewSeries) {
                   originalTags.setString(Tag.SeriesInstanceUID, VR.UI, tags.getString(Tag.SeriesInstanceUID));
                 } else {
-                  return false;
+                  return null;
                 }
               }
-              if (!tags.getString(Tag.SOPInstanceUID).equals(expectedInstanceUID)) {
+              if (!Objects.equals(tags.getString(Tag.SOPInstanceUID), expectedInstanceUID)) {
                 if (acceptNewSeries) {
                   originalTags.setString(Tag.SOPInstanceUID, VR.UI, tags.getString(Tag.SOPInstanceUID));
                 } else {
-                  return false;
+                  return null;
                 }
               }
 
               // Remove the private tag...
               originalTags.remove(DeidentifyEncryptDICOM.PRIVATE_CREATOR, DeidentifyEncryptDICOM.PRIVATE_TAG);
-                Attributes mergedTags = new Attributes();
-                tags.update(Attributes.UpdatePolicy.OVERWRITE, false, originalTags, mergedTags );
+              Attributes mergedTags = new Attributes();
+              tags.update(Attributes.UpdatePolicy.OVERWRITE, false, originalTags, mergedTags);
 
               tags.remove(Tag.PatientIdentityRemoved);
               tags.remove(Tag.DeidentificationMethod);
-
-              // Great! everything back together
-              FlowFile outputFlowFile = session.create(flowFile);
-              outputFlowFile = session.write(outputFlowFile, (OutputStream out) -> {
-                try (DicomOutputStream dos = new DicomOutputStream(out, UID.ExplicitVRLittleEndian)) {
-                  dos.writeDataset(tags.createFileMetaInformation(UID.ExplicitVRLittleEndian), tags);
-                }
-              });
-              // Remove the incoming flowfile from the input queue, transfer the new
-              // deidentified file to the output
-              session.transfer(outputFlowFile, RELATIONSHIP_SUCCESS);
-              session.remove(flowFile);
-              return true;
+              return tags;
 
             } catch (Exception e) {
-              getLogger().debug("Could not decrypt with password");
+              // decrypted, so the content or the deidentified attributes are not as written by DeidentifyEncryptDICOM
+              getLogger().warn("Could not read the decrypted original attributes", e);
             }
           }
         }
       }
     }
-    return false;
+    return null;
   }
 }
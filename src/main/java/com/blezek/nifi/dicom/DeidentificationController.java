@@ -1,8 +1,9 @@
 package com.blezek.nifi.dicom;
 
+import com.blezek.nifi.dicom.util.LatencyHistogram;
+import com.blezek.nifi.dicom.util.WindowedCounter;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
-import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.opencsv.bean.CsvToBean;
 import com.opencsv.bean.CsvToBeanBuilder;
@@ -29,11 +30,15 @@ import java.io.FileReader;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 @Tags({ "dicom", "imaging", "deidentification" })
 @CapabilityDescription("This controller implements attribute storage for deidentification of DICOM images")
@@ -86,6 +91,21 @@ public class DeidentificationController extends AbstractControllerService implem
   LoadingCache<String, String> uidCache;
   ConcurrentHashMap<String, IdentityEntry> identityMap = new ConcurrentHashMap<>();
 
+  // Statistics, reset when enabled
+  static final int[] WINDOWS = { 1, 5, 15 };
+  private LongAdder requests;
+  private LongAdder hits;
+  private LongAdder loads;
+  private LongAdder loadFailures;
+  private LongAdder databaseRoundTrips;
+  private LongAdder lockWaitNanos;
+  private LongAccumulator maxLockWaitNanos;
+  private LatencyHistogram loadLatency;
+  private WindowedCounter windowedRequests;
+  private WindowedCounter windowedHits;
+  private WindowedCounter windowedLoads;
+  private WindowedCounter windowedRoundTrips;
+
   @OnEnabled
   public void enabled(ConfigurationContext context) throws Exception {
     String dbPath = context.getProperty(DB_DIRECTORY).evaluateAttributeExpressions().getValue();
@@ -99,13 +119,18 @@ public class DeidentificationController extends AbstractControllerService implem
     flyway.migrate();
 
     jdbi = Jdbi.create(ds);
-    uidCache = CacheBuilder.newBuilder().recordStats().maximumSize(10000).expireAfterWrite(1, TimeUnit.MINUTES)
+    resetStatistics();
+    uidCache = CacheBuilder.newBuilder().maximumSize(10000).expireAfterWrite(1, TimeUnit.MINUTES)
         .build(new CacheLoader<String, String>() {
 
           @Override
           public String load(String uid) throws Exception {
             String newUid = "";
+            long start = System.nanoTime();
             synchronized (DeidentificationController.class) {
+              long wait = System.nanoTime() - start;
+              lockWaitNanos.add(wait);
+              maxLockWaitNanos.accumulate(wait);
               try {
                 String sql = "merge into uid_map using single on uid_map.original = ? when not matched then insert "
                     + " ( original, replaced ) values (?,?)";
@@ -116,9 +141,15 @@ public class DeidentificationController extends AbstractControllerService implem
 
                 });
               } catch (Exception e) {
+                loadFailures.increment();
                 getLogger().error("Error inserting into cache", e);
               }
+              databaseRoundTrips.add(2);
+              windowedRoundTrips.add(2);
             }
+            loads.increment();
+            windowedLoads.increment();
+            loadLatency.record(System.nanoTime() - start);
             return newUid;
           }
         });
@@ -152,9 +183,33 @@ public class DeidentificationController extends AbstractControllerService implem
     }
   }
 
+  private void resetStatistics() {
+    requests = new LongAdder();
+    hits = new LongAdder();
+    loads = new LongAdder();
+    loadFailures = new LongAdder();
+    databaseRoundTrips = new LongAdder();
+    lockWaitNanos = new LongAdder();
+    maxLockWaitNanos = new LongAccumulator(Math::max, 0);
+    loadLatency = new LatencyHistogram();
+    int longest = WINDOWS[WINDOWS.length - 1];
+    windowedRequests = new WindowedCounter(longest);
+    windowedHits = new WindowedCounter(longest);
+    windowedLoads = new WindowedCounter(longest);
+    windowedRoundTrips = new WindowedCounter(longest);
+  }
+
   @Override
   public String mapUid(String uid) {
+    requests.increment();
+    windowedRequests.increment();
     // Return if in cache
+    String cached = uidCache.getIfPresent(uid);
+    if (cached != null) {
+      hits.increment();
+      windowedHits.increment();
+      return cached;
+    }
     try {
       return uidCache.get(uid);
     } catch (ExecutionException e) {
@@ -169,8 +224,32 @@ public class DeidentificationController extends AbstractControllerService implem
   }
 
   @Override
-  public CacheStats getCacheStats() {
-    return uidCache.stats();
+  public DeidentificationStatistics getStatistics() {
+    Map<String, Double> latency = new LinkedHashMap<>();
+    latency.put("p50", loadLatency.percentileMillis(0.50));
+    latency.put("p90", loadLatency.percentileMillis(0.90));
+    latency.put("p99", loadLatency.percentileMillis(0.99));
+    latency.put("max", loadLatency.maxMillis());
+
+    long rows = -1;
+    try {
+      rows = jdbi.withHandle(
+          handle -> handle.createQuery("select count(*) from uid_map").mapTo(Long.class).findOnly());
+    } catch (Exception e) {
+      getLogger().error("Could not count uid_map rows", e);
+    }
+
+    List<DeidentificationStatistics.Window> windows = new ArrayList<>();
+    for (int minutes : WINDOWS) {
+      long windowRequests = windowedRequests.sum(minutes);
+      double hitRate = windowRequests == 0 ? 1.0 : (double) windowedHits.sum(minutes) / windowRequests;
+      windows.add(new DeidentificationStatistics.Window(minutes, windowedRequests.rate(minutes), hitRate,
+          windowedLoads.rate(minutes), windowedRoundTrips.rate(minutes)));
+    }
+
+    return new DeidentificationStatistics(requests.sum(), hits.sum(), loads.sum(), loadFailures.sum(), latency,
+        databaseRoundTrips.sum(), rows, lockWaitNanos.sum() / 1e6, maxLockWaitNanos.get() / 1e6, uidCache.size(),
+        identityMap.size(), windows);
   }
 
 }
@@ -1,7 +1,5 @@
 package com.blezek.nifi.dicom;
 
-import com.google.common.cache.CacheStats;
-
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.controller.ControllerService;
@@ -15,5 +13,5 @@ public interface DeidentificationService extends ControllerService {
 
   Optional<IdentityEntry> lookupById(String id);
 
-  CacheStats getCacheStats();
+  DeidentificationStatistics getStatistics();
 }
@@ -0,0 +1,69 @@
+package com.blezek.nifi.dicom;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Point in time statistics of a {@link DeidentificationService}, totals since
+ * the service was enabled and rates over recent windows.
+ *
+ * Latencies are in milliseconds. Load latency is the time to map a UID that
+ * was not cached, including lock wait and database time.
+ */
+public class DeidentificationStatistics {
+
+  /**
+   * Rates over the last complete minutes.
+   */
+  public static class Window {
+    public final int minutes;
+    public final double requestsPerSecond;
+    public final double hitRate;
+    public final double loadsPerSecond;
+    public final double databaseRoundTripsPerSecond;
+
+    public Window(int minutes, double requestsPerSecond, double hitRate, double loadsPerSecond,
+        double databaseRoundTripsPerSecond) {
+      this.minutes = minutes;
+      this.requestsPerSecond = requestsPerSecond;
+      this.hitRate = hitRate;
+      this.loadsPerSecond = loadsPerSecond;
+      this.databaseRoundTripsPerSecond = databaseRoundTripsPerSecond;
+    }
+  }
+
+  public final long requests;
+  public final long hits;
+  public final long misses;
+  public final double hitRate;
+  public final long loads;
+  public final long loadFailures;
+  public final Map<String, Double> loadLatencyMillis;
+  public final long databaseRoundTrips;
+  public final long uidMapRows;
+  public final double lockWaitMillis;
+  public final double maxLockWaitMillis;
+  public final long cacheSize;
+  public final long identityMapSize;
+  public final List<Window> windows;
+
+  public DeidentificationStatistics(long requests, long hits, long loads, long loadFailures,
+      Map<String, Double> loadLatencyMillis, long databaseRoundTrips, long uidMapRows, double lockWaitMillis,
+      double maxLockWaitMillis, long cacheSize, long identityMapSize, List<Window> windows) {
+    this.requests = requests;
+    this.hits = hits;
+    this.misses = requests - hits;
+    this.hitRate = requests == 0 ? 1.0 : (double) hits / requests;
+    this.loads = loads;
+    this.loadFailures = loadFailures;
+    this.loadLatencyMillis = Collections.unmodifiableMap(loadLatencyMillis);
+    this.databaseRoundTrips = databaseRoundTrips;
+    this.uidMapRows = uidMapRows;
+    this.lockWaitMillis = lockWaitMillis;
+    this.maxLockWaitMillis = maxLockWaitMillis;
+    this.cacheSize = cacheSize;
+    this.identityMapSize = identityMapSize;
+    this.windows = Collections.unmodifiableList(windows);
+  }
+}
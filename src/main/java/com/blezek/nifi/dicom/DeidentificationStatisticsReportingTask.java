@@ -0,0 +1,42 @@
+package com.blezek.nifi.dicom;
+
+import com.google.gson.Gson;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.reporting.AbstractReportingTask;
+import org.apache.nifi.reporting.ReportingContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Tags({ "dicom", "deidentify", "metrics", "reporting" })
+@CapabilityDescription("Logs the statistics of a deidentification controller as JSON: UID cache hit and miss rates, load latency percentiles, "
+    + "database round trips, uid_map rows, lock wait time and identity map size, with rates over the last 1, 5 and 15 minutes.")
+@SeeAlso({ DeidentificationController.class, LogCacheStatistics.class })
+public class DeidentificationStatisticsReportingTask extends AbstractReportingTask {
+
+  public static final PropertyDescriptor DEIDENTIFICATION_STORAGE_CONTROLLER = new PropertyDescriptor.Builder()
+      .name("Deidentification controller").description("The deidentification controller to report on").required(true)
+      .identifiesControllerService(DeidentificationService.class).build();
+
+  private final Gson gson = new Gson();
+
+  @Override
+  protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+    List<PropertyDescriptor> properties = new ArrayList<>();
+    properties.add(DEIDENTIFICATION_STORAGE_CONTROLLER);
+    return Collections.unmodifiableList(properties);
+  }
+
+  @Override
+  public void onTrigger(ReportingContext context) {
+    DeidentificationService controller = context.getProperty(DEIDENTIFICATION_STORAGE_CONTROLLER)
+        .asControllerService(DeidentificationService.class);
+    getLogger().info(gson.toJson(controller.getStatistics()));
+  }
+
+}
@@ -1,5 +1,7 @@
 package com.blezek.nifi.dicom;
 
+import com.blezek.nifi.dicom.util.ProcessorMetrics;
+import com.blezek.nifi.dicom.util.ProcessorMetrics.Stage;
 import com.pixelmed.dicom.Attribute;
 import com.pixelmed.dicom.AttributeList;
 import com.pixelmed.dicom.AttributeTag;
@@ -23,6 +25,7 @@ import org.apache.nifi.annotation.behavior.SideEffectFree;
 import org.apache.nifi.annotation.behavior.SupportsBatching;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.flowfile.FlowFile;
@@ -153,9 +156,11 @@ public class DeidentifyDICOM extends AbstractProcessor {
   boolean keepAllPrivate;
   boolean addContributingEquipmentSequence = true;
   boolean generateIfNotMatched;
+  volatile ProcessorMetrics metrics;
 
   @OnScheduled
   public void startup(ProcessContext context) throws Exception {
+    metrics = ProcessorMetrics.forProcessor(getIdentifier(), getClass().getSimpleName());
     // Shutdown anything in progress
     keepDescriptors = context.getProperty(keepDescriptorsProperty).asBoolean();
     keepSeriesDescriptors = context.getProperty(keepSeriesDescriptorsProperty).asBoolean();
@@ -169,6 +174,11 @@ public class DeidentifyDICOM extends AbstractProcessor {
 
   }
 
+  @OnRemoved
+  public void removed() {
+    ProcessorMetrics.remove(getIdentifier());
+  }
+
   @Override
   public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException {
 
@@ -186,7 +196,7 @@ public class DeidentifyDICOM extends AbstractProcessor {
 
     } catch (Exception e) {
       flowFile = session.penalize(flowFile);
-      session.transfer(flowFile, RELATIONSHIP_REJECT);
+      metrics.transfer(session, flowFile, RELATIONSHIP_REJECT);
       getLogger().error("Flowfile is not a DICOM file, could not read attributes", e);
     }
     session.commitAsync();
@@ -197,6 +207,7 @@ public class DeidentifyDICOM extends AbstractProcessor {
     String ourCalledAETitle = "nifi-dicom";
     AttributeList list;
     String outputTransferSyntaxUID = TransferSyntax.ExplicitVRLittleEndian;
+    ProcessorMetrics.Timer timer = metrics.start();
 
     try (InputStream flowfileInputStream = session.read(flowfile)) {
 
@@ -210,6 +221,7 @@ public class DeidentifyDICOM extends AbstractProcessor {
         list.read(i);
       }
     }
+    timer.lap(Stage.PARSE);
 
     // Grab the patient id before we do anything else
     String id = "unknown";
@@ -228,7 +240,9 @@ public class DeidentifyDICOM extends AbstractProcessor {
       } else {
         // We can exit early, there is nothing to do
         // Transfer the incoming flowfile to the Not Matched relationship
-        session.transfer(flowfile, RELATIONSHIP_NOT_MATCHED);
+        timer.lap(Stage.TRANSFORM);
+        metrics.record(session, timer, flowfile.getSize(), 0);
+        metrics.transfer(session, flowfile, RELATIONSHIP_NOT_MATCHED);
         return;
       }
     }
@@ -351,6 +365,7 @@ public class DeidentifyDICOM extends AbstractProcessor {
 
     FileMetaInformation.addFileMetaInformation(list, outputTransferSyntaxUID, ourCalledAETitle);
     list.insertSuitableSpecificCharacterSetForAllStringValues();
+    timer.lap(Stage.TRANSFORM);
 
     FlowFile outputFlowFile = session.create(flowfile);
     outputFlowFile = session.write(outputFlowFile, (OutputStream out) -> {
@@ -360,10 +375,12 @@ public class DeidentifyDICOM extends AbstractProcessor {
         throw new IOException("Could not write " + e.getLocalizedMessage(), e);
       }
     });
+    timer.lap(Stage.WRITE);
+    metrics.record(session, timer, flowfile.getSize(), outputFlowFile.getSize());
     // Remove the incoming flowfile from the input queue, transfer the new
     // deidentified file to the output
     session.remove(flowfile);
-    session.transfer(outputFlowFile, RELATIONSHIP_SUCCESS);
+    metrics.transfer(session, outputFlowFile, RELATIONSHIP_SUCCESS);
   }
 
 }
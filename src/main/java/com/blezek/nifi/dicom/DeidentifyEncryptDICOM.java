@@ -1,6 +1,11 @@
 package com.blezek.nifi.dicom;
 
+import com.blezek.nifi.dicom.util.DerivedKeyCache;
 import com.blezek.nifi.dicom.util.Encryption;
+import com.blezek.nifi.dicom.util.ProcessorMetrics;
+import com.blezek.nifi.dicom.util.ProcessorMetrics.Stage;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.pixelmed.dicom.Attribute;
 import com.pixelmed.dicom.AttributeList;
 import com.pixelmed.dicom.AttributeTag;
@@ -24,6 +29,7 @@ import org.apache.nifi.annotation.behavior.SupportsBatching;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.PropertyValue;
@@ -60,6 +66,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Tags({ "deidentify", "dicom", "imaging", "encrypt" })
 @SupportsBatching
@@ -95,6 +104,24 @@ public class DeidentifyEncryptDICOM extends AbstractProcessor {
       .addValidator(StandardValidators.INTEGER_VALIDATOR).addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
       .build();
 
+  static final String SALT_PER_INSTANCE = "instance";
+  static final String SALT_PER_STUDY = "study";
+  static final String SALT_PER_WINDOW = "time window";
+
+  static final PropertyDescriptor SALT_SCOPE = new PropertyDescriptor.Builder().name("salt scope")
+      .displayName("Encryption salt scope")
+      .description(
+          "Share the encryption salt between instances of the same study, or all instances encrypted within a time window.  "
+              + "The key derived from the password and salt is computed once per salt rather than once per instance, "
+              + "allowing a high number of iterations.  Each instance is still encrypted with its own content key.")
+      .required(true).allowableValues(SALT_PER_INSTANCE, SALT_PER_STUDY, SALT_PER_WINDOW)
+      .defaultValue(SALT_PER_INSTANCE).build();
+
+  static final PropertyDescriptor SALT_WINDOW = new PropertyDescriptor.Builder().name("salt window")
+      .displayName("Encryption salt window")
+      .description("Time after which a new salt is generated, when the salt scope is '" + SALT_PER_WINDOW + "'")
+      .required(true).defaultValue("1 hour").addValidator(StandardValidators.TIME_PERIOD_VALIDATOR).build();
+
   // static final PropertyDescriptor BATCH_SIZE = new
   // PropertyDescriptor.Builder().name("Batch size").defaultValue("100")
   // .description("Number of DICOM files to process in batch").required(false)
@@ -153,6 +180,8 @@ public class DeidentifyEncryptDICOM extends AbstractProcessor {
     final List<PropertyDescriptor> descriptors = new ArrayList<>();
     descriptors.add(PASSWORD);
     descriptors.add(ITERATIONS);
+    descriptors.add(SALT_SCOPE);
+    descriptors.add(SALT_WINDOW);
     descriptors.add(keepDescriptorsProperty);
     descriptors.add(keepSeriesDescriptorsProperty);
     descriptors.add(keepProtocolNameProperty);
@@ -173,9 +202,14 @@ public class DeidentifyEncryptDICOM extends AbstractProcessor {
   boolean keepAllPrivate;
   boolean addContributingEquipmentSequence = true;
   boolean generateIfNotMatched;
+  String saltScope;
+  Cache<String, byte[]> salts;
+  final DerivedKeyCache keyCache = new DerivedKeyCache(1000);
+  volatile ProcessorMetrics metrics;
 
   @OnScheduled
   public void startup(ProcessContext context) throws Exception {
+    metrics = ProcessorMetrics.forProcessor(getIdentifier(), getClass().getSimpleName());
     // Shutdown anything in progress
     keepDescriptors = context.getProperty(keepDescriptorsProperty).asBoolean();
     keepSeriesDescriptors = context.getProperty(keepSeriesDescriptorsProperty).asBoolean();
@@ -185,6 +219,35 @@ public class DeidentifyEncryptDICOM extends AbstractProcessor {
     keepInstitutionIdentity = context.getProperty(keepInstitutionIdentityProperty).asBoolean();
     keepAllPrivate = context.getProperty(keepAllPrivateProperty).asBoolean();
     addContributingEquipmentSequence = context.getProperty(addContributingEquipmentSequenceProperty).asBoolean();
+    saltScope = context.getProperty(SALT_SCOPE).getValue();
+    if (SALT_PER_WINDOW.equals(saltScope)) {
+      salts = CacheBuilder.newBuilder().maximumSize(1)
+          .expireAfterWrite(context.getProperty(SALT_WINDOW).asTimePeriod(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS)
+          .build();
+    } else {
+      salts = CacheBuilder.newBuilder().maximumSize(10000).build();
+    }
+  }
+
+  @OnRemoved
+  public void removed() {
+    ProcessorMetrics.remove(getIdentifier());
+  }
+
+  /**
+   * Salt for the instance, shared between instances of a study or a time window
+   * depending on the salt scope.
+   */
+  byte[] salt(String studyInstanceUID) throws ExecutionException {
+    Callable<byte[]> newSalt = () -> UUID.randomUUID().toString().getBytes();
+    switch (saltScope) {
+    case SALT_PER_STUDY:
+      return salts.get(studyInstanceUID, newSalt);
+    case SALT_PER_WINDOW:
+      return salts.get("", newSalt);
+    default:
+      return UUID.randomUUID().toString().getBytes();
+    }
   }
 
   @Override
@@ -197,7 +260,7 @@ public class DeidentifyEncryptDICOM extends AbstractProcessor {
         deifentifyAndEncrypt(context, session, flowFile);
       } catch (Exception e) {
         flowFile = session.penalize(flowFile);
-        session.transfer(flowFile, RELATIONSHIP_REJECT);
+        metrics.transfer(session, flowFile, RELATIONSHIP_REJECT);
         getLogger().error("Flowfile is not a DICOM file, could not read attributes", e);
       }
     }
@@ -210,6 +273,7 @@ public class DeidentifyEncryptDICOM extends AbstractProcessor {
     Attributes originalTags;
     Attributes deidentifiedTags;
     String outputTransferSyntaxUID = TransferSyntax.ExplicitVRLittleEndian;
+    ProcessorMetrics.Timer timer = metrics.start();
 
     try (InputStream flowfileInputStream = session.read(flowfile)) {
       try (com.pixelmed.dicom.DicomInputStream i = new com.pixelmed.dicom.DicomInputStream(flowfileInputStream)) {
@@ -229,6 +293,7 @@ public class DeidentifyEncryptDICOM extends AbstractProcessor {
         originalTags = dis.readDataset(-1, -1);
       }
     }
+    timer.lap(Stage.PARSE);
     // Deal with patient demographics
     String oldName = "Unknown^Pat";
     String id = "unknown";
@@ -422,16 +487,17 @@ public class DeidentifyEncryptDICOM extends AbstractProcessor {
       // See
       // $JAVA_HOME/jre/lib/security/
       // $JAVA_HOME/lib/security/
+      byte[] salt = salt(remappedUIDs.getString(Tag.StudyInstanceUID));
+      int iterations = context.getProperty(ITERATIONS).evaluateAttributeExpressions(flowfile).asInteger();
+      // Stream the modified attributes directly into the CMS envelope, closing
+      // the DicomOutputStream completes the envelope
       ByteArrayOutputStream os = new ByteArrayOutputStream();
-      try (DicomOutputStream dos = new DicomOutputStream(os, UID.ExplicitVRLittleEndian)) {
+      try (DicomOutputStream dos = new DicomOutputStream(
+          Encryption.openPasswordEnvelopedStream(password.toCharArray(), salt, iterations, os, keyCache),
+          UID.ExplicitVRLittleEndian)) {
         dos.writeDataset(null, ma);
       }
-      os.close();
-
-      String salt = UUID.randomUUID().toString();
-      int iterations = context.getProperty(ITERATIONS).evaluateAttributeExpressions(flowfile).asInteger();
-      byte[] encryptedBuffer = Encryption.createPasswordEnvelopedObject(password.toCharArray(), salt.getBytes(),
-          iterations, os.toByteArray());
+      byte[] encryptedBuffer = os.toByteArray();
 
       // put it in the tags
       Attributes encryptedAttributes = new Attributes();
@@ -442,6 +508,7 @@ public class DeidentifyEncryptDICOM extends AbstractProcessor {
       Sequence encryptedAttributesSequence = deidentifiedTags.ensureSequence(Tag.EncryptedAttributesSequence, 0);
       encryptedAttributesSequence.add(encryptedAttributes);
     }
+    timer.lap(Stage.TRANSFORM);
 
     FlowFile outputFlowFile = session.create(flowfile);
     outputFlowFile = session.write(outputFlowFile, (OutputStream out) -> {
@@ -449,10 +516,12 @@ public class DeidentifyEncryptDICOM extends AbstractProcessor {
         dos.writeDataset(deidentifiedTags.createFileMetaInformation(UID.ExplicitVRLittleEndian), deidentifiedTags);
       }
     });
+    timer.lap(Stage.WRITE);
+    metrics.record(session, timer, flowfile.getSize(), outputFlowFile.getSize());
     // Remove the incoming flowfile from the input queue, transfer the new
     // deidentified file to the output
     session.remove(flowfile);
-    session.transfer(outputFlowFile, RELATIONSHIP_SUCCESS);
+    metrics.transfer(session, outputFlowFile, RELATIONSHIP_SUCCESS);
 
   }
 }
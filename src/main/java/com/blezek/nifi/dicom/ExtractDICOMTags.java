@@ -1,10 +1,15 @@
 package com.blezek.nifi.dicom;
 
+import com.blezek.nifi.dicom.util.ProcessorMetrics;
+import com.blezek.nifi.dicom.util.ProcessorMetrics.Stage;
+
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.SideEffectFree;
 import org.apache.nifi.annotation.behavior.SupportsBatching;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.ValidationContext;
 import org.apache.nifi.components.ValidationResult;
@@ -82,6 +87,18 @@ public class ExtractDICOMTags extends AbstractProcessor {
     return relationships;
   }
 
+  volatile ProcessorMetrics metrics;
+
+  @OnScheduled
+  public void startup(ProcessContext context) {
+    metrics = ProcessorMetrics.forProcessor(getIdentifier(), getClass().getSimpleName());
+  }
+
+  @OnRemoved
+  public void removed() {
+    ProcessorMetrics.remove(getIdentifier());
+  }
+
   /**
    * Build a dynamic property based on the tag.
    * 
@@ -125,6 +142,7 @@ public class ExtractDICOMTags extends AbstractProcessor {
     Boolean allTags = context.getProperty(ALL_TAGS).asBoolean();
     for (FlowFile flowFile : session.get(100)) {
       Optional<Relationship> destinationRelationship = Optional.empty();
+      ProcessorMetrics.Timer timer = metrics.start();
       // Clone the FlowFile
 
       Map<String, String> attributeMap = new HashMap<>();
@@ -134,6 +152,7 @@ public class ExtractDICOMTags extends AbstractProcessor {
           in.setIncludeBulkData(IncludeBulkData.NO);
           Attributes attributes;
           attributes = in.readDataset(-1, Tag.PixelData);
+          timer.lap(Stage.PARSE);
 
           if (constructFilename) {
             String badCharacters = "[^a-zA-Z0-9.^]";
@@ -213,11 +232,14 @@ public class ExtractDICOMTags extends AbstractProcessor {
       }
 
       // If we reject
+      timer.lap(Stage.TRANSFORM);
       if (destinationRelationship.isPresent()) {
-        session.transfer(flowFile, destinationRelationship.get());
+        metrics.transfer(session, flowFile, destinationRelationship.get());
       } else {
-        session.putAllAttributes(flowFile, attributeMap);
-        session.transfer(flowFile, RELATIONSHIP_SUCCESS);
+        flowFile = session.putAllAttributes(flowFile, attributeMap);
+        timer.lap(Stage.WRITE);
+        metrics.record(session, timer, flowFile.getSize(), 0);
+        metrics.transfer(session, flowFile, RELATIONSHIP_SUCCESS);
       }
     }
     session.commitAsync();
@@ -1,9 +1,13 @@
 package com.blezek.nifi.dicom;
 
+import com.blezek.nifi.dicom.util.ProcessorMetrics;
+import com.blezek.nifi.dicom.util.ProcessorMetrics.Stage;
+
 import org.apache.nifi.annotation.behavior.*;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
 import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.PropertyValue;
@@ -117,10 +121,17 @@ public class ListenDICOM extends AbstractSessionFactoryProcessor {
   }
 
   Device device = null;
+  volatile ProcessorMetrics metrics;
+
+  @OnRemoved
+  public void removed() {
+    ProcessorMetrics.remove(getIdentifier());
+  }
 
   @OnEnabled
   void startDICOM(final ProcessContext context, final ProcessSessionFactory sessionFactory)
       throws IOException, GeneralSecurityException {
+    metrics = ProcessorMetrics.forProcessor(getIdentifier(), getClass().getSimpleName());
     String aeTitle = "*";
     PropertyValue p = context.getProperty(AE_TITLE).evaluateAttributeExpressions();
     if (p.isSet() && !p.getValue().equals("")) {
@@ -145,6 +156,7 @@ public class ListenDICOM extends AbstractSessionFactoryProcessor {
         final ProcessSession processSession = sessionFactory.createSession();
         final StopWatch watch = new StopWatch();
         watch.start();
+        ProcessorMetrics.Timer timer = metrics.start();
         try {
           FlowFile flowFile = processSession.create();
           flowFile = processSession.write(flowFile, (OutputStream out) -> {
@@ -156,13 +168,15 @@ public class ListenDICOM extends AbstractSessionFactoryProcessor {
           flowFile = processSession.putAttribute(flowFile, "dicom.calling.aetitle", as.getCallingAET());
           flowFile = processSession.putAttribute(flowFile, "dicom.called.aetitle", as.getCalledAET());
           watch.stop();
+          timer.lap(Stage.WRITE);
+          metrics.record(processSession, timer, flowFile.getSize(), 0);
 
           String transitUri = "dicom://" + as.getCallingAET() + "@" + as.getSocket().getRemoteSocketAddress();
           String details = "received DICOM to dicom://" + as.getCalledAET() + "@"
               + as.getSocket().getLocalSocketAddress() + ":" + as.getSocket().getLocalPort();
           processSession.getProvenanceReporter().receive(flowFile, transitUri, details,
               watch.getDuration(TimeUnit.MILLISECONDS));
-          processSession.transfer(flowFile, ListenDICOM.RELATIONSHIP_SUCCESS);
+          metrics.transfer(processSession, flowFile, ListenDICOM.RELATIONSHIP_SUCCESS);
           processSession.commitAsync();
         } catch (FlowFileAccessException | IllegalStateException ex) {
           getLogger().error("Unable to fully process input due to " + ex.getMessage(), ex);
@@ -21,7 +21,7 @@ import java.util.Set;
 
 @Tags({ "dicom", "deidentify", "imaging" })
 @InputRequirement(InputRequirement.Requirement.INPUT_FORBIDDEN)
-@CapabilityDescription("Fetches deidentification service statistics")
+@CapabilityDescription("Fetches deidentification service statistics as JSON, see DeidentificationStatisticsReportingTask to log them periodically instead")
 public class LogCacheStatistics extends AbstractProcessor {
 
   public static final Relationship RELATIONSHIP_SUCCESS = new Relationship.Builder().name("success")
@@ -53,7 +53,7 @@ public class LogCacheStatistics extends AbstractProcessor {
     FlowFile flowfile = session.create();
     flowfile = session.write(flowfile, (OutputStream out) -> {
       Gson gson = new Gson();
-      out.write(gson.toJson(controller.getCacheStats()).getBytes());
+      out.write(gson.toJson(controller.getStatistics()).getBytes());
     });
     session.putAttribute(flowfile, "filename", "cache_stats.json");
     session.transfer(flowfile, RELATIONSHIP_SUCCESS);
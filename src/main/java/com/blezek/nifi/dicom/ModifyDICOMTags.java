@@ -1,10 +1,17 @@
 package com.blezek.nifi.dicom;
 
+import com.blezek.nifi.dicom.util.ProcessorMetrics;
+import com.blezek.nifi.dicom.util.ProcessorMetrics.Stage;
+
 import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.SupportsBatching;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyValue;
 import org.apache.nifi.components.ValidationContext;
 import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.components.Validator;
@@ -16,8 +23,10 @@ import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.ElementDictionary;
+import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.data.VR;
 import org.dcm4che3.io.DicomInputStream;
@@ -25,6 +34,7 @@ import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
 import org.dcm4che3.io.DicomOutputStream;
 import org.dcm4che3.util.TagUtils;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -32,11 +42,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 
 @Tags({"dicom", "imaging"})
+@SupportsBatching
 @InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
 @CapabilityDescription("This processor modifies DICOM tags. ")
 @SeeAlso(ExtractDICOMTags.class)
@@ -46,6 +55,13 @@ public class ModifyDICOMTags extends AbstractProcessor {
     public static final Relationship RELATIONSHIP_REJECT = new Relationship.Builder().name("failure")
             .description("FlowFiles that are not DICOM images").build();
 
+    static final PropertyDescriptor STREAMING = new PropertyDescriptor.Builder().name("STREAMING")
+            .displayName("Stream pixel data")
+            .description("If true, only the attributes before the Pixel Data are read and modified, the Pixel Data is copied to the output unchanged.  "
+                    + "If false, the entire dataset is read into memory before writing.")
+            .required(true).allowableValues("true", "false").defaultValue("true")
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR).build();
+
     private static final List<PropertyDescriptor> properties;
     private static final Set<Relationship> relationships;
 
@@ -58,6 +74,7 @@ public class ModifyDICOMTags extends AbstractProcessor {
 
         // descriptors
         final List<PropertyDescriptor> supDescriptors = new ArrayList<>();
+        supDescriptors.add(STREAMING);
         properties = Collections.unmodifiableList(supDescriptors);
     }
 
@@ -108,51 +125,149 @@ public class ModifyDICOMTags extends AbstractProcessor {
         return descriptor;
     }
 
+    /**
+     * A dynamic property resolved to its tag and VR.  Properties without
+     * Expression Language keep their value, the others are evaluated per FlowFile.
+     */
+    static class TagModification {
+        final int tag;
+        final VR vr;
+        final PropertyValue value;
+        final String constantValue;
+
+        TagModification(int tag, VR vr, PropertyValue value) {
+            this.tag = tag;
+            this.vr = vr;
+            this.value = value;
+            this.constantValue = value.isExpressionLanguagePresent() ? null : value.getValue();
+        }
+
+        String evaluate(FlowFile flowFile) {
+            return constantValue != null ? constantValue : value.evaluateAttributeExpressions(flowFile).toString();
+        }
+    }
+
+    private volatile List<TagModification> modifications;
+    private volatile boolean streaming;
+    volatile ProcessorMetrics metrics;
+
+    @OnScheduled
+    public void startup(ProcessContext context) {
+        metrics = ProcessorMetrics.forProcessor(getIdentifier(), getClass().getSimpleName());
+        List<TagModification> plan = new ArrayList<>();
+        for (PropertyDescriptor descriptor : context.getProperties().keySet()) {
+            if (descriptor.isDynamic()) {
+                int tag = TagUtils.forName(descriptor.getName());
+                VR vr = ElementDictionary.getStandardElementDictionary().vrOf(tag);
+                plan.add(new TagModification(tag, vr, context.getProperty(descriptor)));
+            }
+        }
+        modifications = Collections.unmodifiableList(plan);
+        streaming = context.getProperty(STREAMING).asBoolean();
+    }
+
+    @OnRemoved
+    public void removed() {
+        ProcessorMetrics.remove(getIdentifier());
+    }
+
     @Override
     public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException {
-        FlowFile flowFile = session.get();
-        if (flowFile == null) {
-            return;
+        for (FlowFile flowFile : session.get(100)) {
+            try {
+                // Create a new FlowFile
+                ProcessorMetrics.Timer timer = metrics.start();
+                FlowFile outputFlowFile = session.write(flowFile,
+                        (InputStream flowfileInputStream, OutputStream out) -> modify(flowFile, flowfileInputStream, out, timer));
+                metrics.record(session, timer, flowFile.getSize(), outputFlowFile.getSize());
+
+                // Save attributes
+                metrics.transfer(session, outputFlowFile, RELATIONSHIP_SUCCESS);
+
+            } catch (Exception e) {
+                getLogger().error("Flowfile is not a DICOM file, could not read attributes", e);
+                metrics.transfer(session, flowFile, RELATIONSHIP_REJECT);
+            }
         }
-        Optional<Relationship> destinationRelationship = Optional.empty();
-        try {
-            // Create a new FlowFile
-            FlowFile outputFlowFile = session.write(flowFile, (InputStream flowfileInputStream, OutputStream out) -> {
-
-                DicomInputStream in = new DicomInputStream(flowfileInputStream);
-                in.setIncludeBulkData(IncludeBulkData.YES);
-                Attributes attributes;
-                Attributes fmi = in.readFileMetaInformation();
-                attributes = in.readDataset(-1, -1);
-                in.close();
-
-                // Modify the attributes
-                Map<PropertyDescriptor, String> properties = context.getProperties();
-                for (PropertyDescriptor descriptor : properties.keySet()) {
-                    // Look up the tag in the DICOM attributes, set default if not
-                    // found.
-                    String tagName = descriptor.getName();
-                    int tag = TagUtils.forName(tagName);
-                    VR vr = ElementDictionary.getStandardElementDictionary().vrOf(tag);
-                    attributes.setString(tag, vr,
-                            context.getProperty(descriptor).evaluateAttributeExpressions(flowFile).toString());
-                }
+        session.commitAsync();
+    }
 
-                DicomOutputStream dos = new DicomOutputStream(out, UID.ExplicitVRLittleEndian);
-                dos.writeDataset(fmi, attributes);
-                dos.close();
-                out.close();
+    private void modify(FlowFile flowFile, InputStream flowfileInputStream, OutputStream out,
+            ProcessorMetrics.Timer timer) throws IOException {
+        DicomInputStream in = new DicomInputStream(flowfileInputStream);
+        in.setIncludeBulkData(IncludeBulkData.YES);
+        Attributes fmi = in.readFileMetaInformation();
+        Attributes attributes = in.readDataset(-1, streaming ? Tag.PixelData : -1);
+        String tsuid = in.getTransferSyntax();
+        boolean streamPixelData = streaming && in.tag() == Tag.PixelData;
+        timer.lap(Stage.PARSE);
 
-            });
+        // Modify the attributes, tags following the Pixel Data are applied to
+        // the trailing attributes once they have been read when streaming
+        List<TagModification> trailingModifications = new ArrayList<>();
+        for (TagModification modification : modifications) {
+            if (streamPixelData && Integer.compareUnsigned(modification.tag, Tag.PixelData) > 0) {
+                trailingModifications.add(modification);
+            } else {
+                attributes.setString(modification.tag, modification.vr, modification.evaluate(flowFile));
+            }
+        }
+        timer.lap(Stage.TRANSFORM);
 
-            // Save attributes
-            session.transfer(outputFlowFile, RELATIONSHIP_SUCCESS);
+        // Keep the incoming transfer syntax, the stream is closed by the session.
+        // With a meta header, writeDataset switches from the meta header encoding.
+        DicomOutputStream dos = new DicomOutputStream(out, fmi != null ? UID.ExplicitVRLittleEndian : tsuid);
+        dos.writeDataset(fmi, attributes);
+        if (streamPixelData) {
+            copyPixelData(in, dos);
+            Attributes trailing = in.readDataset(-1, -1);
+            for (TagModification modification : trailingModifications) {
+                trailing.setString(modification.tag, modification.vr, modification.evaluate(flowFile));
+            }
+            dos.writeDataset(null, trailing);
+        }
+        dos.finish();
+        dos.flush();
+        timer.lap(Stage.WRITE);
+    }
 
-        } catch (Exception e) {
-            getLogger().error("Flowfile is not a DICOM file, could not read attributes", e);
-            session.transfer(flowFile, RELATIONSHIP_REJECT);
+    /**
+     * Copy the Pixel Data element whose header was just read from in to dos,
+     * without decoding the value.  Encapsulated Pixel Data is copied fragment by
+     * fragment.
+     *
+     * @param in  positioned after the Pixel Data header
+     * @param dos positioned after the header attributes
+     * @throws IOException if the Pixel Data is truncated
+     */
+    static void copyPixelData(DicomInputStream in, DicomOutputStream dos) throws IOException {
+        int length = in.length();
+        dos.writeHeader(Tag.PixelData, in.vr(), length);
+        if (length != -1) {
+            copyFully(in, dos, length & 0xffffffffL);
+            return;
         }
+        while (true) {
+            in.readHeader();
+            int tag = in.tag();
+            dos.writeHeader(tag, null, in.length());
+            if (tag == Tag.SequenceDelimitationItem) {
+                return;
+            }
+            copyFully(in, dos, in.length() & 0xffffffffL);
+        }
+    }
 
+    private static void copyFully(InputStream in, OutputStream out, long length) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        while (length > 0) {
+            int count = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (count < 0) {
+                throw new EOFException("Pixel Data truncated, " + length + " bytes missing");
+            }
+            out.write(buffer, 0, count);
+            length -= count;
+        }
     }
 
 }
@@ -0,0 +1,25 @@
+package com.blezek.nifi.dicom;
+
+import com.blezek.nifi.dicom.util.ProcessorMetrics;
+import com.google.gson.Gson;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.reporting.AbstractReportingTask;
+import org.apache.nifi.reporting.ReportingContext;
+
+@Tags({ "dicom", "metrics", "reporting" })
+@CapabilityDescription("Logs the metrics of the DICOM processors as JSON, one line per processor: FlowFiles processed, milliseconds spent in the "
+    + "parse, transform and write stages, bytes in and out and FlowFiles per relationship.  Totals are kept since each processor was first scheduled.")
+public class ProcessorMetricsReportingTask extends AbstractReportingTask {
+
+  private final Gson gson = new Gson();
+
+  @Override
+  public void onTrigger(ReportingContext context) {
+    for (ProcessorMetrics.Snapshot snapshot : ProcessorMetrics.snapshots()) {
+      getLogger().info(gson.toJson(snapshot));
+    }
+  }
+
+}
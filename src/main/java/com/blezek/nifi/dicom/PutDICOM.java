@@ -1,6 +1,9 @@
 
 package com.blezek.nifi.dicom;
 
+import com.blezek.nifi.dicom.util.ProcessorMetrics;
+import com.blezek.nifi.dicom.util.ProcessorMetrics.Stage;
+
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
 import org.apache.nifi.annotation.behavior.SideEffectFree;
@@ -8,6 +11,8 @@ import org.apache.nifi.annotation.behavior.SupportsBatching;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
@@ -119,6 +124,18 @@ public class PutDICOM extends AbstractProcessor {
     return properties;
   }
 
+  volatile ProcessorMetrics metrics;
+
+  @OnScheduled
+  public void startup(ProcessContext context) {
+    metrics = ProcessorMetrics.forProcessor(getIdentifier(), getClass().getSimpleName());
+  }
+
+  @OnRemoved
+  public void removed() {
+    ProcessorMetrics.remove(getIdentifier());
+  }
+
   @Override
   public void onTrigger(final ProcessContext context, final ProcessSession session) {
     int maxResults = context.getProperty(BATCH_SIZE).evaluateAttributeExpressions().asInteger();
@@ -199,7 +216,7 @@ public class PutDICOM extends AbstractProcessor {
         }
         validDICOMFlowFiles.add(flowfile);
       } catch (DicomStreamException dse) {
-        session.transfer(flowfile, RELATIONSHIP_REJECT);
+        metrics.transfer(session, flowfile, RELATIONSHIP_REJECT);
         getLogger().error("Flowfile is not a DICOM file", dse);
         continue;
       }
@@ -210,7 +227,7 @@ public class PutDICOM extends AbstractProcessor {
         as = ae.connect(remote, rq);
       } catch (Exception e) {
         getLogger().error("error connecting to " + remote.getDevice(), e);
-        session.transfer(validDICOMFlowFiles, RELATIONSHIP_FAILURE);
+        metrics.transfer(session, validDICOMFlowFiles, RELATIONSHIP_FAILURE);
         // I don't believe this is needed?
         // session.commitAsync();
         return;
@@ -220,6 +237,7 @@ public class PutDICOM extends AbstractProcessor {
       for (FlowFile flowfile : validDICOMFlowFiles) {
         try (DicomInputStream in = new DicomInputStream(session.read(flowfile))) {
           StopWatch watch = new StopWatch(true);
+          ProcessorMetrics.Timer timer = metrics.start();
           in.setIncludeBulkData(IncludeBulkData.YES);
           Attributes data;
           try {
@@ -227,7 +245,7 @@ public class PutDICOM extends AbstractProcessor {
           } catch (IOException e) {
             // is not dicom
             getLogger().error("Could not read DICOM from FlowFile", e);
-            session.transfer(flowfile, RELATIONSHIP_REJECT);
+            metrics.transfer(session, flowfile, RELATIONSHIP_REJECT);
             continue;
           }
           Attributes fmi = in.readFileMetaInformation();
@@ -240,15 +258,19 @@ public class PutDICOM extends AbstractProcessor {
           String cuid = fmi.getString(Tag.MediaStorageSOPClassUID);
           String iuid = fmi.getString(Tag.MediaStorageSOPInstanceUID);
           String ts = fmi.getString(Tag.TransferSyntaxUID);
+          timer.lap(Stage.PARSE);
           as.cstore(cuid, iuid, Priority.NORMAL, new DataWriterAdapter(data), ts,
               new DimseRSPHandler(as.nextMessageID()));
           session.getProvenanceReporter().send(flowfile, destinationUri, details,
               watch.getElapsed(TimeUnit.MILLISECONDS));
+          timer.lap(Stage.WRITE);
+          metrics.record(session, timer, flowfile.getSize(), flowfile.getSize());
         } catch (Exception e) {
           getLogger().error("Error sending DICOM", e);
-          session.transfer(flowfile, RELATIONSHIP_FAILURE);
+          metrics.transfer(session, flowfile, RELATIONSHIP_FAILURE);
+          continue;
         }
-        session.transfer(flowfile, RELATIONSHIP_SUCCESS);
+        metrics.transfer(session, flowfile, RELATIONSHIP_SUCCESS);
       }
       // Shutdown the association
       if (as.isReadyForDataTransfer()) {
@@ -0,0 +1,623 @@
+package com.blezek.nifi.dicom;
+
+import com.blezek.nifi.dicom.util.ProcessorMetrics;
+import com.blezek.nifi.dicom.util.ProcessorMetrics.Stage;
+import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.dicom.CompressedFrameDecoder;
+import com.pixelmed.dicom.CompressedFrameEncoder;
+import com.pixelmed.dicom.DicomException;
+import com.pixelmed.dicom.TagFromName;
+import com.pixelmed.dicom.TransferSyntax;
+
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.SupportsBatching;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.components.AllowableValue;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
+import org.dcm4che3.io.DicomOutputStream;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.imageio.ImageWriter;
+
+@Tags({"dicom", "imaging", "compression"})
+@SupportsBatching
+@InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
+@CapabilityDescription("This processor changes the transfer syntax of DICOM images, decompressing the Pixel Data or losslessly recompressing it.  "
+        + "Frames are streamed from the input to the output one at a time.  Only the values of the Image Pixel Module attributes are changed, "
+        + "the other attributes are decoded and encoded again in the new transfer syntax.  "
+        + "JPEG-LS and JPEG 2000 require the corresponding ImageIO codecs to be installed.")
+@SeeAlso(ModifyDICOMTags.class)
+public class TranscodeDICOM extends AbstractProcessor {
+    public static final Relationship RELATIONSHIP_SUCCESS = new Relationship.Builder().name("success")
+            .description("All transcoded DICOM images will be routed as FlowFiles to this relationship").build();
+    public static final Relationship RELATIONSHIP_REJECT = new Relationship.Builder().name("failure")
+            .description("FlowFiles that are not DICOM images, or whose Pixel Data could not be transcoded").build();
+
+    static final AllowableValue EXPLICIT_VR_LITTLE_ENDIAN = new AllowableValue(UID.ExplicitVRLittleEndian,
+            "Explicit VR Little Endian", "Uncompressed");
+    static final AllowableValue JPEG_LS_LOSSLESS = new AllowableValue(TransferSyntax.JPEGLS, "JPEG-LS Lossless",
+            "JPEG-LS lossless, ISO 14495-1");
+    static final AllowableValue JPEG_2000_LOSSLESS = new AllowableValue(TransferSyntax.JPEG2000Lossless,
+            "JPEG 2000 Lossless", "JPEG 2000 reversible, ISO 15444-1; color images must be RGB, and are stored as YBR_RCT");
+    static final AllowableValue JPEG_LOSSLESS = new AllowableValue(TransferSyntax.JPEGLosslessSV1, "JPEG Lossless",
+            "JPEG lossless Huffman, first order prediction (Process 14, Selection Value 1), ISO 10918-1");
+    static final AllowableValue RLE_LOSSLESS = new AllowableValue(TransferSyntax.RLE, "RLE Lossless", "DICOM run length encoding");
+
+    static final PropertyDescriptor TRANSFER_SYNTAX = new PropertyDescriptor.Builder().name("TRANSFER_SYNTAX")
+            .displayName("Transfer syntax")
+            .description("The transfer syntax to write.  Images already in this transfer syntax keep their Pixel Data byte for byte, "
+                    + "their other attributes are decoded and encoded again with the same values.")
+            .required(true)
+            .allowableValues(EXPLICIT_VR_LITTLE_ENDIAN, JPEG_LS_LOSSLESS, JPEG_2000_LOSSLESS, JPEG_LOSSLESS, RLE_LOSSLESS)
+            .defaultValue(EXPLICIT_VR_LITTLE_ENDIAN.getValue()).build();
+
+    private static final List<PropertyDescriptor> properties;
+    private static final Set<Relationship> relationships;
+
+    /** The PixelMed CompressedFrameEncoder format of each compressed transfer syntax. */
+    private static final Map<String, String> outputFormats;
+
+    static {
+        // relationships
+        final Set<Relationship> procRels = new HashSet<>();
+        procRels.add(RELATIONSHIP_SUCCESS);
+        procRels.add(RELATIONSHIP_REJECT);
+        relationships = Collections.unmodifiableSet(procRels);
+
+        // descriptors
+        final List<PropertyDescriptor> supDescriptors = new ArrayList<>();
+        supDescriptors.add(TRANSFER_SYNTAX);
+        properties = Collections.unmodifiableList(supDescriptors);
+
+        final Map<String, String> formats = new HashMap<>();
+        formats.put(JPEG_LS_LOSSLESS.getValue(), "jpeg-ls");
+        formats.put(JPEG_2000_LOSSLESS.getValue(), "jpeg2000");
+        formats.put(JPEG_LOSSLESS.getValue(), "jpeg-lossless");
+        formats.put(RLE_LOSSLESS.getValue(), "rle");
+        outputFormats = Collections.unmodifiableMap(formats);
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return relationships;
+    }
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return properties;
+    }
+
+    private volatile String transferSyntax;
+    private volatile String outputFormat;
+    volatile ProcessorMetrics metrics;
+
+    // Codecs are looked up and created once and then reused.  Each FlowFile
+    // takes one from the pool and returns it when done, so no codec is used by
+    // two threads at once and there are never more of each than concurrent
+    // tasks.  Decoders are specific to the source transfer syntax and the frame
+    // size, writers to the scheduled output format.
+    private final ConcurrentHashMap<String, ConcurrentLinkedQueue<CompressedFrameDecoder>> decoders = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<ImageWriter> writers = new ConcurrentLinkedQueue<>();
+
+    @OnScheduled
+    public void startup(ProcessContext context) {
+        metrics = ProcessorMetrics.forProcessor(getIdentifier(), getClass().getSimpleName());
+        transferSyntax = context.getProperty(TRANSFER_SYNTAX).getValue();
+        outputFormat = outputFormats.get(transferSyntax);
+    }
+
+    @OnStopped
+    public void shutdown() {
+        ImageWriter writer;
+        while ((writer = writers.poll()) != null) {
+            writer.dispose();
+        }
+        for (ConcurrentLinkedQueue<CompressedFrameDecoder> pool : decoders.values()) {
+            CompressedFrameDecoder decoder;
+            while ((decoder = pool.poll()) != null) {
+                try {
+                    decoder.dispose();
+                } catch (Throwable e) {
+                    getLogger().warn("Could not dispose of decoder", e);
+                }
+            }
+        }
+        decoders.clear();
+    }
+
+    @OnRemoved
+    public void removed() {
+        ProcessorMetrics.remove(getIdentifier());
+    }
+
+    @Override
+    public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException {
+        for (FlowFile flowFile : session.get(100)) {
+            try {
+                ProcessorMetrics.Timer timer = metrics.start();
+                FlowFile outputFlowFile = session.write(flowFile,
+                        (InputStream flowfileInputStream, OutputStream out) -> transcode(flowfileInputStream, out, timer));
+                metrics.record(session, timer, flowFile.getSize(), outputFlowFile.getSize());
+                metrics.transfer(session, outputFlowFile, RELATIONSHIP_SUCCESS);
+            } catch (Exception e) {
+                getLogger().error("Could not transcode FlowFile", e);
+                metrics.transfer(session, flowFile, RELATIONSHIP_REJECT);
+            }
+        }
+        session.commitAsync();
+    }
+
+    /**
+     * The Image Pixel Module attributes needed to split the Pixel Data into
+     * frames and to convert each to and from an image.
+     */
+    static class PixelModule {
+        final int rows;
+        final int columns;
+        final int samplesPerPixel;
+        final int bitsAllocated;
+        final int bitsStored;
+        final int planarConfiguration;
+        final int numberOfFrames;
+        final String photometricInterpretation;
+        final int bytesPerSample;
+        final int frameLength;
+
+        PixelModule(Attributes attributes) throws DicomException {
+            rows = attributes.getInt(Tag.Rows, 0);
+            columns = attributes.getInt(Tag.Columns, 0);
+            samplesPerPixel = attributes.getInt(Tag.SamplesPerPixel, 1);
+            bitsAllocated = attributes.getInt(Tag.BitsAllocated, 0);
+            bitsStored = attributes.getInt(Tag.BitsStored, bitsAllocated);
+            planarConfiguration = attributes.getInt(Tag.PlanarConfiguration, 0);
+            numberOfFrames = Math.max(1, attributes.getInt(Tag.NumberOfFrames, 1));
+            photometricInterpretation = attributes.getString(Tag.PhotometricInterpretation, "");
+            if (rows <= 0 || columns <= 0) {
+                throw new DicomException("Cannot transcode Pixel Data without Rows and Columns");
+            }
+            if (!(bitsAllocated == 8 || bitsAllocated == 16) || !(samplesPerPixel == 1 || samplesPerPixel == 3)
+                    || (samplesPerPixel == 3 && bitsAllocated != 8)) {
+                throw new DicomException("Cannot transcode Pixel Data with " + samplesPerPixel + " samples of "
+                        + bitsAllocated + " bits allocated");
+            }
+            bytesPerSample = bitsAllocated / 8;
+            frameLength = rows * columns * samplesPerPixel * bytesPerSample;
+        }
+
+        /**
+         * @return the attributes used by the PixelMed encoder
+         */
+        AttributeList toAttributeList() throws DicomException {
+            AttributeList list = new AttributeList();
+            list.putNewAttribute(TagFromName.SamplesPerPixel).addValue(samplesPerPixel);
+            list.putNewAttribute(TagFromName.BitsAllocated).addValue(bitsAllocated);
+            list.putNewAttribute(TagFromName.BitsStored).addValue(bitsStored);
+            return list;
+        }
+    }
+
+    private void transcode(InputStream flowfileInputStream, OutputStream out, ProcessorMetrics.Timer timer)
+            throws IOException {
+        DicomInputStream in = new DicomInputStream(flowfileInputStream);
+        in.setIncludeBulkData(IncludeBulkData.YES);
+        Attributes fmi = in.readFileMetaInformation();
+        Attributes attributes = in.readDataset(-1, Tag.PixelData);
+        String sourceTransferSyntax = in.getTransferSyntax();
+        if (in.tag() != Tag.PixelData) {
+            throw new IOException("No Pixel Data to transcode");
+        }
+        String targetTransferSyntax = transferSyntax;
+        if (fmi == null) {
+            fmi = attributes.createFileMetaInformation(targetTransferSyntax);
+        } else {
+            fmi.setString(Tag.TransferSyntaxUID, VR.UI, targetTransferSyntax);
+        }
+        timer.lap(Stage.PARSE);
+
+        // With a meta header, writeDataset switches from the meta header encoding
+        // to the target transfer syntax.
+        DicomOutputStream dos = new DicomOutputStream(out, UID.ExplicitVRLittleEndian);
+        if (sourceTransferSyntax.equals(targetTransferSyntax)) {
+            dos.writeDataset(fmi, attributes);
+            timer.lap(Stage.TRANSFORM);
+            ModifyDICOMTags.copyPixelData(in, dos);
+        } else {
+            try {
+                transcodePixelData(in, dos, fmi, attributes, sourceTransferSyntax, timer);
+            } catch (DicomException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+        dos.writeDataset(null, in.readDataset(-1, -1));
+        dos.finish();
+        dos.flush();
+        timer.lap(Stage.WRITE);
+    }
+
+    private void transcodePixelData(DicomInputStream in, DicomOutputStream dos, Attributes fmi, Attributes attributes,
+            String sourceTransferSyntax, ProcessorMetrics.Timer timer) throws IOException, DicomException {
+        boolean sourceEncapsulated = in.length() == -1;
+        long sourceLength = in.length() & 0xffffffffL;
+        // The offsets and lengths of the source fragments do not apply to re-encoded or decoded Pixel Data
+        attributes.remove(Tag.ExtendedOffsetTable);
+        attributes.remove(Tag.ExtendedOffsetTableLengths);
+        if (!sourceEncapsulated && outputFormat == null) {
+            dos.writeDataset(fmi, attributes);
+            timer.lap(Stage.TRANSFORM);
+            copyNativePixelData(in, dos, attributes.getInt(Tag.BitsAllocated, 0));
+            return;
+        }
+        PixelModule pixels = new PixelModule(attributes);
+        CompressedFrameDecoder decoder = null;
+        ImageWriter writer = null;
+        String decoderKey = sourceTransferSyntax + " " + pixels.bytesPerSample + " " + pixels.columns + "x" + pixels.rows
+                + " " + pixels.samplesPerPixel;
+        try {
+            String photometricInterpretation = pixels.photometricInterpretation;
+            if (sourceEncapsulated) {
+                decoder = takeDecoder(decoderKey, sourceTransferSyntax, pixels);
+                if (pixels.samplesPerPixel == 3 && decoder.getColorSpaceConvertedToRGBDuringDecompression()) {
+                    photometricInterpretation = "RGB";
+                }
+            } else if (photometricInterpretation.endsWith("_422") || photometricInterpretation.endsWith("_420")) {
+                throw new DicomException("Cannot transcode uncompressed " + photometricInterpretation);
+            }
+            if (outputFormat == null) {
+                if (pixels.samplesPerPixel > 1) {
+                    attributes.setInt(Tag.PlanarConfiguration, VR.US, 0);
+                }
+            } else {
+                if (pixels.samplesPerPixel > 1) {
+                    // RLE always separates the bands, the ImageIO codecs always interleave them
+                    attributes.setInt(Tag.PlanarConfiguration, VR.US, outputFormat.equals("rle") ? 1 : 0);
+                    if (outputFormat.equals("jpeg2000")) {
+                        if (!photometricInterpretation.equals("RGB")) {
+                            throw new DicomException("Cannot encode " + photometricInterpretation
+                                    + " using JPEG 2000, only RGB transformed to YBR_RCT is permitted");
+                        }
+                        photometricInterpretation = "YBR_RCT";
+                    }
+                }
+                if (!outputFormat.equals("rle")) {
+                    writer = writers.poll();
+                    if (writer == null) {
+                        writer = CompressedFrameEncoder.createImageWriter(outputFormat);
+                    }
+                }
+            }
+            if (!photometricInterpretation.equals(pixels.photometricInterpretation)) {
+                attributes.setString(Tag.PhotometricInterpretation, VR.CS, photometricInterpretation);
+            }
+            if (sourceEncapsulated && new TransferSyntax(sourceTransferSyntax).isLossy()) {
+                attributes.setString(Tag.LossyImageCompression, VR.CS, "01");
+            }
+            dos.writeDataset(fmi, attributes);
+            timer.lap(Stage.TRANSFORM);
+
+            FragmentReader fragments = sourceEncapsulated ? new FragmentReader(in, pixels.numberOfFrames) : null;
+            byte[] nativeFrame = sourceEncapsulated ? null : new byte[pixels.frameLength];
+            ByteArrayOutputStream compressedFrame = outputFormat == null ? null : new ByteArrayOutputStream();
+            AttributeList pixelModule = outputFormat == null ? null : pixels.toAttributeList();
+            long targetLength = (long) pixels.frameLength * pixels.numberOfFrames;
+            if (outputFormat == null) {
+                dos.writeHeader(Tag.PixelData, pixels.bitsAllocated > 8 ? VR.OW : VR.OB, (int) ((targetLength + 1) & ~1L));
+            } else {
+                dos.writeHeader(Tag.PixelData, VR.OB, -1);
+                // An empty Basic Offset Table, the frame offsets are not known until the frames have been compressed
+                dos.writeHeader(Tag.Item, null, 0);
+            }
+            for (int f = 0; f < pixels.numberOfFrames; f++) {
+                BufferedImage image;
+                if (sourceEncapsulated) {
+                    image = decoder.getDecompressedFrameAsBufferedImage(fragments.nextFrame());
+                } else {
+                    readFully(in, nativeFrame, pixels.frameLength);
+                    image = toImage(nativeFrame, pixels, in.bigEndian());
+                }
+                if (outputFormat == null) {
+                    writeNativeFrame(image, pixels, dos);
+                } else {
+                    compressedFrame.reset();
+                    if (!CompressedFrameEncoder.writeCompressedFrame(pixelModule, image, outputFormat, compressedFrame, writer)) {
+                        throw new DicomException("Could not compress frame " + f);
+                    }
+                    int length = compressedFrame.size();
+                    dos.writeHeader(Tag.Item, null, (length + 1) & ~1);
+                    compressedFrame.writeTo(dos);
+                    if ((length & 1) != 0) {
+                        dos.write(0);
+                    }
+                }
+            }
+            if (sourceEncapsulated) {
+                fragments.skipRemaining();
+            } else {
+                skipFully(in, sourceLength - targetLength);
+            }
+            if (outputFormat == null) {
+                if ((targetLength & 1) != 0) {
+                    dos.write(0);
+                }
+            } else {
+                dos.writeHeader(Tag.SequenceDelimitationItem, null, 0);
+            }
+        } finally {
+            if (decoder != null) {
+                decoders.computeIfAbsent(decoderKey, key -> new ConcurrentLinkedQueue<>()).add(decoder);
+            }
+            if (writer != null) {
+                writers.add(writer);
+            }
+        }
+    }
+
+    /**
+     * Copy uncompressed Pixel Data whose header was just read from in to dos,
+     * swapping the bytes of each sample if in is big endian.
+     *
+     * @param in            positioned after the Pixel Data header
+     * @param dos           positioned after the header attributes
+     * @param bitsAllocated the bits allocated for each sample
+     * @throws IOException if the Pixel Data is truncated, or big endian with other than 8 or 16 bits allocated
+     */
+    static void copyNativePixelData(DicomInputStream in, DicomOutputStream dos, int bitsAllocated) throws IOException {
+        boolean swap = in.bigEndian() && bitsAllocated > 8;
+        if (swap && bitsAllocated != 16) {
+            throw new IOException("Cannot convert big endian Pixel Data with " + bitsAllocated + " bits allocated");
+        }
+        long length = in.length() & 0xffffffffL;
+        dos.writeHeader(Tag.PixelData, bitsAllocated > 8 ? VR.OW : VR.OB, in.length());
+        byte[] buffer = new byte[64 * 1024];
+        while (length > 0) {
+            int count = (int) Math.min(buffer.length, length);
+            readFully(in, buffer, count);
+            if (swap) {
+                for (int i = 0; i + 1 < count; i += 2) {
+                    byte b = buffer[i];
+                    buffer[i] = buffer[i + 1];
+                    buffer[i + 1] = b;
+                }
+            }
+            dos.write(buffer, 0, count);
+            length -= count;
+        }
+    }
+
+    private CompressedFrameDecoder takeDecoder(String key, String sourceTransferSyntax, PixelModule pixels)
+            throws DicomException {
+        ConcurrentLinkedQueue<CompressedFrameDecoder> pool = decoders.get(key);
+        CompressedFrameDecoder decoder = pool == null ? null : pool.poll();
+        if (decoder == null) {
+            decoder = new CompressedFrameDecoder(sourceTransferSyntax, new byte[0][], pixels.bytesPerSample, pixels.columns,
+                    pixels.rows, pixels.samplesPerPixel, ColorSpace.getInstance(ColorSpace.CS_sRGB));
+        }
+        return decoder;
+    }
+
+    /**
+     * Reads the fragments of encapsulated Pixel Data a frame at a time. Frames
+     * are delimited by the Basic Offset Table if it has an entry per frame,
+     * otherwise a single frame is all the fragments and multiple frames are a
+     * fragment each.
+     */
+    static class FragmentReader {
+        private final DicomInputStream in;
+        private final int numberOfFrames;
+        private final long[] offsets;
+        private long position;
+        private int frame;
+        private boolean ended;
+
+        /**
+         * @param in             positioned after the Pixel Data header
+         * @param numberOfFrames the number of frames
+         * @throws IOException if the Basic Offset Table cannot be read
+         */
+        FragmentReader(DicomInputStream in, int numberOfFrames) throws IOException {
+            this.in = in;
+            this.numberOfFrames = numberOfFrames;
+            if (!nextItem()) {
+                throw new EOFException("Encapsulated Pixel Data has no Basic Offset Table");
+            }
+            int length = in.length();
+            byte[] table = new byte[length];
+            readFully(in, table, length);
+            long[] entries = new long[length / 4];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = (table[i * 4] & 0xff) | (table[i * 4 + 1] & 0xff) << 8 | (table[i * 4 + 2] & 0xff) << 16
+                        | (table[i * 4 + 3] & 0xffL) << 24;
+            }
+            offsets = entries.length == numberOfFrames ? entries : null;
+        }
+
+        private boolean nextItem() throws IOException {
+            if (ended) {
+                return false;
+            }
+            if (!in.readHeader()) {
+                throw new EOFException("Encapsulated Pixel Data has no Sequence Delimitation Item");
+            }
+            if (in.tag() == Tag.SequenceDelimitationItem) {
+                ended = true;
+                return false;
+            }
+            if (in.tag() != Tag.Item) {
+                throw new IOException("Expected an Item in encapsulated Pixel Data, got " + Integer.toHexString(in.tag()));
+            }
+            return true;
+        }
+
+        private void appendItem(ByteArrayOutputStream frameBytes) throws IOException {
+            int length = in.length();
+            byte[] fragment = new byte[length];
+            readFully(in, fragment, length);
+            frameBytes.write(fragment, 0, length);
+            position += 8 + length;
+        }
+
+        /**
+         * @return the concatenated fragments of the next frame
+         * @throws IOException if there are fewer frames than expected
+         */
+        byte[] nextFrame() throws IOException {
+            ByteArrayOutputStream frameBytes = new ByteArrayOutputStream();
+            int f = frame++;
+            if (numberOfFrames == 1) {
+                while (nextItem()) {
+                    appendItem(frameBytes);
+                }
+            } else if (offsets != null) {
+                long end = f + 1 < numberOfFrames ? offsets[f + 1] : Long.MAX_VALUE;
+                while (position < end && nextItem()) {
+                    appendItem(frameBytes);
+                }
+            } else if (nextItem()) {
+                appendItem(frameBytes);
+            }
+            if (frameBytes.size() == 0) {
+                throw new EOFException("Encapsulated Pixel Data ends before frame " + f);
+            }
+            return frameBytes.toByteArray();
+        }
+
+        /**
+         * Skip any fragments after the last frame, and the Sequence Delimitation Item.
+         */
+        void skipRemaining() throws IOException {
+            while (nextItem()) {
+                skipFully(in, in.length() & 0xffffffffL);
+            }
+        }
+    }
+
+    /**
+     * Wrap an uncompressed frame in an image for the encoder.  Color frames are
+     * always given pixel interleaved, and unused high bits are masked off.
+     */
+    static BufferedImage toImage(byte[] frame, PixelModule pixels, boolean bigEndian) {
+        int width = pixels.columns;
+        int height = pixels.rows;
+        if (pixels.samplesPerPixel == 3) {
+            byte[] interleaved = new byte[pixels.frameLength];
+            if (pixels.planarConfiguration == 1) {
+                int plane = width * height;
+                for (int i = 0; i < plane; i++) {
+                    interleaved[i * 3] = frame[i];
+                    interleaved[i * 3 + 1] = frame[plane + i];
+                    interleaved[i * 3 + 2] = frame[plane * 2 + i];
+                }
+            } else {
+                System.arraycopy(frame, 0, interleaved, 0, pixels.frameLength);
+            }
+            ComponentColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[]{8, 8, 8},
+                    false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(interleaved, interleaved.length),
+                    width, height, width * 3, 3, new int[]{0, 1, 2}, null);
+            return new BufferedImage(cm, raster, false, null);
+        }
+        if (pixels.bitsAllocated == 8) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            image.getRaster().setDataElements(0, 0, width, height, frame);
+            return image;
+        }
+        short[] samples = new short[width * height];
+        int mask = (1 << pixels.bitsStored) - 1;
+        for (int i = 0, j = 0; i < samples.length; i++, j += 2) {
+            int value = bigEndian ? (frame[j] & 0xff) << 8 | (frame[j + 1] & 0xff) : (frame[j] & 0xff) | (frame[j + 1] & 0xff) << 8;
+            samples[i] = (short) (value & mask);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+        image.getRaster().setDataElements(0, 0, width, height, samples);
+        return image;
+    }
+
+    /**
+     * Write a decoded frame as uncompressed little endian, color pixel
+     * interleaved.
+     */
+    static void writeNativeFrame(BufferedImage image, PixelModule pixels, OutputStream out) throws IOException {
+        Raster raster = image.getRaster();
+        int width = pixels.columns;
+        int samplesPerRow = width * pixels.samplesPerPixel;
+        int[] row = new int[samplesPerRow];
+        byte[] bytes = new byte[samplesPerRow * pixels.bytesPerSample];
+        for (int y = 0; y < pixels.rows; y++) {
+            raster.getPixels(0, y, width, 1, row);
+            if (pixels.bytesPerSample == 1) {
+                for (int i = 0; i < samplesPerRow; i++) {
+                    bytes[i] = (byte) row[i];
+                }
+            } else {
+                for (int i = 0, j = 0; i < samplesPerRow; i++, j += 2) {
+                    bytes[j] = (byte) row[i];
+                    bytes[j + 1] = (byte) (row[i] >> 8);
+                }
+            }
+            out.write(bytes);
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = in.read(buffer, offset, length - offset);
+            if (count < 0) {
+                throw new EOFException("Pixel Data truncated, " + (length - offset) + " bytes missing");
+            }
+            offset += count;
+        }
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        while (length > 0) {
+            long count = in.skip(length);
+            if (count <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Pixel Data truncated, " + length + " bytes missing");
+                }
+                count = 1;
+            }
+            length -= count;
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.blezek.nifi.dicom.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.bouncycastle.asn1.pkcs.PBKDF2Params;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cms.CMSException;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded cache of password derived keys, keyed by password, salt, iteration
+ * count, key size and password conversion scheme.
+ *
+ * Deriving a key with PBKDF2 costs the configured number of iterations, while
+ * instances of one study often share the same salt. Failures to decrypt are not
+ * remembered, since a corrupt envelope fails with the right password too, and
+ * trying a wrong password again only costs a key unwrap once its key is cached.
+ */
+public class DerivedKeyCache {
+
+  private final Cache<Key, byte[]> keys;
+
+  public DerivedKeyCache(long maximumSize) {
+    keys = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+  }
+
+  static final class Key {
+    final char[] password;
+    final int schemeID;
+    final byte[] salt;
+    final int iterationCount;
+    final int keySize;
+
+    Key(char[] password, int schemeID, AlgorithmIdentifier derivationAlgorithm, int keySize) {
+      PBKDF2Params params = PBKDF2Params.getInstance(derivationAlgorithm.getParameters());
+      this.password = password.clone();
+      this.schemeID = schemeID;
+      this.salt = params.getSalt();
+      this.iterationCount = params.getIterationCount().intValue();
+      this.keySize = keySize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return schemeID == other.schemeID && iterationCount == other.iterationCount && keySize == other.keySize
+          && Arrays.equals(salt, other.salt) && Arrays.equals(password, other.password);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * Arrays.hashCode(salt) + iterationCount) + keySize;
+    }
+  }
+
+  /**
+   * Return the derived key, calling the loader only if the key is not cached.
+   * Concurrent callers for the same key wait for a single derivation.
+   */
+  byte[] get(Key key, Callable<byte[]> loader) throws CMSException {
+    try {
+      return keys.get(key, loader);
+    } catch (ExecutionException e) {
+      throw new CMSException("could not derive key: " + e.getCause().getMessage(), (Exception) e.getCause());
+    }
+  }
+
+  public long size() {
+    return keys.size();
+  }
+}
@@ -3,26 +3,41 @@ package com.blezek.nifi.dicom.util;
 import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
 
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.cms.CMSAlgorithm;
 import org.bouncycastle.cms.CMSEnvelopedData;
 import org.bouncycastle.cms.CMSEnvelopedDataGenerator;
+import org.bouncycastle.cms.CMSEnvelopedDataStreamGenerator;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSProcessableByteArray;
 import org.bouncycastle.cms.PasswordRecipient;
 import org.bouncycastle.cms.PasswordRecipientId;
 import org.bouncycastle.cms.RecipientId;
+import org.bouncycastle.cms.RecipientInfoGenerator;
 import org.bouncycastle.cms.RecipientInformation;
 import org.bouncycastle.cms.RecipientInformationStore;
 import org.bouncycastle.cms.jcajce.JceCMSContentEncryptorBuilder;
 import org.bouncycastle.cms.jcajce.JcePasswordEnvelopedRecipient;
 import org.bouncycastle.cms.jcajce.JcePasswordRecipientInfoGenerator;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.OutputEncryptor;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.security.Security;
 
+/**
+ * Password based CMS enveloped data, as used for DICOM Supplement 55
+ * encrypted attributes.
+ *
+ * All methods are thread safe. The content encryptor builder, with its
+ * SecureRandom, is created once per thread instead of once per call. An
+ * envelope parsed with {@link #parse(byte[])} can be checked and decrypted
+ * without parsing it again.
+ */
 public class Encryption {
   static {
     // Add Bouncy Castle Fips provider using the JAR from
@@ -32,6 +47,13 @@ public class Encryption {
 
   }
 
+  static final ASN1ObjectIdentifier ALGORITHM = CMSAlgorithm.AES256_CBC;
+
+  private static final ThreadLocal<JceCMSContentEncryptorBuilder> contentEncryptorBuilder = ThreadLocal
+      .withInitial(() -> new JceCMSContentEncryptorBuilder(ALGORITHM).setSecureRandom(new SecureRandom()));
+
+  private static final RecipientId passwordRecipientId = new PasswordRecipientId();
+
   public static String hash(String s) {
     try {
       MessageDigest md = MessageDigest.getInstance("MD5");
@@ -43,15 +65,75 @@ public class Encryption {
 
   public static byte[] createPasswordEnvelopedObject(char[] passwd, byte[] salt, int iterationCount, byte[] data)
       throws GeneralSecurityException, CMSException, IOException {
+    return createPasswordEnvelopedObject(new JcePasswordRecipientInfoGenerator(ALGORITHM, passwd), salt,
+        iterationCount, data);
+  }
 
-    ASN1ObjectIdentifier algorithm = CMSAlgorithm.AES256_CBC;
+  /*
+   * createPasswordEnvelopedObject with a cache of derived keys, the content is
+   * encrypted with a new content encryption key, but the key encryption key
+   * derived from the password, salt and iteration count is reused.
+   */
+  public static byte[] createPasswordEnvelopedObject(char[] passwd, byte[] salt, int iterationCount, byte[] data,
+      DerivedKeyCache cache) throws GeneralSecurityException, CMSException, IOException {
+    return createPasswordEnvelopedObject(new CachingPasswordRecipientInfoGenerator(ALGORITHM, passwd, cache), salt,
+        iterationCount, data);
+  }
+
+  private static byte[] createPasswordEnvelopedObject(JcePasswordRecipientInfoGenerator recipientInfoGenerator,
+      byte[] salt, int iterationCount, byte[] data) throws CMSException, IOException {
     CMSEnvelopedDataGenerator envelopedGen = new CMSEnvelopedDataGenerator();
-    envelopedGen.addRecipientInfoGenerator(new JcePasswordRecipientInfoGenerator(algorithm, passwd)
-        .setPasswordConversionScheme(PasswordRecipient.PKCS5_SCHEME2_UTF8)
-        .setSaltAndIterationCount(salt, iterationCount));
+    envelopedGen.addRecipientInfoGenerator(passwordRecipientInfo(recipientInfoGenerator, salt, iterationCount));
+    return envelopedGen.generate(new CMSProcessableByteArray(data), contentEncryptor()).getEncoded();
+  }
 
-    return envelopedGen
-        .generate(new CMSProcessableByteArray(data), new JceCMSContentEncryptorBuilder(algorithm).build()).getEncoded();
+  /*
+   * openPasswordEnvelopedStream returns a stream encrypting everything written
+   * to it into out, so large content is never held in memory as plain text. The
+   * envelope is complete when the returned stream is closed, out is not closed.
+   */
+  public static OutputStream openPasswordEnvelopedStream(char[] passwd, byte[] salt, int iterationCount,
+      OutputStream out, DerivedKeyCache cache) throws CMSException, IOException {
+    CMSEnvelopedDataStreamGenerator envelopedGen = new CMSEnvelopedDataStreamGenerator();
+    envelopedGen.addRecipientInfoGenerator(passwordRecipientInfo(
+        new CachingPasswordRecipientInfoGenerator(ALGORITHM, passwd, cache), salt, iterationCount));
+    return envelopedGen.open(out, contentEncryptor());
+  }
+
+  private static RecipientInfoGenerator passwordRecipientInfo(JcePasswordRecipientInfoGenerator generator,
+      byte[] salt, int iterationCount) {
+    return generator.setPasswordConversionScheme(PasswordRecipient.PKCS5_SCHEME2_UTF8)
+        .setSaltAndIterationCount(salt, iterationCount);
+  }
+
+  private static OutputEncryptor contentEncryptor() throws CMSException {
+    return contentEncryptorBuilder.get().build();
+  }
+
+  static class CachingPasswordRecipientInfoGenerator extends JcePasswordRecipientInfoGenerator {
+    private final char[] passwd;
+    private final DerivedKeyCache cache;
+
+    CachingPasswordRecipientInfoGenerator(ASN1ObjectIdentifier kekAlgorithm, char[] passwd, DerivedKeyCache cache) {
+      super(kekAlgorithm, passwd);
+      this.passwd = passwd;
+      this.cache = cache;
+    }
+
+    @Override
+    protected byte[] calculateDerivedKey(int schemeID, AlgorithmIdentifier derivationAlgorithm, int keySize)
+        throws CMSException {
+      DerivedKeyCache.Key key = new DerivedKeyCache.Key(passwd, schemeID, derivationAlgorithm, keySize);
+      return cache.get(key, () -> super.calculateDerivedKey(schemeID, derivationAlgorithm, keySize));
+    }
+  }
+
+  /*
+   * parse the enveloped data once, for isPasswordRecipient and
+   * extractPasswordEnvelopedData
+   */
+  public static CMSEnvelopedData parse(byte[] encEnvelopedData) throws CMSException {
+    return new CMSEnvelopedData(encEnvelopedData);
   }
 
   /*
@@ -59,22 +141,57 @@ public class Encryption {
    * recipient
    */
   public static boolean isPasswordRecipient(byte[] encEnvelopedData) throws CMSException {
-    CMSEnvelopedData envelopedData = new CMSEnvelopedData(encEnvelopedData);
-    RecipientInformationStore recipients = envelopedData.getRecipientInfos();
-    RecipientId rid = new PasswordRecipientId();
-    return (recipients.get(rid) != null);
+    return isPasswordRecipient(parse(encEnvelopedData));
+  }
+
+  public static boolean isPasswordRecipient(CMSEnvelopedData envelopedData) {
+    return envelopedData.getRecipientInfos().get(passwordRecipientId) != null;
   }
 
   public static byte[] extractPasswordEnvelopedData(char[] passwd, byte[] encEnvelopedData)
       throws GeneralSecurityException, CMSException {
 
-    CMSEnvelopedData envelopedData = new CMSEnvelopedData(encEnvelopedData);
-    RecipientInformationStore recipients = envelopedData.getRecipientInfos();
-    RecipientId rid = new PasswordRecipientId();
-    RecipientInformation recipient = recipients.get(rid);
+    RecipientInformationStore recipients = parse(encEnvelopedData).getRecipientInfos();
+    RecipientInformation recipient = recipients.get(passwordRecipientId);
     return recipient.getContent(new JcePasswordEnvelopedRecipient(passwd)
         // .setProvider("BCFIPS")
         .setPasswordConversionScheme(PasswordRecipient.PKCS5_SCHEME2_UTF8));
   }
 
+  /*
+   * extractPasswordEnvelopedData decrypts using a derived key from the cache,
+   * deriving and caching the key on a miss.
+   */
+  public static byte[] extractPasswordEnvelopedData(char[] passwd, byte[] encEnvelopedData, DerivedKeyCache cache)
+      throws GeneralSecurityException, CMSException {
+    return extractPasswordEnvelopedData(passwd, parse(encEnvelopedData), cache);
+  }
+
+  public static byte[] extractPasswordEnvelopedData(char[] passwd, CMSEnvelopedData envelopedData,
+      DerivedKeyCache cache) throws CMSException {
+
+    RecipientInformation recipient = envelopedData.getRecipientInfos().get(passwordRecipientId);
+    CachingPasswordRecipient passwordRecipient = new CachingPasswordRecipient(passwd, cache);
+    passwordRecipient.setPasswordConversionScheme(PasswordRecipient.PKCS5_SCHEME2_UTF8);
+    return recipient.getContent(passwordRecipient);
+  }
+
+  static class CachingPasswordRecipient extends JcePasswordEnvelopedRecipient {
+    private final char[] passwd;
+    private final DerivedKeyCache cache;
+
+    CachingPasswordRecipient(char[] passwd, DerivedKeyCache cache) {
+      super(passwd);
+      this.passwd = passwd;
+      this.cache = cache;
+    }
+
+    @Override
+    public byte[] calculateDerivedKey(int schemeID, AlgorithmIdentifier derivationAlgorithm, int keySize)
+        throws CMSException {
+      DerivedKeyCache.Key key = new DerivedKeyCache.Key(passwd, schemeID, derivationAlgorithm, keySize);
+      return cache.get(key, () -> super.calculateDerivedKey(schemeID, derivationAlgorithm, keySize));
+    }
+  }
+
 }
@@ -0,0 +1,64 @@
+package com.blezek.nifi.dicom.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Lock free histogram of latencies with power of two microsecond buckets.
+ *
+ * Percentiles are reported as the upper bound of the bucket that contains
+ * them, so they are accurate to within a factor of two, which is enough to
+ * tell a cache hit from a database round trip.
+ */
+public class LatencyHistogram {
+
+  private static final int BUCKETS = 40;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public void record(long nanos) {
+    long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+    int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    counts.incrementAndGet(bucket);
+    max.accumulate(nanos);
+  }
+
+  public long count() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * The latency in milliseconds below which the fraction of recorded latencies
+   * falls, 0 if nothing has been recorded.
+   */
+  public double percentileMillis(double fraction) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(fraction * total);
+    long cumulative = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      cumulative += snapshot[i];
+      if (cumulative >= target) {
+        return Math.min((1L << (i + 1)) / 1000.0, maxMillis());
+      }
+    }
+    return maxMillis();
+  }
+
+  public double maxMillis() {
+    return max.get() / 1e6;
+  }
+}
@@ -0,0 +1,168 @@
+package com.blezek.nifi.dicom.util;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Per processor instrumentation, time spent parsing, transforming and writing
+ * DICOM, bytes in and out and FlowFiles per relationship.
+ *
+ * Each measurement is reported as a NiFi counter on the session and added to
+ * running totals. The totals of every scheduled processor are available from
+ * {@link #snapshots()}, which is what ProcessorMetricsReportingTask reports.
+ */
+public class ProcessorMetrics {
+
+  /**
+   * Processing stages. For PutDICOM and ListenDICOM the write stage is the
+   * network transfer.
+   */
+  public enum Stage {
+    PARSE("Parse"), TRANSFORM("Transform"), WRITE("Write");
+
+    final String name;
+
+    Stage(String name) {
+      this.name = name;
+    }
+  }
+
+  private static final ConcurrentMap<String, ProcessorMetrics> registry = new ConcurrentHashMap<>();
+
+  /**
+   * Metrics for the processor, created on first use. Totals are kept when the
+   * processor is stopped and started again.
+   */
+  public static ProcessorMetrics forProcessor(String identifier, String type) {
+    return registry.computeIfAbsent(identifier, id -> new ProcessorMetrics(id, type));
+  }
+
+  public static void remove(String identifier) {
+    registry.remove(identifier);
+  }
+
+  public static List<Snapshot> snapshots() {
+    return registry.values().stream().map(ProcessorMetrics::snapshot).collect(Collectors.toList());
+  }
+
+  private final String identifier;
+  private final String type;
+  private final LongAdder flowFiles = new LongAdder();
+  private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+  private final LongAdder bytesIn = new LongAdder();
+  private final LongAdder bytesOut = new LongAdder();
+  private final ConcurrentMap<String, LongAdder> relationships = new ConcurrentHashMap<>();
+
+  ProcessorMetrics(String identifier, String type) {
+    this.identifier = identifier;
+    this.type = type;
+    for (int i = 0; i < stageNanos.length; i++) {
+      stageNanos[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Times the stages of one FlowFile. Each lap is charged to a stage and starts
+   * the next one, a Timer is used by a single thread.
+   */
+  public static final class Timer {
+    private final long[] nanos = new long[Stage.values().length];
+    private long last = System.nanoTime();
+
+    /** Charge the time since the last lap to the stage. */
+    public void lap(Stage stage) {
+      long now = System.nanoTime();
+      nanos[stage.ordinal()] += now - last;
+      last = now;
+    }
+  }
+
+  public Timer start() {
+    return new Timer();
+  }
+
+  /**
+   * Record the stage times of a FlowFile and its size before and after
+   * processing.
+   */
+  public void record(ProcessSession session, Timer timer, long in, long out) {
+    flowFiles.increment();
+    for (Stage stage : Stage.values()) {
+      long nanos = timer.nanos[stage.ordinal()];
+      if (nanos > 0) {
+        stageNanos[stage.ordinal()].add(nanos);
+        session.adjustCounter(stage.name + " time (us)", TimeUnit.NANOSECONDS.toMicros(nanos), false);
+      }
+    }
+    if (in > 0) {
+      bytesIn.add(in);
+      session.adjustCounter("Bytes in", in, false);
+    }
+    if (out > 0) {
+      bytesOut.add(out);
+      session.adjustCounter("Bytes out", out, false);
+    }
+  }
+
+  /** Transfer the FlowFile and count it against the relationship. */
+  public void transfer(ProcessSession session, FlowFile flowFile, Relationship relationship) {
+    session.transfer(flowFile, relationship);
+    count(session, relationship, 1);
+  }
+
+  public void transfer(ProcessSession session, Collection<FlowFile> flowFiles, Relationship relationship) {
+    session.transfer(flowFiles, relationship);
+    count(session, relationship, flowFiles.size());
+  }
+
+  private void count(ProcessSession session, Relationship relationship, int count) {
+    relationships.computeIfAbsent(relationship.getName(), name -> new LongAdder()).add(count);
+    session.adjustCounter("FlowFiles to " + relationship.getName(), count, false);
+  }
+
+  public Snapshot snapshot() {
+    Map<String, Double> stageMillis = new LinkedHashMap<>();
+    for (Stage stage : Stage.values()) {
+      stageMillis.put(stage.name, stageNanos[stage.ordinal()].sum() / 1e6);
+    }
+    Map<String, Long> counts = new LinkedHashMap<>();
+    relationships.forEach((name, count) -> counts.put(name, count.sum()));
+    return new Snapshot(identifier, type, flowFiles.sum(), stageMillis, bytesIn.sum(), bytesOut.sum(), counts);
+  }
+
+  /**
+   * Totals for one processor since it was first scheduled.
+   */
+  public static final class Snapshot {
+    public final String processorId;
+    public final String processorType;
+    public final long flowFiles;
+    public final Map<String, Double> stageMillis;
+    public final long bytesIn;
+    public final long bytesOut;
+    public final Map<String, Long> relationships;
+
+    Snapshot(String processorId, String processorType, long flowFiles, Map<String, Double> stageMillis, long bytesIn,
+        long bytesOut, Map<String, Long> relationships) {
+      this.processorId = processorId;
+      this.processorType = processorType;
+      this.flowFiles = flowFiles;
+      this.stageMillis = Collections.unmodifiableMap(stageMillis);
+      this.bytesIn = bytesIn;
+      this.bytesOut = bytesOut;
+      this.relationships = Collections.unmodifiableMap(relationships);
+    }
+  }
+}
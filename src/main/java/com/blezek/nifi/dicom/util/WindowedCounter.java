@@ -0,0 +1,66 @@
+package com.blezek.nifi.dicom.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events per minute over a fixed number of minutes, to report rates
+ * over recent windows rather than since startup.
+ *
+ * Windows cover complete minutes only, the minute in progress is excluded.
+ * Counts are approximate when a minute rolls over while other threads are
+ * incrementing.
+ */
+public class WindowedCounter {
+
+  private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+  private final int minutes;
+  private final AtomicLongArray epochs;
+  private final AtomicLongArray counts;
+
+  /**
+   * @param minutes
+   *          longest window that can be reported
+   */
+  public WindowedCounter(int minutes) {
+    this.minutes = minutes + 1;
+    epochs = new AtomicLongArray(this.minutes);
+    counts = new AtomicLongArray(this.minutes);
+    for (int i = 0; i < this.minutes; i++) {
+      epochs.set(i, -1);
+    }
+  }
+
+  public void add(long delta) {
+    long minute = System.nanoTime() / MINUTE;
+    int slot = (int) Math.floorMod(minute, (long) minutes);
+    long epoch = epochs.get(slot);
+    if (epoch != minute && epochs.compareAndSet(slot, epoch, minute)) {
+      counts.set(slot, 0);
+    }
+    counts.addAndGet(slot, delta);
+  }
+
+  public void increment() {
+    add(1);
+  }
+
+  /** Events in the last window complete minutes. */
+  public long sum(int window) {
+    long current = System.nanoTime() / MINUTE;
+    long sum = 0;
+    for (long minute = current - Math.min(window, minutes - 1); minute < current; minute++) {
+      int slot = (int) Math.floorMod(minute, (long) minutes);
+      if (epochs.get(slot) == minute) {
+        sum += counts.get(slot);
+      }
+    }
+    return sum;
+  }
+
+  /** Events per second over the last window complete minutes. */
+  public double rate(int window) {
+    return sum(window) / (window * 60.0);
+  }
+}
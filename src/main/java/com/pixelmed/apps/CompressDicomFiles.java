@@ -30,9 +30,17 @@ import java.awt.image.WritableRaster;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.InterruptedIOException;
+import java.io.IOException;
 
 import java.util.Iterator;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriter;
@@ -46,6 +54,11 @@ import com.pixelmed.slf4j.LoggerFactory;
 /**
  * <p>This class copies a set of DICOM image files, compressing them losslessly with JPEG 2000 (default), JPEG 10918-1 Lossless Huffman SV1, JPEG-LS or RLE.</p>
  *
+ * <p>The frames of each file are compressed in parallel. If more than one thread is requested, files are also processed in parallel:
+ * files found are queued for a fixed number of threads that read and compress them, and compressed files are queued for a single thread
+ * that writes them, so that reading, compression and writing overlap. Both queues are bounded, so that finding files does not get far ahead
+ * of compressing them, nor compressing of writing. The headers of the files found are read ahead in parallel by the same number of threads.</p>
+ *
  * @author	dclunie
  */
 public class CompressDicomFiles extends MediaImporter {
@@ -58,6 +71,27 @@ public class CompressDicomFiles extends MediaImporter {
 	protected String transferSyntaxUID;
 	protected boolean reuseSameBaseFileName;
 	
+	private ThreadPoolExecutor compressionExecutor;
+	private ThreadPoolExecutor writingExecutor;
+	
+	/**
+	 * <p>Block the submitting thread until there is room in the queue, rather than rejecting the task.</p>
+	 */
+	private static final RejectedExecutionHandler waitForRoomInQueue = new RejectedExecutionHandler() {
+		public void rejectedExecution(Runnable r,ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("Executor has been shut down");
+			}
+			try {
+				executor.getQueue().put(r);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException(e);
+			}
+		}
+	};
+	
 	public CompressDicomFiles(MessageLogger logger) {
 		super(logger);
 		{
@@ -96,11 +130,66 @@ public class CompressDicomFiles extends MediaImporter {
 	}
 	
 	/**
-	 * <p>Compress the DICOM file.</p>
+	 * <p>Import the files, in parallel if more than one thread has been requested.</p>
+	 *
+	 * <p>Returns once all the files have been compressed and written.</p>
+	 *
+	 * @param	pathName		the path name to a DICOMDIR or file or folder
+	 * @throws	IOException		if there is a problem reading or writing
+	 * @throws	DicomException	if there is a problem parsing or extracting required content
+	 */
+	public void importDicomFiles(String pathName) throws IOException, DicomException {
+		if (numberOfThreads <= 1) {
+			super.importDicomFiles(pathName);
+			return;
+		}
+		compressionExecutor = new ThreadPoolExecutor(numberOfThreads,numberOfThreads,0L,TimeUnit.MILLISECONDS,new ArrayBlockingQueue<Runnable>(numberOfThreads*2),waitForRoomInQueue);
+		writingExecutor = new ThreadPoolExecutor(1,1,0L,TimeUnit.MILLISECONDS,new ArrayBlockingQueue<Runnable>(numberOfThreads),waitForRoomInQueue);
+		try {
+			super.importDicomFiles(pathName);
+		}
+		finally {
+			awaitCompletion(compressionExecutor);		// before the writer, since compression submits to it
+			awaitCompletion(writingExecutor);
+			compressionExecutor = null;
+			writingExecutor = null;
+		}
+	}
+	
+	private static void awaitCompletion(ThreadPoolExecutor executor) throws IOException {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1,TimeUnit.MINUTES)) {
+				slf4jlogger.debug("awaitCompletion(): {} tasks still queued",executor.getQueue().size());
+			}
+		}
+		catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for files to be compressed");
+		}
+	}
+	
+	/**
+	 * <p>Compress the DICOM file, or queue it to be compressed if processing files in parallel.</p>
 	 *
 	 * @param	mediaFileName	the fully qualified path name to a DICOM file
 	 */
 	protected void doSomethingWithDicomFileOnMedia(String mediaFileName) {
+		if (compressionExecutor == null) {
+			compressDicomFile(mediaFileName);
+		}
+		else {
+			compressionExecutor.execute(() -> compressDicomFile(mediaFileName));
+		}
+	}
+	
+	/**
+	 * <p>Compress the DICOM file, then write it, or queue it to be written if processing files in parallel.</p>
+	 *
+	 * @param	mediaFileName	the fully qualified path name to a DICOM file
+	 */
+	protected void compressDicomFile(String mediaFileName) {
 		//logLn("MediaImporter.doSomethingWithDicomFile(): "+mediaFileName);
 		slf4jlogger.info("doSomethingWithDicomFileOnMedia(): {} outputFormat = {} transferSyntaxUID = {}",mediaFileName,outputFormat,transferSyntaxUID);
 		try {
@@ -120,15 +209,17 @@ public class CompressDicomFiles extends MediaImporter {
 			}
 			
 			int numberOfFrames = sImg.getNumberOfFrames();
-			File[] frameFiles = new File[numberOfFrames];
+			File[] tmpFrameFiles = new File[numberOfFrames];
 			for (int f=0; f<numberOfFrames; ++f) {
-				BufferedImage renderedImage = sImg.getBufferedImage(f);
-				if (renderedImage == null) {
-					throw new DicomException("Could not get image for frame "+f+" from"+mediaFileName);
-				}
 				File tmpFrameFile = File.createTempFile("CompressDicomFiles_tmp",".tmp");
 				tmpFrameFile.deleteOnExit();
-				frameFiles[f] = CompressedFrameEncoder.getCompressedFrameAsFile(list,renderedImage,outputFormat,tmpFrameFile);
+				tmpFrameFiles[f] = tmpFrameFile;
+			}
+			File[] frameFiles = CompressedFrameEncoder.getCompressedFramesAsFiles(list,f -> sImg.getBufferedImage(f),outputFormat,tmpFrameFiles);
+			for (int f=0; f<numberOfFrames; ++f) {
+				if (frameFiles[f] == null) {
+					throw new DicomException("Could not compress frame "+f+" from "+mediaFileName);
+				}
 			}
 			
 			OtherByteAttributeMultipleCompressedFrames aPixelData = new OtherByteAttributeMultipleCompressedFrames(TagFromName.PixelData,frameFiles);
@@ -137,6 +228,10 @@ public class CompressDicomFiles extends MediaImporter {
 			list.correctDecompressedImagePixelModule(deferredDecompression);					// make sure to correct even if decompression was deferred
 			list.insertLossyImageCompressionHistoryIfDecompressed(deferredDecompression);
 			
+			if (numberOfFrames > 1) {
+				aPixelData.addExtendedOffsetTable(list);		// AFTER correctDecompressedImagePixelModule(), which removes any from the source, so that any frame can be read without reading those before it
+			}
+			
 			// set compressed pixel data characteristics AFTER correctDecompressedImagePixelModule() ...
 			String photometricInterpretation = Attribute.getSingleStringValueOrEmptyString(list,TagFromName.PhotometricInterpretation);
 			
@@ -177,21 +272,45 @@ public class CompressDicomFiles extends MediaImporter {
 				: Attribute.getSingleStringValueOrDefault(list,TagFromName.SOPInstanceUID,"NONAME");
 			
 			File outputFile = new File(outputPath,outputFileName);
+			if (writingExecutor == null) {
+				writeCompressedDicomFile(mediaFileName,list,outputFile,frameFiles);
+			}
+			else {
+				writingExecutor.execute(() -> writeCompressedDicomFile(mediaFileName,list,outputFile,frameFiles));
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace(System.err);
+			slf4jlogger.error("While processing "+mediaFileName+" ",e);
+		}
+	}
+	
+	/**
+	 * <p>Write the compressed DICOM file and delete the temporary files containing its compressed frames.</p>
+	 *
+	 * @param	mediaFileName	the fully qualified path name to the DICOM file that was compressed
+	 * @param	list			the compressed data set
+	 * @param	outputFile		the file to write
+	 * @param	frameFiles		the temporary files containing the compressed frames
+	 */
+	protected void writeCompressedDicomFile(String mediaFileName,AttributeList list,File outputFile,File[] frameFiles) {
+		try {
 			if (outputFile.exists()) {
 				throw new DicomException("Not overwriting output file that already exists "+outputFile);
 			}
 			slf4jlogger.info("doSomethingWithDicomFileOnMedia(): writing compressed file {}",outputFile);
 			list.write(outputFile,transferSyntaxUID,true,true);
-			
-			for (int f=0; f<numberOfFrames; ++f) {
-				frameFiles[f].delete();
-				frameFiles[f] = null;
-			}
 		}
 		catch (Exception e) {
 			e.printStackTrace(System.err);
 			slf4jlogger.error("While processing "+mediaFileName+" ",e);
 		}
+		finally {
+			for (int f=0; f<frameFiles.length; ++f) {
+				frameFiles[f].delete();
+				frameFiles[f] = null;
+			}
+		}
 	}
 	
 	protected static String chooseOutputFormatForTransferSyntax(String transferSyntaxUID) {
@@ -233,7 +352,8 @@ public class CompressDicomFiles extends MediaImporter {
 	 *
 	 * <p>Non-image files are ignored (not copied).</p>
 	 *
-	 * @param	arg	array of two or three strings - the input path and the output path and optionally the requested compressed transfer syntax [1.2.840.10008.1.2.4.90|1.2.840.10008.1.2.4.70|1.2.840.10008.1.2.4.80|1.2.840.10008.1.2.5] or output format string [jpeg2000|jpeg-lossless|jpeg-ls|rle]
+	 * @param	arg	array of two, three or four strings - the input path and the output path and optionally the requested compressed transfer syntax [1.2.840.10008.1.2.4.90|1.2.840.10008.1.2.4.70|1.2.840.10008.1.2.4.80|1.2.840.10008.1.2.5] or output format string [jpeg2000|jpeg-lossless|jpeg-ls|rle]
+	 *				and optionally the number of files to process in parallel (0 for the number of processors)
 	 */
 	public static void main(String arg[]) {
 		try {
@@ -246,7 +366,7 @@ public class CompressDicomFiles extends MediaImporter {
 				importer.importDicomFiles(arg[0]);
 			
 			}
-			else if (arg.length == 3) {
+			else if (arg.length == 3 || arg.length == 4) {
 				CompressDicomFiles importer = new CompressDicomFiles(new PrintStreamMessageLogger(System.err));
 				importer.outputPath = arg[1];
 				if (arg[2].startsWith("1.")) {
@@ -261,6 +381,10 @@ public class CompressDicomFiles extends MediaImporter {
 					throw new Exception("Unsupported output format or Transfer Syntax UID");
 				}
 				importer.reuseSameBaseFileName = false;
+				if (arg.length == 4) {
+					int numberOfThreads = Integer.parseInt(arg[3]);
+					importer.numberOfThreads = numberOfThreads > 0 ? numberOfThreads : Runtime.getRuntime().availableProcessors();
+				}
 				importer.importDicomFiles(arg[0]);
 			}
 			else {
@@ -310,6 +310,22 @@ public abstract class DatabaseInformationModel {
 		}
 	}
 
+	/**
+	 * <p>Write everything that has been committed to the database files, so that it persists even if the database is never closed.</p>
+	 *
+	 * @throws	DicomException	thrown if there are problems executing the database statement
+	 */
+	public void checkpoint() throws DicomException {
+		try {
+			Statement s = databaseConnection.createStatement();
+			s.execute("CHECKPOINT;");	// no ResultSet expected
+			s.close();
+		}
+		catch (SQLException e) {
+			throw new DicomException("Cannot checkpoint database: "+e);
+		}
+	}
+
 	/***/
 	protected void finalize() {
 		close();
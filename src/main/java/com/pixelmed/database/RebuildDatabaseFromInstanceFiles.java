@@ -3,7 +3,10 @@
 package com.pixelmed.database;
 
 import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.dicom.DicomException;
+import com.pixelmed.dicom.DicomFileScanIndex;
 import com.pixelmed.dicom.DicomInputStream;
+import com.pixelmed.dicom.InformationEntity;
 import com.pixelmed.dicom.TagFromName;
 
 import java.io.BufferedInputStream;
@@ -12,6 +15,15 @@ import java.io.FileInputStream;
 
 import java.lang.reflect.Constructor;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import com.pixelmed.slf4j.Logger;
 import com.pixelmed.slf4j.LoggerFactory;
 
@@ -19,6 +31,12 @@ import com.pixelmed.slf4j.LoggerFactory;
  * <p>This class allows the reconstruction of a database from the stored instance files,
  * such as when the database schema model has been changed.</p>
  *
+ * <p>If a scan index sidecar file is specified (see {@link com.pixelmed.dicom.DicomFileScanIndex DicomFileScanIndex}), an existing database is
+ * updated incrementally instead: only files that are new, or have changed size or modification time since the previous run, are read and inserted,
+ * and the instance records of files that have changed or are no longer present are deleted. The folders may also be watched after the initial
+ * scan, so that the database is kept up to date continuously until the process is terminated. If the database has no instances, as when it
+ * has been deleted and is being rebuilt, the scan index is ignored and every file is read.</p>
+ *
  * @author	dclunie
  */
 public class RebuildDatabaseFromInstanceFiles {
@@ -27,6 +45,59 @@ public class RebuildDatabaseFromInstanceFiles {
 	private static final Logger slf4jlogger = LoggerFactory.getLogger(RebuildDatabaseFromInstanceFiles.class);
 	
 	private static long filesProcessed;
+	private static long filesUnchanged;
+	
+	private static DicomFileScanIndex scanIndex;
+	private static Set<String> fileNamesSeen;
+	
+	/**
+	 * <p>Delete the instance records that refer to a file.</p>
+	 *
+	 * <p>Records for parent entities are not deleted, even if they have no instances left.</p>
+	 *
+	 * @param	databaseInformationModel	the database
+	 * @param	fileName					the absolute path name of the file
+	 */
+	private static void deleteInstanceRecordsForFile(DatabaseInformationModel databaseInformationModel,String fileName) {
+		try {
+			ArrayList records = databaseInformationModel.findAllAttributeValuesForAllRecordsForThisInformationEntityWithSpecifiedKeyValue(
+				InformationEntity.INSTANCE,databaseInformationModel.getLocalFileNameColumnName(InformationEntity.INSTANCE),fileName);
+			for (Object record : records) {
+				String localPrimaryKeyValue = (String)(((Map)record).get(databaseInformationModel.getLocalPrimaryKeyColumnName(InformationEntity.INSTANCE)));
+				slf4jlogger.info("Deleting instance record {} for {}",localPrimaryKeyValue,fileName);
+				databaseInformationModel.deleteRecord(InformationEntity.INSTANCE,localPrimaryKeyValue);
+			}
+		}
+		catch (DicomException e) {
+			slf4jlogger.error("",e);	// use SLF4J since may be invoked from script
+		}
+	}
+	
+	/**
+	 * <p>Whether or not the database has any instance records.</p>
+	 *
+	 * <p>The scan index is not tied to the database, so if the database has been rebuilt from scratch while the sidecar file remains, every file
+	 * would be skipped as unchanged; an empty database is the sign of that.</p>
+	 *
+	 * @param	databaseInformationModel	the database
+	 * @return								true if there is at least one instance record
+	 * @throws	DicomException				if the database cannot be queried
+	 */
+	private static boolean hasInstanceRecords(DatabaseInformationModel databaseInformationModel) throws DicomException {
+		try {
+			Statement s = databaseInformationModel.createStatement();
+			try {
+				ResultSet r = s.executeQuery("SELECT COUNT(*) FROM "+DatabaseInformationModel.getTableNameForInformationEntity(InformationEntity.INSTANCE)+";");
+				return r.next() && r.getLong(1) > 0;
+			}
+			finally {
+				s.close();
+			}
+		}
+		catch (SQLException e) {
+			throw new DicomException("Cannot count instance records: "+e);
+		}
+	}
 	
 	private static void processFileOrDirectory(DatabaseInformationModel databaseInformationModel,File file) {
 //System.err.println("RebuildDatabaseFromInstanceFiles.processFileOrDirectory(): "+file);
@@ -147,20 +218,46 @@ public class RebuildDatabaseFromInstanceFiles {
 			 && !fileNameAsUpperCase.endsWith("README")
 			 && !fileNameAsUpperCase.endsWith("TOOLBARCONFIGURATION.OLD")
 			) {
-				slf4jlogger.info("Doing file {}",file);
-				try {
-					DicomInputStream dfi = new DicomInputStream(new BufferedInputStream(new FileInputStream(file)));
-					AttributeList list = new AttributeList();
+				long size = file.length();				// before reading, so that a change during reading is detected next time
+				long lastModified = file.lastModified();
+				DicomFileScanIndex.Entry previousEntry = null;
+				if (scanIndex != null) {
+					if (fileNamesSeen != null) {
+						fileNamesSeen.add(file.getAbsolutePath());
+					}
+					previousEntry = scanIndex.get(file);
+				}
+				if (previousEntry != null && previousEntry.isUnchanged(size,lastModified)) {
+					slf4jlogger.debug("Skipping unchanged {}",file);
+					++filesUnchanged;
+				}
+				else {
+					slf4jlogger.info("Doing file {}",file);
+					if (previousEntry != null && previousEntry.isDicom()) {
+						deleteInstanceRecordsForFile(databaseInformationModel,file.getAbsolutePath());	// since insertObject() will not replace a record, and the file may now contain a different instance
+					}
+					boolean haveRead = false;
+					try {
+						DicomInputStream dfi = new DicomInputStream(new BufferedInputStream(new FileInputStream(file)));
+						AttributeList list = new AttributeList();
 //System.err.println("Starting read "+file);
-					list.read(dfi,TagFromName.PixelData);
+						list.read(dfi,TagFromName.PixelData);
 //System.err.println("Finished read "+file);
-					dfi.close();
-					//d.extendTablesAsNecessary(list);		// doesn't work with Hypersonic ... ALTER command not supported
-					databaseInformationModel.insertObject(list,file.getAbsolutePath(),DatabaseInformationModel.FILE_COPIED);
-					++filesProcessed;
-				}
-				catch (Exception e) {
-					slf4jlogger.error("",e);	// use SLF4J since may be invoked from script
+						dfi.close();
+						haveRead = true;
+						//d.extendTablesAsNecessary(list);		// doesn't work with Hypersonic ... ALTER command not supported
+						databaseInformationModel.insertObject(list,file.getAbsolutePath(),DatabaseInformationModel.FILE_COPIED);
+						++filesProcessed;
+						if (scanIndex != null) {
+							scanIndex.put(file,size,lastModified,list);
+						}
+					}
+					catch (Exception e) {
+						slf4jlogger.error("",e);	// use SLF4J since may be invoked from script
+						if (scanIndex != null && !haveRead) {
+							scanIndex.put(file,size,lastModified,null);	// not readable, so do not try again unless it changes, but do try again if it could not be inserted
+						}
+					}
 				}
 			}
 			else {
@@ -176,13 +273,35 @@ public class RebuildDatabaseFromInstanceFiles {
 	 * <p>Read the DICOM files listed on the command line, load them into the specified model and store
 	 * the database files in the specified location.</p>
 	 *
-	 * @param	arg	the class name of the model, the (full) path of the database file prefix, and a list of DICOM file names or directories
+	 * <p>The optional arguments, which precede the others, are:</p>
+	 * <ul>
+	 * <li><code>-index indexFileName</code> to update the database incrementally, using and then saving the scan index in the specified sidecar file</li>
+	 * <li><code>-watch</code> to keep updating the database as files in the specified folders are created, modified or deleted, until the process is terminated</li>
+	 * </ul>
+	 *
+	 * @param	arg	[-index indexFileName] [-watch], the class name of the model, the (full) path of the database file prefix, and a list of DICOM file names or directories
 	 */
 	public static void main(String arg[]) {
 		RebuildDatabaseFromInstanceFiles ourselves = new RebuildDatabaseFromInstanceFiles();
-		if (arg.length >= 3) {
-			String databaseModelClassName = arg[0];
-			String databaseFileName = arg[1];
+		String indexFileName = null;
+		boolean watch = false;
+		int a = 0;
+		while (a < arg.length && arg[a].startsWith("-")) {
+			if (arg[a].equals("-index") && a+1 < arg.length) {
+				indexFileName = arg[a+1];
+				a+=2;
+			}
+			else if (arg[a].equals("-watch")) {
+				watch = true;
+				++a;
+			}
+			else {
+				break;
+			}
+		}
+		if (arg.length-a >= 3 && !arg[a].startsWith("-")) {
+			String databaseModelClassName = arg[a];
+			String databaseFileName = arg[a+1];
 		
 			if (databaseModelClassName.indexOf('.') == -1) {					// not already fully qualified
 				databaseModelClassName="com.pixelmed.database."+databaseModelClassName;
@@ -203,23 +322,105 @@ public class RebuildDatabaseFromInstanceFiles {
 				System.exit(0);
 			}
 			
+			if (indexFileName != null || watch) {
+				scanIndex = new DicomFileScanIndex(indexFileName == null ? null : new File(indexFileName));
+				slf4jlogger.info("Scan index has {} files",scanIndex.size());	// use SLF4J since may be invoked from script
+				try {
+					if (scanIndex.size() > 0 && !hasInstanceRecords(databaseInformationModel)) {
+						slf4jlogger.warn("Database has no instances, so ignoring the {} files in the scan index and reading every file",scanIndex.size());	// use SLF4J since may be invoked from script
+						scanIndex.clear();
+					}
+				}
+				catch (DicomException e) {
+					slf4jlogger.error("",e);	// use SLF4J since may be invoked from script
+					System.exit(0);
+				}
+			}
+			
 			long startOfRebuild=System.currentTimeMillis();
 			filesProcessed=0;
-			int i = 2;		// start with 3rd argument
+			filesUnchanged=0;
+			ArrayList<File> roots = new ArrayList<File>();
+			int i = a+2;		// start with 3rd non-option argument
 			while (i<arg.length) {
 				String name = arg[i++];
 				File file = new File(name);
+				roots.add(file);
+				if (scanIndex != null) {
+					fileNamesSeen = new HashSet<String>();
+				}
 				processFileOrDirectory(databaseInformationModel,file);
+				if (scanIndex != null) {
+					for (DicomFileScanIndex.Entry entry : scanIndex.removeAllExcept(file,fileNamesSeen)) {
+						slf4jlogger.info("No longer present {}",entry.getFileName());
+						if (entry.isDicom()) {
+							deleteInstanceRecordsForFile(databaseInformationModel,entry.getFileName());
+						}
+					}
+					fileNamesSeen = null;
+				}
 			}
 			long durationOfRebuild = System.currentTimeMillis() - startOfRebuild;
 			double rate = ((double)filesProcessed)/(((double)durationOfRebuild)/1000);
-			slf4jlogger.info("Processed {} files in {} ms, {} files/s",filesProcessed,durationOfRebuild,rate);	// use SLF4J since may be invoked from script
+			slf4jlogger.info("Processed {} files in {} ms, {} files/s, skipped {} unchanged files",filesProcessed,durationOfRebuild,rate,filesUnchanged);	// use SLF4J since may be invoked from script
+			
+			if (watch) {
+				final DatabaseInformationModel watchedDatabaseInformationModel = databaseInformationModel;
+				final Thread watchingThread = Thread.currentThread();
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					public void run() {
+						try {
+							scanIndex.stopWatching();		// rather than interrupt, so that the database is closed and the index saved by the watching thread after any insertion in progress
+							watchingThread.join();
+						}
+						catch (Exception e) {
+							slf4jlogger.error("",e);	// use SLF4J since may be invoked from script
+						}
+					}
+				});
+				try {
+					databaseInformationModel.checkpoint();		// so that files are not indexed without having been persisted
+					scanIndex.save();
+					slf4jlogger.info("Watching for changes");	// use SLF4J since may be invoked from script
+					scanIndex.watch(roots,1000,
+						file -> processFileOrDirectory(watchedDatabaseInformationModel,file),
+						entry -> {
+							slf4jlogger.info("No longer present {}",entry.getFileName());
+							if (entry.isDicom()) {
+								deleteInstanceRecordsForFile(watchedDatabaseInformationModel,entry.getFileName());
+							}
+						},
+						() -> {
+							try {
+								watchedDatabaseInformationModel.checkpoint();	// so that files are not indexed without having been persisted
+								scanIndex.save();
+							}
+							catch (Exception e) {
+								slf4jlogger.error("",e);	// use SLF4J since may be invoked from script
+							}
+						});
+				}
+				catch (InterruptedException e) {
+					slf4jlogger.info("Stopped watching for changes");	// use SLF4J since may be invoked from script
+				}
+				catch (Exception e) {
+					slf4jlogger.error("",e);	// use SLF4J since may be invoked from script
+				}
+			}
 			
 			databaseInformationModel.close();	// this is really important ... will not persist everything unless we do this
+			
+			if (scanIndex != null) {
+				try {
+					scanIndex.save();	// only after the database has been closed, so that files are not indexed without having been persisted
+				}
+				catch (Exception e) {
+					slf4jlogger.error("",e);	// use SLF4J since may be invoked from script
+				}
+			}
 		}
 		else {
-			System.err.println("Usage: java com.pixelmed.database.RebuildDatabaseFromInstanceFiles databaseModelClassName databaseFileName path(s)");
+			System.err.println("Usage: java com.pixelmed.database.RebuildDatabaseFromInstanceFiles [-index indexFileName] [-watch] databaseModelClassName databaseFileName path(s)");
 		}
 	}
 }
-
@@ -3,12 +3,18 @@
 package com.pixelmed.dicom;
 
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * <p>The {@link com.pixelmed.dicom.AttributeFactory AttributeFactory} class is a factory class of static methods for creating
  * concrete instances of the abstract class {@link com.pixelmed.dicom.Attribute Attribute} based on their
  * value representation.</p>
  *
+ * <p>Attributes are constructed through a table of constructors indexed by value representation, built once
+ * when the class is loaded, rather than by reflection.</p>
+ *
  * <p>This class is
  * primarily used when reading a parsing a DICOM dataset, and needing to create attributes based on their
  * value representation, either from a dictionary or from the explicit value representation in the dataset.</p>
@@ -25,6 +31,112 @@ public class AttributeFactory {
 	//private static final long maximumInMemoryOtherDataValueLength = 0;			// set to -1l to never leave on disk, 0 to always leave on disk
 
 	private AttributeFactory() {}
+
+	private interface EmptyAttributeConstructor {
+		Attribute construct(AttributeTag tag,SpecificCharacterSet specificCharacterSet) throws DicomException;
+	}
+
+	private interface ReadAttributeConstructor {
+		Attribute construct(AttributeTag tag,long vl,DicomInputStream i,SpecificCharacterSet specificCharacterSet,long byteOffset) throws IOException, DicomException;
+	}
+
+	private static final class AttributeConstructor {
+		final Class c;
+		final EmptyAttributeConstructor empty;
+		final ReadAttributeConstructor read;
+
+		AttributeConstructor(Class c,EmptyAttributeConstructor empty,ReadAttributeConstructor read) {
+			this.c=c;
+			this.empty=empty;
+			this.read=read;
+		}
+	}
+
+	private static final AttributeConstructor[] constructorsByValueRepresentation = new AttributeConstructor[26*26];	// only for VRs whose class does not depend on context
+
+	private static final Map<Class,AttributeConstructor> constructorsByClass = new IdentityHashMap<Class,AttributeConstructor>();
+
+	private static void register(Class c,EmptyAttributeConstructor empty,ReadAttributeConstructor read,String... vrs) {
+		AttributeConstructor constructor = new AttributeConstructor(c,empty,read);
+		constructorsByClass.put(c,constructor);
+		for (String vr : vrs) {
+			constructorsByValueRepresentation[indexOfValueRepresentation(vr.getBytes())] = constructor;
+		}
+	}
+
+	static {
+		register(ApplicationEntityAttribute.class,	(t,scs) -> new ApplicationEntityAttribute(t),	(t,vl,i,scs,o) -> new ApplicationEntityAttribute(t,vl,i),	"AE");
+		register(AgeStringAttribute.class,			(t,scs) -> new AgeStringAttribute(t),			(t,vl,i,scs,o) -> new AgeStringAttribute(t,vl,i),			"AS");
+		register(AttributeTagAttribute.class,		(t,scs) -> new AttributeTagAttribute(t),		(t,vl,i,scs,o) -> new AttributeTagAttribute(t,vl,i),		"AT");
+		register(CodeStringAttribute.class,			(t,scs) -> new CodeStringAttribute(t),			(t,vl,i,scs,o) -> new CodeStringAttribute(t,vl,i),			"CS");
+		register(DateAttribute.class,				(t,scs) -> new DateAttribute(t),				(t,vl,i,scs,o) -> new DateAttribute(t,vl,i),				"DA");
+		register(DateTimeAttribute.class,			(t,scs) -> new DateTimeAttribute(t),			(t,vl,i,scs,o) -> new DateTimeAttribute(t,vl,i),			"DT");
+		register(DecimalStringAttribute.class,		(t,scs) -> new DecimalStringAttribute(t),		(t,vl,i,scs,o) -> new DecimalStringAttribute(t,vl,i),		"DS");
+		register(FloatDoubleAttribute.class,		(t,scs) -> new FloatDoubleAttribute(t),			(t,vl,i,scs,o) -> new FloatDoubleAttribute(t,vl,i),			"FD");
+		register(FloatSingleAttribute.class,		(t,scs) -> new FloatSingleAttribute(t),			(t,vl,i,scs,o) -> new FloatSingleAttribute(t,vl,i),			"FL");
+		register(IntegerStringAttribute.class,		(t,scs) -> new IntegerStringAttribute(t),		(t,vl,i,scs,o) -> new IntegerStringAttribute(t,vl,i),		"IS");
+		register(LongStringAttribute.class,			(t,scs) -> new LongStringAttribute(t,scs),		(t,vl,i,scs,o) -> new LongStringAttribute(t,vl,i,scs),		"LO");
+		register(LongTextAttribute.class,			(t,scs) -> new LongTextAttribute(t,scs),		(t,vl,i,scs,o) -> new LongTextAttribute(t,vl,i,scs),		"LT");
+		register(OtherByteAttribute.class,			(t,scs) -> new OtherByteAttribute(t),			(t,vl,i,scs,o) -> new OtherByteAttribute(t,vl,i));
+		register(OtherByteAttributeOnDisk.class,	(t,scs) -> new OtherByteAttributeOnDisk(t),		(t,vl,i,scs,o) -> new OtherByteAttributeOnDisk(t,vl,i,o));
+		register(OtherDoubleAttribute.class,		(t,scs) -> new OtherDoubleAttribute(t),			(t,vl,i,scs,o) -> new OtherDoubleAttribute(t,vl,i),			"OD");
+		register(OtherFloatAttribute.class,			(t,scs) -> new OtherFloatAttribute(t),			(t,vl,i,scs,o) -> new OtherFloatAttribute(t,vl,i),			"OF");
+		register(OtherLongAttribute.class,			(t,scs) -> new OtherLongAttribute(t),			(t,vl,i,scs,o) -> new OtherLongAttribute(t,vl,i),			"OL");
+		register(OtherVeryLongAttribute.class,		(t,scs) -> new OtherVeryLongAttribute(t),		(t,vl,i,scs,o) -> new OtherVeryLongAttribute(t,vl,i),		"OV");
+		register(OtherWordAttribute.class,			(t,scs) -> new OtherWordAttribute(t),			(t,vl,i,scs,o) -> new OtherWordAttribute(t,vl,i));
+		register(OtherWordAttributeOnDisk.class,	(t,scs) -> new OtherWordAttributeOnDisk(t),		(t,vl,i,scs,o) -> new OtherWordAttributeOnDisk(t,vl,i,o));
+		register(PersonNameAttribute.class,			(t,scs) -> new PersonNameAttribute(t,scs),		(t,vl,i,scs,o) -> new PersonNameAttribute(t,vl,i,scs),		"PN");
+		register(SequenceAttribute.class,			(t,scs) -> new SequenceAttribute(t),
+			(t,vl,i,scs,o) -> { throw new DicomException("Sequence attribute cannot be read as a single value"); },				"SQ");
+		register(ShortStringAttribute.class,		(t,scs) -> new ShortStringAttribute(t,scs),		(t,vl,i,scs,o) -> new ShortStringAttribute(t,vl,i,scs),		"SH");
+		register(SignedLongAttribute.class,			(t,scs) -> new SignedLongAttribute(t),			(t,vl,i,scs,o) -> new SignedLongAttribute(t,vl,i),			"SL");
+		register(SignedShortAttribute.class,		(t,scs) -> new SignedShortAttribute(t),			(t,vl,i,scs,o) -> new SignedShortAttribute(t,vl,i),			"SS");
+		register(ShortTextAttribute.class,			(t,scs) -> new ShortTextAttribute(t,scs),		(t,vl,i,scs,o) -> new ShortTextAttribute(t,vl,i,scs),		"ST");
+		register(TimeAttribute.class,				(t,scs) -> new TimeAttribute(t),				(t,vl,i,scs,o) -> new TimeAttribute(t,vl,i),				"TM");
+		register(UniqueIdentifierAttribute.class,	(t,scs) -> new UniqueIdentifierAttribute(t),	(t,vl,i,scs,o) -> new UniqueIdentifierAttribute(t,vl,i),	"UI");
+		register(UnsignedLongAttribute.class,		(t,scs) -> new UnsignedLongAttribute(t),		(t,vl,i,scs,o) -> new UnsignedLongAttribute(t,vl,i),		"UL");
+		register(UnknownAttribute.class,			(t,scs) -> new UnknownAttribute(t),				(t,vl,i,scs,o) -> new UnknownAttribute(t,vl,i),				"UN");
+		register(UnsignedShortAttribute.class,		(t,scs) -> new UnsignedShortAttribute(t),		(t,vl,i,scs,o) -> new UnsignedShortAttribute(t,vl,i),		"US");
+		register(UniversalResourceAttribute.class,	(t,scs) -> new UniversalResourceAttribute(t),	(t,vl,i,scs,o) -> new UniversalResourceAttribute(t,vl,i),	"UR");
+		register(UnlimitedCharactersAttribute.class,(t,scs) -> new UnlimitedCharactersAttribute(t,scs),(t,vl,i,scs,o) -> new UnlimitedCharactersAttribute(t,vl,i,scs),"UC");
+		register(UnlimitedTextAttribute.class,		(t,scs) -> new UnlimitedTextAttribute(t,scs),	(t,vl,i,scs,o) -> new UnlimitedTextAttribute(t,vl,i,scs),	"UT");
+	}
+
+	/**
+	 * @param	vr	the value representation
+	 * @return		the index in the constructor table, or -1 if not two upper case letters
+	 */
+	private static int indexOfValueRepresentation(byte[] vr) {
+		if (vr != null && vr.length >= 2) {
+			int v0 = vr[0] - 'A';
+			int v1 = vr[1] - 'A';
+			if (v0 >= 0 && v0 < 26 && v1 >= 0 && v1 < 26) {
+				return v0*26 + v1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param	vr	the value representation
+	 * @return		the constructor if the class is determined by the value representation alone, else null
+	 */
+	private static AttributeConstructor getConstructorForFixedValueRepresentation(byte[] vr) {
+		int index = indexOfValueRepresentation(vr);
+		return index == -1 ? null : constructorsByValueRepresentation[index];
+	}
+
+	private static AttributeConstructor getConstructor(AttributeTag tag,byte[] vr,boolean explicit,int bytesPerSample,boolean leaveOtherDataOnDisk,boolean isSignedPixelRepresentation) {
+		AttributeConstructor constructor = getConstructorForFixedValueRepresentation(vr);
+		if (constructor == null) {
+			constructor = constructorsByClass.get(getClassOfAttributeFromValueRepresentation(tag,vr,explicit,bytesPerSample,leaveOtherDataOnDisk,isSignedPixelRepresentation));
+		}
+		return constructor;
+	}
+
+	private static boolean leaveOtherDataOnDisk(long vl,boolean isFile) {
+		return /*tag.equals(TagFromName.PixelData) &&*/ vl > maximumInMemoryOtherDataValueLength && maximumInMemoryOtherDataValueLength != -1l && isFile;	// (001000)
+	}
 	
 	/**
 	 * <p>A static method to determine the {@link java.lang.Class Class} appropriate for storing an attribute based on the supplied value representation.</p>
@@ -39,6 +151,10 @@ public class AttributeFactory {
 	 * @return				the class appropriate for the attribute
 	 */
 	public static Class getClassOfAttributeFromValueRepresentation(AttributeTag tag,byte[] vr,boolean explicit,int bytesPerSample,boolean leaveOtherDataOnDisk,boolean isSignedPixelRepresentation) {
+		AttributeConstructor constructor = getConstructorForFixedValueRepresentation(vr);
+		if (constructor != null) {
+			return constructor.c;
+		}
 		Class c;
 		Class classForOtherByte =  leaveOtherDataOnDisk ? OtherByteAttributeOnDisk.class : OtherByteAttribute.class;
 		Class classForOtherWord =  leaveOtherDataOnDisk ? OtherWordAttributeOnDisk.class : OtherWordAttribute.class;
@@ -92,6 +208,9 @@ public class AttributeFactory {
 		else if (ValueRepresentation.isOtherLongVR(vr)) {
 			c=OtherLongAttribute.class;
 		}
+		else if (ValueRepresentation.isOtherVeryLongVR(vr)) {
+			c=OtherVeryLongAttribute.class;
+		}
 		else if (ValueRepresentation.isOtherWordVR(vr)) {
 			// This is not quite right ... in implicit VR, pixel data is always OW theoretically,
 			// but this saves later unpacking ... and works as long is implicit VR is little endian
@@ -172,13 +291,7 @@ public class AttributeFactory {
 	 * @return				the class appropriate for the attribute
 	 */
 	public static Class getClassOfAttributeFromValueRepresentation(AttributeTag tag,byte[] vr,boolean explicit,int bytesPerSample,long vl,boolean isFile,boolean isSignedPixelRepresentation) {
-		boolean leaveOtherDataOnDisk = /*tag.equals(TagFromName.PixelData) &&*/ vl > maximumInMemoryOtherDataValueLength && maximumInMemoryOtherDataValueLength != -1l && isFile;	// (001000)
-//if (tag.equals(TagFromName.PixelData)) {
-//System.err.println("AttributeFactory.newAttribute(): leaveOtherDataOnDisk = "+leaveOtherDataOnDisk);
-//System.err.println("AttributeFactory.newAttribute(): vl > maximumInMemoryOtherDataValueLength = "+(vl > maximumInMemoryOtherDataValueLength));
-//System.err.println("AttributeFactory.newAttribute(): i.getFile() = "+i.getFile());
-//}
-		return getClassOfAttributeFromValueRepresentation(tag,vr,explicit,bytesPerSample,leaveOtherDataOnDisk,isSignedPixelRepresentation);
+		return getClassOfAttributeFromValueRepresentation(tag,vr,explicit,bytesPerSample,leaveOtherDataOnDisk(vl,isFile),isSignedPixelRepresentation);
 	}
 
 	/**
@@ -263,32 +376,12 @@ public class AttributeFactory {
 	 * @throws	DicomException					if cannot instantiate a new attribute
 	 */
 	public static Attribute newAttribute(AttributeTag tag,byte[] vr,SpecificCharacterSet specificCharacterSet,boolean explicit,int bytesPerSample,boolean isSignedPixelRepresentation) throws DicomException {
-		Attribute a = null;
 		try {
-			Class classToUse = getClassOfAttributeFromValueRepresentation(tag,vr,explicit,bytesPerSample,false,isSignedPixelRepresentation);
-//System.err.println("AttributeFactory.newAttribute(): classToUse = "+classToUse);
-			Class [] argTypes  = null;
-			Object[] argValues = null;
-			if (ValueRepresentation.isAffectedBySpecificCharacterSet(vr)) {
-//System.err.println("AttributeFactory.newAttribute(): isAffectedBySpecificCharacterSet, so specificCharacterSet = "+specificCharacterSet);
-				Class [] t  = {AttributeTag.class,SpecificCharacterSet.class};
-				Object[] v = {tag,specificCharacterSet};
-				argTypes=t;
-				argValues=v;
-			}
-			else {
-				Class [] t  = {AttributeTag.class};
-				Object[] v = {tag};
-				argTypes=t;
-				argValues=v;
-			}
-			a = (Attribute)(classToUse.getConstructor(argTypes).newInstance(argValues));
-//System.err.println("made an "+a);
+			return getConstructor(tag,vr,explicit,bytesPerSample,false,isSignedPixelRepresentation).empty.construct(tag,specificCharacterSet);
 		}
 		catch (Exception e) {
-			throw new DicomException("Could not instantiate an attribute for "+tag+": "+e.getCause());
+			throw new DicomException("Could not instantiate an attribute for "+tag+": "+e);
 		}
-		return a;
 	}
 
 
@@ -333,45 +426,13 @@ public class AttributeFactory {
 	public static Attribute newAttribute(AttributeTag tag,byte[] vr,long vl,DicomInputStream i,SpecificCharacterSet specificCharacterSet,
 			boolean explicit,int bytesPerSample,long byteOffset,boolean isSignedPixelRepresentation) throws DicomException {
 //System.err.println("AttributeFactory.newAttribute(): tag = "+tag);
-		Attribute a = null;
 		try {
-			Class classToUse = getClassOfAttributeFromValueRepresentation(tag,vr,explicit,bytesPerSample,vl,i.getFile() != null,isSignedPixelRepresentation);
-//System.err.println("AttributeFactory.newAttribute(): classToUse = "+classToUse);
-			Class [] argTypes  = null;
-			Object[] argValues = null;
-			Long lvl = new Long(vl);
-			Long lbo = new Long(byteOffset);
-			if (ValueRepresentation.isAffectedBySpecificCharacterSet(vr)) {		// NB. the VRs returned by isAffectedBySpecificCharacterSet() need to have matching classes with appropriate constructors (with a SpecificCharacterSet argument)
-//System.err.println("AttributeFactory.newAttribute(): isAffectedBySpecificCharacterSet");
-				Class [] t  = {AttributeTag.class,Long.class,DicomInputStream.class,SpecificCharacterSet.class};
-				Object[] v = {tag,lvl,i,specificCharacterSet};
-				argTypes=t;
-				argValues=v;
-			}
-			// NB. the VRs not returned by isAffectedBySpecificCharacterSet() need to have matching classes with appropriate constructors (without a SpecificCharacterSet argument)
-			else if (classToUse == OtherByteAttributeOnDisk.class || classToUse == OtherWordAttributeOnDisk.class) {
-//System.err.println("AttributeFactory.newAttribute(): onDisk");
-				Class [] t  = {AttributeTag.class,Long.class,DicomInputStream.class,Long.class};
-				Object[] v = {tag,lvl,i,lbo};
-				argTypes=t;
-				argValues=v;
-			}
-			else {
-//System.err.println("AttributeFactory.newAttribute(): ordinary constructor");
-				Class [] t  = {AttributeTag.class,long.class,DicomInputStream.class};
-				Object[] v = {tag,lvl,i};
-				argTypes=t;
-				argValues=v;
-			}
-//System.err.println("AttributeFactory.newAttribute(): trying to make attribute");
-			a = (Attribute)(classToUse.getConstructor(argTypes).newInstance(argValues));
-//System.err.println("AttributeFactory.newAttribute(): made an "+a);
+			return getConstructor(tag,vr,explicit,bytesPerSample,leaveOtherDataOnDisk(vl,i.getFile() != null),isSignedPixelRepresentation).read.construct(tag,vl,i,specificCharacterSet,byteOffset);
 		}
 		catch (Exception e) {
 			//slf4jlogger.error("", e);;
-			throw new DicomException("Could not instantiate an attribute for "+tag+": "+e.getCause());
+			throw new DicomException("Could not instantiate an attribute for "+tag+": "+e);
 		}
-		return a;
 	}
 
 	/**
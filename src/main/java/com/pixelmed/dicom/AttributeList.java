@@ -36,6 +36,12 @@ import com.pixelmed.slf4j.LoggerFactory;
  * that is how {@link com.pixelmed.dicom.AttributeTag AttributeTag} implements
  * {@link java.lang.Comparable Comparable}.</p>
  *
+ * <p>The attributes are not stored in the tree of the super class, but in a compact sorted array of
+ * tags packed into ints with parallel attribute slots, which avoids a map entry per attribute
+ * in large enhanced multi-frame objects and deep SR content trees. The key set, values and entry set
+ * are views backed by the list as usual, but the sub-map, head-map, tail-map, descending and
+ * navigable key set methods of {@link java.util.NavigableMap NavigableMap} return read-only copies.</p>
+ *
  * <p>Note that large attribute values such as Pixel Data may be left on disk rather
  * than actually read in when the list is created, and loaded on demand; extreme
  * caution should be taken if the underlying file from which an AttributeList has
@@ -173,6 +179,8 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 
 	private static final Logger slf4jlogger = LoggerFactory.getLogger(AttributeList.class);
 
+	private SortedAttributeArray attributes = new SortedAttributeArray();
+
 	private static final long badAttributeLimit = 10;	// pretty arbitrary, but avoids very long wait on large non-DICOM files, and still permits the occasional bad ones
 	
 	private static final long maximumLongVRValueLengthThatCanBeAllocated = Integer.MAX_VALUE;	// Java arrays are index by int and hence are limited in size :(
@@ -246,6 +254,23 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 		this.decompressPixelData = decompressPixelData;
 	}
 
+	protected static boolean allowMemoryMapping = false;
+
+	/**
+	 * <p>Whether or not to memory map files when reading by file or file name.</p>
+	 *
+	 * <p>If allowed, files are read through a {@link com.pixelmed.dicom.MappedFileInputStream MappedFileInputStream},
+	 * which is considerably faster for large uncompressed pixel data, but may keep the file open (and
+	 * on some platforms locked) until the mapping is garbage collected.</p>
+	 *
+	 * <p>Default is not to memory map.</p>
+	 *
+	 * @param	allowMemoryMapping	whether or not to memory map files
+	 */
+	public static void setAllowMemoryMapping(boolean allowMemoryMapping) {
+		AttributeList.allowMemoryMapping = allowMemoryMapping;
+	}
+
 	/***/
 	protected static DicomDictionary dictionary;
 	
@@ -253,7 +278,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 	protected static void createDictionaryifNecessary() {
 		if (dictionary == null) {
 //System.err.println("AttributeList.createDictionaryifNecessary(): creating static dictionary");
-			dictionary = new DicomDictionary();
+			dictionary = CompactDicomDictionary.getInstance();
 		}
 	}
 
@@ -340,7 +365,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 	private AttributeTag readAttributeTag(DicomInputStream i) throws IOException {
 		int group   = i.readUnsigned16();
 		int element = i.readUnsigned16();
-		return new AttributeTag(group,element);
+		return AttributeTag.valueOf(group,element);
 	}
 	
 	// implement Jim Irrer's read termination strategy pattern ...
@@ -385,32 +410,33 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 	 */
 	private long readNewSequenceAttribute(Attribute a,DicomInputStream i,long byteOffset,long lengthToRead,SpecificCharacterSet specificCharacterSet,boolean insideUnknownVRSoForceImplicitVRLittleEndian,boolean isSignedPixelRepresentation) throws IOException, DicomException {
 		slf4jlogger.trace("readNewSequenceAttribute(): start");
-		slf4jlogger.trace("readNewSequenceAttribute(): insideUnknownVRSoForceImplicitVRLittleEndian="+insideUnknownVRSoForceImplicitVRLittleEndian);
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("readNewSequenceAttribute(): insideUnknownVRSoForceImplicitVRLittleEndian="+insideUnknownVRSoForceImplicitVRLittleEndian);
 		boolean undefinedLength = lengthToRead == 0xffffffffl;
 		long endByteOffset=(undefinedLength) ? 0xffffffffl : byteOffset+lengthToRead-1;
 
-		slf4jlogger.trace("readNewSequenceAttribute(): start byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) lengthToRead="+lengthToRead+" endByteOffset=0x"+Long.toHexString(endByteOffset)+" ("+endByteOffset+" dec)");
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("readNewSequenceAttribute(): start byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) lengthToRead="+lengthToRead+" endByteOffset=0x"+Long.toHexString(endByteOffset)+" ("+endByteOffset+" dec)");
 		try {
 			// CBZip2InputStream.available() always returns zero, and since we terminate
 			// on exceptions anyway, just forget about it
 			while (/*i.available() > 0 && */(undefinedLength || byteOffset < endByteOffset)) {
-				slf4jlogger.trace("readNewSequenceAttribute(): loop byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec)");
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("readNewSequenceAttribute(): loop byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec)");
 				long itemStartOffset=byteOffset;
 				AttributeTag tag = readAttributeTag(i);
 				byteOffset+=4;
-				slf4jlogger.trace("readNewSequenceAttribute(): tag="+tag);
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("readNewSequenceAttribute(): tag="+tag);
 				long vl = i.readUnsigned32();		// always implicit VR form for items and delimiters
 				byteOffset+=4;
-				slf4jlogger.trace("readNewSequenceAttribute(): loop byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) "+tag+" VL=<0x"+Long.toHexString(vl)+">");
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("readNewSequenceAttribute(): loop byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) "+tag+" VL=<0x"+Long.toHexString(vl)+">");
 				if (tag.equals(TagFromName.SequenceDelimitationItem)) {
 					slf4jlogger.trace("readNewSequenceAttribute(): SequenceDelimitationItem");
 					break;
 				}
 				else if (tag.equals(TagFromName.Item)) {
-					slf4jlogger.trace("readNewSequenceAttribute(): Item byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec)");
+					if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("readNewSequenceAttribute(): Item byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec)");
 					AttributeList list = new AttributeList();
 					byteOffset=list.read(i,byteOffset,vl,false,specificCharacterSet,null/*stopAtTag*/,null/*ReadTerminationStrategy*/,insideUnknownVRSoForceImplicitVRLittleEndian,isSignedPixelRepresentation);
-					slf4jlogger.trace("readNewSequenceAttribute(): back from reading Item byteOffset="+byteOffset);
+					if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("readNewSequenceAttribute(): back from reading Item byteOffset="+byteOffset);
+					list.trimToSize();
 					((SequenceAttribute)a).addItem(list,itemStartOffset);
 				}
 				else {
@@ -419,14 +445,14 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 			}
 		}
 		catch (EOFException e) {
-			slf4jlogger.trace("readNewSequenceAttribute(): Closing on "+e);
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("readNewSequenceAttribute(): Closing on "+e);
 			if (!undefinedLength) throw new EOFException();
 		}
 		catch (IOException e) {
-			slf4jlogger.trace("readNewSequenceAttribute(): Closing on "+e);
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("readNewSequenceAttribute(): Closing on "+e);
 			if (!undefinedLength) throw new IOException();		// InflaterInputStream seems to throw IOException rather than EOFException
 		}
-		slf4jlogger.trace("readNewSequenceAttribute(): return byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec)");
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("readNewSequenceAttribute(): return byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec)");
 		slf4jlogger.trace("readNewSequenceAttribute(): end");
 		return byteOffset;
 	}
@@ -449,8 +475,8 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 	private long read(DicomInputStream i,long byteOffset,long lengthToRead,boolean stopAfterMetaInformationHeader,
 			SpecificCharacterSet specificCharacterSet,AttributeTag stopAtTag,ReadTerminationStrategy strategy,boolean insideUnknownVRSoForceImplicitVRLittleEndian,boolean isSignedPixelRepresentation) throws IOException, DicomException {
 		slf4jlogger.trace("read(): start");
-		slf4jlogger.trace("read(): Stop tag is "+stopAtTag);
-		slf4jlogger.trace("read(): insideUnknownVRSoForceImplicitVRLittleEndian="+insideUnknownVRSoForceImplicitVRLittleEndian);
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Stop tag is "+stopAtTag);
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): insideUnknownVRSoForceImplicitVRLittleEndian="+insideUnknownVRSoForceImplicitVRLittleEndian);
 		if (i.areReadingDataSet()) {
 			// Test to see whether or not a codec needs to be pushed on the stream ... after the first time, the TransferSyntax will always be ExplicitVRLittleEndian 
 			slf4jlogger.trace("read(): Testing for deflate and bzip2 TS");
@@ -487,7 +513,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 		boolean undefinedLength = lengthToRead == 0xffffffffl;
 		long endByteOffset=(undefinedLength) ? 0xffffffffl : byteOffset+lengthToRead-1;
 
-		slf4jlogger.trace("read(): start byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) endByteOffset=0x"+Long.toHexString(endByteOffset)+" ("+endByteOffset+" dec) lengthToRead="+lengthToRead);
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): start byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) endByteOffset=0x"+Long.toHexString(endByteOffset)+" ("+endByteOffset+" dec) lengthToRead="+lengthToRead);
 		byte vrBuffer[] = new byte[2];
 		boolean explicit = i.getTransferSyntaxInUse().isExplicitVR() && !insideUnknownVRSoForceImplicitVRLittleEndian;
 		boolean littleendian = i.getTransferSyntaxInUse().isLittleEndian() || insideUnknownVRSoForceImplicitVRLittleEndian;
@@ -505,18 +531,18 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 			// CBZip2InputStream.available() always returns zero, and since we terminate
 			// on exceptions anyway, just forget about it
 			while (/*i.available() > 0 && */(undefinedLength || byteOffset < endByteOffset)) {
-				slf4jlogger.trace("read(): i.available()="+i.available());
-				slf4jlogger.trace("read(): loop byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) endByteOffset=0x"+Long.toHexString(endByteOffset)+" ("+endByteOffset+" dec)");
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): i.available()="+i.available());
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): loop byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) endByteOffset=0x"+Long.toHexString(endByteOffset)+" ("+endByteOffset+" dec)");
 				tag = readAttributeTag(i);
 				byteOffset+=4;
-				slf4jlogger.trace("read(): tag="+tag);
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): tag="+tag);
 
 				if (stopAtTag != null && tag.equals(stopAtTag)) {
-					slf4jlogger.trace("read(): stopped at "+tag);
+					if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): stopped at "+tag);
 					return byteOffset;	// stop now, since we have reached the tag at which we were told to stop
 				}
 				if (strategy != null && strategy.terminate(this,tag,byteOffset)) {
-					slf4jlogger.trace("read(): stopped at "+tag);
+					if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): stopped at "+tag);
 					return byteOffset;	// stop now, since we have reached the condition at which we were told to stop
 				}
 				
@@ -627,14 +653,14 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 						 && vrd.length >= 2
 						 && (littleendian || ValueRepresentation.getWordLengthOfValueAffectedByEndianness(vrd) == 1)			// have not implemented a means to force Attribute.read() to swap endianness during read() :(
 						) {
-							slf4jlogger.trace("read(): byteoffset 0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) for tag "+tag+" consider overriding explicit VR "+ValueRepresentation.getAsString(vr)+" with "+ValueRepresentation.getAsString(vrd));
+							if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): byteoffset 0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) for tag "+tag+" consider overriding explicit VR "+ValueRepresentation.getAsString(vr)+" with "+ValueRepresentation.getAsString(vrd));
 							if (!ValueRepresentation.isSequenceVR(vrd)) {
-								slf4jlogger.trace("read(): byteoffset 0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) for tag "+tag+" overriding explicit VR "+ValueRepresentation.getAsString(vr)+" with "+ValueRepresentation.getAsString(vrd));
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): byteoffset 0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) for tag "+tag+" overriding explicit VR "+ValueRepresentation.getAsString(vr)+" with "+ValueRepresentation.getAsString(vrd));
 								vr[0] = vrd[0];
 								vr[1] = vrd[1];
 							}
 							else {
-								slf4jlogger.trace("read(): byteoffset 0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) for tag "+tag+" not overriding explicit VR "+ValueRepresentation.getAsString(vr)+" with SQ until later when we can signal content is IVRLE");
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): byteoffset 0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) for tag "+tag+" not overriding explicit VR "+ValueRepresentation.getAsString(vr)+" with SQ until later when we can signal content is IVRLE");
 							}
 						}
 					}
@@ -644,7 +670,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 					vr[0] = 'L';
 					vr[1] = 'O';
 				}
-				slf4jlogger.trace("read(): byteoffset 0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) "+tag+" VR=<"+ValueRepresentation.getAsString(vr)+"> VL=<0x"+Long.toHexString(vl)+">");
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): byteoffset 0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) "+tag+" VR=<"+ValueRepresentation.getAsString(vr)+"> VL=<0x"+Long.toHexString(vl)+">");
 
 				Attribute a = null;
 
@@ -654,7 +680,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 				if (ValueRepresentation.isSequenceVR(vr)
 				|| (ValueRepresentation.isUnknownVR(vr) && (vl == 0xffffffffl || tag.isPrivate() && ClinicalTrialsAttributes.isSafePrivateSequenceAttribute(getPrivateCreatorString(tag),tag)))
 				) {
-					slf4jlogger.trace("read(): byteoffset 0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) for tag "+tag+" is SQ or UN with undefined length to be treated as an SQ");
+					if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): byteoffset 0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) for tag "+tag+" is SQ or UN with undefined length to be treated as an SQ");
 					a=new SequenceAttribute(tag);
 					byteOffset=readNewSequenceAttribute(a,i,byteOffset,vl,specificCharacterSet,ValueRepresentation.isUnknownVR(vr) || insideUnknownVRSoForceImplicitVRLittleEndian,isSignedPixelRepresentation);	// (000909) SQ may be nested within UN, so propagate
 				}
@@ -677,10 +703,10 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 					//boolean unencapsulatePixelData = ???; // incomplete experiments with deferring not just decompression, but also unencapsulation
 					//if (unencapsulatePixelData) {
 					int wordsPerFrame = rows*columns*samplesPerPixel;
-					slf4jlogger.trace("read(): Undefined length encapsulated Pixel Data: words per frame "+wordsPerFrame);
+					if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Undefined length encapsulated Pixel Data: words per frame "+wordsPerFrame);
 					TransferSyntax ts = i.getTransferSyntaxInUse();
 					String tsuid = ts.getUID();
-					slf4jlogger.trace("read(): Undefined length encapsulated Pixel Data: TransferSyntax UID "+tsuid);
+					if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Undefined length encapsulated Pixel Data: TransferSyntax UID "+tsuid);
 					extractCompressedPixelDataCharacteristics(ts);
 					boolean doneReadingEncapsulatedData = false;
 					// when constructing EncapsulatedInputStream, take care whether or not to enable JPEG EOI detection to allow fragment spanning, and if not, whether to use one fragment per frame or all fragments in one frame
@@ -724,19 +750,19 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 							if (bytesPerSample == 1) {
 								slf4jlogger.trace("read(): bytesPerSample = 1");
 								byte[] bytePixelData = new byte[wordsPerFrame*frames];
-								slf4jlogger.trace("read(): Number of frames = "+frames);
-								slf4jlogger.trace("read(): wordsPerFrame = "+wordsPerFrame);
-								slf4jlogger.trace("read(): pixelsPerFrame = "+pixelsPerFrame);
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Number of frames = "+frames);
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): wordsPerFrame = "+wordsPerFrame);
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): pixelsPerFrame = "+pixelsPerFrame);
 								int frameOffset=0;
 								//try {
 								for (int f=0; f<frames; ++f) {
-									slf4jlogger.trace("read(): frame = "+f);
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): frame = "+f);
 									//ei.skipInsistently(64);	// skip the "RLE header", which is of fixed length and unnecessary for decoding, as long as we skip to even byte after each segment
 									// The RLE "header" consists of 16 long values
 									// the 1st value is the number of segments
 									// the remainder are the byte offsets of each of up to 15 segments
 									int numberofSegments = (int)(ei.readUnsigned32LittleEndian());
-									slf4jlogger.trace("read(): Number of segments = "+numberofSegments);
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Number of segments = "+numberofSegments);
 									long[] segmentOffsets = new long[15];
 									ei.readUnsigned32LittleEndian(segmentOffsets,0,15);
 									for (int soi=0; soi<15; ++soi) {
@@ -751,7 +777,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 										for (int s=0; s < samplesPerPixel; ++s) {
 											//slf4jlogger.trace("read(): Doing sample = "+s);
 											int currentOffset = ei.getOffsetOfNextByteToReadFromStartOfFragment();
-											slf4jlogger.trace("read(): At fragment offset "+currentOffset);
+											if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): At fragment offset "+currentOffset);
 											int bytesToSkipToStartOfSegment = (int)(segmentOffsets[s]) - currentOffset;
 											if (bytesToSkipToStartOfSegment > 0) {
 												ei.skipInsistently(bytesToSkipToStartOfSegment);
@@ -811,18 +837,18 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 							else if (bytesPerSample == 2) {
 								// for each frame, have to read all high bytes first for a sample, then low bytes :(
 								short[] shortPixelData = new short[wordsPerFrame*frames];
-								slf4jlogger.trace("read(): Number of frames = "+frames);
-								slf4jlogger.trace("read(): wordsPerFrame = "+wordsPerFrame);
-								slf4jlogger.trace("read(): pixelsPerFrame = "+pixelsPerFrame);
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Number of frames = "+frames);
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): wordsPerFrame = "+wordsPerFrame);
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): pixelsPerFrame = "+pixelsPerFrame);
 								int frameOffset=0;
 								//try {
 								for (int f=0; f<frames; ++f) {
-									slf4jlogger.trace("read(): frame = "+f);
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): frame = "+f);
 									// The RLE "header" consists of 16 long values
 									// the 1st value is the number of segments
 									// the remainder are the byte offsets of each of up to 15 segments
 									int numberofSegments = (int)(ei.readUnsigned32LittleEndian());
-									slf4jlogger.trace("read(): NUmber of segments = "+numberofSegments);
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): NUmber of segments = "+numberofSegments);
 									long[] segmentOffsets = new long[15];
 									ei.readUnsigned32LittleEndian(segmentOffsets,0,15);
 									for (int soi=0; soi<15; ++soi) {
@@ -863,7 +889,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 												int bytesToSkipToStartOfSegment = (int)(segmentOffsets[segment]) - currentOffset;
 												if (bytesToSkipToStartOfSegment > 0) {
 													ei.skipInsistently(bytesToSkipToStartOfSegment);
-													slf4jlogger.trace("read(): Skipped "+bytesToSkipToStartOfSegment+" to segment offset "+segmentOffsets[segment]);
+													if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Skipped "+bytesToSkipToStartOfSegment+" to segment offset "+segmentOffsets[segment]);
 												}
 												else if (bytesToSkipToStartOfSegment < 0) {
 													throw new DicomException("Already read past start of next segment "+segment+" - at "+currentOffset+" need to be at "+segmentOffsets[segment]);
@@ -914,16 +940,16 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 								if (reader != null) {
 									byte[]  bytePixelData = null;	// lazy instantiation of one or the other
 									short[] shortPixelData = null;
-									slf4jlogger.trace("read(): Using columns = "+columns);
-									slf4jlogger.trace("read(): Using rows = "+rows);
-									slf4jlogger.trace("read(): Using frames = "+frames);
-									slf4jlogger.trace("read(): Using samplesPerPixel = "+samplesPerPixel);
-									slf4jlogger.trace("read(): Using bytesPerSample = "+bytesPerSample);
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Using columns = "+columns);
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Using rows = "+rows);
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Using frames = "+frames);
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Using samplesPerPixel = "+samplesPerPixel);
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Using bytesPerSample = "+bytesPerSample);
 									int pixelsPerFrame = columns*rows*samplesPerPixel;
 									int pixelsPerMultiFrameImage = pixelsPerFrame*frames;
 									iioMetadata = new IIOMetadata[frames];
 									for (int f=0; f<frames; ++f) {
-									slf4jlogger.trace("read(): Starting frame "+f);
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Starting frame "+f);
 										ImageInputStream iiois = ImageIO.createImageInputStream(ei);
 										//reader.reset();		// NB. will also remove listeners, which we aren't using ... not strictly necessary if following setInput() actually removes anything cached, as it is supposed to
 										reader.setInput(iiois,true/*seekForwardOnly*/,true/*ignoreMetadata*/);
@@ -953,21 +979,21 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 										else {
 											//iioMetadata[f] = iioImage.getMetadata();
 											//BufferedImage image = (BufferedImage)(iioImage.getRenderedImage());
-											slf4jlogger.trace("read(): Back from frame "+f+" reader.read(), BufferedImage="+image);
+											if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Back from frame "+f+" reader.read(), BufferedImage="+image);
 											//if (image == null) {
 											//	throw new DicomException("Reader "+reader.getOriginatingProvider().getDescription(Locale.US)+" "+reader.getOriginatingProvider().getVendorName()+" "+reader.getOriginatingProvider().getVersion()
 											//		+" returned null image for Transfer Syntax "+tsuid);
 											//}
 											Raster raster = image.getData();
 											int numDataElements = raster.getNumDataElements();
-											slf4jlogger.trace("read(): getNumDataElements="+numDataElements);
+											if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): getNumDataElements="+numDataElements);
 											if (numDataElements == samplesPerPixel) {
 												int transferType = raster.getTransferType();
-												slf4jlogger.trace("read(): getTransferType="+transferType);
+												if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): getTransferType="+transferType);
 												if (transferType == DataBuffer.TYPE_BYTE) {
-													slf4jlogger.trace("read(): Getting "+(samplesPerPixel > 1 ? "interleaved " : "")+samplesPerPixel+" channel byte data");
+													if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Getting "+(samplesPerPixel > 1 ? "interleaved " : "")+samplesPerPixel+" channel byte data");
 													byte[] vPixelData = (byte[])(raster.getDataElements(0,0,columns,rows,null));
-													slf4jlogger.trace("read(): Decompressed byte array length "+vPixelData.length+" expected "+pixelsPerFrame);
+													if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Decompressed byte array length "+vPixelData.length+" expected "+pixelsPerFrame);
 													if (bytePixelData == null) {
 														if (frames == 1) {
 															bytePixelData = vPixelData;
@@ -982,9 +1008,9 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 												}
 												else if (transferType == DataBuffer.TYPE_SHORT
 												      || transferType == DataBuffer.TYPE_USHORT) {
-													slf4jlogger.trace("read(): Getting "+(samplesPerPixel > 1 ? "interleaved " : "")+samplesPerPixel+" channel byte data");
+													if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Getting "+(samplesPerPixel > 1 ? "interleaved " : "")+samplesPerPixel+" channel byte data");
 													short[] vPixelData = (short[])(raster.getDataElements(0,0,columns,rows,null));
-													slf4jlogger.trace("read(): Decompressed short array length "+vPixelData.length+" expected "+pixelsPerFrame);
+													if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Decompressed short array length "+vPixelData.length+" expected "+pixelsPerFrame);
 													if (shortPixelData == null) {
 														if (frames == 1) {
 															shortPixelData = vPixelData;
@@ -1033,7 +1059,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 								}
 							}
 							else {
-								slf4jlogger.trace("read(): Unrecognized Transfer Syntax "+tsuid+" for encapsulated PixelData");
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Unrecognized Transfer Syntax "+tsuid+" for encapsulated PixelData");
 								throw new DicomException("Unrecognized Transfer Syntax "+tsuid+" for encapsulated PixelData");
 							}
 						}
@@ -1117,7 +1143,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 						}
 						doneReadingEncapsulatedData=true;
 						pixelDataWasActuallyDecompressed = false;
-						slf4jlogger.trace("read(): read of compressed bytes into buffers done in "+(System.currentTimeMillis()-startReadCompressedBytesTime)+" ms");
+						if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): read of compressed bytes into buffers done in "+(System.currentTimeMillis()-startReadCompressedBytesTime)+" ms");
 					}
 					if (!doneReadingEncapsulatedData) {
 						slf4jlogger.debug("read(): skipping encapsulated pixel data");
@@ -1125,20 +1151,20 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 					}
 					{
 						long encapsulatedBytesRead = ei.getBytesRead();
-						slf4jlogger.trace("read(): encapsulatedBytesRead = "+encapsulatedBytesRead);
+						if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): encapsulatedBytesRead = "+encapsulatedBytesRead);
 						byteOffset+= encapsulatedBytesRead;		// otherwise won't be able to detect end of fixed length sequences and items that contain encapsulated pixel data (e.g., IconImageSequence)
 						if (encapsulatedBytesRead != 0) {
 							// compute CR with precision of three decimal places
 							compressionRatio = (long)columns*rows*samplesPerPixel*bytesPerSample*frames*1000/encapsulatedBytesRead;
 							compressionRatio = compressionRatio / 1000;
-							slf4jlogger.trace("read(): compressionRatio = "+compressionRatio);
+							if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): compressionRatio = "+compressionRatio);
 						}
 					}
 					slf4jlogger.trace("read(): Done with encapsulated pixel data");
 				}
 
 				if (a != null) {
-					slf4jlogger.trace("read(): "+a.toString());
+					if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): "+a.toString());
 					if (get(tag) != null) {
 						System.err.println("Error: Illegal duplicate tag in dataset - "+tag+" - replacing previous occurence");
 					}
@@ -1147,7 +1173,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 					if (tag.equals(TagFromName.FileMetaInformationGroupLength)) {
 						if (i.areReadingMetaHeader()) {
 							slf4jlogger.trace("read(): Found meta-header");
-							slf4jlogger.trace("read(): Length attribute class="+a.getClass());
+							if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Length attribute class="+a.getClass());
 							assert(!insideUnknownVRSoForceImplicitVRLittleEndian);
 							long metaLength=a.getSingleIntegerValueOrDefault(0);
 							byteOffset=read(i,byteOffset,metaLength,false,null,stopAtTag,strategy,false/*insideUnknownVRSoForceImplicitVRLittleEndian*/,false/*isSignedPixelRepresentation*/);		// detects and sets transfer syntax for reading dataset
@@ -1164,7 +1190,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 							else {
 								slf4jlogger.trace("read(): Calling read");
 								byteOffset=read(i,byteOffset,0xffffffffl,false,null,stopAtTag,strategy,false/*insideUnknownVRSoForceImplicitVRLittleEndian*/,false/*isSignedPixelRepresentation*/);	// read to end (will detect and set own SpecificCharacterSet)
-								slf4jlogger.trace("read(): Back from read after metaheader: now undefinedLength="+undefinedLength+" byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) endByteOffset="+endByteOffset);
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Back from read after metaheader: now undefinedLength="+undefinedLength+" byteoffset=0x"+Long.toHexString(byteOffset)+" ("+byteOffset+" dec) endByteOffset="+endByteOffset);
 								break;	// ... no plausible reason to continue past this point
 							}
 						}
@@ -1178,7 +1204,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 						if (i.areReadingMetaHeader()) {
 							slf4jlogger.trace("read(): Have TransferSyntaxUID attribute in Meta Information Header");
 							String tsuid = a.getSingleStringValueOrEmptyString();
-							slf4jlogger.trace("read(): tsuid = "+tsuid);
+							if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): tsuid = "+tsuid);
 							i.setTransferSyntaxToReadDataSet(tsuid.length() > 0 ? new TransferSyntax(tsuid) : null);
 						}
 						else {
@@ -1191,39 +1217,39 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 					}
 					else if (tag.equals(TagFromName.Columns)) {
 						columns = a.getSingleIntegerValueOrDefault(0);
-						slf4jlogger.trace("read(): Setting columns = "+columns);
+						if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Setting columns = "+columns);
 					}
 					else if (tag.equals(TagFromName.Rows)) {
 						rows = a.getSingleIntegerValueOrDefault(0);
-						slf4jlogger.trace("read(): Setting rows = "+rows);
+						if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Setting rows = "+rows);
 					}
 					else if (tag.equals(TagFromName.NumberOfFrames)) {
 						frames = a.getSingleIntegerValueOrDefault(1);
-						slf4jlogger.trace("read(): Setting frames = "+frames);
+						if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Setting frames = "+frames);
 					}
 					else if (tag.equals(TagFromName.SamplesPerPixel)) {
 						samplesPerPixel = a.getSingleIntegerValueOrDefault(1);
-						slf4jlogger.trace("read(): Setting samplesPerPixel = "+samplesPerPixel);
+						if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Setting samplesPerPixel = "+samplesPerPixel);
 					}
 					else if (tag.equals(TagFromName.BitsAllocated)) {
 						bytesPerSample = (a.getSingleIntegerValueOrDefault(16)-1)/8+1;
-						slf4jlogger.trace("read(): Setting bytesPerSample = "+bytesPerSample);
+						if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Setting bytesPerSample = "+bytesPerSample);
 					}
 					else if (tag.equals(TagFromName.PixelRepresentation)) {		// for (000919)
 						int pixelRepresentation = a.getSingleIntegerValueOrDefault(0);
 						isSignedPixelRepresentation = pixelRepresentation == 1;
-						slf4jlogger.trace("read(): Setting isSignedPixelRepresentation = "+isSignedPixelRepresentation+" because PixelRepresentation = "+pixelRepresentation);
+						if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Setting isSignedPixelRepresentation = "+isSignedPixelRepresentation+" because PixelRepresentation = "+pixelRepresentation);
 					}
 				}
 			}
 		}
 		catch (EOFException e) {
-			slf4jlogger.trace("read(): Closing on "+e);
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Closing on "+e);
 			//slf4jlogger.error("",e);
 			if (!undefinedLength) throw new EOFException();
 		}
 		catch (IOException e) {
-			slf4jlogger.trace("read(): Closing on "+e);
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("read(): Closing on "+e);
 			//slf4jlogger.error("",e);
 			if (!undefinedLength) throw new IOException();		// InflaterInputStream seems to throw IOException rather than EOFException
 		}
@@ -1354,9 +1380,14 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 		DicomInputStream di = null;
 		try {
 			File file = new File(name);
-			i = new FileInputStream(file);
-			if (useBufferedStream) {
-				i = new BufferedInputStream(i);
+			if (allowMemoryMapping) {
+				i = new MappedFileInputStream(file);
+			}
+			else {
+				i = new FileInputStream(file);
+				if (useBufferedStream) {
+					i = new BufferedInputStream(i);
+				}
 			}
 			di = new DicomInputStream(i,transferSyntaxUID,hasMeta);
 			if (di.getFile() == null) {
@@ -1804,7 +1835,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 			throw new NullPointerException();
 		}
 		else {
-			return super.put(t,a);	// do not need cast to Attribute since super class is now typed
+			return attributes.put(SortedAttributeArray.key(t),a);
 		}
 	}
 
@@ -1843,7 +1874,8 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 	 * @return		the Attribute or null if not found
 	 */
 	public Attribute get(AttributeTag t) {
-		return super.get(t);	// do not need cast to Attribute since super class is now typed
+		int index = attributes.indexOf(SortedAttributeArray.key(t));
+		return index >= 0 ? attributes.valueAt(index) : null;
 	}
 
 	/**
@@ -1900,7 +1932,424 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 	 * @return		previous value (attribute) associated with specified key (tag), or null if there was no mapping for key (tag) 
 	 */
 	public Attribute remove(AttributeTag tag) {
-		return (Attribute)(super.remove(tag));
+		int index = attributes.indexOf(SortedAttributeArray.key(tag));
+		return index >= 0 ? attributes.removeAt(index) : null;
+	}
+
+	// Map and NavigableMap methods of the super class, over the compact storage rather than the tree
+
+	/**
+	 * <p>Release any capacity beyond the attributes currently in the list.</p>
+	 *
+	 * <p>Called for each sequence item list once it has been read.</p>
+	 */
+	public void trimToSize() {
+		attributes.trimToSize();
+	}
+
+	public int size() {
+		return attributes.size();
+	}
+
+	public boolean isEmpty() {
+		return attributes.size() == 0;
+	}
+
+	public void clear() {
+		attributes.clear();
+	}
+
+	public Attribute get(Object key) {
+		return get((AttributeTag)key);
+	}
+
+	public boolean containsKey(Object key) {
+		return attributes.indexOf(SortedAttributeArray.key((AttributeTag)key)) >= 0;
+	}
+
+	public boolean containsValue(Object value) {
+		for (int index=0; index<attributes.size(); ++index) {
+			if (attributes.valueAt(index).equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public Attribute remove(Object key) {
+		return remove((AttributeTag)key);
+	}
+
+	public void putAll(Map<? extends AttributeTag,? extends Attribute> map) {
+		for (Map.Entry<? extends AttributeTag,? extends Attribute> entry : map.entrySet()) {
+			put(entry.getKey(),entry.getValue());
+		}
+	}
+
+	public Attribute putIfAbsent(AttributeTag t,Attribute a) {
+		Attribute existing = get(t);
+		return existing == null ? put(t,a) : existing;
+	}
+
+	public Attribute replace(AttributeTag t,Attribute a) {
+		int index = attributes.indexOf(SortedAttributeArray.key(t));
+		if (a == null) {
+			throw new NullPointerException();
+		}
+		return index >= 0 ? attributes.setValueAt(index,a) : null;
+	}
+
+	public boolean replace(AttributeTag t,Attribute oldValue,Attribute newValue) {
+		Attribute existing = get(t);
+		if (existing != null && existing.equals(oldValue)) {
+			put(t,newValue);
+			return true;
+		}
+		return false;
+	}
+
+	public Attribute computeIfAbsent(AttributeTag t,java.util.function.Function<? super AttributeTag,? extends Attribute> mappingFunction) {
+		Attribute existing = get(t);
+		if (existing == null) {
+			Attribute a = mappingFunction.apply(t);
+			if (a != null) {
+				put(t,a);
+			}
+			return a;
+		}
+		return existing;
+	}
+
+	public Attribute computeIfPresent(AttributeTag t,java.util.function.BiFunction<? super AttributeTag,? super Attribute,? extends Attribute> remappingFunction) {
+		Attribute existing = get(t);
+		if (existing != null) {
+			Attribute a = remappingFunction.apply(t,existing);
+			if (a == null) {
+				remove(t);
+			}
+			else {
+				put(t,a);
+			}
+			return a;
+		}
+		return null;
+	}
+
+	public Attribute compute(AttributeTag t,java.util.function.BiFunction<? super AttributeTag,? super Attribute,? extends Attribute> remappingFunction) {
+		Attribute a = remappingFunction.apply(t,get(t));
+		if (a == null) {
+			remove(t);
+		}
+		else {
+			put(t,a);
+		}
+		return a;
+	}
+
+	public Attribute merge(AttributeTag t,Attribute value,java.util.function.BiFunction<? super Attribute,? super Attribute,? extends Attribute> remappingFunction) {
+		Attribute existing = get(t);
+		Attribute a = existing == null ? value : remappingFunction.apply(existing,value);
+		if (a == null) {
+			remove(t);
+		}
+		else {
+			put(t,a);
+		}
+		return a;
+	}
+
+	public void forEach(java.util.function.BiConsumer<? super AttributeTag,? super Attribute> action) {
+		int expectedModCount = attributes.modCount;
+		for (int index=0; index<attributes.size(); ++index) {
+			action.accept(attributes.tagAt(index),attributes.valueAt(index));
+			if (attributes.modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+
+	public void replaceAll(java.util.function.BiFunction<? super AttributeTag,? super Attribute,? extends Attribute> function) {
+		int expectedModCount = attributes.modCount;
+		for (int index=0; index<attributes.size(); ++index) {
+			Attribute a = function.apply(attributes.tagAt(index),attributes.valueAt(index));
+			if (attributes.modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (a == null) {
+				throw new NullPointerException();
+			}
+			attributes.setValueAt(index,a);
+		}
+	}
+
+	/**
+	 * <p>Iterates over the attributes in ascending tag order, failing fast on modification other than through the iterator.</p>
+	 */
+	private abstract class StorageIterator<E> implements Iterator<E> {
+		private int next = 0;
+		private int last = -1;
+		private int expectedModCount = attributes.modCount;
+
+		abstract E element(int index);
+
+		public boolean hasNext() {
+			return next < attributes.size();
+		}
+
+		public E next() {
+			if (attributes.modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= attributes.size()) {
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			return element(last);
+		}
+
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			if (attributes.modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			attributes.removeAt(last);
+			next = last;
+			last = -1;
+			expectedModCount = attributes.modCount;
+		}
+	}
+
+	/**
+	 * <p>An entry that writes through to the list, and so unlike {@link java.util.AbstractMap.SimpleEntry AbstractMap.SimpleEntry} is not serializable.</p>
+	 */
+	private final class StorageEntry implements Map.Entry<AttributeTag,Attribute> {
+		private final AttributeTag t;
+		private Attribute a;
+
+		StorageEntry(AttributeTag t,Attribute a) {
+			this.t = t;
+			this.a = a;
+		}
+
+		public AttributeTag getKey() {
+			return t;
+		}
+
+		public Attribute getValue() {
+			return a;
+		}
+
+		public Attribute setValue(Attribute a) {
+			this.a = a;
+			return put(t,a);
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Map.Entry) {
+				Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+				return t.equals(e.getKey()) && (a == null ? e.getValue() == null : a.equals(e.getValue()));
+			}
+			return false;
+		}
+
+		public int hashCode() {
+			return t.hashCode() ^ (a == null ? 0 : a.hashCode());
+		}
+
+		public String toString() {
+			return t+"="+a;
+		}
+	}
+
+	public Set<AttributeTag> keySet() {
+		return new AbstractSet<AttributeTag>() {
+			public Iterator<AttributeTag> iterator() {
+				return new StorageIterator<AttributeTag>() {
+					AttributeTag element(int index) { return attributes.tagAt(index); }
+				};
+			}
+			public int size() { return attributes.size(); }
+			public boolean contains(Object o) { return o instanceof AttributeTag && containsKey(o); }
+			public boolean remove(Object o) { return o instanceof AttributeTag && AttributeList.this.remove(o) != null; }
+			public void clear() { AttributeList.this.clear(); }
+		};
+	}
+
+	public Collection<Attribute> values() {
+		return new AbstractCollection<Attribute>() {
+			public Iterator<Attribute> iterator() {
+				return new StorageIterator<Attribute>() {
+					Attribute element(int index) { return attributes.valueAt(index); }
+				};
+			}
+			public int size() { return attributes.size(); }
+			public boolean contains(Object o) { return containsValue(o); }
+			public void clear() { AttributeList.this.clear(); }
+		};
+	}
+
+	public Set<Map.Entry<AttributeTag,Attribute>> entrySet() {
+		return new AbstractSet<Map.Entry<AttributeTag,Attribute>>() {
+			public Iterator<Map.Entry<AttributeTag,Attribute>> iterator() {
+				return new StorageIterator<Map.Entry<AttributeTag,Attribute>>() {
+					Map.Entry<AttributeTag,Attribute> element(int index) { return new StorageEntry(attributes.tagAt(index),attributes.valueAt(index)); }
+				};
+			}
+			public int size() { return attributes.size(); }
+			public void clear() { AttributeList.this.clear(); }
+		};
+	}
+
+	public Comparator<? super AttributeTag> comparator() {
+		return null;
+	}
+
+	private Map.Entry<AttributeTag,Attribute> entryAt(int index) {
+		return index >= 0 && index < attributes.size()
+			? new AbstractMap.SimpleImmutableEntry<AttributeTag,Attribute>(attributes.tagAt(index),attributes.valueAt(index))
+			: null;
+	}
+
+	private static AttributeTag keyOf(Map.Entry<AttributeTag,Attribute> entry) {
+		return entry == null ? null : entry.getKey();
+	}
+
+	private int indexOf(AttributeTag t) {
+		return attributes.indexOf(SortedAttributeArray.key(t));
+	}
+
+	public Map.Entry<AttributeTag,Attribute> firstEntry() {
+		return entryAt(0);
+	}
+
+	public Map.Entry<AttributeTag,Attribute> lastEntry() {
+		return entryAt(attributes.size()-1);
+	}
+
+	public AttributeTag firstKey() {
+		if (attributes.size() == 0) {
+			throw new NoSuchElementException();
+		}
+		return attributes.tagAt(0);
+	}
+
+	public AttributeTag lastKey() {
+		if (attributes.size() == 0) {
+			throw new NoSuchElementException();
+		}
+		return attributes.tagAt(attributes.size()-1);
+	}
+
+	public Map.Entry<AttributeTag,Attribute> pollFirstEntry() {
+		Map.Entry<AttributeTag,Attribute> entry = firstEntry();
+		if (entry != null) {
+			attributes.removeAt(0);
+		}
+		return entry;
+	}
+
+	public Map.Entry<AttributeTag,Attribute> pollLastEntry() {
+		Map.Entry<AttributeTag,Attribute> entry = lastEntry();
+		if (entry != null) {
+			attributes.removeAt(attributes.size()-1);
+		}
+		return entry;
+	}
+
+	public Map.Entry<AttributeTag,Attribute> lowerEntry(AttributeTag t) {
+		int index = indexOf(t);
+		return entryAt(index >= 0 ? index-1 : -index-2);
+	}
+
+	public Map.Entry<AttributeTag,Attribute> floorEntry(AttributeTag t) {
+		int index = indexOf(t);
+		return entryAt(index >= 0 ? index : -index-2);
+	}
+
+	public Map.Entry<AttributeTag,Attribute> ceilingEntry(AttributeTag t) {
+		int index = indexOf(t);
+		return entryAt(index >= 0 ? index : -index-1);
+	}
+
+	public Map.Entry<AttributeTag,Attribute> higherEntry(AttributeTag t) {
+		int index = indexOf(t);
+		return entryAt(index >= 0 ? index+1 : -index-1);
+	}
+
+	public AttributeTag lowerKey(AttributeTag t) {
+		return keyOf(lowerEntry(t));
+	}
+
+	public AttributeTag floorKey(AttributeTag t) {
+		return keyOf(floorEntry(t));
+	}
+
+	public AttributeTag ceilingKey(AttributeTag t) {
+		return keyOf(ceilingEntry(t));
+	}
+
+	public AttributeTag higherKey(AttributeTag t) {
+		return keyOf(higherEntry(t));
+	}
+
+	/**
+	 * @return	a copy of the list as an ordinary tree, for the view methods of NavigableMap
+	 */
+	private TreeMap<AttributeTag,Attribute> copyToTreeMap() {
+		TreeMap<AttributeTag,Attribute> map = new TreeMap<AttributeTag,Attribute>();
+		for (int index=0; index<attributes.size(); ++index) {
+			map.put(attributes.tagAt(index),attributes.valueAt(index));
+		}
+		return map;
+	}
+
+	public NavigableSet<AttributeTag> navigableKeySet() {
+		return Collections.unmodifiableNavigableSet(copyToTreeMap().navigableKeySet());
+	}
+
+	public NavigableSet<AttributeTag> descendingKeySet() {
+		return Collections.unmodifiableNavigableSet(copyToTreeMap().descendingKeySet());
+	}
+
+	public NavigableMap<AttributeTag,Attribute> descendingMap() {
+		return Collections.unmodifiableNavigableMap(copyToTreeMap().descendingMap());
+	}
+
+	public NavigableMap<AttributeTag,Attribute> subMap(AttributeTag fromKey,boolean fromInclusive,AttributeTag toKey,boolean toInclusive) {
+		return Collections.unmodifiableNavigableMap(copyToTreeMap().subMap(fromKey,fromInclusive,toKey,toInclusive));
+	}
+
+	public NavigableMap<AttributeTag,Attribute> headMap(AttributeTag toKey,boolean inclusive) {
+		return Collections.unmodifiableNavigableMap(copyToTreeMap().headMap(toKey,inclusive));
+	}
+
+	public NavigableMap<AttributeTag,Attribute> tailMap(AttributeTag fromKey,boolean inclusive) {
+		return Collections.unmodifiableNavigableMap(copyToTreeMap().tailMap(fromKey,inclusive));
+	}
+
+	public SortedMap<AttributeTag,Attribute> subMap(AttributeTag fromKey,AttributeTag toKey) {
+		return subMap(fromKey,true,toKey,false);
+	}
+
+	public SortedMap<AttributeTag,Attribute> headMap(AttributeTag toKey) {
+		return headMap(toKey,false);
+	}
+
+	public SortedMap<AttributeTag,Attribute> tailMap(AttributeTag fromKey) {
+		return tailMap(fromKey,true);
+	}
+
+	/**
+	 * <p>A shallow copy of the list; the attributes themselves are not cloned.</p>
+	 *
+	 * @return	the copy
+	 */
+	public Object clone() {
+		AttributeList clone = (AttributeList)(super.clone());
+		clone.attributes = attributes.copy();
+		return clone;
 	}
 
 	
@@ -2375,7 +2824,7 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 				throw new DicomException("Could not create attribute for tag "+t);
 			}
 			else {
-				super.put(t,a);
+				put(t,a);
 			}
 		}
 		return a;
@@ -2694,6 +3143,8 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 	 *
 	 * <p>If the pixel data was or will be decompressed, if JPEG (not RLE) change the PlanarConfiguration to 0 if not already (i.e., color-by-pixel not color-by-plane).</p>
 	 *
+	 * <p>If the pixel data was or will be decompressed, remove any Extended Offset Table, since it describes the compressed fragments.</p>
+	 *
 	 * <p>Does nothing (is harmless) if the input was not (or will not be) decompressed or is not multi-component.</p>
 	 *
 	 * <p>Recurses into sequences in case there is icon pixel data that was also (or will be) decompressed.</p>
@@ -2716,6 +3167,10 @@ public class AttributeList extends TreeMap<AttributeTag,Attribute> {
 				{ Attribute a = new UnsignedShortAttribute(TagFromName.PlanarConfiguration); a.addValue(0); put(a); }	// output of JIIO codecs is always interleaved (?) regardless of old header, but not RLE
 			}
 		}
+		if (pixelDataWasActuallyDecompressed || deferredDecompression) {
+			remove(EncapsulatedFrameIndex.ExtendedOffsetTable);			// offsets into the compressed fragments no longer apply
+			remove(EncapsulatedFrameIndex.ExtendedOffsetTableLengths);
+		}
 		Iterator<Attribute> it = values().iterator();
 		while (it.hasNext()) {
 			Attribute a = it.next();
@@ -12,6 +12,10 @@ package com.pixelmed.dicom;
  * <p>Safe to use in hashed collections such as {@link java.util.Hashtable Hashtable} and {@link java.util.HashMap HashMap}
  * (i.e. it takes care to implement {@link java.lang.Object#hashCode() hashCode()} and {@link java.lang.Object#equals(Object) equals()} consistently).</p>
  * 
+ * <p>Instances are immutable. The {@link #valueOf(int,int) valueOf()} method returns the shared instance from
+ * {@link com.pixelmed.dicom.TagFromName TagFromName} for standard tags rather than allocating a new one, and is used
+ * when parsing, so that most tags in a parsed list are shared and compare equal by identity.</p>
+ * 
  * @author	dclunie
  */
 public class AttributeTag implements Comparable {
@@ -20,9 +24,81 @@ public class AttributeTag implements Comparable {
 	private static final String identString = "@(#) $Header: /userland/cvs/pixelmed/imgbook/com/pixelmed/dicom/AttributeTag.java,v 1.22 2017/01/24 10:50:35 dclunie Exp $";
 
 	/***/
-	private int group;
+	private final int group;
 	/***/
-	private int element;
+	private final int element;
+
+	/**
+	 * <p>An open addressing table of the standard tags in {@link com.pixelmed.dicom.TagFromName TagFromName}, indexed by the 32 bit tag value.</p>
+	 *
+	 * <p>In a holder class so that it is only built when first used.</p>
+	 */
+	private static final class StandardTags {
+		private static final int[] keys;
+		private static final AttributeTag[] tags;
+		private static final int mask;
+
+		static {
+			java.util.List<AttributeTag> standard = new java.util.ArrayList<AttributeTag>();
+			for (java.lang.reflect.Field field : TagFromName.class.getFields()) {
+				if (field.getType() == AttributeTag.class && java.lang.reflect.Modifier.isStatic(field.getModifiers())) {
+					try {
+						AttributeTag tag = (AttributeTag)(field.get(null));
+						if (tag != null) {
+							standard.add(tag);
+						}
+					}
+					catch (IllegalAccessException e) {
+						// public field, cannot happen
+					}
+				}
+			}
+			int capacity = Integer.highestOneBit(Math.max(standard.size(),1)*2)*2;		// load factor no more than 0.5
+			keys = new int[capacity];
+			tags = new AttributeTag[capacity];
+			mask = capacity-1;
+			for (AttributeTag tag : standard) {
+				int key = tag.hashCode();
+				int index = index(key);
+				while (tags[index] != null && keys[index] != key) {
+					index = (index+1) & mask;
+				}
+				if (tags[index] == null) {		// first constant wins for the same tag under two names
+					keys[index] = key;
+					tags[index] = tag;
+				}
+			}
+		}
+
+		private static int index(int key) {
+			return (key * 0x9E3779B9) >>> 16 & mask;
+		}
+
+		static AttributeTag get(int group,int element) {
+			int key = (group<<16)+(element&0xffff);
+			int index = index(key);
+			AttributeTag tag;
+			while ((tag = tags[index]) != null) {
+				if (keys[index] == key && tag.group == group && tag.element == element) {
+					return tag;
+				}
+				index = (index+1) & mask;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * <p>Get a DICOM data element (attribute) tag, shared if it is a standard tag.</p>
+	 *
+	 * @param	group	the 16 bit unsigned binary group
+	 * @param	element	the 16 bit unsigned binary element
+	 * @return			the instance from {@link com.pixelmed.dicom.TagFromName TagFromName} if a standard tag, else a new tag
+	 */
+	public static AttributeTag valueOf(int group,int element) {
+		AttributeTag tag = StandardTags.get(group,element);
+		return tag == null ? new AttributeTag(group,element) : tag;
+	}
 
 	/**
 	 * <p>Construct a DICOM data element (attribute) tag.</p>
@@ -223,7 +299,7 @@ public class AttributeTag implements Comparable {
 	 */
 	public boolean equals(Object o) {
 //System.err.println("AttributeTag.equals: "+this+" vs. "+(AttributeTag)o+" = "+(group == ((AttributeTag)o).getGroup() && element == ((AttributeTag)o).getElement()));
-		return group == ((AttributeTag)o).group && element == ((AttributeTag)o).element;
+		return this == o || group == ((AttributeTag)o).group && element == ((AttributeTag)o).element;
 	}
 
 	/**
@@ -196,7 +196,7 @@ public class AttributeTreeRecord implements Comparable, TreeNode {
 	 * @param	d	dictionary for looking up the name
 	 */
 	public AttributeTreeRecord(AttributeTreeRecord p,Attribute a,DicomDictionary d) {
-		dictionary = (d == null) ? new DicomDictionary() : d;
+		dictionary = (d == null) ? AttributeList.getDictionary() : d;
 		parent=p;
 		attribute=a;
 		sortByName=true;
@@ -4,6 +4,14 @@ package com.pixelmed.dicom;
 
 import java.io.*;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
 import java.util.Date;	// for test timing of routines
 
 /**
@@ -11,6 +19,9 @@ import java.util.Date;	// for test timing of routines
  * the concept of little and big endian binary value encoding, and supplies functions
  * for reading various sized integer and floating point words.</p>
  *
+ * <p>If the underlying stream is a {@link com.pixelmed.dicom.MappedFileInputStream MappedFileInputStream},
+ * values are decoded directly from the mapped file, and the stream can {@link #seek(long) seek}.</p>
+ *
  * @see com.pixelmed.dicom.BinaryOutputStream
  *
  * @author	dclunie
@@ -26,8 +37,12 @@ public class BinaryInputStream extends FilterInputStream {
 	byte buffer[];
 	/**/
 	File file;
+	/***/
+	MappedFileInputStream mapped;
+	/***/
+	private byte[] bulkBuffer;
 	
-	private static final int BYTE_BUFFER_SIZE = 32768;
+	private static final int BYTE_BUFFER_SIZE = 32768;	// must be a multiple of the largest unit read in bulk, 16 for complex double
 
 	/**
 	 * @param	big
@@ -62,7 +77,13 @@ public class BinaryInputStream extends FilterInputStream {
 	 */
 	public BinaryInputStream(InputStream i,boolean big) {
 		super(i);
-		this.file=null;
+		if (i instanceof MappedFileInputStream) {
+			mapped=(MappedFileInputStream)i;
+			this.file=mapped.getFile();
+		}
+		else {
+			this.file=null;
+		}
 		localInit(big);
 	}
 
@@ -82,6 +103,41 @@ public class BinaryInputStream extends FilterInputStream {
 	 */
 	public void setFile(File file) { this.file=file; }
 
+	/**
+	 * <p>Can the stream seek ?</p>
+	 *
+	 * @return	true if reading from a {@link com.pixelmed.dicom.MappedFileInputStream MappedFileInputStream}
+	 */
+	public boolean isSeekable() { return mapped != null; }
+
+	/**
+	 * <p>Get the position in the underlying file.</p>
+	 *
+	 * @return				the byte offset from the start of the file of the next byte to be read
+	 * @throws	IOException	if the stream cannot seek
+	 */
+	public long getPosition() throws IOException {
+		if (mapped == null) {
+			throw new IOException("Stream is not seekable");
+		}
+		return mapped.getPosition();
+	}
+
+	/**
+	 * <p>Position the stream at a byte offset in the underlying file.</p>
+	 *
+	 * <p>Any byte offset tracked by the caller, such as during parsing, is not adjusted.</p>
+	 *
+	 * @param	position	the byte offset from the start of the file of the next byte to be read
+	 * @throws	IOException	if the stream cannot seek, or the position is outside the file
+	 */
+	public void seek(long position) throws IOException {
+		if (mapped == null) {
+			throw new IOException("Stream is not seekable");
+		}
+		mapped.seek(position);
+	}
+
 	/**
 	 * <p>Is the stream byte order big endian ?</p>
 	 *
@@ -219,6 +275,10 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final int readUnsigned8() throws IOException {
+		if (mapped != null) {
+			int index = mapped.reserve(1);
+			return mapped.window(bigEndian).get(index)&0xff;
+		}
 		readInsistently(buffer,0,1);
 		return extractUnsigned8();
 	}
@@ -230,6 +290,10 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final int readUnsigned16() throws IOException {
+		if (mapped != null) {
+			int index = mapped.reserve(2);
+			return mapped.window(bigEndian).getShort(index)&0xffff;
+		}
 		readInsistently(buffer,0,2);
 		return extractUnsigned16();
 
@@ -242,6 +306,10 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final int readSigned16() throws IOException {
+		if (mapped != null) {
+			int index = mapped.reserve(2);
+			return mapped.window(bigEndian).getShort(index);
+		}
 		readInsistently(buffer,0,2);
 		return extractSigned16();
 
@@ -254,6 +322,10 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final long readUnsigned32() throws IOException {
+		if (mapped != null) {
+			int index = mapped.reserve(4);
+			return mapped.window(bigEndian).getInt(index)&0xffffffffl;
+		}
 		readInsistently(buffer,0,4);
 		return extractUnsigned32();
 	}
@@ -265,6 +337,10 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final int readSigned32() throws IOException {
+		if (mapped != null) {
+			int index = mapped.reserve(4);
+			return mapped.window(bigEndian).getInt(index);
+		}
 		readInsistently(buffer,0,4);
 		return extractSigned32();
 	}
@@ -276,6 +352,10 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final float readFloat() throws IOException {
+		if (mapped != null) {
+			int index = mapped.reserve(4);
+			return mapped.window(bigEndian).getFloat(index);
+		}
 		readInsistently(buffer,0,4);
 		int binary = (int)(extractUnsigned32());
 		return Float.intBitsToFloat(binary);
@@ -288,11 +368,38 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final double readDouble() throws IOException {
+		if (mapped != null) {
+			int index = mapped.reserve(8);
+			return mapped.window(bigEndian).getDouble(index);
+		}
 		readInsistently(buffer,0,8);
 		long binary = extractUnsigned64();
 		return Double.longBitsToDouble(binary);
 	}
 
+	/**
+	 * <p>Get the next chunk of bulk data, in the stream byte order.</p>
+	 *
+	 * <p>Directly from the mapped file if reading from a {@link com.pixelmed.dicom.MappedFileInputStream MappedFileInputStream},
+	 * otherwise read into a buffer that is reused by every bulk read of this stream.</p>
+	 *
+	 * @param	bytesRemaining	the number of bytes still to be read
+	 * @param	unit			the size of the values being read, the chunk is a multiple of this size
+	 * @return					a buffer with at least unit bytes remaining
+	 * @throws	IOException		if an I/O error occurs
+	 */
+	private ByteBuffer nextChunk(long bytesRemaining,int unit) throws IOException {
+		if (mapped != null) {
+			return mapped.view(bytesRemaining,unit,bigEndian);
+		}
+		if (bulkBuffer == null) {
+			bulkBuffer = new byte[BYTE_BUFFER_SIZE];
+		}
+		int bytesToRead = (int)Math.min(bulkBuffer.length,bytesRemaining);		// BYTE_BUFFER_SIZE is a multiple of all units
+		readInsistently(bulkBuffer,0,bytesToRead);
+		return ByteBuffer.wrap(bulkBuffer,0,bytesToRead).order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+	}
+
 	/**
 	 * <p>Read an array of unsigned integer 16 bit values.</p>
 	 *
@@ -313,41 +420,16 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final void readUnsigned16(short[] w,int offset,int len) throws IOException {
-//long starttime=new Date().getTime();
-		//for (int i=offset; i<len; ++i) w[i]=(short)readUnsigned16();	// naive approach is four times slower :(
-		
 		// allocating and reading all bytes into byte[] runs into int length limit twice as early (as well as transiently requiring ludicrous amount of memory) (000774)
-		// compromise by reading in blocks ... this actually turns out to be another four times faster than reading entire byte array
-		
-		byte[] byteBuffer = new byte[BYTE_BUFFER_SIZE];
-		int shortsRemaining = len;
+		// compromise by reading in blocks, decoded through a typed view in the stream byte order rather than reassembling each value from bytes
 		long bytesRemaining = ((long)len) * 2;
-		while (shortsRemaining > 0) {
-			int bytesToRead = byteBuffer.length;
-			if (bytesRemaining < bytesToRead) {
-				bytesToRead = (int)bytesRemaining;
-			}
-			readInsistently(byteBuffer,0,bytesToRead);
-
-			{
-				int bcount=0;
-				if (bigEndian) {
-					while (bcount<bytesToRead) {
-						w[offset++]=(short)((byteBuffer[bcount++]<<8) + (byteBuffer[bcount++]&0xff));	// assumes left to right evaluation
-					}
-				}
-				else {
-					while (bcount<bytesToRead) {
-						w[offset++]=(short)((byteBuffer[bcount++]&0xff) + (byteBuffer[bcount++]<<8));	// assumes left to right evaluation
-					}
-				}
-			}
-
-			bytesRemaining-=bytesToRead;
-			shortsRemaining-=(bytesToRead/2);
+		while (bytesRemaining > 0) {
+			ShortBuffer values = nextChunk(bytesRemaining,2).asShortBuffer();
+			int count = values.remaining();
+			values.get(w,offset,count);
+			offset+=count;
+			bytesRemaining-=((long)count)*2;
 		}
-		
-//System.err.println("readUnsigned16: exit at: "+(new Date().getTime()-starttime)+" ms");
 	}
 
 
@@ -371,41 +453,33 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final void readUnsigned32(int[] w,int offset,int len) throws IOException {
-//long starttime=new Date().getTime();
-		//for (int i=offset; i<len; ++i) w[i]=(short)readUnsigned32();	// naive approach is slower :(
-		
-		// allocating and reading all bytes into byte[] runs into int length limit four times as early (as well as transiently requiring ludicrous amount of memory)
-		// compromise by reading in blocks ... this actually turns out to be yet faster than reading entire byte array
-		
-		byte[] byteBuffer = new byte[BYTE_BUFFER_SIZE];
-		int shortsRemaining = len;
 		long bytesRemaining = ((long)len) * 4;
-		while (shortsRemaining > 0) {
-			int bytesToRead = byteBuffer.length;
-			if (bytesRemaining < bytesToRead) {
-				bytesToRead = (int)bytesRemaining;
-			}
-			readInsistently(byteBuffer,0,bytesToRead);
-
-			{
-				int bcount=0;
-				if (bigEndian) {
-					while (bcount<bytesToRead) {
-						w[offset++]=((byteBuffer[bcount++]<<24)&0xff000000) + ((byteBuffer[bcount++]<<16)&0x00ff0000) + ((byteBuffer[bcount++]<<8)&0x0000ff00) + (byteBuffer[bcount++]&0xff);	// assumes left to right evaluation
-					}
-				}
-				else {
-					while (bcount<bytesToRead) {
-						w[offset++]=(byteBuffer[bcount++]&0xff) + ((byteBuffer[bcount++]<<8)&0x0000ff00) + ((byteBuffer[bcount++]<<16)&0x00ff0000) + ((byteBuffer[bcount++]<<24)&0xff000000);	// assumes left to right evaluation
-					}
-				}
-			}
-
-			bytesRemaining-=bytesToRead;
-			shortsRemaining-=(bytesToRead/2);
+		while (bytesRemaining > 0) {
+			IntBuffer values = nextChunk(bytesRemaining,4).asIntBuffer();
+			int count = values.remaining();
+			values.get(w,offset,count);
+			offset+=count;
+			bytesRemaining-=((long)count)*4;
+		}
+	}
+	
+	/**
+	 * <p>Read an array of unsigned integer 64 bit values.</p>
+	 *
+	 * @param	w		an array of sufficient size in which to return the values read
+	 * @param	len		the number of 64 bit values to read
+	 * @throws	IOException	if an I/O error occurs
+	 */
+	public final void readUnsigned64(long[] w,int len) throws IOException {
+		int offset = 0;
+		long bytesRemaining = ((long)len) * 8;
+		while (bytesRemaining > 0) {
+			LongBuffer values = nextChunk(bytesRemaining,8).asLongBuffer();
+			int count = values.remaining();
+			values.get(w,offset,count);
+			offset+=count;
+			bytesRemaining-=((long)count)*8;
 		}
-		
-//System.err.println("readUnsigned32: exit at: "+(new Date().getTime()-starttime)+" ms");
 	}
 	
 	/**
@@ -416,7 +490,15 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final void readFloat(float[] f,int len) throws IOException {
-		for (int i=0; i<len; ++i) f[i]=readFloat();
+		int offset = 0;
+		long bytesRemaining = ((long)len) * 4;
+		while (bytesRemaining > 0) {
+			FloatBuffer values = nextChunk(bytesRemaining,4).asFloatBuffer();
+			int count = values.remaining();
+			values.get(f,offset,count);
+			offset+=count;
+			bytesRemaining-=((long)count)*4;
+		}
 	}
 
 	/**
@@ -428,11 +510,18 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final void readComplexFloat(float[] freal,float[] fimaginary,int len) throws IOException {
-		for (int i=0; i<len; ++i) {
-			float vreal=readFloat();
-			float vimaginary=readFloat();
-			if (freal != null) freal[i]=vreal;
-			if (fimaginary != null) fimaginary[i]=vimaginary;
+		int i = 0;
+		long bytesRemaining = ((long)len) * 8;
+		while (bytesRemaining > 0) {
+			FloatBuffer values = nextChunk(bytesRemaining,8).asFloatBuffer();
+			int count = values.remaining()/2;
+			for (int j=0; j<count; ++j,++i) {
+				float vreal=values.get();
+				float vimaginary=values.get();
+				if (freal != null) freal[i]=vreal;
+				if (fimaginary != null) fimaginary[i]=vimaginary;
+			}
+			bytesRemaining-=((long)count)*8;
 		}
 	}
 
@@ -444,7 +533,15 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final void readDouble(double[] f,int len) throws IOException {
-		for (int i=0; i<len; ++i) f[i]=readDouble();
+		int offset = 0;
+		long bytesRemaining = ((long)len) * 8;
+		while (bytesRemaining > 0) {
+			DoubleBuffer values = nextChunk(bytesRemaining,8).asDoubleBuffer();
+			int count = values.remaining();
+			values.get(f,offset,count);
+			offset+=count;
+			bytesRemaining-=((long)count)*8;
+		}
 	}
 
 	/**
@@ -456,11 +553,18 @@ public class BinaryInputStream extends FilterInputStream {
 	 * @throws	IOException	if an I/O error occurs
 	 */
 	public final void readComplexDouble(double[] freal,double[] fimaginary,int len) throws IOException {
-		for (int i=0; i<len; ++i) {
-			double vreal=readDouble();
-			double vimaginary=readDouble();
-			if (freal != null) freal[i]=vreal;
-			if (fimaginary != null) fimaginary[i]=vimaginary;
+		int i = 0;
+		long bytesRemaining = ((long)len) * 16;
+		while (bytesRemaining > 0) {
+			DoubleBuffer values = nextChunk(bytesRemaining,16).asDoubleBuffer();
+			int count = values.remaining()/2;
+			for (int j=0; j<count; ++j,++i) {
+				double vreal=values.get();
+				double vimaginary=values.get();
+				if (freal != null) freal[i]=vreal;
+				if (fimaginary != null) fimaginary[i]=vimaginary;
+			}
+			bytesRemaining-=((long)count)*16;
 		}
 	}
 
@@ -294,6 +294,17 @@ public class BinaryOutputStream extends FilterOutputStream {
 		write(buffer,0,4);
 	}
 	
+	/**
+	 * <p>Write one unsigned integer 64 bit value.</p>
+	 *
+	 * @param	v		a long containing an unsigned value
+	 * @throws	IOException	if an I/O error occurs
+	 */
+	public final void writeUnsigned64(long v) throws IOException {
+		insertUnsigned64(v);
+		write(buffer,0,8);
+	}
+	
 	/**
 	 * <p>Write one floating point 32 bit value.</p>
 	 *
@@ -403,6 +414,17 @@ public class BinaryOutputStream extends FilterOutputStream {
 		for (int i=0; i<len; ++i) writeFloat(f[i]);
 	}
 
+	/**
+	 * <p>Write an array of unsigned integer 64 bit values.</p>
+	 *
+	 * @param	w		an array of longs to write
+	 * @param	len		the number of values to write
+	 * @throws	IOException	if an I/O error occurs
+	 */
+	public final void writeUnsigned64(long[] w,int len) throws IOException {
+		for (int i=0; i<len; ++i) writeUnsigned64(w[i]);
+	}
+
 	/**
 	 * <p>Write an array of floating point 64 bit values.</p>
 	 *
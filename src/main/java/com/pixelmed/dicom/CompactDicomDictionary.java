@@ -0,0 +1,491 @@
+package com.pixelmed.dicom;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.URL;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import com.pixelmed.slf4j.Logger;
+import com.pixelmed.slf4j.LoggerFactory;
+
+/**
+ * <p>The standard dictionary of {@link com.pixelmed.dicom.DicomDictionary DicomDictionary}, held as a compact precomputed
+ * binary image rather than as maps filled when the dictionary is constructed.</p>
+ *
+ * <p>The image is a sorted array of tags packed into ints, with parallel arrays of value representations, information entities
+ * and indexes into a table of the distinct names and full names, which are decoded only when first asked for. It is read from
+ * the resource <code>DicomDictionary.dat</code> alongside this class, memory mapped if the resource is a file, and otherwise
+ * built in memory from {@link com.pixelmed.dicom.DicomDictionary DicomDictionary}, so a missing image only costs time.</p>
+ *
+ * <p>There is one shared instance, which is what {@link com.pixelmed.dicom.AttributeList#getDictionary() AttributeList.getDictionary()}
+ * returns. The image must be regenerated whenever {@link com.pixelmed.dicom.DicomDictionary DicomDictionary} is:</p>
+ *
+ * <pre>
+ * java -cp pixelmed.jar com.pixelmed.dicom.CompactDicomDictionary src/main/resources/com/pixelmed/dicom/DicomDictionary.dat
+ * </pre>
+ *
+ * <p>The protected maps of {@link com.pixelmed.dicom.DicomDictionaryBase DicomDictionaryBase} are not populated, so this class
+ * cannot be extended to add or restrict entries; extend {@link com.pixelmed.dicom.DicomDictionary DicomDictionary} for that.</p>
+ */
+public final class CompactDicomDictionary extends DicomDictionary {
+
+	private static final Logger slf4jlogger = LoggerFactory.getLogger(CompactDicomDictionary.class);
+
+	private static final String IMAGE_RESOURCE = "DicomDictionary.dat";
+
+	private static final int MAGIC = 0x50584444;	// "PXDD"
+	private static final int VERSION = 1;
+
+	private static final int IN_TAG_LIST = 0x80;	// flag in the information entity byte
+
+	private static final InformationEntity[] informationEntities = {
+		null,
+		InformationEntity.PATIENT,
+		InformationEntity.STUDY,
+		InformationEntity.PROCEDURESTEP,
+		InformationEntity.SERIES,
+		InformationEntity.CONCATENATION,
+		InformationEntity.INSTANCE,
+		InformationEntity.FRAME
+	};
+
+	private static final byte[][] valueRepresentations = new byte[26*26][];
+
+	private static class Holder {
+		static final CompactDicomDictionary instance = new CompactDicomDictionary();
+	}
+
+	/**
+	 * <p>Get the shared instance, loading the image on first use.</p>
+	 *
+	 * @return	the dictionary
+	 */
+	public static CompactDicomDictionary getInstance() {
+		return Holder.instance;
+	}
+
+	private int[] keys;					// packed as for SortedAttributeArray, so ascending signed order is tag order
+	private short[] vrCodes;			// first byte in the upper 8 bits, 0 if none
+	private byte[] informationEntityCodes;	// index into informationEntities, plus IN_TAG_LIST
+	private int[] nameIndexes;			// into the string table, -1 if none
+	private int[] fullNameIndexes;		// into the string table, -1 if none
+	private int[] namesInOrder;			// string table indexes of the names in tagByName, sorted by name
+	private int[] tagsOfNamesInOrder;	// packed tags parallel to namesInOrder
+	private int tagListSize;
+
+	private ByteBuffer image;			// retained for the string data
+	private int[] stringOffsets;		// into image, with one extra for the end of the last string
+	private String[] strings;			// decoded as needed
+
+	private CompactDicomDictionary() {
+		super();		// calls our create methods, which do nothing
+		ByteBuffer b = null;
+		try {
+			b = loadImage();
+		}
+		catch (IOException e) {
+			slf4jlogger.warn("Could not load dictionary image, building it instead",e);
+		}
+		if (b == null || !parseImage(b)) {
+			slf4jlogger.debug("Building dictionary image from DicomDictionary");
+			parseImage(ByteBuffer.wrap(createImage(new DicomDictionary())));
+		}
+	}
+
+	protected void createTagList() {}
+	protected void createValueRepresentationsByTag() {}
+	protected void createInformationEntityByTag() {}
+	protected void createTagByName() {}
+	protected void createNameByTag() {}
+	protected void createFullNameByTag() {}
+
+	/**
+	 * @return	the image, or null if there is no such resource
+	 * @throws	IOException	if the resource cannot be read
+	 */
+	private static ByteBuffer loadImage() throws IOException {
+		URL url = CompactDicomDictionary.class.getResource(IMAGE_RESOURCE);
+		if (url == null) {
+			return null;
+		}
+		if ("file".equals(url.getProtocol())) {
+			try (FileChannel channel = FileChannel.open(Paths.get(url.toURI()),StandardOpenOption.READ)) {
+				return channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());	// mapping remains valid after the channel is closed
+			}
+			catch (java.net.URISyntaxException e) {
+				// fall through and read as a stream
+			}
+		}
+		try (InputStream in = url.openStream()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(1<<18);
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				out.write(buffer,0,count);
+			}
+			return ByteBuffer.wrap(out.toByteArray());
+		}
+	}
+
+	/**
+	 * <p>Copy the tag, value representation and information entity arrays out of the image, which are needed for every
+	 * attribute read, and keep the image for the strings.</p>
+	 *
+	 * @param	b	the image
+	 * @return		false if the image is not one that this version can read
+	 */
+	private boolean parseImage(ByteBuffer b) {
+		try {
+			if (b.getInt() != MAGIC || b.getInt() != VERSION) {
+				slf4jlogger.warn("Dictionary image is not a supported version");
+				return false;
+			}
+			int n = b.getInt();
+			tagListSize = b.getInt();
+			keys = new int[n];
+			b.asIntBuffer().get(keys);
+			b.position(b.position() + 4*n);
+			vrCodes = new short[n];
+			b.asShortBuffer().get(vrCodes);
+			b.position(b.position() + 2*n);
+			informationEntityCodes = new byte[n];
+			b.get(informationEntityCodes);
+			nameIndexes = new int[n];
+			b.asIntBuffer().get(nameIndexes);
+			b.position(b.position() + 4*n);
+			fullNameIndexes = new int[n];
+			b.asIntBuffer().get(fullNameIndexes);
+			b.position(b.position() + 4*n);
+			int c = b.getInt();
+			namesInOrder = new int[c];
+			b.asIntBuffer().get(namesInOrder);
+			b.position(b.position() + 4*c);
+			tagsOfNamesInOrder = new int[c];
+			b.asIntBuffer().get(tagsOfNamesInOrder);
+			b.position(b.position() + 4*c);
+			int m = b.getInt();
+			stringOffsets = new int[m+1];
+			b.asIntBuffer().get(stringOffsets);
+			b.position(b.position() + 4*(m+1));
+			int stringDataStart = b.position();
+			for (int i=0; i<=m; ++i) {
+				stringOffsets[i] += stringDataStart;
+			}
+			if (stringOffsets[m] != b.limit()) {
+				slf4jlogger.warn("Dictionary image is truncated");
+				return false;
+			}
+			strings = new String[m];
+			image = b;
+			return true;
+		}
+		catch (RuntimeException e) {	// e.g., BufferUnderflowException from a truncated image
+			slf4jlogger.warn("Dictionary image is not valid",e);
+			return false;
+		}
+	}
+
+	/**
+	 * @param	index	into the string table, or -1
+	 * @return			the string, or null if index is -1
+	 */
+	private String getString(int index) {
+		if (index < 0) {
+			return null;
+		}
+		String s = strings[index];
+		if (s == null) {
+			int offset = stringOffsets[index];
+			byte[] bytes = new byte[stringOffsets[index+1]-offset];
+			for (int i=0; i<bytes.length; ++i) {
+				bytes[i] = image.get(offset+i);
+			}
+			s = new String(bytes,StandardCharsets.UTF_8);
+			strings[index] = s;		// benign race, any thread decodes an equal string
+		}
+		return s;
+	}
+
+	/**
+	 * @param	tag	the tag
+	 * @return		the index of the entry, or -1 if none
+	 */
+	private int indexOf(AttributeTag tag) {
+		int index = Arrays.binarySearch(keys,SortedAttributeArray.key(tag));
+		return index >= 0 ? index : -1;
+	}
+
+	private static byte[] getValueRepresentation(short code) {
+		int first = (code>>8) & 0xff;
+		int second = code & 0xff;
+		if (first >= 'A' && first <= 'Z' && second >= 'A' && second <= 'Z') {
+			int i = (first-'A')*26 + (second-'A');
+			byte[] vr = valueRepresentations[i];
+			if (vr == null) {
+				vr = new byte[] { (byte)first, (byte)second };
+				valueRepresentations[i] = vr;		// benign race
+			}
+			return vr;
+		}
+		return new byte[] { (byte)first, (byte)second };
+	}
+
+	/**
+	 * @param	tag	the tag
+	 * @return		the value representation, or null if none
+	 */
+	private byte[] getValueRepresentationFromTagWithoutRepeatingGroup(AttributeTag tag) {
+		int index = indexOf(tag);
+		return index >= 0 && vrCodes[index] != 0 ? getValueRepresentation(vrCodes[index]) : null;
+	}
+
+	public byte[] getValueRepresentationFromTag(AttributeTag tag) {
+		byte[] vr = getValueRepresentationFromTagWithoutRepeatingGroup(tag);
+		if (vr == null) {
+			if (tag.isRepeatingGroup()) {
+				vr = getValueRepresentationFromTagWithoutRepeatingGroup(tag.getTagWithRepeatingGroupBase());
+			}
+		}
+		return vr;
+	}
+
+	public InformationEntity getInformationEntityFromTag(AttributeTag tag) {
+		int index = indexOf(tag);
+		return index >= 0 ? informationEntities[informationEntityCodes[index] & (IN_TAG_LIST-1)] : null;
+	}
+
+	public AttributeTag getTagFromName(String name) {
+		if (name != null) {
+			int low = 0;
+			int high = namesInOrder.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int comparison = getString(namesInOrder[mid]).compareTo(name);
+				if (comparison < 0) {
+					low = mid + 1;
+				}
+				else if (comparison > 0) {
+					high = mid - 1;
+				}
+				else {
+					return SortedAttributeArray.tag(tagsOfNamesInOrder[mid]);
+				}
+			}
+		}
+		return null;
+	}
+
+	public String getNameFromTag(AttributeTag tag) {
+		int index = indexOf(tag);
+		return index >= 0 ? getString(nameIndexes[index]) : null;
+	}
+
+	public String getFullNameFromTag(AttributeTag tag) {
+		int index = indexOf(tag);
+		String fullName = index >= 0 ? getString(fullNameIndexes[index]) : null;
+		if (fullName == null || fullName.length() == 0) {
+			if (tag.isGroupLength()) {		// i.e., unless overridden by an actual dictionary entry
+				fullName="Group Length";
+			}
+			else if (tag.isRepeatingGroup()) {
+				index = indexOf(tag.getTagWithRepeatingGroupBase());
+				fullName = index >= 0 ? getString(fullNameIndexes[index]) : null;
+			}
+		}
+		return fullName;
+	}
+
+	public Iterator getTagIterator() {
+		return new Iterator<AttributeTag>() {
+			private int remaining = tagListSize;
+			private int next = advance(0);
+
+			private int advance(int index) {
+				while (index < keys.length && (informationEntityCodes[index] & IN_TAG_LIST) == 0) {
+					++index;
+				}
+				return index;
+			}
+
+			public boolean hasNext() {
+				return remaining > 0;
+			}
+
+			public AttributeTag next() {
+				if (remaining <= 0) {
+					throw new NoSuchElementException();
+				}
+				AttributeTag tag = SortedAttributeArray.tag(keys[next]);
+				next = advance(next+1);
+				--remaining;
+				return tag;
+			}
+		};
+	}
+
+	/**
+	 * <p>Create the binary image of a dictionary.</p>
+	 *
+	 * <p>Every tag that has any entry in the maps of the dictionary is included, not only those in its tag list.</p>
+	 *
+	 * @param	dictionary	a dictionary whose maps have been populated
+	 * @return				the image
+	 */
+	static byte[] createImage(DicomDictionaryBase dictionary) {
+		TreeSet<AttributeTag> tags = new TreeSet<AttributeTag>();
+		addAll(tags,dictionary.tagList);
+		addAll(tags,dictionary.valueRepresentationsByTag.keySet());
+		addAll(tags,dictionary.informationEntityByTag.keySet());
+		addAll(tags,dictionary.nameByTag.keySet());
+		addAll(tags,dictionary.fullNameByTag.keySet());
+
+		List<String> strings = new ArrayList<String>();
+		Map<String,Integer> stringIndexes = new HashMap<String,Integer>();
+
+		int n = tags.size();
+		int[] keys = new int[n];
+		short[] vrCodes = new short[n];
+		byte[] informationEntityCodes = new byte[n];
+		int[] nameIndexes = new int[n];
+		int[] fullNameIndexes = new int[n];
+		int i = 0;
+		for (AttributeTag tag : tags) {
+			keys[i] = SortedAttributeArray.key(tag);
+			byte[] vr = (byte[])dictionary.valueRepresentationsByTag.get(tag);
+			vrCodes[i] = vr == null ? 0 : (short)(((vr[0]&0xff)<<8) | (vr[1]&0xff));
+			InformationEntity ie = (InformationEntity)dictionary.informationEntityByTag.get(tag);
+			int code = 0;
+			if (ie != null) {
+				code = Arrays.asList(informationEntities).indexOf(ie);
+				if (code < 0) {
+					throw new IllegalArgumentException("Unrecognized information entity "+ie+" for "+tag);
+				}
+			}
+			if (dictionary.tagList.contains(tag)) {
+				code |= IN_TAG_LIST;
+			}
+			informationEntityCodes[i] = (byte)code;
+			nameIndexes[i] = intern((String)dictionary.nameByTag.get(tag),strings,stringIndexes);
+			fullNameIndexes[i] = intern((String)dictionary.fullNameByTag.get(tag),strings,stringIndexes);
+			++i;
+		}
+
+		List<Map.Entry> names = new ArrayList<Map.Entry>(dictionary.tagByName.entrySet());
+		names.sort(new Comparator<Map.Entry>() {
+			public int compare(Map.Entry e1,Map.Entry e2) {
+				return ((String)e1.getKey()).compareTo((String)e2.getKey());
+			}
+		});
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(1<<18);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(n);
+			out.writeInt(dictionary.tagList.size());
+			for (int key : keys) {
+				out.writeInt(key);
+			}
+			for (short vrCode : vrCodes) {
+				out.writeShort(vrCode);
+			}
+			out.write(informationEntityCodes);
+			for (int index : nameIndexes) {
+				out.writeInt(index);
+			}
+			for (int index : fullNameIndexes) {
+				out.writeInt(index);
+			}
+			out.writeInt(names.size());
+			for (Map.Entry entry : names) {
+				out.writeInt(intern((String)entry.getKey(),strings,stringIndexes));
+			}
+			for (Map.Entry entry : names) {
+				out.writeInt(SortedAttributeArray.key((AttributeTag)entry.getValue()));
+			}
+			out.writeInt(strings.size());
+			List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+			int offset = 0;
+			for (String s : strings) {
+				byte[] b = s.getBytes(StandardCharsets.UTF_8);
+				encoded.add(b);
+				out.writeInt(offset);
+				offset += b.length;
+			}
+			out.writeInt(offset);
+			for (byte[] b : encoded) {
+				out.write(b);
+			}
+			out.flush();
+			return bytes.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);		// not expected writing to memory
+		}
+	}
+
+	private static void addAll(TreeSet<AttributeTag> tags,java.util.Collection c) {
+		if (c != null) {
+			for (Object o : c) {
+				tags.add((AttributeTag)o);
+			}
+		}
+	}
+
+	private static int intern(String s,List<String> strings,Map<String,Integer> stringIndexes) {
+		if (s == null) {
+			return -1;
+		}
+		Integer index = stringIndexes.get(s);
+		if (index == null) {
+			index = Integer.valueOf(strings.size());
+			strings.add(s);
+			stringIndexes.put(s,index);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * <p>Write the image of the standard dictionary.</p>
+	 *
+	 * @param	arg	the file to write
+	 */
+	public static void main(String arg[]) {
+		try {
+			if (arg.length != 1) {
+				System.err.println("Usage: java com.pixelmed.dicom.CompactDicomDictionary outputFile");	// no need to use SLF4J since command line utility/test
+				System.exit(1);
+			}
+			byte[] image = createImage(new DicomDictionary());
+			try (OutputStream out = new FileOutputStream(new File(arg[0]))) {
+				out.write(image);
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace(System.err);	// no need to use SLF4J since command line utility
+			System.exit(1);
+		}
+	}
+}
@@ -20,11 +20,17 @@ import java.awt.image.WritableRaster;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 
+import java.util.ArrayDeque;
 import java.util.Iterator;
 import java.util.Locale;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
 import javax.imageio.*;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.spi.*;
@@ -85,7 +91,7 @@ public class CompressedFrameDecoder {
 	 * @return	true if file can be decompressed using this class
 	 */
 	public static boolean canDecompress(File file) {
-		slf4jlogger.trace("canDecompress(): file "+file);
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("canDecompress(): file "+file);
 		boolean canDecompressPixelData = false;
 		AttributeList list = new AttributeList();
 		try {
@@ -97,7 +103,7 @@ public class CompressedFrameDecoder {
 			}
 			else {
 				TransferSyntax ts = new TransferSyntax(transferSyntaxUID);
-				slf4jlogger.trace("canDecompress(): {}",ts.dump());
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("canDecompress(): {}",ts.dump());
 				int maximumBytesPerSampleNeededForTransferSyntax = 2;
 				if (ts.isJPEGFamily()) {
 					slf4jlogger.trace("canDecompress(): transferSyntaxUID is JPEG family");
@@ -325,7 +331,7 @@ public class CompressedFrameDecoder {
 	}
 
 	public BufferedImage getDecompressedFrameAsBufferedImage(int f) throws DicomException, IOException {
-		slf4jlogger.trace("getDecompressedFrameAsBufferedImage(): Starting frame "+f);
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("getDecompressedFrameAsBufferedImage(): Starting frame "+f);
 		BufferedImage image = null;
 		if (isRLE) {
 			image = getDecompressedFrameAsBufferedImageUsingRLE(f);
@@ -336,6 +342,24 @@ public class CompressedFrameDecoder {
 		return image;
 	}
 	
+	/**
+	 * <p>Decompress a frame supplied by the caller rather than one of those the decoder was constructed with, using the same reader.</p>
+	 *
+	 * <p>Allows frames to be decompressed one at a time as they are read from a stream, without constructing a decoder or choosing a
+	 * reader for each; the decoder may be constructed with an empty array of frames for this purpose. The frame must be in the same
+	 * Transfer Syntax and have the same size and number of samples as specified when the decoder was constructed.</p>
+	 *
+	 * <p>Does not change what {@link #getIIOMetadata(int) getIIOMetadata()} returns.</p>
+	 *
+	 * @param	frame			the compressed bit stream of the frame
+	 * @return					the decompressed frame
+	 * @throws	DicomException	if the frame cannot be decompressed
+	 * @throws	IOException		if the frame cannot be decompressed
+	 */
+	public BufferedImage getDecompressedFrameAsBufferedImage(byte[] frame) throws DicomException, IOException {
+		return isRLE ? getDecompressedFrameAsBufferedImageUsingRLE(frame) : getDecompressedFrameAsBufferedImageUsingImageReader(reader,frame);
+	}
+	
 	protected class ByteArrayInputStreamWithOffsetCounterAndOurMethods extends InputStream {
 		protected byte[] buf;
 		protected int pos;
@@ -440,9 +464,13 @@ public class CompressedFrameDecoder {
 	// (000787)
 	public BufferedImage getDecompressedFrameAsBufferedImageUsingRLE(int f) throws DicomException, IOException {
 	slf4jlogger.trace("getDecompressedFrameAsBufferedImageUsingRLE(): Starting frame {}",f);
+		return getDecompressedFrameAsBufferedImageUsingRLE(frames[f]);
+	}
+	
+	private BufferedImage getDecompressedFrameAsBufferedImageUsingRLE(byte[] frame) throws DicomException, IOException {
 		BufferedImage image = null;
 		
-		ByteArrayInputStreamWithOffsetCounterAndOurMethods bi = new ByteArrayInputStreamWithOffsetCounterAndOurMethods(frames[f]);
+		ByteArrayInputStreamWithOffsetCounterAndOurMethods bi = new ByteArrayInputStreamWithOffsetCounterAndOurMethods(frame);
 
 		// copied from AttributeList.read() ... should refactor and share code except that input is ByteArrayInputStreamWithOffsetCounterAndOurMethods not EncapsulatedInputStream, and output is BufferedImage not Attribute :(
 		int pixelsPerFrame = height*width;
@@ -654,9 +682,19 @@ public class CompressedFrameDecoder {
 	}
 	
 	public BufferedImage getDecompressedFrameAsBufferedImageUsingImageReader(int f) throws DicomException, IOException {
+		BufferedImage image = getDecompressedFrameAsBufferedImageUsingImageReader(reader,f);
+		lastFrameDecompressed = f;
+		return image;
+	}
+
+	private BufferedImage getDecompressedFrameAsBufferedImageUsingImageReader(ImageReader reader,int f) throws DicomException, IOException {
 		slf4jlogger.trace("getDecompressedFrameAsBufferedImageUsingImageReader(): Starting frame {}",f);
+		return getDecompressedFrameAsBufferedImageUsingImageReader(reader,frames[f]);
+	}
+
+	private BufferedImage getDecompressedFrameAsBufferedImageUsingImageReader(ImageReader reader,byte[] frame) throws DicomException, IOException {
 		BufferedImage image = null;
-		ImageInputStream iiois = ImageIO.createImageInputStream(new ByteArrayInputStream(frames[f]));
+		ImageInputStream iiois = ImageIO.createImageInputStream(new ByteArrayInputStream(frame));
 		reader.setInput(iiois,true/*seekForwardOnly*/,true/*ignoreMetadata*/);
 										
 		slf4jlogger.trace("getDecompressedFrameAsBufferedImageUsingImageReader(): Calling reader.readAll()");
@@ -680,10 +718,9 @@ public class CompressedFrameDecoder {
 				+" returned null image for Transfer Syntax "+transferSyntaxUID);
 		}
 		else {
-			lastFrameDecompressed = f;
 			//iioMetadataForLastFrameDecompressed = iioImage.getMetadata();
 			//image = (BufferedImage)(iioImage.getRenderedImage());
-			slf4jlogger.trace("getDecompressedFrameAsBufferedImageUsingImageReader(): Back from frame {} reader.read(), BufferedImage={}",f,image);
+			slf4jlogger.trace("getDecompressedFrameAsBufferedImageUsingImageReader(): Back from frame reader.read(), BufferedImage={}",image);
 			//if (image == null) {
 			//	throw new DicomException("Reader "+reader.getOriginatingProvider().getDescription(Locale.US)+" "+reader.getOriginatingProvider().getVendorName()+" "+reader.getOriginatingProvider().getVersion()
 			//		+" returned null image for Transfer Syntax "+transferSyntaxUID);
@@ -744,6 +781,146 @@ public class CompressedFrameDecoder {
 		return newImage == null ? image : newImage;
 	}
 
+	/**
+	 * <p>Receives frames from {@link com.pixelmed.dicom.CompressedFrameDecoder#decompressFrames(int,int,ForkJoinPool,int,FrameConsumer) decompressFrames()}
+	 * in ascending order.</p>
+	 */
+	public interface FrameConsumer {
+		/**
+		 * @param	f		the frame number, from 0
+		 * @param	image	the decompressed frame
+		 * @throws	DicomException	to stop decompression
+		 * @throws	IOException		to stop decompression
+		 */
+		void frameDecompressed(int f,BufferedImage image) throws DicomException, IOException;
+	}
+
+	/**
+	 * <p>Decompress frames in parallel, in the common pool and with up to twice as many frames in flight as the pool has threads.</p>
+	 *
+	 * @see #decompressFrames(int,int,ForkJoinPool,int,FrameConsumer)
+	 *
+	 * @param	firstFrame		the first frame number, from 0
+	 * @param	numberOfFrames	the number of frames
+	 * @param	consumer		receives each frame, in order, on the calling thread
+	 * @throws	DicomException	if a frame cannot be decompressed
+	 * @throws	IOException		if a frame cannot be decompressed
+	 */
+	public void decompressFrames(int firstFrame,int numberOfFrames,FrameConsumer consumer) throws DicomException, IOException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		decompressFrames(firstFrame,numberOfFrames,pool,pool.getParallelism()*2,consumer);
+	}
+
+	/**
+	 * <p>Decompress frames in parallel, delivering them in order.</p>
+	 *
+	 * <p>Frames are decompressed as tasks in the pool, each with an {@link javax.imageio.ImageReader ImageReader} of its own
+	 * from the same provider as the one selected for this decoder, so no more readers are created than frames are decompressed
+	 * concurrently. At most maximumFramesInFlight frames are submitted but not yet delivered, which bounds the memory used by
+	 * frames that have been decompressed ahead of a slower one or of the consumer.</p>
+	 *
+	 * <p>The consumer is called on the calling thread. If it, or the decompression of any frame, throws, frames not yet started
+	 * are cancelled and the exception is rethrown once those already started have finished. Either way, the readers created
+	 * for the frames have all been disposed of when this method returns.</p>
+	 *
+	 * <p>Does not change what {@link #getIIOMetadata(int) getIIOMetadata()} returns, and may be used at the same time as
+	 * {@link #getDecompressedFrameAsBufferedImage(int) getDecompressedFrameAsBufferedImage()}, which uses a different reader.</p>
+	 *
+	 * @param	firstFrame				the first frame number, from 0
+	 * @param	numberOfFrames			the number of frames
+	 * @param	pool					the pool in which to decompress the frames
+	 * @param	maximumFramesInFlight	the most frames submitted but not yet delivered, at least 1
+	 * @param	consumer				receives each frame, in order, on the calling thread
+	 * @throws	DicomException			if a frame cannot be decompressed
+	 * @throws	IOException				if a frame cannot be decompressed
+	 */
+	public void decompressFrames(int firstFrame,int numberOfFrames,ForkJoinPool pool,int maximumFramesInFlight,FrameConsumer consumer) throws DicomException, IOException {
+		if (firstFrame < 0 || numberOfFrames < 0 || firstFrame + numberOfFrames > frames.length) {
+			throw new DicomException("Frames "+firstFrame+" to "+(firstFrame+numberOfFrames-1)+" requested but only have "+frames.length);
+		}
+		maximumFramesInFlight = Math.max(1,maximumFramesInFlight);
+		ConcurrentLinkedQueue<ImageReader> idleReaders = new ConcurrentLinkedQueue<ImageReader>();
+		ArrayDeque<InFlightTask<BufferedImage>> inFlight = new ArrayDeque<InFlightTask<BufferedImage>>(Math.min(maximumFramesInFlight,numberOfFrames));
+		int nextToSubmit = firstFrame;
+		int nextToDeliver = firstFrame;
+		int endFrame = firstFrame + numberOfFrames;
+		try {
+			while (nextToDeliver < endFrame) {
+				while (nextToSubmit < endFrame && inFlight.size() < maximumFramesInFlight) {
+					final int f = nextToSubmit++;
+					inFlight.add(new InFlightTask<BufferedImage>(pool,() -> decompressFrameWithIdleReader(f,idleReaders)));
+				}
+				BufferedImage image;
+				try {
+					image = inFlight.peek().get();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while decompressing frame "+nextToDeliver);
+				}
+				catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+						cause = cause.getCause();	// unwrap the checked exception that the pool wraps (more than once if rethrown from another thread)
+					}
+					if (cause instanceof DicomException) {
+						throw (DicomException)cause;
+					}
+					else if (cause instanceof IOException) {
+						throw (IOException)cause;
+					}
+					else if (cause instanceof RuntimeException) {
+						throw (RuntimeException)cause;
+					}
+					else if (cause instanceof Error) {
+						throw (Error)cause;
+					}
+					throw new DicomException("Could not decompress frame "+nextToDeliver+": "+cause);
+				}
+				inFlight.remove();
+				consumer.frameDecompressed(nextToDeliver++,image);
+			}
+		}
+		finally {
+			InFlightTask.cancelOrAwait(inFlight);	// so that no reader is still in use when they are disposed of
+			ImageReader idleReader;
+			while ((idleReader = idleReaders.poll()) != null) {
+				idleReader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * <p>Decompress all the frames in parallel.</p>
+	 *
+	 * @see #decompressFrames(int,int,FrameConsumer)
+	 *
+	 * @return					the decompressed frames
+	 * @throws	DicomException	if a frame cannot be decompressed
+	 * @throws	IOException		if a frame cannot be decompressed
+	 */
+	public BufferedImage[] getDecompressedFramesAsBufferedImages() throws DicomException, IOException {
+		BufferedImage[] images = new BufferedImage[frames.length];
+		decompressFrames(0,frames.length,(f,image) -> images[f] = image);
+		return images;
+	}
+
+	private BufferedImage decompressFrameWithIdleReader(int f,ConcurrentLinkedQueue<ImageReader> idleReaders) throws DicomException, IOException {
+		if (isRLE) {
+			return getDecompressedFrameAsBufferedImageUsingRLE(f);
+		}
+		ImageReader frameReader = idleReaders.poll();
+		if (frameReader == null) {
+			frameReader = reader.getOriginatingProvider().createReaderInstance();
+		}
+		try {
+			return getDecompressedFrameAsBufferedImageUsingImageReader(frameReader,f);
+		}
+		finally {
+			idleReaders.add(frameReader);
+		}
+	}
+
 		public void dispose() throws Throwable {
 		slf4jlogger.trace("dispose()");
 			if (reader != null) {
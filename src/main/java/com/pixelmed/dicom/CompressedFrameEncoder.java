@@ -15,16 +15,24 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
+import java.io.OutputStream;
 
+import java.util.ArrayDeque;
 import java.util.Iterator;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriter;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 import com.pixelmed.slf4j.Logger;
 import com.pixelmed.slf4j.LoggerFactory;
@@ -56,242 +64,449 @@ public class CompressedFrameEncoder {
 	public static File getCompressedFrameAsFile(AttributeList list,BufferedImage renderedImage,String outputFormat,File tmpFrameFile) throws IOException, FileNotFoundException, DicomException {
 		File returnFile = null;
 		if (outputFormat.equals("rle")) {
-			// care about Samples per Pixel and Bits Allocated, not Photometric Intepretation (e.g., doesn't matter if PALETTE COLOR or RGB or YBR_FULL) or Bits Stored (but consider CP 1654)
-			// unless single bit images (Bits Stored == 1), which we do not support
-			int bitsStored = Attribute.getSingleIntegerValueOrDefault(list,TagFromName.BitsStored,0);
-			if (bitsStored == 1) {
-				throw new DicomException("Cannot compress single bit images using RLE");
+			OutputStream out = new FileOutputStream(tmpFrameFile);
+			try {
+				writeRLECompressedFrame(list,renderedImage,out);
 			}
-			int samplesPerPixel = Attribute.getSingleIntegerValueOrDefault(list,TagFromName.SamplesPerPixel,0);
-			int bitsAllocated = Attribute.getSingleIntegerValueOrDefault(list,TagFromName.BitsAllocated,0);
-			int bytesPerSample = bitsAllocated/8;
-			int numberOfSegmentsNeeded = samplesPerPixel * bytesPerSample;
-			if (numberOfSegmentsNeeded > 15) {
-				throw new DicomException("Cannot compress image with "+bitsAllocated+" Bits Allocated and "+samplesPerPixel+" Samples per Pixel using RLE since would require "+numberOfSegmentsNeeded+" segments");
+			finally {
+				out.close();
 			}
-			byte[][] segments = new byte[numberOfSegmentsNeeded][];
-			
-			SampleModel sampleModel = renderedImage.getSampleModel();
-			WritableRaster raster = renderedImage.getRaster();
-			int numBands = raster.getNumBands();
-			if (numBands != samplesPerPixel) {
-				throw new DicomException("Cannot compress image with "+numBands+" bands but "+samplesPerPixel+" Samples per Pixel using RLE");
+			returnFile = tmpFrameFile;
+		}
+		else {
+			ImageWriter writer = createImageWriter(outputFormat);
+			returnFile = getCompressedFrameAsFile(renderedImage,outputFormat,tmpFrameFile,writer);
+			try {
+				slf4jlogger.trace("getCompressedFrameAsFile(): Calling dispose() on writer");
+				writer.dispose();
 			}
-			int dataType = sampleModel.getDataType();
-			DataBuffer dataBuffer = raster.getDataBuffer();
-			int w = renderedImage.getWidth();
-			int h = renderedImage.getHeight();
-			slf4jlogger.debug("w*h*samplesPerPixel*bytesPerSample={}",w*h*samplesPerPixel*bytesPerSample);
-			
-			byte[] literalRunBuffer = new byte[128];
-			
-			int nextSegment=0;
-			for (int sample=0; sample<samplesPerPixel; ++sample) {
-				for (int doingByte=0; doingByte<bytesPerSample; ++doingByte) {
-					ByteArrayOutputStream baos = new ByteArrayOutputStream();
-					
-					int rightShift = (bytesPerSample - doingByte - 1) * 8;	// Do most significant byte first
-					
-					for (int y=0; y<h; ++y) {
-						// "Each row of the image shall be encoded separately and not cross a row boundary"
-						int literalRunBufferIndex = 0;
-						int identicalByteCount = 0;
-						byte identicalByte = 0;
-						boolean haveIdenticalByte = false;
-						for (int x=0; x<w; ++x) {
-							int paddedCompositePixelCode = sampleModel.getSample(x,y,sample,dataBuffer);
-							//slf4jlogger.trace("[{},{}] paddedCompositePixelCode {} dec",y,x,paddedCompositePixelCode);
-							byte theByte = (byte)(paddedCompositePixelCode >> rightShift);
-							//slf4jlogger.trace("[{},{}] byte {} dec",y,x,theByte&0xff);
-							
-							if (identicalByteCount > 0) {
-								if (theByte == identicalByte) {
-									++identicalByteCount;
-									if (identicalByteCount >= 128) {
-										// write the run
-										slf4jlogger.trace("[{},{}] writing run of length {} of byte {} dec",y,x,identicalByteCount,identicalByte&0xff);
-										baos.write(1-identicalByteCount);
-										baos.write(identicalByte);
-										// end the run and go to state neither in run nor anything in literalRunBuffer
-										identicalByteCount = 0;
-										// the value of identicalByte is irrelevant
-										literalRunBufferIndex = 0;	// should already be, but just in case
-									}
-									// else we are good to keep accumulating (in run)
-								}
-								else {
-									// different byte than current run, so write the run
-									slf4jlogger.trace("[{},{}] end of run of length {} of byte {} dec caused by new byte {} dec",y,x,identicalByteCount,identicalByte&0xff,theByte&0xff);
-									baos.write((1-identicalByteCount));
+			catch (Exception e) {
+				slf4jlogger.error("",e);
+			}
+		}
+		return returnFile;
+	}
+
+	private static void writeRLECompressedFrame(AttributeList list,BufferedImage renderedImage,OutputStream out) throws IOException, DicomException {
+		// care about Samples per Pixel and Bits Allocated, not Photometric Intepretation (e.g., doesn't matter if PALETTE COLOR or RGB or YBR_FULL) or Bits Stored (but consider CP 1654)
+		// unless single bit images (Bits Stored == 1), which we do not support
+		int bitsStored = Attribute.getSingleIntegerValueOrDefault(list,TagFromName.BitsStored,0);
+		if (bitsStored == 1) {
+			throw new DicomException("Cannot compress single bit images using RLE");
+		}
+		int samplesPerPixel = Attribute.getSingleIntegerValueOrDefault(list,TagFromName.SamplesPerPixel,0);
+		int bitsAllocated = Attribute.getSingleIntegerValueOrDefault(list,TagFromName.BitsAllocated,0);
+		int bytesPerSample = bitsAllocated/8;
+		int numberOfSegmentsNeeded = samplesPerPixel * bytesPerSample;
+		if (numberOfSegmentsNeeded > 15) {
+			throw new DicomException("Cannot compress image with "+bitsAllocated+" Bits Allocated and "+samplesPerPixel+" Samples per Pixel using RLE since would require "+numberOfSegmentsNeeded+" segments");
+		}
+		byte[][] segments = new byte[numberOfSegmentsNeeded][];
+		
+		SampleModel sampleModel = renderedImage.getSampleModel();
+		WritableRaster raster = renderedImage.getRaster();
+		int numBands = raster.getNumBands();
+		if (numBands != samplesPerPixel) {
+			throw new DicomException("Cannot compress image with "+numBands+" bands but "+samplesPerPixel+" Samples per Pixel using RLE");
+		}
+		int dataType = sampleModel.getDataType();
+		DataBuffer dataBuffer = raster.getDataBuffer();
+		int w = renderedImage.getWidth();
+		int h = renderedImage.getHeight();
+		slf4jlogger.debug("w*h*samplesPerPixel*bytesPerSample={}",w*h*samplesPerPixel*bytesPerSample);
+		
+		byte[] literalRunBuffer = new byte[128];
+		
+		int nextSegment=0;
+		for (int sample=0; sample<samplesPerPixel; ++sample) {
+			for (int doingByte=0; doingByte<bytesPerSample; ++doingByte) {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				
+				int rightShift = (bytesPerSample - doingByte - 1) * 8;	// Do most significant byte first
+				
+				for (int y=0; y<h; ++y) {
+					// "Each row of the image shall be encoded separately and not cross a row boundary"
+					int literalRunBufferIndex = 0;
+					int identicalByteCount = 0;
+					byte identicalByte = 0;
+					boolean haveIdenticalByte = false;
+					for (int x=0; x<w; ++x) {
+						int paddedCompositePixelCode = sampleModel.getSample(x,y,sample,dataBuffer);
+						//slf4jlogger.trace("[{},{}] paddedCompositePixelCode {} dec",y,x,paddedCompositePixelCode);
+						byte theByte = (byte)(paddedCompositePixelCode >> rightShift);
+						//slf4jlogger.trace("[{},{}] byte {} dec",y,x,theByte&0xff);
+						
+						if (identicalByteCount > 0) {
+							if (theByte == identicalByte) {
+								++identicalByteCount;
+								if (identicalByteCount >= 128) {
+									// write the run
+									slf4jlogger.trace("[{},{}] writing run of length {} of byte {} dec",y,x,identicalByteCount,identicalByte&0xff);
+									baos.write(1-identicalByteCount);
 									baos.write(identicalByte);
-									// end the run and go to state with a single byte in literalRunBuffer
+									// end the run and go to state neither in run nor anything in literalRunBuffer
 									identicalByteCount = 0;
 									// the value of identicalByte is irrelevant
-									literalRunBuffer[0] = theByte;
-									literalRunBufferIndex = 1;
+									literalRunBufferIndex = 0;	// should already be, but just in case
 								}
+								// else we are good to keep accumulating (in run)
 							}
 							else {
-								if (literalRunBufferIndex >= 128) {
-									// the buffer is full so write it
-									slf4jlogger.trace("[{},{}] writing full buffer length {}",y,x,literalRunBufferIndex);
-									baos.write(literalRunBufferIndex-1);
-									baos.write(literalRunBuffer,0,literalRunBufferIndex);
-									// and put the new byte at the start of the buffer
-									literalRunBuffer[0] = theByte;
-									literalRunBufferIndex = 1;
-								}
-								else if (literalRunBufferIndex == 1 && theByte == literalRunBuffer[0]) {
-									// start of new run since we have two bytes equal
-									slf4jlogger.trace("[{},{}] detected start of run of {} dec so using single byte in existing buffer length {}",y,x,theByte&0xff,literalRunBufferIndex-1);
-									identicalByte = theByte;
-									identicalByteCount = 2;
-									// but nothing to write since buffer empty after taking the byte for the new run
-									literalRunBufferIndex = 0;
-								}
-								else if (literalRunBufferIndex > 1 && theByte == literalRunBuffer[literalRunBufferIndex-1]) {
-									// have start of new run since we have two bytes equal
-									// write the buffer contents except for the last byte that will become part of new run
-									slf4jlogger.trace("[{},{}] detected start of run of {} dec so writing existing buffer length {}",y,x,theByte&0xff,literalRunBufferIndex-1);
-									baos.write(literalRunBufferIndex-1-1);	// yes, the number of bytes to write is literalRunBufferIndex-1, and then one more is subtracted because that is the encoding
-									baos.write(literalRunBuffer,0,literalRunBufferIndex-1);
-									// start of new run since we have two bytes equal
-									identicalByte = theByte;
-									identicalByteCount = 2;
-									literalRunBufferIndex = 0;
-								}
-								else {
-									// the buffer is not full (may indeed be empty) so add byte to it
-									literalRunBuffer[literalRunBufferIndex++]=theByte;
-								}
+								// different byte than current run, so write the run
+								slf4jlogger.trace("[{},{}] end of run of length {} of byte {} dec caused by new byte {} dec",y,x,identicalByteCount,identicalByte&0xff,theByte&0xff);
+								baos.write((1-identicalByteCount));
+								baos.write(identicalByte);
+								// end the run and go to state with a single byte in literalRunBuffer
+								identicalByteCount = 0;
+								// the value of identicalByte is irrelevant
+								literalRunBuffer[0] = theByte;
+								literalRunBufferIndex = 1;
 							}
 						}
-						// at the end of the row, flush the run or buffer, whichever is outstanding
-						if (identicalByteCount > 0) {
-							slf4jlogger.trace("[{},] end of row flushing run of length {} of byte {} dec",y,identicalByteCount,identicalByte&0xff);
-							baos.write(1-identicalByteCount);
-							baos.write(identicalByte);
-						}
-						else if (literalRunBufferIndex > 0) {
-							slf4jlogger.trace("[{},] end of row flushing buffer length {}",y,literalRunBufferIndex);
-							baos.write(literalRunBufferIndex-1);
-							baos.write(literalRunBuffer,0,literalRunBufferIndex);
+						else {
+							if (literalRunBufferIndex >= 128) {
+								// the buffer is full so write it
+								slf4jlogger.trace("[{},{}] writing full buffer length {}",y,x,literalRunBufferIndex);
+								baos.write(literalRunBufferIndex-1);
+								baos.write(literalRunBuffer,0,literalRunBufferIndex);
+								// and put the new byte at the start of the buffer
+								literalRunBuffer[0] = theByte;
+								literalRunBufferIndex = 1;
+							}
+							else if (literalRunBufferIndex == 1 && theByte == literalRunBuffer[0]) {
+								// start of new run since we have two bytes equal
+								slf4jlogger.trace("[{},{}] detected start of run of {} dec so using single byte in existing buffer length {}",y,x,theByte&0xff,literalRunBufferIndex-1);
+								identicalByte = theByte;
+								identicalByteCount = 2;
+								// but nothing to write since buffer empty after taking the byte for the new run
+								literalRunBufferIndex = 0;
+							}
+							else if (literalRunBufferIndex > 1 && theByte == literalRunBuffer[literalRunBufferIndex-1]) {
+								// have start of new run since we have two bytes equal
+								// write the buffer contents except for the last byte that will become part of new run
+								slf4jlogger.trace("[{},{}] detected start of run of {} dec so writing existing buffer length {}",y,x,theByte&0xff,literalRunBufferIndex-1);
+								baos.write(literalRunBufferIndex-1-1);	// yes, the number of bytes to write is literalRunBufferIndex-1, and then one more is subtracted because that is the encoding
+								baos.write(literalRunBuffer,0,literalRunBufferIndex-1);
+								// start of new run since we have two bytes equal
+								identicalByte = theByte;
+								identicalByteCount = 2;
+								literalRunBufferIndex = 0;
+							}
+							else {
+								// the buffer is not full (may indeed be empty) so add byte to it
+								literalRunBuffer[literalRunBufferIndex++]=theByte;
+							}
 						}
 					}
-					// "Each RLE segment must be an even number of bytes or padded at its end with zero to make it even"
-					if (baos.size()%2 != 0) {
-						baos.write(0);
+					// at the end of the row, flush the run or buffer, whichever is outstanding
+					if (identicalByteCount > 0) {
+						slf4jlogger.trace("[{},] end of row flushing run of length {} of byte {} dec",y,identicalByteCount,identicalByte&0xff);
+						baos.write(1-identicalByteCount);
+						baos.write(identicalByte);
 					}
-					segments[nextSegment] = baos.toByteArray();
-					slf4jlogger.debug("segments[{}].length={} sample={} doingByte={}",nextSegment,segments[nextSegment].length,sample,doingByte);
-					++nextSegment;
+					else if (literalRunBufferIndex > 0) {
+						slf4jlogger.trace("[{},] end of row flushing buffer length {}",y,literalRunBufferIndex);
+						baos.write(literalRunBufferIndex-1);
+						baos.write(literalRunBuffer,0,literalRunBufferIndex);
+					}
+				}
+				// "Each RLE segment must be an even number of bytes or padded at its end with zero to make it even"
+				if (baos.size()%2 != 0) {
+					baos.write(0);
 				}
+				segments[nextSegment] = baos.toByteArray();
+				slf4jlogger.debug("segments[{}].length={} sample={} doingByte={}",nextSegment,segments[nextSegment].length,sample,doingByte);
+				++nextSegment;
 			}
-			slf4jlogger.debug("Have {} segments",nextSegment);
-			{
-				BinaryOutputStream o = new BinaryOutputStream(new FileOutputStream(tmpFrameFile),false/*big*/);
-				o.writeUnsigned32(nextSegment);
-				// write segment table
-				long segmentOffset = 64;	// starts with the fixed length of the header segment offset table itself
-				for (int segment=0; segment<15; ++segment) {
-					if (segment<nextSegment) {
-						slf4jlogger.debug("segments[{}] offset {}",segment,segmentOffset);
-						o.writeUnsigned32(segmentOffset);
-						segmentOffset += segments[segment].length;
-					}
-					else {
-						slf4jlogger.debug("segments[{}] offset 0",segment);
-						o.writeUnsigned32(0);
-					}
+		}
+		slf4jlogger.debug("Have {} segments",nextSegment);
+		{
+			BinaryOutputStream o = new BinaryOutputStream(out,false/*big*/);
+			o.writeUnsigned32(nextSegment);
+			// write segment table
+			long segmentOffset = 64;	// starts with the fixed length of the header segment offset table itself
+			for (int segment=0; segment<15; ++segment) {
+				if (segment<nextSegment) {
+					slf4jlogger.debug("segments[{}] offset {}",segment,segmentOffset);
+					o.writeUnsigned32(segmentOffset);
+					segmentOffset += segments[segment].length;
 				}
-				for (int segment=0; segment<nextSegment; ++segment) {
-					o.write(segments[segment]);
+				else {
+					slf4jlogger.debug("segments[{}] offset 0",segment);
+					o.writeUnsigned32(0);
 				}
-				o.flush();
-				o.close();
-				returnFile = tmpFrameFile;
 			}
+			for (int segment=0; segment<nextSegment; ++segment) {
+				o.write(segments[segment]);
+			}
+			o.flush();
 		}
-		else {
-			Iterator writers = ImageIO.getImageWritersByFormatName(outputFormat);
-			if (writers != null && writers.hasNext()) {
-				ImageWriter writer = (ImageWriter)writers.next();
-				if (writer != null) {
-					ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(tmpFrameFile);
-					writer.setOutput(imageOutputStream);
-					try {
-						boolean good = false;
-						ImageWriteParam writeParameters = writer.getDefaultWriteParam();
-						boolean canWriteCompressed = writeParameters.canWriteCompressed();
-						slf4jlogger.trace("doSomethingWithDicomFileOnMedia(): ImageWriteParam.canWriteCompressed() = {}",canWriteCompressed);
-						if (canWriteCompressed) {
-							if (outputFormat.equals("jpeg2000")) {
-								// Do not want to depend on presence of jai_imageio.jar, so use reflection to set write parameters (000950)
-								//com.sun.media.imageio.plugins.jpeg2000.J2KImageWriteParam writeParameters = (com.sun.media.imageio.plugins.jpeg2000.J2KImageWriteParam)(writer.getDefaultWriteParam());
-								//	writeParameters.setLossless(true);
-								//	writeParameters.setComponentTransformation(true);
-								Class classToUse = Class.forName("com.sun.media.imageio.plugins.jpeg2000.J2KImageWriteParam");	// may throw ClassNotFoundException if not present at runtime
-								if (writeParameters != null && classToUse.isInstance(writeParameters)) {
-									java.lang.reflect.Method canWriteCompressedMethod = classToUse.getMethod("canWriteCompressed");
-									if (canWriteCompressedMethod == null) {
-										throw new DicomException("Could not get J2KImageWriteParam.canWriteCompressed() method");
-									}
-									java.lang.reflect.Method setLossless = classToUse.getMethod("setLossless",Boolean.TYPE);
-									if (setLossless == null) {
-										throw new DicomException("Could not get J2KImageWriteParam.setLossless() method");
-									}
-									setLossless.invoke(writeParameters,Boolean.TRUE);
-									
-									java.lang.reflect.Method setComponentTransformation = classToUse.getMethod("setComponentTransformation",Boolean.TYPE);
-									if (setComponentTransformation == null) {
-										throw new DicomException("Could not get J2KImageWriteParam.setComponentTransformation() method");
-									}
-									setComponentTransformation.invoke(writeParameters,Boolean.TRUE);	// Assume RGB and assume always want to transform; other than YBR_RCT is illegal in DICOM anyway; JJ2000 will fail if set to false anyway (000981)
-									good = true;
-								}
-							}
-							else if (outputFormat.equals("jpeg-lossless")) {
-								writeParameters.setCompressionType("JPEG-LOSSLESS");
-								// ? how to force SV1 ? empirically, it always seems to be set to 1 (in SOS StartOfSpectralOrPredictorSelection)
-								good = true;
-							}
-							else if (outputFormat.equals("jpeg-ls")) {
-								writeParameters.setCompressionType("JPEG-LS");
-								good = true;
-							}
+	}
+
+	/**
+	 * <p>Compress the supplied frame to a stream.</p>
+	 *
+	 * <p>Allows frames to be compressed one at a time directly into encapsulated Pixel Data being written to a stream, without a file
+	 * per frame, and with a writer that is reused from one frame to the next rather than created and disposed of for each.</p>
+	 *
+	 * @param	list					the AttributeList from which the frame was extracted, of which only the Image Pixel Module is used
+	 * @param	renderedImage			the frame as an image
+	 * @param	outputFormat			the compression format to use [jpeg2000|jpeg-lossless|jpeg-ls|rle]
+	 * @param	out						the stream to write the compressed bit stream to, which is not closed
+	 * @param	writer					a writer from {@link #createImageWriter(String) createImageWriter()} for the format, or null for rle, which is reset afterwards
+	 * @return							true if the frame was compressed, false if compression failed
+	 * @throws	IOException				if there is an error writing the stream
+	 * @throws	DicomException			if the image cannot be compressed
+	 */
+	public static boolean writeCompressedFrame(AttributeList list,BufferedImage renderedImage,String outputFormat,OutputStream out,ImageWriter writer) throws IOException, DicomException {
+		if (outputFormat.equals("rle")) {
+			writeRLECompressedFrame(list,renderedImage,out);
+			return true;
+		}
+		return writeCompressedFrame(renderedImage,outputFormat,new MemoryCacheImageOutputStream(out),writer);
+	}
+
+	/**
+	 * <p>Supplies frames to {@link com.pixelmed.dicom.CompressedFrameEncoder#getCompressedFramesAsFiles(AttributeList,FrameSource,String,File[],ForkJoinPool,int) getCompressedFramesAsFiles()},
+	 * in ascending order and on the calling thread.</p>
+	 */
+	public interface FrameSource {
+		/**
+		 * @param	f		the frame number, from 0
+		 * @return			the frame as an image, which must not be modified or reused afterwards since it is compressed by another thread
+		 * @throws	DicomException	if the frame cannot be obtained
+		 * @throws	IOException		if the frame cannot be obtained
+		 */
+		BufferedImage getFrame(int f) throws DicomException, IOException;
+	}
+
+	/**
+	 * <p>Compress frames in parallel, in the common pool and with up to twice as many frames in flight as the pool has threads.</p>
+	 *
+	 * @see #getCompressedFramesAsFiles(AttributeList,FrameSource,String,File[],ForkJoinPool,int)
+	 *
+	 * @param	list					the AttributeList from which the frames are extracted
+	 * @param	frameSource				supplies each frame as an image
+	 * @param	outputFormat			the compression format to use [jpeg2000|jpeg-lossless|jpeg-ls|rle]
+	 * @param	tmpFrameFiles			the files to write the compressed bit stream of each frame to, one per frame
+	 * @return							the files written to, with null for any frame for which compression failed
+	 * @throws	IOException				if there is an error writing a file
+	 * @throws	DicomException			if a frame cannot be compressed
+	 */
+	public static File[] getCompressedFramesAsFiles(AttributeList list,FrameSource frameSource,String outputFormat,File[] tmpFrameFiles) throws IOException, DicomException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		return getCompressedFramesAsFiles(list,frameSource,outputFormat,tmpFrameFiles,pool,pool.getParallelism()*2);
+	}
+
+	/**
+	 * <p>Compress frames in parallel.</p>
+	 *
+	 * <p>Frames are obtained from the source in order on the calling thread, which overlaps with the compression of earlier frames,
+	 * and each is compressed as a task in the pool. Writers are reused from one frame to the next rather than created and
+	 * disposed of for each frame, but no writer is used by more than one task at a time, so no more are created than frames are
+	 * compressed concurrently. At most maximumFramesInFlight frames are obtained but not yet compressed, which bounds the memory
+	 * used by their images.</p>
+	 *
+	 * <p>The list is only read, and must not be modified until this method returns. If obtaining or compressing any frame throws,
+	 * frames not yet started are cancelled and the exception is rethrown once those already started have finished, so that no
+	 * task is still writing to any of the tmpFrameFiles. Either way, the writers created for the frames have all been disposed of
+	 * when this method returns.</p>
+	 *
+	 * @param	list					the AttributeList from which the frames are extracted
+	 * @param	frameSource				supplies each frame as an image
+	 * @param	outputFormat			the compression format to use [jpeg2000|jpeg-lossless|jpeg-ls|rle]
+	 * @param	tmpFrameFiles			the files to write the compressed bit stream of each frame to, one per frame
+	 * @param	pool					the pool in which to compress the frames
+	 * @param	maximumFramesInFlight	the most frames obtained but not yet compressed, at least 1
+	 * @return							the files written to, with null for any frame for which compression failed
+	 * @throws	IOException				if there is an error writing a file
+	 * @throws	DicomException			if a frame cannot be compressed
+	 */
+	public static File[] getCompressedFramesAsFiles(AttributeList list,FrameSource frameSource,String outputFormat,File[] tmpFrameFiles,ForkJoinPool pool,int maximumFramesInFlight) throws IOException, DicomException {
+		int numberOfFrames = tmpFrameFiles.length;
+		File[] frameFiles = new File[numberOfFrames];
+		maximumFramesInFlight = Math.max(1,maximumFramesInFlight);
+		boolean isRLE = outputFormat.equals("rle");
+		ConcurrentLinkedQueue<ImageWriter> idleWriters = new ConcurrentLinkedQueue<ImageWriter>();
+		if (!isRLE) {
+			idleWriters.add(createImageWriter(outputFormat));	// fail before obtaining any frames if there is no writer
+		}
+		ArrayDeque<InFlightTask<File>> inFlight = new ArrayDeque<InFlightTask<File>>(Math.min(maximumFramesInFlight,numberOfFrames));
+		int nextToCollect = 0;
+		try {
+			for (int f=0; f<numberOfFrames; ++f) {
+				if (inFlight.size() >= maximumFramesInFlight) {
+					frameFiles[nextToCollect] = getResultOfFrame(inFlight.peek(),nextToCollect);
+					inFlight.remove();
+					++nextToCollect;
+				}
+				BufferedImage renderedImage = frameSource.getFrame(f);
+				if (renderedImage == null) {
+					throw new DicomException("Could not get image for frame "+f);
+				}
+				File tmpFrameFile = tmpFrameFiles[f];
+				inFlight.add(new InFlightTask<File>(pool,() -> isRLE
+					? getCompressedFrameAsFile(list,renderedImage,outputFormat,tmpFrameFile)
+					: getCompressedFrameAsFileWithIdleWriter(renderedImage,outputFormat,tmpFrameFile,idleWriters)));
+			}
+			while (!inFlight.isEmpty()) {
+				frameFiles[nextToCollect] = getResultOfFrame(inFlight.peek(),nextToCollect);
+				inFlight.remove();
+				++nextToCollect;
+			}
+		}
+		finally {
+			InFlightTask.cancelOrAwait(inFlight);	// so that no file is still being written, nor writer in use when they are disposed of
+			ImageWriter idleWriter;
+			while ((idleWriter = idleWriters.poll()) != null) {
+				try {
+					idleWriter.dispose();
+				}
+				catch (Exception e) {
+					slf4jlogger.error("",e);
+				}
+			}
+		}
+		return frameFiles;
+	}
+
+	private static File getCompressedFrameAsFileWithIdleWriter(BufferedImage renderedImage,String outputFormat,File tmpFrameFile,ConcurrentLinkedQueue<ImageWriter> idleWriters) throws IOException, DicomException {
+		ImageWriter writer = idleWriters.poll();
+		if (writer == null) {
+			writer = createImageWriter(outputFormat);
+		}
+		try {
+			return getCompressedFrameAsFile(renderedImage,outputFormat,tmpFrameFile,writer);
+		}
+		finally {
+			idleWriters.add(writer);
+		}
+	}
+
+	private static File getResultOfFrame(InFlightTask<File> task,int f) throws IOException, DicomException {
+		try {
+			return task.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing frame "+f);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+				cause = cause.getCause();	// unwrap the checked exception that the pool wraps (more than once if rethrown from another thread)
+			}
+			if (cause instanceof DicomException) {
+				throw (DicomException)cause;
+			}
+			else if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			else if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new DicomException("Could not compress frame "+f+": "+cause);
+		}
+	}
+
+	/**
+	 * <p>Create a writer for the compression format.</p>
+	 *
+	 * <p>The caller is responsible for disposing of the writer once it is no longer needed.</p>
+	 *
+	 * @param	outputFormat			the compression format to use [jpeg2000|jpeg-lossless|jpeg-ls]
+	 * @return							a new writer
+	 * @throws	DicomException			if there is no writer for the format
+	 */
+	public static ImageWriter createImageWriter(String outputFormat) throws DicomException {
+		Iterator writers = ImageIO.getImageWritersByFormatName(outputFormat);
+		if (writers != null && writers.hasNext()) {
+			ImageWriter writer = (ImageWriter)writers.next();
+			if (writer != null) {
+				return writer;
+			}
+		}
+		throw new DicomException("Cannot find writer for format "+outputFormat);
+	}
+
+	private static File getCompressedFrameAsFile(BufferedImage renderedImage,String outputFormat,File tmpFrameFile,ImageWriter writer) throws IOException {
+		return writeCompressedFrame(renderedImage,outputFormat,ImageIO.createImageOutputStream(tmpFrameFile),writer) ? tmpFrameFile : null;
+	}
+
+	/**
+	 * <p>Compress the supplied frame with the supplied writer, which is reset rather than disposed of afterwards so that it may be reused.</p>
+	 *
+	 * @param	renderedImage			the frame as an image
+	 * @param	outputFormat			the compression format to use [jpeg2000|jpeg-lossless|jpeg-ls]
+	 * @param	imageOutputStream		the stream to write the compressed bit stream to, which is closed if compression succeeds
+	 * @param	writer					the writer for the compression format
+	 * @return							true if the frame was compressed, false if compression failed
+	 */
+	private static boolean writeCompressedFrame(BufferedImage renderedImage,String outputFormat,ImageOutputStream imageOutputStream,ImageWriter writer) {
+		boolean written = false;
+		writer.setOutput(imageOutputStream);
+		try {
+			boolean good = false;
+			ImageWriteParam writeParameters = writer.getDefaultWriteParam();
+			boolean canWriteCompressed = writeParameters.canWriteCompressed();
+			slf4jlogger.trace("doSomethingWithDicomFileOnMedia(): ImageWriteParam.canWriteCompressed() = {}",canWriteCompressed);
+			if (canWriteCompressed) {
+				if (outputFormat.equals("jpeg2000")) {
+					// Do not want to depend on presence of jai_imageio.jar, so use reflection to set write parameters (000950)
+					//com.sun.media.imageio.plugins.jpeg2000.J2KImageWriteParam writeParameters = (com.sun.media.imageio.plugins.jpeg2000.J2KImageWriteParam)(writer.getDefaultWriteParam());
+					//	writeParameters.setLossless(true);
+					//	writeParameters.setComponentTransformation(true);
+					Class classToUse = Class.forName("com.sun.media.imageio.plugins.jpeg2000.J2KImageWriteParam");	// may throw ClassNotFoundException if not present at runtime
+					if (writeParameters != null && classToUse.isInstance(writeParameters)) {
+						java.lang.reflect.Method canWriteCompressedMethod = classToUse.getMethod("canWriteCompressed");
+						if (canWriteCompressedMethod == null) {
+							throw new DicomException("Could not get J2KImageWriteParam.canWriteCompressed() method");
 						}
-						if (good) {
-							IIOMetadata metadata = null;
-							writer.write(metadata,new IIOImage(renderedImage,null/*no thumbnails*/,metadata),writeParameters);
-							imageOutputStream.flush();
-							imageOutputStream.close();
-							returnFile = tmpFrameFile;
-							
-							try {
-								slf4jlogger.trace("doSomethingWithDicomFileOnMedia(): Calling dispose() on writer");
-								writer.dispose();
-							}
-							catch (Exception e) {
-								slf4jlogger.error("",e);
-							}
+						java.lang.reflect.Method setLossless = classToUse.getMethod("setLossless",Boolean.TYPE);
+						if (setLossless == null) {
+							throw new DicomException("Could not get J2KImageWriteParam.setLossless() method");
 						}
-						else {
-							slf4jlogger.error("Could not setup writer with compression and necessary parameters");
+						setLossless.invoke(writeParameters,Boolean.TRUE);
+						
+						java.lang.reflect.Method setComponentTransformation = classToUse.getMethod("setComponentTransformation",Boolean.TYPE);
+						if (setComponentTransformation == null) {
+							throw new DicomException("Could not get J2KImageWriteParam.setComponentTransformation() method");
 						}
-					}
-					catch (Exception e) {
-						slf4jlogger.error("Exception while setting parameters for writer",e);
+						setComponentTransformation.invoke(writeParameters,Boolean.TRUE);	// Assume RGB and assume always want to transform; other than YBR_RCT is illegal in DICOM anyway; JJ2000 will fail if set to false anyway (000981)
+						good = true;
 					}
 				}
-				else {
-					throw new DicomException("Cannot find writer for format "+outputFormat);
+				else if (outputFormat.equals("jpeg-lossless")) {
+					writeParameters.setCompressionType("JPEG-LOSSLESS");
+					// ? how to force SV1 ? empirically, it always seems to be set to 1 (in SOS StartOfSpectralOrPredictorSelection)
+					good = true;
 				}
+				else if (outputFormat.equals("jpeg-ls")) {
+					writeParameters.setCompressionType("JPEG-LS");
+					good = true;
+				}
+			}
+			if (good) {
+				IIOMetadata metadata = null;
+				writer.write(metadata,new IIOImage(renderedImage,null/*no thumbnails*/,metadata),writeParameters);
+				imageOutputStream.flush();
+				imageOutputStream.close();
+				written = true;
 			}
 			else {
-				throw new DicomException("Cannot find writer for format "+outputFormat);
+				slf4jlogger.error("Could not setup writer with compression and necessary parameters");
 			}
 		}
-		return returnFile;
+		catch (Exception e) {
+			slf4jlogger.error("Exception while setting parameters for writer",e);
+		}
+		finally {
+			writer.reset();
+		}
+		return written;
 	}
 
 }
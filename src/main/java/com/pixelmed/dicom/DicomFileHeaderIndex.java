@@ -0,0 +1,415 @@
+package com.pixelmed.dicom;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import com.pixelmed.slf4j.Logger;
+import com.pixelmed.slf4j.LoggerFactory;
+
+/**
+ * <p>A class to read the identifying headers of many DICOM files in parallel, for example to index an archive folder.</p>
+ *
+ * <p>Folders are walked with {@link java.nio.file.Files#walkFileTree(Path,java.nio.file.FileVisitor) Files.walkFileTree()} and the
+ * header of each file is read by a task in a {@link java.util.concurrent.ForkJoinPool ForkJoinPool}. Only the meta information
+ * header is read, unless it is absent or lacks the SOP Class or Instance UID, in which case the data set is read up to and including
+ * a specified group (by default the identifying group 0x0008).</p>
+ *
+ * <p>Files of at least 1 MiB may be read through a {@link com.pixelmed.dicom.MappedFileInputStream MappedFileInputStream}, smaller
+ * files through a buffered stream. A mapping is not released when the stream is closed but only when it is garbage collected, and
+ * until then some platforms (notably Windows) will not delete or rename the file, so a consumer that moves or removes the files it is
+ * handed should use an index constructed not to map them, as {@link com.pixelmed.dicom.MediaImporter MediaImporter} does.
+ * {@link DicomFileHeaderIndex#readHeader(File,AttributeList.ReadTerminationStrategy) readHeader()} never maps the file.</p>
+ *
+ * <p>The results are handed to a consumer on the calling thread, in the order the files were found, with a bounded number of files
+ * being read ahead, so the consumer need not be thread safe and memory use does not grow with the number of files unless the
+ * consumer keeps them. The headers kept by {@link DicomFileHeaderIndex#index(File) index()} retain only the identifying values,
+ * not the attributes that were read.</p>
+ *
+ * <pre>
+ * ConcurrentMap&lt;String,DicomFileHeaderIndex.Header&gt; index = new DicomFileHeaderIndex(ForkJoinPool.commonPool()).index(new File("/archive"));
+ * </pre>
+ *
+ * @see com.pixelmed.dicom.DicomFileScanIndex
+ * @see com.pixelmed.dicom.MediaImporter
+ * @see com.pixelmed.dicom.SetOfDicomFiles#addAllInFolder(File,ForkJoinPool)
+ */
+public class DicomFileHeaderIndex {
+
+	private static final Logger slf4jlogger = LoggerFactory.getLogger(DicomFileHeaderIndex.class);
+
+	/**
+	 * <p>The identifying header of a file, or the reason it could not be read.</p>
+	 */
+	public static class Header {
+		private final String fileName;
+		private long size = -1;
+		private long lastModified;
+		private boolean hasMetaInformationHeader;
+		private boolean identifiedFromDataSet;
+		private String sopClassUID;
+		private String sopInstanceUID;
+		private String transferSyntaxUID;
+		private AttributeList list;
+		private Exception exception;
+
+		Header(String fileName) {
+			this.fileName = fileName;
+		}
+
+		/**
+		 * @return	the path name of the file
+		 */
+		public String getFileName() { return fileName; }
+
+		/**
+		 * @return	the size of the file in bytes before it was read, or -1 if it could not be obtained
+		 */
+		public long getSize() { return size; }
+
+		/**
+		 * @return	the modification time of the file in milliseconds since the epoch before it was read
+		 */
+		public long getLastModified() { return lastModified; }
+
+		/**
+		 * @return	true if the file has a meta information header
+		 */
+		public boolean hasMetaInformationHeader() { return hasMetaInformationHeader; }
+
+		/**
+		 * @return	true if the data set was read because there was no meta information header or it lacked the SOP Class or Instance UID
+		 */
+		public boolean isIdentifiedFromDataSet() { return identifiedFromDataSet; }
+
+		/**
+		 * @return	the SOP Class UID, from the meta information header if present, else the data set, or null if none
+		 */
+		public String getSOPClassUID() { return sopClassUID; }
+
+		/**
+		 * @return	the SOP Instance UID, from the meta information header if present, else the data set, or null if none
+		 */
+		public String getSOPInstanceUID() { return sopInstanceUID; }
+
+		/**
+		 * @return	the Transfer Syntax UID from the meta information header, else implicit VR little endian, or null if the file could not be read
+		 */
+		public String getTransferSyntaxUID() { return transferSyntaxUID; }
+
+		/**
+		 * @return	the attributes that were read, which do not include the pixel data, or null if the file could not be read or the header was kept by {@link DicomFileHeaderIndex#index(File) index()}
+		 */
+		public AttributeList getAttributeList() { return list; }
+
+		/**
+		 * @return	the exception that prevented the header being read, or null if none
+		 */
+		public Exception getException() { return exception; }
+
+		/**
+		 * @return	true if the header was read and contains a SOP Class UID
+		 */
+		public boolean isDicom() { return exception == null && sopClassUID != null && sopClassUID.length() > 0; }
+
+		public String toString() {
+			return "file="+fileName+", sopClassUID="+sopClassUID+", sopInstanceUID="+sopInstanceUID+", transferSyntaxUID="+transferSyntaxUID+(exception == null ? "" : ", exception="+exception);
+		}
+	}
+
+	/**
+	 * <p>Terminate reading after a group.</p>
+	 */
+	private static class TerminateAfterGroup implements AttributeList.ReadTerminationStrategy {
+		private final int lastGroupToRead;
+
+		TerminateAfterGroup(int lastGroupToRead) {
+			this.lastGroupToRead = lastGroupToRead;
+		}
+
+		public boolean terminate(AttributeList attributeList,AttributeTag tag,long byteOffset) {
+			return tag.getGroup() > lastGroupToRead;
+		}
+	}
+
+	/**
+	 * <p>The size of file below which the header is read through a buffered stream even if files may be mapped.</p>
+	 */
+	static final long minimumSizeToMap = 1024*1024;
+
+	private final ForkJoinPool pool;
+	private final AttributeList.ReadTerminationStrategy strategy;
+	private final int maximumFilesInFlight;
+	private final boolean mapLargeFiles;
+
+	/**
+	 * <p>Read headers in the specified pool, up to the identifying group 0x0008 if the data set needs to be read.</p>
+	 *
+	 * <p>Large files are mapped.</p>
+	 *
+	 * @param	pool	the pool in which to read headers
+	 */
+	public DicomFileHeaderIndex(ForkJoinPool pool) {
+		this(pool,0x0008,pool.getParallelism()*4);
+	}
+
+	/**
+	 * <p>Read headers in the specified pool.</p>
+	 *
+	 * <p>Large files are mapped.</p>
+	 *
+	 * @param	pool					the pool in which to read headers
+	 * @param	lastGroupToRead			the last group of the data set to read if the data set needs to be read
+	 * @param	maximumFilesInFlight	the maximum number of files being read ahead of the consumer
+	 */
+	public DicomFileHeaderIndex(ForkJoinPool pool,int lastGroupToRead,int maximumFilesInFlight) {
+		this(pool,lastGroupToRead,maximumFilesInFlight,true);
+	}
+
+	/**
+	 * <p>Read headers in the specified pool.</p>
+	 *
+	 * @param	pool					the pool in which to read headers
+	 * @param	lastGroupToRead			the last group of the data set to read if the data set needs to be read
+	 * @param	maximumFilesInFlight	the maximum number of files being read ahead of the consumer
+	 * @param	mapLargeFiles			whether files of at least 1 MiB may be mapped, which is false if the consumer deletes or renames the files
+	 */
+	public DicomFileHeaderIndex(ForkJoinPool pool,int lastGroupToRead,int maximumFilesInFlight,boolean mapLargeFiles) {
+		this.pool = pool;
+		this.strategy = new TerminateAfterGroup(lastGroupToRead);
+		this.maximumFilesInFlight = Math.max(1,maximumFilesInFlight);
+		this.mapLargeFiles = mapLargeFiles;
+	}
+
+	/**
+	 * <p>Read the identifying header of a single file.</p>
+	 *
+	 * <p>Does not throw an exception if the file cannot be read or is not a DICOM file, but records it in the returned header.</p>
+	 *
+	 * <p>The file is not mapped, and is closed before returning, so it may then be deleted or renamed.</p>
+	 *
+	 * @param	file		the file
+	 * @param	strategy	when to stop reading the data set if it needs to be read
+	 * @return				the header
+	 */
+	public static Header readHeader(File file,AttributeList.ReadTerminationStrategy strategy) {
+		return readHeader(file,strategy,false);
+	}
+
+	/**
+	 * <p>Read the identifying header of a single file.</p>
+	 *
+	 * @param	file			the file
+	 * @param	strategy		when to stop reading the data set if it needs to be read
+	 * @param	mapLargeFiles	whether to map the file if it is at least {@link #minimumSizeToMap minimumSizeToMap} bytes
+	 * @return					the header
+	 */
+	static Header readHeader(File file,AttributeList.ReadTerminationStrategy strategy,boolean mapLargeFiles) {
+		Header header = new Header(file.getPath());
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(),BasicFileAttributes.class);	// before reading, so that a change during reading is detected later
+			header.size = attributes.size();
+			header.lastModified = attributes.lastModifiedTime().toMillis();
+			InputStream in = mapLargeFiles && header.size >= minimumSizeToMap ? new MappedFileInputStream(file) : new BufferedInputStream(new FileInputStream(file));
+			DicomInputStream i = new DicomInputStream(in);
+			try {
+				AttributeList list = new AttributeList();
+				if (i.haveMetaHeader()) {
+					header.hasMetaInformationHeader = true;
+					list.readOnlyMetaInformationHeader(i);
+					header.sopClassUID = Attribute.getSingleStringValueOrNull(list,TagFromName.MediaStorageSOPClassUID);
+					header.sopInstanceUID = Attribute.getSingleStringValueOrNull(list,TagFromName.MediaStorageSOPInstanceUID);
+					header.transferSyntaxUID = Attribute.getSingleStringValueOrNull(list,TagFromName.TransferSyntaxUID);
+				}
+				else {
+					header.transferSyntaxUID = TransferSyntax.ImplicitVRLittleEndian;
+				}
+				if (header.sopClassUID == null || header.sopClassUID.length() == 0 || header.sopInstanceUID == null || header.sopInstanceUID.length() == 0) {
+					header.identifiedFromDataSet = true;
+					list.read(i,strategy);
+					if (header.sopClassUID == null || header.sopClassUID.length() == 0) {
+						header.sopClassUID = Attribute.getSingleStringValueOrNull(list,TagFromName.SOPClassUID);
+					}
+					if (header.sopInstanceUID == null || header.sopInstanceUID.length() == 0) {
+						header.sopInstanceUID = Attribute.getSingleStringValueOrNull(list,TagFromName.SOPInstanceUID);
+					}
+				}
+				header.list = list;
+			}
+			finally {
+				i.close();
+			}
+		}
+		catch (Exception e) {
+			slf4jlogger.trace("readHeader(): {} is not a readable DICOM file",file,e);
+			header.exception = e;
+		}
+		return header;
+	}
+
+	/**
+	 * <p>Read the headers of files in parallel, handing them to the consumer on the calling thread in the order of the files.</p>
+	 */
+	private class HeadersInFlight {
+		private final Consumer<Header> consumer;
+		private final ArrayDeque<InFlightTask<Header>> inFlight = new ArrayDeque<InFlightTask<Header>>();
+
+		HeadersInFlight(Consumer<Header> consumer) {
+			this.consumer = consumer;
+		}
+
+		void submit(File file) {
+			if (inFlight.size() >= maximumFilesInFlight) {
+				consumer.accept(inFlight.removeFirst().join());
+			}
+			inFlight.addLast(new InFlightTask<Header>(pool,() -> readHeader(file,strategy,mapLargeFiles)));
+		}
+
+		void drain() {
+			while (!inFlight.isEmpty()) {
+				consumer.accept(inFlight.removeFirst().join());
+			}
+		}
+
+		void cancel() {
+			InFlightTask.cancelOrAwait(inFlight);	// so that no file is still open when the caller goes on to move or remove it
+			inFlight.clear();
+		}
+	}
+
+	/**
+	 * <p>Read the headers of the specified files.</p>
+	 *
+	 * @param	files		the files
+	 * @param	consumer	called on the calling thread with the header of each file, in the order of the files
+	 */
+	public void readHeaders(Iterable<File> files,Consumer<Header> consumer) {
+		HeadersInFlight headers = new HeadersInFlight(consumer);
+		try {
+			for (File file : files) {
+				headers.submit(file);
+			}
+			headers.drain();
+		}
+		finally {
+			headers.cancel();
+		}
+	}
+
+	/**
+	 * <p>Read the headers of all the files in a folder and its sub-folders.</p>
+	 *
+	 * <p>Folders that cannot be read are skipped.</p>
+	 *
+	 * @param	root		a folder, or a single file
+	 * @param	consumer	called on the calling thread with the header of each file, in the order in which the files are found
+	 * @throws	IOException	if the folder cannot be walked
+	 */
+	public void readHeaders(File root,Consumer<Header> consumer) throws IOException {
+		HeadersInFlight headers = new HeadersInFlight(consumer);
+		try {
+			Files.walkFileTree(root.toPath(),new SimpleFileVisitor<Path>() {
+				public FileVisitResult visitFile(Path path,BasicFileAttributes attributes) {
+					if (attributes.isRegularFile()) {
+						headers.submit(path.toFile());
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult visitFileFailed(Path path,IOException e) {
+					slf4jlogger.warn("readHeaders(): skipping {}",path,e);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			headers.drain();
+		}
+		finally {
+			headers.cancel();
+		}
+	}
+
+	/**
+	 * <p>Index the DICOM files in a folder and its sub-folders by path name.</p>
+	 *
+	 * <p>Files that are not DICOM files are not included. The attributes that were read are not retained, only the identifying values.</p>
+	 *
+	 * @param	root		a folder, or a single file
+	 * @return				a concurrent map of path name to header, without the attribute list
+	 * @throws	IOException	if the folder cannot be walked
+	 */
+	public ConcurrentMap<String,Header> index(File root) throws IOException {
+		ConcurrentMap<String,Header> index = new ConcurrentHashMap<String,Header>();
+		readHeaders(root,header -> {
+			if (header.isDicom()) {
+				header.list = null;		// so that memory use does not grow with the size of each header
+				index.put(header.getFileName(),header);
+			}
+		});
+		return index;
+	}
+
+	/**
+	 * <p>List all the regular files in a folder and its sub-folders, without reading them.</p>
+	 *
+	 * @param	root		a folder, or a single file
+	 * @return				the files
+	 * @throws	IOException	if the folder cannot be walked
+	 */
+	public static List<File> listFiles(File root) throws IOException {
+		List<File> files = new ArrayList<File>();
+		Files.walkFileTree(root.toPath(),new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path path,BasicFileAttributes attributes) {
+				if (attributes.isRegularFile()) {
+					files.add(path.toFile());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFileFailed(Path path,IOException e) {
+				slf4jlogger.warn("listFiles(): skipping {}",path,e);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return files;
+	}
+
+	/**
+	 * <p>Index the DICOM files in a folder and report how many were found and how long it took.</p>
+	 *
+	 * @param	arg	the folder, and optionally the number of threads (default is the number of processors)
+	 */
+	public static void main(String arg[]) {
+		try {
+			int numberOfThreads = arg.length > 1 ? Integer.parseInt(arg[1]) : Runtime.getRuntime().availableProcessors();
+			ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+			try {
+				long startTime = System.currentTimeMillis();
+				ConcurrentMap<String,Header> index = new DicomFileHeaderIndex(pool).index(new File(arg[0]));
+				System.err.println("Indexed "+index.size()+" DICOM files in "+(System.currentTimeMillis()-startTime)+" ms with "+numberOfThreads+" threads");	// no need to use SLF4J since command line utility/test
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		catch (Exception e) {
+			e.printStackTrace(System.err);	// no need to use SLF4J since command line utility/test
+			System.exit(0);
+		}
+	}
+}
@@ -0,0 +1,679 @@
+package com.pixelmed.dicom;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.pixelmed.slf4j.Logger;
+import com.pixelmed.slf4j.LoggerFactory;
+
+/**
+ * <p>A persistent index of the files that have already been scanned, keyed by path name, and recording the size and modification
+ * time of each file when it was scanned together with its identifying attributes, so that a later scan of the same folders need
+ * only read files that are new or have changed.</p>
+ *
+ * <p>The index is kept in memory and saved to a sidecar file with {@link DicomFileScanIndex#save() save()}, which replaces the
+ * sidecar file atomically where the file system permits. Files that could not be read or are not DICOM files are recorded too, so
+ * that they are not read again unless they change. If the sidecar file is missing or cannot be read, the index starts empty and
+ * every file is treated as new.</p>
+ *
+ * <p>Folders may also be {@link DicomFileScanIndex#watch(List,long,Consumer,Consumer) watched} for files that are created, modified
+ * or deleted, so that the index, and whatever it describes, may be kept up to date continuously rather than by rescanning.</p>
+ *
+ * @see com.pixelmed.dicom.DicomFileHeaderIndex
+ * @see com.pixelmed.dicom.MediaImporter
+ * @see com.pixelmed.database.RebuildDatabaseFromInstanceFiles
+ */
+public class DicomFileScanIndex {
+
+	private static final Logger slf4jlogger = LoggerFactory.getLogger(DicomFileScanIndex.class);
+
+	private static final String formatIdentifier = "com.pixelmed.dicom.DicomFileScanIndex";
+	private static final int formatVersion = 1;
+
+	/**
+	 * <p>The size, modification time and identifying attributes of a file when it was scanned.</p>
+	 */
+	public static class Entry {
+		private final String fileName;
+		private final long size;
+		private final long lastModified;
+		private final String sopClassUID;
+		private final String sopInstanceUID;
+		private final String transferSyntaxUID;
+
+		Entry(String fileName,long size,long lastModified,String sopClassUID,String sopInstanceUID,String transferSyntaxUID) {
+			this.fileName = fileName;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.sopClassUID = sopClassUID;
+			this.sopInstanceUID = sopInstanceUID;
+			this.transferSyntaxUID = transferSyntaxUID;
+		}
+
+		/**
+		 * @return	the absolute path name of the file
+		 */
+		public String getFileName() { return fileName; }
+
+		/**
+		 * @return	the size of the file in bytes when it was scanned
+		 */
+		public long getSize() { return size; }
+
+		/**
+		 * @return	the modification time of the file in milliseconds since the epoch when it was scanned
+		 */
+		public long getLastModified() { return lastModified; }
+
+		/**
+		 * @return	the SOP Class UID, or null if the file is not a DICOM file or could not be read
+		 */
+		public String getSOPClassUID() { return sopClassUID; }
+
+		/**
+		 * @return	the SOP Instance UID, or null if none
+		 */
+		public String getSOPInstanceUID() { return sopInstanceUID; }
+
+		/**
+		 * @return	the Transfer Syntax UID, or null if none
+		 */
+		public String getTransferSyntaxUID() { return transferSyntaxUID; }
+
+		/**
+		 * @return	true if the file was a DICOM file with a SOP Class UID when it was scanned
+		 */
+		public boolean isDicom() { return sopClassUID != null && sopClassUID.length() > 0; }
+
+		/**
+		 * @param	size			the current size of the file
+		 * @param	lastModified	the current modification time of the file
+		 * @return					true if the file has the same size and modification time as when it was scanned
+		 */
+		public boolean isUnchanged(long size,long lastModified) { return this.size == size && this.lastModified == lastModified; }
+
+		public String toString() {
+			return "file="+fileName+", size="+size+", lastModified="+lastModified+", sopClassUID="+sopClassUID+", sopInstanceUID="+sopInstanceUID+", transferSyntaxUID="+transferSyntaxUID;
+		}
+	}
+
+	private final File indexFile;
+	private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+	private volatile WatchService watchService;
+	private volatile boolean stopWatching;
+
+	/**
+	 * <p>Create an index, loading any entries previously saved in the sidecar file.</p>
+	 *
+	 * @param	indexFile	the sidecar file in which the index is saved, or null if the index is only to be kept in memory
+	 */
+	public DicomFileScanIndex(File indexFile) {
+		this.indexFile = indexFile;
+		if (indexFile != null && indexFile.exists()) {
+			try {
+				load();
+			}
+			catch (IOException e) {
+				slf4jlogger.warn("Cannot read scan index {}, so starting with an empty index",indexFile,e);
+				entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return	the sidecar file in which the index is saved, or null if none
+	 */
+	public File getIndexFile() { return indexFile; }
+
+	/**
+	 * @return	the number of files in the index
+	 */
+	public int size() { return entries.size(); }
+
+	private static String getKey(File file) {
+		return file.getAbsolutePath();
+	}
+
+	private static String nullIfEmpty(String s) {
+		return s == null || s.length() == 0 ? null : s;
+	}
+
+	/**
+	 * @param	file	the file
+	 * @return			the entry for the file, or null if it is not in the index
+	 */
+	public Entry get(File file) {
+		return entries.get(getKey(file));
+	}
+
+	/**
+	 * <p>Is the file in the index with its current size and modification time?</p>
+	 *
+	 * @param	file			the file
+	 * @param	size			the current size of the file
+	 * @param	lastModified	the current modification time of the file
+	 * @return					true if the file does not need to be scanned again
+	 */
+	public boolean isUnchanged(File file,long size,long lastModified) {
+		Entry entry = get(file);
+		return entry != null && entry.isUnchanged(size,lastModified);
+	}
+
+	/**
+	 * <p>Is the file in the index with its current size and modification time?</p>
+	 *
+	 * @param	file	the file
+	 * @return			true if the file does not need to be scanned again, false if it has changed, is not in the index or cannot be accessed
+	 */
+	public boolean isUnchanged(File file) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(),BasicFileAttributes.class);
+			return isUnchanged(file,attributes.size(),attributes.lastModifiedTime().toMillis());
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * <p>Add or replace the entry for a file.</p>
+	 *
+	 * <p>The size and modification time should be obtained before the file is read, so that a change during reading is detected by the next scan.</p>
+	 *
+	 * @param	file				the file
+	 * @param	size				the size of the file when it was read
+	 * @param	lastModified		the modification time of the file when it was read
+	 * @param	sopClassUID			the SOP Class UID, or null if the file is not a DICOM file or could not be read
+	 * @param	sopInstanceUID		the SOP Instance UID, or null if none
+	 * @param	transferSyntaxUID	the Transfer Syntax UID, or null if none
+	 */
+	public void put(File file,long size,long lastModified,String sopClassUID,String sopInstanceUID,String transferSyntaxUID) {
+		String key = getKey(file);
+		entries.put(key,new Entry(key,size,lastModified,nullIfEmpty(sopClassUID),nullIfEmpty(sopInstanceUID),nullIfEmpty(transferSyntaxUID)));
+	}
+
+	/**
+	 * <p>Add or replace the entry for a file from the attributes read from it.</p>
+	 *
+	 * @param	file			the file
+	 * @param	size			the size of the file when it was read
+	 * @param	lastModified	the modification time of the file when it was read
+	 * @param	list			the attributes read from the file, or null if it could not be read
+	 */
+	public void put(File file,long size,long lastModified,AttributeList list) {
+		if (list == null) {
+			put(file,size,lastModified,null,null,null);
+		}
+		else {
+			String sopClassUID = Attribute.getSingleStringValueOrNull(list,TagFromName.SOPClassUID);
+			if (sopClassUID == null) {
+				sopClassUID = Attribute.getSingleStringValueOrNull(list,TagFromName.MediaStorageSOPClassUID);
+			}
+			String sopInstanceUID = Attribute.getSingleStringValueOrNull(list,TagFromName.SOPInstanceUID);
+			if (sopInstanceUID == null) {
+				sopInstanceUID = Attribute.getSingleStringValueOrNull(list,TagFromName.MediaStorageSOPInstanceUID);
+			}
+			String transferSyntaxUID = Attribute.getSingleStringValueOrNull(list,TagFromName.TransferSyntaxUID);
+			put(file,size,lastModified,sopClassUID,sopInstanceUID,transferSyntaxUID);
+		}
+	}
+
+	/**
+	 * <p>Add or replace the entry for a file from its identifying header.</p>
+	 *
+	 * <p>Does nothing if the size and modification time of the file could not be obtained when the header was read.</p>
+	 *
+	 * @param	header	the header, as read by {@link DicomFileHeaderIndex#readHeader(File,AttributeList.ReadTerminationStrategy) DicomFileHeaderIndex.readHeader()}
+	 */
+	public void put(DicomFileHeaderIndex.Header header) {
+		if (header.getSize() >= 0) {
+			if (header.getException() == null) {
+				put(new File(header.getFileName()),header.getSize(),header.getLastModified(),header.getSOPClassUID(),header.getSOPInstanceUID(),header.getTransferSyntaxUID());
+			}
+			else {
+				put(new File(header.getFileName()),header.getSize(),header.getLastModified(),null,null,null);
+			}
+		}
+	}
+
+	/**
+	 * <p>Remove the entry for a file.</p>
+	 *
+	 * @param	file	the file
+	 * @return			the entry that was removed, or null if the file was not in the index
+	 */
+	public Entry remove(File file) {
+		return entries.remove(getKey(file));
+	}
+
+	/**
+	 * <p>Remove all the entries, so that every file is read again by the next scan.</p>
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	private static boolean isWithin(String key,String rootKey) {
+		return key.equals(rootKey)
+			|| (key.startsWith(rootKey) && (rootKey.endsWith(File.separator) || key.startsWith(File.separator,rootKey.length())));
+	}
+
+	/**
+	 * <p>Remove the entries for a file, or for all the files in a folder and its sub-folders.</p>
+	 *
+	 * @param	root	a file or folder
+	 * @return			the entries that were removed
+	 */
+	public List<Entry> removeAll(File root) {
+		String rootKey = getKey(root);
+		List<Entry> removed = new ArrayList<Entry>();
+		Iterator<Entry> i = entries.values().iterator();
+		while (i.hasNext()) {
+			Entry entry = i.next();
+			if (isWithin(entry.getFileName(),rootKey)) {
+				removed.add(entry);
+				i.remove();
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * <p>Remove the entries for files in a folder and its sub-folders, other than those specified.</p>
+	 *
+	 * <p>Used after scanning a folder to forget files that have been deleted since the previous scan.</p>
+	 *
+	 * @param	root			a file or folder that has been scanned
+	 * @param	fileNamesSeen	the absolute path names of the files found during the scan
+	 * @return					the entries that were removed
+	 */
+	public List<Entry> removeAllExcept(File root,Set<String> fileNamesSeen) {
+		String rootKey = getKey(root);
+		List<Entry> removed = new ArrayList<Entry>();
+		Iterator<Entry> i = entries.values().iterator();
+		while (i.hasNext()) {
+			Entry entry = i.next();
+			if (isWithin(entry.getFileName(),rootKey) && !fileNamesSeen.contains(entry.getFileName())) {
+				removed.add(entry);
+				i.remove();
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * <p>Walk a folder and its sub-folders, and list the regular files that are not in the index or have changed size or modification time.</p>
+	 *
+	 * <p>The entries for files that are in the index but no longer present are removed. Folders that cannot be read are skipped.</p>
+	 *
+	 * @param	root		a folder, or a single file
+	 * @param	removed		if not null, the entries for files that are no longer present are added to this
+	 * @return				the files that need to be scanned, in the order in which they are found
+	 * @throws	IOException	if the folder cannot be walked
+	 */
+	public List<File> listNewOrChangedFiles(File root,Collection<Entry> removed) throws IOException {
+		List<File> files = new ArrayList<File>();
+		Set<String> fileNamesSeen = new HashSet<String>();
+		Files.walkFileTree(root.toPath(),new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path path,BasicFileAttributes attributes) {
+				if (attributes.isRegularFile()) {
+					File file = path.toFile();
+					String key = getKey(file);
+					fileNamesSeen.add(key);
+					Entry entry = entries.get(key);
+					if (entry == null || !entry.isUnchanged(attributes.size(),attributes.lastModifiedTime().toMillis())) {
+						files.add(file);
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFileFailed(Path path,IOException e) {
+				slf4jlogger.warn("listNewOrChangedFiles(): skipping {}",path,e);
+				// do not forget files that may still be present in a folder that cannot be read this time
+				String key = getKey(path.toFile());
+				for (String fileName : entries.keySet()) {
+					if (isWithin(fileName,key)) {
+						fileNamesSeen.add(fileName);
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		List<Entry> removedEntries = removeAllExcept(root,fileNamesSeen);
+		if (removed != null) {
+			removed.addAll(removedEntries);
+		}
+		slf4jlogger.debug("listNewOrChangedFiles(): {} files found in {} are new or changed, {} removed",files.size(),root,removedEntries.size());
+		return files;
+	}
+
+	private void load() throws IOException {
+		DataInputStream i = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try {
+			if (!formatIdentifier.equals(i.readUTF())) {
+				throw new IOException("Not a scan index file");
+			}
+			int version = i.readInt();
+			if (version != formatVersion) {
+				throw new IOException("Unsupported scan index version "+version);
+			}
+			int count = i.readInt();
+			for (int e=0; e<count; ++e) {
+				String fileName = i.readUTF();
+				long size = i.readLong();
+				long lastModified = i.readLong();
+				String sopClassUID = nullIfEmpty(i.readUTF());
+				String sopInstanceUID = nullIfEmpty(i.readUTF());
+				String transferSyntaxUID = nullIfEmpty(i.readUTF());
+				entries.put(fileName,new Entry(fileName,size,lastModified,sopClassUID,sopInstanceUID,transferSyntaxUID));
+			}
+		}
+		finally {
+			i.close();
+		}
+		slf4jlogger.debug("load(): read {} entries from {}",entries.size(),indexFile);
+	}
+
+	/**
+	 * <p>Save the index to the sidecar file.</p>
+	 *
+	 * <p>The index is written to a temporary file in the same folder, which then replaces the sidecar file, so an interrupted save
+	 * leaves the previous index intact. Does nothing if the index is only kept in memory.</p>
+	 *
+	 * @throws	IOException	if the index cannot be written
+	 */
+	public synchronized void save() throws IOException {
+		if (indexFile != null) {
+			File parent = indexFile.getAbsoluteFile().getParentFile();
+			File temporaryFile = File.createTempFile(indexFile.getName(),".tmp",parent);
+			try {
+				List<Entry> snapshot = new ArrayList<Entry>(entries.values());
+				DataOutputStream o = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+				try {
+					o.writeUTF(formatIdentifier);
+					o.writeInt(formatVersion);
+					o.writeInt(snapshot.size());
+					for (Entry entry : snapshot) {
+						o.writeUTF(entry.getFileName());
+						o.writeLong(entry.getSize());
+						o.writeLong(entry.getLastModified());
+						o.writeUTF(entry.getSOPClassUID() == null ? "" : entry.getSOPClassUID());
+						o.writeUTF(entry.getSOPInstanceUID() == null ? "" : entry.getSOPInstanceUID());
+						o.writeUTF(entry.getTransferSyntaxUID() == null ? "" : entry.getTransferSyntaxUID());
+					}
+				}
+				finally {
+					o.close();
+				}
+				try {
+					Files.move(temporaryFile.toPath(),indexFile.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (AtomicMoveNotSupportedException e) {
+					Files.move(temporaryFile.toPath(),indexFile.toPath(),StandardCopyOption.REPLACE_EXISTING);
+				}
+				slf4jlogger.debug("save(): wrote {} entries to {}",snapshot.size(),indexFile);
+			}
+			finally {
+				temporaryFile.delete();		// does nothing if moved
+			}
+		}
+	}
+
+	/**
+	 * <p>Register a folder and its sub-folders with a watch service.</p>
+	 *
+	 * @param	watchService	the watch service
+	 * @param	root			the folder
+	 * @param	folders			the folders registered so far, indexed by key, to be extended
+	 * @param	filesFound		if not null, the regular files already in the folders are added to this
+	 * @throws	IOException		if the folder cannot be walked
+	 */
+	private static void register(WatchService watchService,Path root,Map<WatchKey,Path> folders,Collection<Path> filesFound) throws IOException {
+		Files.walkFileTree(root,new SimpleFileVisitor<Path>() {
+			public FileVisitResult preVisitDirectory(Path folder,BasicFileAttributes attributes) throws IOException {
+				WatchKey key = folder.register(watchService,StandardWatchEventKinds.ENTRY_CREATE,StandardWatchEventKinds.ENTRY_MODIFY,StandardWatchEventKinds.ENTRY_DELETE);
+				folders.put(key,folder);
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFile(Path path,BasicFileAttributes attributes) {
+				if (filesFound != null && attributes.isRegularFile()) {
+					filesFound.add(path);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFileFailed(Path path,IOException e) {
+				slf4jlogger.warn("watch(): cannot watch {}",path,e);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * <p>Watch folders and their sub-folders for files that are created, modified or deleted, and hand them to the handlers.</p>
+	 *
+	 * <p>Events are accumulated until there have been none for the specified settling time (or ten times that has passed), so that
+	 * a file that is still being written is not handed over for every write. Only files that are not in the index with their current
+	 * size and modification time are handed to the changed file handler, which is expected to read each file and {@link DicomFileScanIndex#put(File,long,long,AttributeList) put}
+	 * it in the index. The entries for files that are deleted (or are in folders that are deleted) are removed from the index and handed
+	 * to the removed file handler. If events are lost because too many occur, the folders are rescanned.</p>
+	 *
+	 * <p>The handlers are called on the calling thread. The index is not saved; that is up to the handlers or the caller.</p>
+	 *
+	 * <p>Does not return until {@link DicomFileScanIndex#stopWatching() stopWatching()} is called from another thread, which lets
+	 * the handler that is in progress complete, or the calling thread is interrupted.</p>
+	 *
+	 * @param	roots				the folders to watch
+	 * @param	settleMillis		how long to wait for a quiet period before handing over the files, in milliseconds
+	 * @param	changedFileHandler	called with each file that is new or changed
+	 * @param	removedFileHandler	called with the entry for each file that has been removed, or null if nothing is to be done
+	 * @throws	IOException				if the folders cannot be watched
+	 * @throws	InterruptedException	when the calling thread is interrupted
+	 */
+	public void watch(List<File> roots,long settleMillis,Consumer<File> changedFileHandler,Consumer<Entry> removedFileHandler) throws IOException, InterruptedException {
+		watch(roots,settleMillis,changedFileHandler,removedFileHandler,null);
+	}
+
+	/**
+	 * <p>Watch folders and their sub-folders for files that are created, modified or deleted, and hand them to the handlers.</p>
+	 *
+	 * <p>As {@link DicomFileScanIndex#watch(List,long,Consumer,Consumer) watch(List,long,Consumer,Consumer)}, except that the batch handler
+	 * is called after each settled batch of files has been handed to the other handlers, which is the place to save the index rather
+	 * than after every file.</p>
+	 *
+	 * @param	roots				the folders to watch
+	 * @param	settleMillis		how long to wait for a quiet period before handing over the files, in milliseconds
+	 * @param	changedFileHandler	called with each file that is new or changed
+	 * @param	removedFileHandler	called with the entry for each file that has been removed, or null if nothing is to be done
+	 * @param	batchHandler		called after each batch of files has been handed over, or null if nothing is to be done
+	 * @throws	IOException				if the folders cannot be watched
+	 * @throws	InterruptedException	when the calling thread is interrupted
+	 */
+	public void watch(List<File> roots,long settleMillis,Consumer<File> changedFileHandler,Consumer<Entry> removedFileHandler,Runnable batchHandler) throws IOException, InterruptedException {
+		watch(roots,settleMillis,changedFileHandler,removedFileHandler,batchHandler,null);
+	}
+
+	/**
+	 * <p>Watch folders and their sub-folders for files that are created, modified or deleted, and hand them to the handlers.</p>
+	 *
+	 * <p>As {@link DicomFileScanIndex#watch(List,long,Consumer,Consumer,Runnable) watch(List,long,Consumer,Consumer,Runnable)}, except that the
+	 * registered handler is called once all the folders have been registered with the watch service, after which any file that is
+	 * created, modified or deleted in them will be handed over; changes made before then may be missed.</p>
+	 *
+	 * @param	roots				the folders to watch
+	 * @param	settleMillis		how long to wait for a quiet period before handing over the files, in milliseconds
+	 * @param	changedFileHandler	called with each file that is new or changed
+	 * @param	removedFileHandler	called with the entry for each file that has been removed, or null if nothing is to be done
+	 * @param	batchHandler		called after each batch of files has been handed over, or null if nothing is to be done
+	 * @param	registeredHandler	called once when the folders have been registered, or null if nothing is to be done
+	 * @throws	IOException				if the folders cannot be watched
+	 * @throws	InterruptedException	when the calling thread is interrupted
+	 */
+	public void watch(List<File> roots,long settleMillis,Consumer<File> changedFileHandler,Consumer<Entry> removedFileHandler,Runnable batchHandler,Runnable registeredHandler) throws IOException, InterruptedException {
+		WatchService watchService = null;
+		try {
+			if (this.watchService != null) {
+				throw new IOException("Already watching");
+			}
+			Map<WatchKey,Path> folders = new HashMap<WatchKey,Path>();
+			for (File root : roots) {
+				if (root.isDirectory()) {
+					if (watchService == null) {
+						watchService = root.toPath().getFileSystem().newWatchService();
+					}
+					register(watchService,root.toPath(),folders,null);
+				}
+				else {
+					slf4jlogger.warn("watch(): {} is not a folder so cannot be watched",root);
+				}
+			}
+			if (watchService == null) {
+				throw new IOException("No folders to watch");
+			}
+			this.watchService = watchService;
+			if (stopWatching) {		// in case stopWatching() was called before there was anything to close
+				return;
+			}
+			if (registeredHandler != null) {
+				registeredHandler.run();
+			}
+			Set<Path> changed = new LinkedHashSet<Path>();
+			Set<Path> deleted = new LinkedHashSet<Path>();
+			long pendingSince = 0;
+			while (true) {
+				WatchKey key = null;
+				if (changed.isEmpty() && deleted.isEmpty()) {
+					key = watchService.take();
+					pendingSince = System.currentTimeMillis();
+				}
+				else if (System.currentTimeMillis() - pendingSince < settleMillis*10) {
+					key = watchService.poll(settleMillis,TimeUnit.MILLISECONDS);
+				}
+				if (key == null) {
+					for (Path path : deleted) {
+						if (!Files.exists(path,LinkOption.NOFOLLOW_LINKS)) {
+							for (Entry entry : removeAll(path.toFile())) {
+								if (removedFileHandler != null) {
+									removedFileHandler.accept(entry);
+								}
+							}
+						}
+					}
+					for (Path path : changed) {
+						File file = path.toFile();
+						if (Files.isRegularFile(path) && !isUnchanged(file)) {
+							changedFileHandler.accept(file);
+						}
+					}
+					changed.clear();
+					deleted.clear();
+					if (batchHandler != null) {
+						batchHandler.run();
+					}
+				}
+				else {
+					Path folder = folders.get(key);
+					for (WatchEvent<?> event : key.pollEvents()) {
+						WatchEvent.Kind<?> kind = event.kind();
+						if (kind == StandardWatchEventKinds.OVERFLOW) {
+							slf4jlogger.warn("watch(): events lost, so rescanning");
+							for (File root : roots) {
+								if (root.isDirectory()) {
+									List<Entry> removed = new ArrayList<Entry>();
+									for (File file : listNewOrChangedFiles(root,removed)) {
+										changed.add(file.toPath());
+									}
+									for (Entry entry : removed) {
+										if (removedFileHandler != null) {
+											removedFileHandler.accept(entry);
+										}
+									}
+								}
+							}
+						}
+						else if (folder != null) {
+							Path path = folder.resolve((Path)event.context());
+							if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+								changed.remove(path);
+								deleted.add(path);
+							}
+							else if (Files.isDirectory(path,LinkOption.NOFOLLOW_LINKS)) {
+								if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+									register(watchService,path,folders,changed);	// files may have been created before the folder was registered
+								}
+							}
+							else {
+								deleted.remove(path);
+								changed.add(path);
+							}
+						}
+					}
+					if (!key.reset()) {
+						folders.remove(key);
+					}
+				}
+			}
+		}
+		catch (ClosedWatchServiceException e) {
+			slf4jlogger.debug("watch(): stopped");
+		}
+		finally {
+			if (watchService != null) {
+				if (this.watchService == watchService) {
+					this.watchService = null;
+				}
+				watchService.close();
+			}
+		}
+	}
+
+	/**
+	 * <p>Stop {@link DicomFileScanIndex#watch(List,long,Consumer,Consumer) watching} folders.</p>
+	 *
+	 * <p>May be called before watching has started, in which case watching stops as soon as it starts; once called, the index cannot be used to watch again.</p>
+	 *
+	 * @throws	IOException	if the watch service cannot be closed
+	 */
+	public void stopWatching() throws IOException {
+		stopWatching = true;
+		WatchService watchService = this.watchService;
+		if (watchService != null) {
+			watchService.close();
+		}
+	}
+}
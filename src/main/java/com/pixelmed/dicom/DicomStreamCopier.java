@@ -32,7 +32,7 @@ public class DicomStreamCopier {
 	private void createDictionaryifNecessary() {
 		if (dictionary == null) {
 //System.err.println("DicomStreamCopier.createDictionaryifNecessary(): creating static dictionary");
-			dictionary = new DicomDictionary();
+			dictionary = AttributeList.getDictionary();
 		}
 	}
 
@@ -50,7 +50,7 @@ public class DicomStreamCopier {
 	private AttributeTag readAttributeTag() throws IOException {
 		int group   = i.readUnsigned16();
 		int element = i.readUnsigned16();
-		return new AttributeTag(group,element);
+		return AttributeTag.valueOf(group,element);
 	}
 
 	/**
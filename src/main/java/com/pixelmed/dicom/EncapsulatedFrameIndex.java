@@ -0,0 +1,344 @@
+package com.pixelmed.dicom;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+
+import com.pixelmed.slf4j.Logger;
+import com.pixelmed.slf4j.LoggerFactory;
+
+/**
+ * <p>An index of where each frame of encapsulated (compressed) Pixel Data starts in a file, so that any one frame may be read
+ * with a single positioned read, without reading the fragments of the frames before it.</p>
+ *
+ * <p>The index is taken from the Extended Offset Table (7FE0,0001) and Extended Offset Table Lengths (7FE0,0002) if present,
+ * else from the Basic Offset Table if it has one entry per frame, else it is built by reading only the item header of each
+ * fragment and seeking past the fragment. In the last case fragments are assigned one per frame if there are as many
+ * fragments as frames, all to the single frame if there is only one, and otherwise a new frame is started at each fragment
+ * that begins with a JPEG, JPEG-LS or JPEG 2000 start of image or codestream marker.</p>
+ *
+ * <p>The file is opened once and kept open until the index is closed. Frames may be read concurrently.</p>
+ *
+ * <pre>
+ * try (EncapsulatedFrameIndex index = EncapsulatedFrameIndex.getIndex(file)) {
+ * 	byte[] thumbnail = index.getFrame(index.getNumberOfFrames()/2);
+ * }
+ * </pre>
+ *
+ * <p>An Extended Offset Table can be added when writing with
+ * {@link com.pixelmed.dicom.OtherByteAttributeMultipleCompressedFrames#addExtendedOffsetTable(AttributeList) OtherByteAttributeMultipleCompressedFrames.addExtendedOffsetTable()},
+ * as {@link com.pixelmed.apps.CompressDicomFiles CompressDicomFiles} does for multi-frame images.</p>
+ */
+public class EncapsulatedFrameIndex implements Closeable {
+
+	private static final Logger slf4jlogger = LoggerFactory.getLogger(EncapsulatedFrameIndex.class);
+
+	/***/
+	public static final AttributeTag ExtendedOffsetTable = new AttributeTag(0x7FE0,0x0001);
+	/***/
+	public static final AttributeTag ExtendedOffsetTableLengths = new AttributeTag(0x7FE0,0x0002);
+
+	private static final int ITEM = 0xE000FFFE;							// (FFFE,E000) read as a little endian int
+	private static final int SEQUENCE_DELIMITATION_ITEM = 0xE0DDFFFE;	// (FFFE,E0DD) read as a little endian int
+
+	private final File file;
+	private final FileChannel channel;
+	private final int numberOfFrames;
+	private final long[] frameStarts;		// file offset of the item tag of the first fragment of each frame
+	private final long[] frameEnds;			// file offset just past the last fragment of each frame
+
+	/**
+	 * <p>Index the encapsulated Pixel Data of a file.</p>
+	 *
+	 * <p>Only the data set up to the Pixel Data and the item headers needed to locate the frames are read.</p>
+	 *
+	 * @param	file			the DICOM file
+	 * @return					the index, which must be closed
+	 * @throws	IOException		if the file cannot be read
+	 * @throws	DicomException	if the file has no encapsulated Pixel Data or the frames cannot be located
+	 */
+	public static EncapsulatedFrameIndex getIndex(File file) throws IOException, DicomException {
+		AttributeList list = new AttributeList();
+		long byteOffsetOfValue;
+		DicomInputStream i = new DicomInputStream(file);
+		try {
+			long byteOffset = list.read(i,TagFromName.PixelData);	// just past the tag, if found
+			if (byteOffset >= file.length()) {
+				throw new DicomException("No Pixel Data in "+file);	// read to the end without finding it
+			}
+			long vl;
+			try {
+				if (i.getTransferSyntaxInUse().isExplicitVR()) {
+					i.readUnsigned16();		// VR
+					i.readUnsigned16();		// reserved
+					byteOffset+=4;
+				}
+				vl = i.readUnsigned32();
+				byteOffset+=4;
+			}
+			catch (EOFException e) {
+				throw new DicomException("No Pixel Data in "+file);
+			}
+			if (vl != 0xffffffffl) {
+				throw new DicomException("Pixel Data is not encapsulated in "+file);
+			}
+			byteOffsetOfValue = byteOffset;
+		}
+		finally {
+			i.close();
+		}
+		return new EncapsulatedFrameIndex(file,byteOffsetOfValue,Attribute.getSingleIntegerValueOrDefault(list,TagFromName.NumberOfFrames,1),list);
+	}
+
+	/**
+	 * <p>Index encapsulated Pixel Data at a known position in a file.</p>
+	 *
+	 * @param	file				the file
+	 * @param	byteOffsetOfValue	the byte offset in the file of the Basic Offset Table item that starts the Pixel Data value
+	 * @param	numberOfFrames		the number of frames
+	 * @param	list				the data set, from which the Extended Offset Table is used if present, may be null
+	 * @throws	IOException			if the file cannot be read
+	 * @throws	DicomException		if the frames cannot be located
+	 */
+	public EncapsulatedFrameIndex(File file,long byteOffsetOfValue,int numberOfFrames,AttributeList list) throws IOException, DicomException {
+		this.file = file;
+		this.numberOfFrames = numberOfFrames;
+		frameStarts = new long[numberOfFrames];
+		frameEnds = new long[numberOfFrames];
+		channel = FileChannel.open(file.toPath(),StandardOpenOption.READ);
+		try {
+			if (numberOfFrames < 1) {
+				throw new DicomException("Invalid number of frames "+numberOfFrames);
+			}
+			ByteBuffer header = readItemHeader(byteOffsetOfValue);
+			if (header.getInt(0) != ITEM) {
+				throw new DicomException("Expected Basic Offset Table item at "+byteOffsetOfValue+" in "+file);
+			}
+			long basicOffsetTableLength = header.getInt(4) & 0xffffffffl;
+			long firstFragment = byteOffsetOfValue + 8 + basicOffsetTableLength;
+
+			long[] extendedOffsets = list == null ? null : getUnsigned64Values(list.get(ExtendedOffsetTable));
+			long[] extendedLengths = list == null ? null : getUnsigned64Values(list.get(ExtendedOffsetTableLengths));
+			if (extendedOffsets != null && extendedOffsets.length == numberOfFrames) {
+				slf4jlogger.debug("Using Extended Offset Table");
+				for (int f=0; f<numberOfFrames; ++f) {
+					frameStarts[f] = firstFragment + extendedOffsets[f];
+				}
+				for (int f=0; f<numberOfFrames-1; ++f) {
+					frameEnds[f] = frameStarts[f+1];
+				}
+				if (extendedLengths != null && extendedLengths.length == numberOfFrames) {
+					long length = extendedLengths[numberOfFrames-1];
+					frameEnds[numberOfFrames-1] = frameStarts[numberOfFrames-1] + 8 + length + length%2;	// one fragment per frame when there is an Extended Offset Table
+				}
+				else {
+					frameEnds[numberOfFrames-1] = findEndOfFragments(frameStarts[numberOfFrames-1]);
+				}
+			}
+			else if (basicOffsetTableLength == 4l*numberOfFrames) {
+				slf4jlogger.debug("Using Basic Offset Table");
+				ByteBuffer offsets = read(byteOffsetOfValue+8,(int)basicOffsetTableLength);
+				for (int f=0; f<numberOfFrames; ++f) {
+					frameStarts[f] = firstFragment + (offsets.getInt(f*4) & 0xffffffffl);
+				}
+				for (int f=0; f<numberOfFrames-1; ++f) {
+					frameEnds[f] = frameStarts[f+1];
+				}
+				frameEnds[numberOfFrames-1] = findEndOfFragments(frameStarts[numberOfFrames-1]);
+			}
+			else {
+				slf4jlogger.debug("No offset table, indexing fragments");
+				indexFragments(firstFragment);
+			}
+			for (int f=0; f<numberOfFrames; ++f) {
+				if (frameEnds[f] <= frameStarts[f] || (f > 0 && frameStarts[f] < frameEnds[f-1])) {
+					throw new DicomException("Invalid offset of frame "+f+" in "+file);
+				}
+			}
+		}
+		catch (IOException | DicomException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param	a	an OV attribute, or one of unrecognized VR whose bytes are little endian 64 bit values, may be null
+	 * @return		the values or null if none
+	 */
+	private static long[] getUnsigned64Values(Attribute a) throws DicomException {
+		if (a == null || a.getVL() == 0) {
+			return null;
+		}
+		if (a instanceof OtherVeryLongAttribute) {
+			return a.getLongValues();
+		}
+		byte[] bytes = a.getByteValues();
+		long[] values = new long[bytes.length/8];
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(values);
+		return values;
+	}
+
+	/**
+	 * <p>Walk the item headers from the first fragment to the Sequence Delimitation Item, and assign fragments to frames.</p>
+	 *
+	 * @param	firstFragment	the byte offset of the first fragment after the Basic Offset Table
+	 */
+	private void indexFragments(long firstFragment) throws IOException, DicomException {
+		long[] fragmentStarts = new long[Math.max(16,numberOfFrames)];
+		int numberOfFragments = 0;
+		long position = firstFragment;
+		long fileLength = channel.size();
+		while (position + 8 <= fileLength) {
+			ByteBuffer header = readItemHeader(position);
+			int tag = header.getInt(0);
+			if (tag == SEQUENCE_DELIMITATION_ITEM) {
+				break;
+			}
+			if (tag != ITEM) {
+				throw new DicomException("Expected fragment item at "+position+" in "+file);
+			}
+			if (numberOfFragments == fragmentStarts.length) {
+				fragmentStarts = Arrays.copyOf(fragmentStarts,numberOfFragments*2);
+			}
+			fragmentStarts[numberOfFragments++] = position;
+			position += 8 + (header.getInt(4) & 0xffffffffl);
+		}
+		long endOfFragments = position;
+		if (numberOfFragments == numberOfFrames) {
+			System.arraycopy(fragmentStarts,0,frameStarts,0,numberOfFrames);
+		}
+		else if (numberOfFrames == 1 && numberOfFragments > 0) {
+			frameStarts[0] = fragmentStarts[0];
+		}
+		else {
+			int f = 0;
+			for (int fragment=0; fragment<numberOfFragments; ++fragment) {
+				if (isStartOfFrame(fragmentStarts[fragment])) {
+					if (f == numberOfFrames) {
+						throw new DicomException("More frames than Number of Frames "+numberOfFrames+" in "+file);
+					}
+					frameStarts[f++] = fragmentStarts[fragment];
+				}
+			}
+			if (f != numberOfFrames) {
+				throw new DicomException("Cannot determine which of "+numberOfFragments+" fragments start each of "+numberOfFrames+" frames in "+file);
+			}
+		}
+		for (int f=0; f<numberOfFrames-1; ++f) {
+			frameEnds[f] = frameStarts[f+1];
+		}
+		frameEnds[numberOfFrames-1] = endOfFragments;
+	}
+
+	/**
+	 * @param	fragmentStart	the byte offset of the item tag of a fragment
+	 * @return					true if the fragment begins with a JPEG or JPEG-LS SOI or JPEG 2000 SOC marker
+	 */
+	private boolean isStartOfFrame(long fragmentStart) throws IOException {
+		ByteBuffer marker = read(fragmentStart+8,2);
+		return (marker.get(0) & 0xff) == 0xff && ((marker.get(1) & 0xff) == 0xd8 || (marker.get(1) & 0xff) == 0x4f);
+	}
+
+	/**
+	 * @param	position	the byte offset of the item tag of a fragment
+	 * @return				the byte offset of the Sequence Delimitation Item that follows it and any further fragments
+	 */
+	private long findEndOfFragments(long position) throws IOException, DicomException {
+		long fileLength = channel.size();
+		while (position + 8 <= fileLength) {
+			ByteBuffer header = readItemHeader(position);
+			int tag = header.getInt(0);
+			if (tag == SEQUENCE_DELIMITATION_ITEM) {
+				break;
+			}
+			if (tag != ITEM) {
+				throw new DicomException("Expected fragment item at "+position+" in "+file);
+			}
+			position += 8 + (header.getInt(4) & 0xffffffffl);
+		}
+		return position;
+	}
+
+	private ByteBuffer readItemHeader(long position) throws IOException {
+		return read(position,8);
+	}
+
+	/**
+	 * @param	position	the byte offset in the file
+	 * @param	length		the number of bytes to read
+	 * @return				a little endian buffer containing the bytes
+	 * @throws	IOException	if the bytes cannot be read
+	 */
+	private ByteBuffer read(long position,int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer,position+buffer.position()) < 0) {
+				throw new EOFException("Read of "+length+" bytes at "+position+" failed at end of "+file);
+			}
+		}
+		return buffer;
+	}
+
+	/**
+	 * @return	the file indexed
+	 */
+	public File getFile() { return file; }
+
+	/**
+	 * @return	the number of frames
+	 */
+	public int getNumberOfFrames() { return numberOfFrames; }
+
+	/**
+	 * @param	frameNumber	from 0
+	 * @return				the byte offset in the file of the item tag of the first fragment of the frame
+	 */
+	public long getByteOffsetOfFrame(int frameNumber) { return frameStarts[frameNumber]; }
+
+	/**
+	 * <p>Read the compressed bit stream of a frame, concatenating the fragments if there is more than one.</p>
+	 *
+	 * @param	frameNumber		from 0
+	 * @return					the compressed frame, including any trailing padding of the last fragment
+	 * @throws	IOException		if the frame cannot be read
+	 * @throws	DicomException	if the fragments are not correctly encoded
+	 */
+	public byte[] getFrame(int frameNumber) throws IOException, DicomException {
+		long span = frameEnds[frameNumber] - frameStarts[frameNumber];
+		if (span > Integer.MAX_VALUE) {
+			throw new DicomException("Frame "+frameNumber+" is too long to read into an array ("+span+" bytes)");
+		}
+		ByteBuffer fragments = read(frameStarts[frameNumber],(int)span);
+		byte[] bytes = fragments.array();
+		int in = 0;
+		int out = 0;
+		while (in + 8 <= bytes.length) {
+			long fragmentLength = fragments.getInt(in+4) & 0xffffffffl;
+			if (fragments.getInt(in) != ITEM || in + 8 + fragmentLength > bytes.length) {
+				throw new DicomException("Invalid fragment at "+(frameStarts[frameNumber]+in)+" in frame "+frameNumber+" of "+file);
+			}
+			System.arraycopy(bytes,in+8,bytes,out,(int)fragmentLength);
+			in += 8 + (int)fragmentLength;
+			out += (int)fragmentLength;
+		}
+		return Arrays.copyOf(bytes,out);
+	}
+
+	/**
+	 * <p>Close the file.</p>
+	 *
+	 * @throws	IOException	if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+}
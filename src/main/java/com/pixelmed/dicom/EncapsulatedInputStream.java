@@ -69,7 +69,7 @@ public class EncapsulatedInputStream extends InputStream {
 		int element = i.readUnsigned16();
 //System.err.println("EncapsulatedInputStream.readAttributeTag(): back from reading group and element");
 		bytesRead+=4;
-		return new AttributeTag(group,element);
+		return AttributeTag.valueOf(group,element);
 	}
 
 	/**
@@ -0,0 +1,97 @@
+package com.pixelmed.dicom;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>A task submitted to a {@link java.util.concurrent.ForkJoinPool ForkJoinPool} that can be abandoned without leaving its body
+ * running.</p>
+ *
+ * <p>{@link java.util.concurrent.ForkJoinTask#cancel(boolean) ForkJoinTask.cancel()} completes a task even if its body is already
+ * running, after which joining it returns at once, so it cannot be used to wait for the resources used by the body to be released.
+ * Instead the body claims the task when it starts, and {@link #cancelOrAwait(Iterable) cancelOrAwait()} cancels the tasks that have
+ * not been claimed and waits for the body of the others to finish.</p>
+ *
+ * @param	<V>	the type of the result
+ */
+class InFlightTask<V> {
+	private final AtomicBoolean claimed = new AtomicBoolean();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private final ForkJoinTask<V> task;
+	private boolean cancelled;
+
+	/**
+	 * <p>Submit the body to the pool.</p>
+	 *
+	 * @param	pool	the pool in which to run the body
+	 * @param	body	the body of the task
+	 */
+	InFlightTask(ForkJoinPool pool,Callable<V> body) {
+		task = pool.submit(() -> {
+			if (!claimed.compareAndSet(false,true)) {
+				return null;		// cancelled before it started
+			}
+			try {
+				return body.call();
+			}
+			finally {
+				finished.countDown();
+			}
+		});
+	}
+
+	/**
+	 * <p>Wait for the result.</p>
+	 *
+	 * @return								the result of the body
+	 * @throws	InterruptedException		if interrupted while waiting
+	 * @throws	ExecutionException			if the body threw, with what it threw as the cause (wrapped in a RuntimeException if checked)
+	 */
+	V get() throws InterruptedException, ExecutionException {
+		return task.get();
+	}
+
+	/**
+	 * <p>Wait for the result, as {@link java.util.concurrent.ForkJoinTask#join() ForkJoinTask.join()}.</p>
+	 *
+	 * @return	the result of the body
+	 */
+	V join() {
+		return task.join();
+	}
+
+	/**
+	 * <p>Cancel the tasks whose body has not started, then wait for the body of the others to finish.</p>
+	 *
+	 * <p>Waits even if the thread is interrupted, in which case the interrupt status is set again afterwards.</p>
+	 *
+	 * @param	tasks	the tasks, which are all submitted by the calling thread
+	 */
+	static void cancelOrAwait(Iterable<? extends InFlightTask<?>> tasks) {
+		for (InFlightTask<?> task : tasks) {
+			if (task.claimed.compareAndSet(false,true)) {
+				task.cancelled = true;
+				task.task.cancel(false);
+			}
+		}
+		boolean interrupted = false;
+		for (InFlightTask<?> task : tasks) {
+			while (!task.cancelled) {
+				try {
+					task.finished.await();
+					break;
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
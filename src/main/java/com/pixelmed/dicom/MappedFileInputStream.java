@@ -0,0 +1,204 @@
+package com.pixelmed.dicom;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>An input stream that reads a file through a memory mapped window, and that can seek.</p>
+ *
+ * <p>When used as the source of a {@link com.pixelmed.dicom.BinaryInputStream BinaryInputStream} or
+ * {@link com.pixelmed.dicom.DicomInputStream DicomInputStream}, values are decoded directly from the mapped
+ * buffer rather than copied through an intermediate byte array, and the stream may be positioned at any
+ * byte offset, for example at the start of a particular frame of uncompressed pixel data:</p>
+ *
+ * <pre>
+ * 	DicomInputStream i = new DicomInputStream(new MappedFileInputStream(file));
+ * </pre>
+ *
+ * <p>The file is mapped in windows of at most 64 MiB, so files of any size may be read, and a new window is
+ * mapped when reading moves beyond the current one. Mark and reset are supported, with no read limit.</p>
+ *
+ * <p>The file should not be truncated by another process while it is mapped.</p>
+ *
+ * @see com.pixelmed.dicom.AttributeList#setAllowMemoryMapping(boolean)
+ */
+public class MappedFileInputStream extends InputStream {
+
+	private static final int WINDOW_SIZE = 1<<26;
+
+	private final File file;
+	private final FileChannel channel;
+	private final long length;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private int windowLength;
+
+	private long position;
+	private long mark;
+
+	/**
+	 * <p>Open the file for reading.</p>
+	 *
+	 * @param	file			the file to read
+	 * @throws	IOException		if the file cannot be opened
+	 */
+	public MappedFileInputStream(File file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(),StandardOpenOption.READ);
+		this.length = channel.size();
+	}
+
+	/**
+	 * @return	the file being read
+	 */
+	public File getFile() { return file; }
+
+	/**
+	 * @return	the length of the file in bytes
+	 */
+	public long length() { return length; }
+
+	/**
+	 * @return	the byte offset from the start of the file of the next byte to be read
+	 */
+	public long getPosition() { return position; }
+
+	/**
+	 * <p>Position the stream so that the next byte read is at the specified offset.</p>
+	 *
+	 * @param	position		the byte offset from the start of the file
+	 * @throws	IOException		if the position is before the start or beyond the end of the file
+	 */
+	public void seek(long position) throws IOException {
+		if (position < 0 || position > length) {
+			throw new IOException("Cannot seek to "+position+" in file of length "+length);
+		}
+		this.position = position;
+	}
+
+	/**
+	 * <p>Map a window starting at the current position.</p>
+	 *
+	 * @throws	IOException
+	 */
+	private void map() throws IOException {
+		windowStart = position;
+		windowLength = (int)Math.min(WINDOW_SIZE,length-position);
+		window = channel.map(FileChannel.MapMode.READ_ONLY,windowStart,windowLength);
+	}
+
+	/**
+	 * <p>Reserve bytes at the current position and advance past them.</p>
+	 *
+	 * @param	count			the number of bytes, no more than the window size
+	 * @return					the index in {@link #window(boolean) window()} of the first byte
+	 * @throws	EOFException	if fewer bytes remain in the file
+	 * @throws	IOException		if the file cannot be mapped
+	 */
+	int reserve(int count) throws IOException {
+		if (position + count > length) {
+			throw new EOFException("read failed with "+(length-position)+" bytes remaining in file, wanted "+count);
+		}
+		if (window == null || position < windowStart || position + count > windowStart + windowLength) {
+			map();
+		}
+		int index = (int)(position - windowStart);
+		position += count;
+		return index;
+	}
+
+	/**
+	 * <p>The current window, in the specified byte order, for absolute reads at an index returned by {@link #reserve(int) reserve()}.</p>
+	 *
+	 * @param	bigEndian	true if big endian, false if little endian
+	 * @return				the window
+	 */
+	ByteBuffer window(boolean bigEndian) {
+		window.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		return window;
+	}
+
+	/**
+	 * <p>A buffer of as many bytes as are contiguous in the mapped window starting at the current position, up to a maximum, and advance past them.</p>
+	 *
+	 * @param	maximumCount	the maximum number of bytes wanted
+	 * @param	unit			the size of the values to be read, the number of bytes returned is a multiple of this
+	 * @param	bigEndian		true if big endian, false if little endian
+	 * @return					a buffer with at least unit bytes remaining
+	 * @throws	EOFException	if fewer than unit bytes remain in the file
+	 * @throws	IOException		if the file cannot be mapped
+	 */
+	ByteBuffer view(long maximumCount,int unit,boolean bigEndian) throws IOException {
+		if (position + unit > length) {
+			throw new EOFException("read failed with "+(length-position)+" bytes remaining in file, wanted "+unit);
+		}
+		if (window == null || position < windowStart || position + unit > windowStart + windowLength) {
+			map();
+		}
+		int index = (int)(position - windowStart);
+		int count = (int)Math.min(maximumCount,windowLength - index);
+		count -= count % unit;
+		ByteBuffer view = window.duplicate();
+		view.position(index);
+		view.limit(index + count);
+		position += count;
+		return view.slice().order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public int read() throws IOException {
+		if (position >= length) {
+			return -1;
+		}
+		int index = reserve(1);
+		return window.get(index) & 0xff;
+	}
+
+	public int read(byte[] b,int offset,int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (position >= length) {
+			return -1;
+		}
+		ByteBuffer view = view(len,1,false);
+		int count = view.remaining();
+		view.get(b,offset,count);
+		return count;
+	}
+
+	public long skip(long n) throws IOException {
+		long skipped = Math.max(0,Math.min(n,length-position));
+		position += skipped;
+		return skipped;
+	}
+
+	public int available() {
+		return (int)Math.min(Integer.MAX_VALUE,length-position);
+	}
+
+	public boolean markSupported() {
+		return true;
+	}
+
+	public void mark(int readlimit) {
+		mark = position;
+	}
+
+	public void reset() {
+		position = mark;
+	}
+
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+}
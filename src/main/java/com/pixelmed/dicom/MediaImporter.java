@@ -13,6 +13,8 @@ import com.pixelmed.display.SafeProgressBarUpdaterThread;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import java.io.File;
 import java.io.BufferedInputStream;
@@ -195,6 +197,23 @@ public class MediaImporter {
 
 	protected SafeProgressBarUpdaterThread progressBarUpdater;
 
+	/**
+	 * <p>The number of threads with which to read the headers of files found by walking a folder that has no DICOMDIR.</p>
+	 *
+	 * <p>If more than one, headers are read ahead in parallel, but the handlers are still called one file at a time on the thread
+	 * that called {@link MediaImporter#importDicomFiles(String) importDicomFiles()}, so need not be thread safe.</p>
+	 */
+	protected int numberOfThreads = 1;
+
+	/**
+	 * <p>If not null, the index of the files already imported from a folder that has no DICOMDIR.</p>
+	 *
+	 * <p>Only files that are not in the index, or have changed size or modification time since they were indexed, are read and passed to
+	 * the handlers; the others are skipped without being opened. Files that are read are added to the index whether or not they were
+	 * wanted, files that are no longer present are removed from it, and the index is saved when the import is complete.</p>
+	 */
+	protected DicomFileScanIndex scanIndex;
+
 	// copied from SynchronizeFromRemoteSCP ... should refactor :(
 	protected static class OurReadTerminationStrategy implements AttributeList.ReadTerminationStrategy {
 		public boolean terminate(AttributeList attributeList,AttributeTag tag,long byteOffset) {
@@ -327,77 +346,44 @@ public class MediaImporter {
 				}
 			}
 			else {
-				ArrayList listOfAllFiles = FileUtilities.listFilesRecursively(path);
-				if (progressBarUpdater != null) {
-					progressBarUpdater.setValue(0);
-					progressBarUpdater.setMaximum(listOfAllFiles.size());
-					progressBarUpdater.setStringPainted(true);
-					java.awt.EventQueue.invokeLater(progressBarUpdater);
+				importCount = 0;
+				if (scanIndex != null) {
+					List<DicomFileScanIndex.Entry> removed = new ArrayList<DicomFileScanIndex.Entry>();
+					List<File> listOfNewOrChangedFiles = scanIndex.listNewOrChangedFiles(path,removed);
+					logLn("Found "+listOfNewOrChangedFiles.size()+" new or changed files"+(removed.isEmpty() ? "" : ", and "+removed.size()+" files previously found are no longer present"));
+					startProgressBar(listOfNewOrChangedFiles.size());
+					importFiles(listOfNewOrChangedFiles);
+					scanIndex.save();
 				}
-				int count = 0;
-				Iterator it = listOfAllFiles.iterator();
-				while (it.hasNext()) {
-					File mediaFile = (File)it.next();
-					if (mediaFile != null) {
-						// It might or might not be a DICOM file ... only way to tell is to try it
+				else if (numberOfThreads > 1) {
+					if (progressBarUpdater != null) {
+						List<File> listOfAllFiles = DicomFileHeaderIndex.listFiles(path);		// need to know how many files for the progress bar
+						startProgressBar(listOfAllFiles.size());
+						importFiles(listOfAllFiles);
+					}
+					else {
+						ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
 						try {
-							String sopClassUID = "";
-							String transferSyntaxUID = "";
-							DicomInputStream i = new DicomInputStream(new BufferedInputStream(new FileInputStream(mediaFile)));
-							boolean goodToGo = false;
-							if (i.haveMetaHeader()) {
-								AttributeList list = new AttributeList();
-								list.readOnlyMetaInformationHeader(i);
-								sopClassUID = Attribute.getSingleStringValueOrNull(list,TagFromName.MediaStorageSOPClassUID);
-								transferSyntaxUID = Attribute.getSingleStringValueOrNull(list,TagFromName.TransferSyntaxUID);
-								if (sopClassUID == null || sopClassUID.length() == 0) {		// work around incomplete meta information header if GE PACS internal files (000905)
-									logLn("Have meta information header, but missing SOP Class UID so reading from data set: "+mediaFile);
-									list.read(i,terminateAfterIdentifyingGroup);
-									sopClassUID = Attribute.getSingleStringValueOrNull(list,TagFromName.SOPClassUID);
-								}
-								if (isOKToImport(sopClassUID,transferSyntaxUID)) {
-									goodToGo=true;
-								}
-								else {
-									logLn("Is a DICOM file but bad meta-header, not a storage object, or is compressed with a scheme that is not supported: "
-										+mediaFile+" SOP Class="+sopClassUID+", Transfer Syntax="+transferSyntaxUID);
-								}
-							}
-							else {
-								// no meta information header ... assume default Transfer Syntax and try to read SOP Class IOD ...
-								logLn("No meta information header, so guessing is a DICOM file in implicit VR and attempting to get SOP Class UID: "+mediaFile);
-								AttributeList list = new AttributeList();
-								list.read(i,terminateAfterIdentifyingGroup);
-								sopClassUID = Attribute.getSingleStringValueOrNull(list,TagFromName.SOPClassUID);
-								transferSyntaxUID = TransferSyntax.ImplicitVRLittleEndian;
-								if (isOKToImport(sopClassUID,transferSyntaxUID)) {
-									goodToGo=true;
-								}
-								else {
-									logLn("Is not a DICOM file, or not a storage object, or is compressed with a scheme that is not supported: "
-										+mediaFile+" SOP Class="+sopClassUID+", Transfer Syntax="+transferSyntaxUID);
-								}
-							}
-							i.close();	// do this BEFORE calling the handler, just in case
-							if (goodToGo) {
-								//logLn("Is a DICOM file that is wanted: "+mediaFile);
-								doSomethingWithDicomFileOnMedia(mediaFile.getPath(),transferSyntaxUID,sopClassUID);
-							}
-							else {
-								//logLn("Not a DICOM PS 3.10 file or not one that is wanted: "+mediaFile);
-								doSomethingWithUnwantedFileOnMedia(mediaFile.getPath(),transferSyntaxUID,sopClassUID);
-							}
+							new DicomFileHeaderIndex(pool,0x0008,numberOfThreads*4,false).readHeaders(path,header -> importFile(header));	// not mapped, since the handler may move or remove the file
 						}
-						catch (Exception e) {
-							//logLn("Not a DICOM file: "+mediaFile);
-							doSomethingWithUnwantedFileOnMedia(mediaFile.getPath(),"","");
+						finally {
+							pool.shutdown();
 						}
 					}
-					++count;
-					if (progressBarUpdater != null) {
-						progressBarUpdater.setValue(count);
-						progressBarUpdater.setStringPainted(true);
-						java.awt.EventQueue.invokeLater(progressBarUpdater);
+				}
+				else {
+					ArrayList listOfAllFiles = FileUtilities.listFilesRecursively(path);
+					startProgressBar(listOfAllFiles.size());
+					Iterator it = listOfAllFiles.iterator();
+					while (it.hasNext()) {
+						File mediaFile = (File)it.next();
+						if (mediaFile != null) {
+							// It might or might not be a DICOM file ... only way to tell is to try it
+							importFile(DicomFileHeaderIndex.readHeader(mediaFile,terminateAfterIdentifyingGroup));
+						}
+						else {
+							updateProgressBar();
+						}
 					}
 				}
 			}
@@ -405,6 +391,103 @@ public class MediaImporter {
 		logLn("Media import complete");
 	}
 	
+	private int importCount;
+
+	private void startProgressBar(int maximum) {
+		if (progressBarUpdater != null) {
+			progressBarUpdater.setValue(0);
+			progressBarUpdater.setMaximum(maximum);
+			progressBarUpdater.setStringPainted(true);
+			java.awt.EventQueue.invokeLater(progressBarUpdater);
+		}
+	}
+
+	private void updateProgressBar() {
+		++importCount;
+		if (progressBarUpdater != null) {
+			progressBarUpdater.setValue(importCount);
+			progressBarUpdater.setStringPainted(true);
+			java.awt.EventQueue.invokeLater(progressBarUpdater);
+		}
+	}
+
+	/**
+	 * <p>Read the headers of the listed files, in parallel if there is more than one thread, and import each file.</p>
+	 *
+	 * @param	files	the files
+	 */
+	private void importFiles(List<File> files) {
+		if (numberOfThreads > 1) {
+			ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+			try {
+				new DicomFileHeaderIndex(pool,0x0008,numberOfThreads*4,false).readHeaders(files,header -> importFile(header));	// not mapped, since the handler may move or remove the file
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		else {
+			for (File file : files) {
+				importFile(DicomFileHeaderIndex.readHeader(file,terminateAfterIdentifyingGroup));
+			}
+		}
+	}
+
+	/**
+	 * <p>Decide whether a file found by walking a folder is wanted, and pass it to the appropriate handler.</p>
+	 *
+	 * @param	header	the identifying header of the file
+	 */
+	private void importFile(DicomFileHeaderIndex.Header header) {
+		String mediaFileName = header.getFileName();
+		String sopClassUID = header.getSOPClassUID();
+		String transferSyntaxUID = header.getTransferSyntaxUID();
+		boolean goodToGo = false;
+		if (header.hasMetaInformationHeader()) {
+			if (header.isIdentifiedFromDataSet()) {		// work around incomplete meta information header if GE PACS internal files (000905)
+				logLn("Have meta information header, but missing SOP Class or Instance UID so reading from data set: "+mediaFileName);
+			}
+			if (header.getException() == null) {
+				if (isOKToImport(sopClassUID,transferSyntaxUID)) {
+					goodToGo=true;
+				}
+				else {
+					logLn("Is a DICOM file but bad meta-header, not a storage object, or is compressed with a scheme that is not supported: "
+						+mediaFileName+" SOP Class="+sopClassUID+", Transfer Syntax="+transferSyntaxUID);
+				}
+			}
+		}
+		else if (header.isIdentifiedFromDataSet()) {
+			// no meta information header ... assume default Transfer Syntax and try to read SOP Class IOD ...
+			logLn("No meta information header, so guessing is a DICOM file in implicit VR and attempting to get SOP Class UID: "+mediaFileName);
+			if (header.getException() == null) {
+				if (isOKToImport(sopClassUID,transferSyntaxUID)) {
+					goodToGo=true;
+				}
+				else {
+					logLn("Is not a DICOM file, or not a storage object, or is compressed with a scheme that is not supported: "
+						+mediaFileName+" SOP Class="+sopClassUID+", Transfer Syntax="+transferSyntaxUID);
+				}
+			}
+		}
+		if (header.getException() != null) {
+			//logLn("Not a DICOM file: "+mediaFileName);
+			doSomethingWithUnwantedFileOnMedia(mediaFileName,"","");
+		}
+		else if (goodToGo) {
+			//logLn("Is a DICOM file that is wanted: "+mediaFileName);
+			doSomethingWithDicomFileOnMedia(mediaFileName,transferSyntaxUID,sopClassUID);
+		}
+		else {
+			//logLn("Not a DICOM PS 3.10 file or not one that is wanted: "+mediaFileName);
+			doSomethingWithUnwantedFileOnMedia(mediaFileName,transferSyntaxUID,sopClassUID);
+		}
+		if (scanIndex != null) {
+			scanIndex.put(header);
+		}
+		updateProgressBar();
+	}
+
 	/**
 	 * <p>Do something with the unwanted (possibly DICOM file) that has been encountered.</p>
 	 *
@@ -4,6 +4,11 @@ package com.pixelmed.dicom;
 
 import java.io.*;
 
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
 import com.pixelmed.utils.CopyStream;
 import com.pixelmed.utils.FileReaper;
 
@@ -11,6 +16,15 @@ import com.pixelmed.utils.FileReaper;
  * <p>An abstract class specializing {@link com.pixelmed.dicom.Attribute Attribute} for
  * Other (OB or OW) attributes whose values are not memory resident.</p>
  *
+ * <p>Individual frames of the value may be accessed without reading the whole value, through read-only
+ * buffers that are slices of a memory mapping of the file, see {@link #getByteBufferForSelectedFrame(int,int) getByteBufferForSelectedFrame()}.</p>
+ *
+ * <p>Once a frame has been accessed this way, including by the getXXXValuesForSelectedFrame() methods of the sub-classes, the
+ * file is kept open, one file descriptor per attribute, until {@link #closeFileChannel() closeFileChannel()},
+ * {@link #removeValues() removeValues()} or {@link #setFile(File) setFile()} is called or the attribute is finalized. Callers
+ * that access frames of many attributes should close each when done with it. The mappings themselves are released only
+ * when the buffers are garbage collected, and until then some platforms (notably Windows) will not delete or rename the file.</p>
+ *
  * <p>Used as a base class for {@link com.pixelmed.dicom.OtherByteAttributeOnDisk OtherByteAttributeOnDisk} and {@link com.pixelmed.dicom.OtherWordAttributeOnDisk OtherWordAttributeOnDisk}.</p>
  *
  * @see com.pixelmed.dicom.Attribute
@@ -29,6 +43,27 @@ public abstract class OtherAttributeOnDisk extends Attribute {
 	protected File file;
 	protected boolean deleteFilesWhenNoLongerNeeded;
 
+	private static final long MAXIMUM_WINDOW_SIZE = 1L<<30;
+
+	private FileChannel channel;			// guarded by this, as is frameWindows
+	private FrameWindows frameWindows;
+
+	/**
+	 * <p>The value mapped lazily in windows that each contain a whole number of frames of a particular size.</p>
+	 */
+	private static final class FrameWindows {
+		final long frameSize;
+		final long framesPerWindow;
+		final MappedByteBuffer[] windows;
+
+		FrameWindows(long frameSize,long valueLength) {
+			this.frameSize = frameSize;
+			framesPerWindow = Math.max(1,MAXIMUM_WINDOW_SIZE/frameSize);
+			long windowSize = framesPerWindow*frameSize;
+			windows = new MappedByteBuffer[(int)((valueLength+windowSize-1)/windowSize)];
+		}
+	}
+
 	/**
 	 * <p>Construct an (empty) attribute.</p>
 	 *
@@ -121,7 +156,10 @@ public abstract class OtherAttributeOnDisk extends Attribute {
 	 *
 	 * @param	file	the new file containing the data
 	 */
-	public void setFile(File file) { this.file = file; }
+	public void setFile(File file) {
+		closeFileChannel();
+		this.file = file;
+	}
 
 	/**
 	 * <p>Change the file containing the data, for example if it is a new, perhaps temporary, file containing only pixel data.</p>
@@ -133,24 +171,121 @@ public abstract class OtherAttributeOnDisk extends Attribute {
 	 * @throws	IOException	if cannot obtain the length of the file
 	 */
 	public void setFile(File file,long byteOffset) throws IOException {
+		closeFileChannel();
 		this.file = file;
 		this.byteOffset=byteOffset;
 		valueLength=file.length() - byteOffset;
 	}
 
 	public void removeValues() {
+		closeFileChannel();
 		file=null;
 		byteOffset=0;
 		valueMultiplicity=0;
 		valueLength=0;
 	}
 
+	/**
+	 * @return				the channel, opened on first use and shared by all readers of the value
+	 * @throws	IOException	if the file cannot be opened
+	 */
+	private FileChannel getFileChannel() throws IOException {
+		if (channel == null || !channel.isOpen()) {
+			if (file == null) {
+				throw new IOException("No file containing the value");
+			}
+			channel = FileChannel.open(file.toPath(),StandardOpenOption.READ);
+		}
+		return channel;
+	}
+
+	/**
+	 * <p>Close the channel used to map frames, if open.</p>
+	 *
+	 * <p>Waits for any frame being mapped by another thread, so the file is closed when this returns unless another frame is
+	 * requested after it is called, in which case the channel is reopened. Buffers already returned by
+	 * {@link #getByteBufferForSelectedFrame(int,int) getByteBufferForSelectedFrame()} remain valid.</p>
+	 */
+	public synchronized void closeFileChannel() {
+		frameWindows = null;
+		if (channel != null) {
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+			}
+			channel = null;
+		}
+	}
+
+	/**
+	 * <p>Get the windows for the size of frame, mapping the window containing the frame if not already mapped.</p>
+	 *
+	 * <p>Synchronized with {@link #closeFileChannel() closeFileChannel()}, so that the channel is not closed between being
+	 * opened and mapped, nor a window mapped from a channel opened after it was closed left in the windows that replace it.</p>
+	 *
+	 * @param	frameSize		the size of each frame in bytes
+	 * @param	frameNumber		from 0
+	 * @return					the windows, in which the window containing the frame is mapped
+	 * @throws	IOException		if the file cannot be mapped
+	 */
+	private synchronized FrameWindows getFrameWindows(long frameSize,int frameNumber) throws IOException {
+		FrameWindows windows = frameWindows;
+		if (windows == null || windows.frameSize != frameSize) {
+			windows = new FrameWindows(frameSize,valueLength);
+			frameWindows = windows;
+		}
+		int windowNumber = (int)(frameNumber/windows.framesPerWindow);
+		if (windows.windows[windowNumber] == null) {
+			long windowSize = windows.framesPerWindow*windows.frameSize;
+			long start = windowNumber*windowSize;
+			windows.windows[windowNumber] = getFileChannel().map(FileChannel.MapMode.READ_ONLY,byteOffset+start,Math.min(windowSize,valueLength-start));
+		}
+		return windows;
+	}
+
+	/**
+	 * <p>Get a selected frame as a read-only buffer that is a slice of a memory mapping of the file.</p>
+	 *
+	 * <p>The value may be longer than 2 GB, as long as each frame is not. The file is opened once and the same
+	 * mapping shared between frames and threads, so this may be called concurrently; each returned buffer has its own
+	 * position and limit.</p>
+	 *
+	 * <p>The returned buffer is big endian; use {@link java.nio.ByteBuffer#order(java.nio.ByteOrder) order()} if
+	 * the byte order matters.</p>
+	 *
+	 * @param	frameNumber		from 0
+	 * @param	numberOfFrames	the number of frames
+	 * @return					a read-only buffer containing the bytes of the selected frame
+	 * @throws	DicomException	if the frame is beyond the value or cannot be mapped
+	 */
+	public ByteBuffer getByteBufferForSelectedFrame(int frameNumber,int numberOfFrames) throws DicomException {
+		long frameSize = valueLength/numberOfFrames;
+		long byteoffsetfromstartofattributevalue = frameSize*frameNumber;
+		if (frameNumber < 0 || frameSize == 0 || frameSize > Integer.MAX_VALUE || byteoffsetfromstartofattributevalue+frameSize > valueLength) {
+			throw new DicomException("Requested frame "+frameNumber+" of "+numberOfFrames+" frames, size "+frameSize+" dec and offset "+byteoffsetfromstartofattributevalue+" dec bytes to map value exceeds length "+valueLength+" dec in delayed read of "+ValueRepresentation.getAsString(getVR())+" attribute "+getTag());
+		}
+		FrameWindows windows;
+		try {
+			windows = getFrameWindows(frameSize,frameNumber);
+		}
+		catch (IOException e) {
+			throw new DicomException("Failed to map frame "+frameNumber+" of "+numberOfFrames+" frames, size "+frameSize+" dec and offset "+byteoffsetfromstartofattributevalue+" dec bytes in delayed read of "+ValueRepresentation.getAsString(getVR())+" attribute "+getTag()+": "+e);
+		}
+		int position = (int)((frameNumber%windows.framesPerWindow)*frameSize);
+		ByteBuffer frame = windows.windows[(int)(frameNumber/windows.framesPerWindow)].duplicate();	// the window is never replaced in the windows once mapped
+		frame.position(position);
+		frame.limit(position+(int)frameSize);
+		return frame.slice();
+	}
+
 	public void deleteFilesWhenNoLongerNeeded() {
 		deleteFilesWhenNoLongerNeeded=true;
 	}
 
 	protected void finalize() throws Throwable {
 //System.err.println("OtherAttributeOnDisk.finalize()");
+		closeFileChannel();
 		if (deleteFilesWhenNoLongerNeeded) {
 			if (file != null) {
 				if (file.delete()) {
@@ -166,6 +166,45 @@ public class OtherByteAttributeMultipleCompressedFrames extends Attribute {
 		writeSequenceDelimitationItemTag(o);
 	}
 	
+	/**
+	 * <p>Add an Extended Offset Table and Extended Offset Table Lengths describing the frames to a list.</p>
+	 *
+	 * <p>Each frame is written as a single fragment after an empty Basic Offset Table, as the Extended Offset Table requires,
+	 * so a reader such as {@link com.pixelmed.dicom.EncapsulatedFrameIndex EncapsulatedFrameIndex} can then read any frame
+	 * without reading those before it.</p>
+	 *
+	 * <p>Not added by {@link #write(DicomOutputStream) write()}, since it is an attribute of the list rather than part of the value,
+	 * so it is up to the caller, as {@link com.pixelmed.apps.CompressDicomFiles CompressDicomFiles} does for multi-frame images.
+	 * Call it after {@link com.pixelmed.dicom.AttributeList#correctDecompressedImagePixelModule(boolean) correctDecompressedImagePixelModule()},
+	 * which removes any Extended Offset Table that was read with the original Pixel Data.</p>
+	 *
+	 * @param	list			the list to add to, normally the list that contains this attribute
+	 * @throws	DicomException	if the frames are not held separately
+	 */
+	public void addExtendedOffsetTable(AttributeList list) throws DicomException {
+		int nFrames = 0;
+		if (files != null) {
+			nFrames = files.length;
+		}
+		else if (frames != null) {
+			nFrames = frames.length;
+		}
+		else {
+			throw new DicomException("Cannot create Extended Offset Table unless frames are held separately");
+		}
+		long[] offsets = new long[nFrames];
+		long[] lengths = new long[nFrames];
+		long offset = 0;
+		for (int f=0; f<nFrames; ++f) {
+			long frameLength = files != null ? files[f].length() : frames[f].length;
+			offsets[f] = offset;
+			lengths[f] = frameLength;
+			offset += 8 + frameLength + frameLength % 2;		// item tag and length, then padded fragment, as written by write()
+		}
+		{ OtherVeryLongAttribute a = new OtherVeryLongAttribute(EncapsulatedFrameIndex.ExtendedOffsetTable); a.setValues(offsets); list.put(a); }
+		{ OtherVeryLongAttribute a = new OtherVeryLongAttribute(EncapsulatedFrameIndex.ExtendedOffsetTableLengths); a.setValues(lengths); list.put(a); }
+	}
+
 	/**
 	 * <p>Get the byte arrays for each frame.</p>
 	 *
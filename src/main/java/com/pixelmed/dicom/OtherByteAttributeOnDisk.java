@@ -182,21 +182,12 @@ public class OtherByteAttributeOnDisk extends OtherAttributeOnDisk {
 	 * @throws	DicomException	thrown if values cannot be read
 	 */
 	public byte[] getByteValuesForSelectedFrame(int frameNumber,int numberOfFrames) throws DicomException {
-//System.err.println("OtherWordAttributeOnDisk.getByteValuesForSelectedFrame(): lazy read of selected frame "+frameNumber+" into heap allocated memory, rather than using memory mapped buffer :(");
 		byte[] buffer = null;
 		int framesize = (int)(valueLength/numberOfFrames);
 		long byteoffsetfromstartofattributevalue = framesize*(long)frameNumber;
 		if (byteoffsetfromstartofattributevalue+framesize <= valueLength) {
 			buffer = new byte[framesize];
-			try {
-				BinaryInputStream i = new BinaryInputStream(new FileInputStream(file),false/*bigEndian - byte order is irrelevant*/);
-				i.skipInsistently(byteOffset+byteoffsetfromstartofattributevalue);
-				i.readInsistently(buffer,0,framesize);
-				i.close();
-			}
-			catch (IOException e) {
-				throw new DicomException("Failed to read frame "+frameNumber+" of "+numberOfFrames+" frames, size "+framesize+" dec and offset "+byteoffsetfromstartofattributevalue+" dec bytes in delayed read of "+ValueRepresentation.getAsString(getVR())+" attribute "+getTag());
-			}
+			getByteBufferForSelectedFrame(frameNumber,numberOfFrames).get(buffer);
 		}
 		else {
 				throw new DicomException("Requested frame "+frameNumber+" of "+numberOfFrames+" frames, size "+framesize+" dec and offset "+byteoffsetfromstartofattributevalue+" dec bytes to read value exceeds length "+valueLength+" dec in delayed read of "+ValueRepresentation.getAsString(getVR())+" attribute "+getTag());
@@ -4,6 +4,9 @@ package com.pixelmed.dicom;
 
 import java.io.*;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import com.pixelmed.utils.CopyStream;
 
 import com.pixelmed.slf4j.Logger;
@@ -189,6 +192,20 @@ public class OtherWordAttributeOnDisk extends OtherAttributeOnDisk {
 		return v;
 	}
 	
+	/**
+	 * <p>Get a selected frame as a read-only buffer that is a slice of a memory mapping of the file.</p>
+	 *
+	 * <p>The buffer is in the byte order of the value in the file.</p>
+	 *
+	 * @param	frameNumber		from 0
+	 * @param	numberOfFrames	the number of frames
+	 * @return					a read-only buffer containing the bytes of the selected frame
+	 * @throws	DicomException	if the frame is beyond the value or cannot be mapped
+	 */
+	public ByteBuffer getByteBufferForSelectedFrame(int frameNumber,int numberOfFrames) throws DicomException {
+		return super.getByteBufferForSelectedFrame(frameNumber,numberOfFrames).order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+	}
+
 	/**
 	 * <p>Get the value of this attribute as a short array for one selected frame.</p>
 	 *
@@ -206,22 +223,13 @@ public class OtherWordAttributeOnDisk extends OtherAttributeOnDisk {
 	 * @throws	DicomException	thrown if values cannot be read
 	 */
 	public short[] getShortValuesForSelectedFrame(int frameNumber,int numberOfFrames) throws DicomException {
-//System.err.println("OtherWordAttributeOnDisk.getShortValuesForSelectedFrame(): lazy read of selected frame "+frameNumber+" into heap allocated memory, rather than using memory mapped buffer :(");
 		short[] buffer = null;
 		long bytesperframe = valueLength / numberOfFrames;
 		long byteoffsetfromstartofattributevalue = bytesperframe*frameNumber;
 		if (byteoffsetfromstartofattributevalue+bytesperframe <= valueLength) {
 			int len = (int)(bytesperframe/2);
 			buffer = new short[len];
-			try {
-				BinaryInputStream i = new BinaryInputStream(new FileInputStream(file),bigEndian);
-				i.skipInsistently(byteOffset+byteoffsetfromstartofattributevalue);
-				i.readUnsigned16(buffer,0,len);
-				i.close();
-			}
-			catch (IOException e) {
-				throw new DicomException("Failed to read frame "+frameNumber+" of "+numberOfFrames+" frames, size "+bytesperframe+" dec and offset "+byteoffsetfromstartofattributevalue+" dec bytes in delayed read of "+ValueRepresentation.getAsString(getVR())+" attribute "+getTag());
-			}
+			getByteBufferForSelectedFrame(frameNumber,numberOfFrames).asShortBuffer().get(buffer,0,len);
 		}
 		else {
 				throw new DicomException("Requested frame "+frameNumber+" of "+numberOfFrames+" frames, size "+bytesperframe+" dec and offset "+byteoffsetfromstartofattributevalue+" dec bytes to read value exceeds length "+valueLength+" dec in delayed read of "+ValueRepresentation.getAsString(getVR())+" attribute "+getTag());
@@ -13,6 +13,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
 
 import com.pixelmed.slf4j.Logger;
 import com.pixelmed.slf4j.LoggerFactory;
@@ -253,6 +254,24 @@ public class SetOfDicomFiles extends HashSet<SetOfDicomFiles.DicomFile> {
 		return dicomFile;
 	}
 
+	/**
+	 * <p>Add all the DICOM files in a folder and its sub-folders, reading the headers of the files in parallel.</p>
+	 *
+	 * <p>Only the meta information header of each file is read, or the data set up to the identifying group if there is no meta information header.
+	 * Files that are not DICOM files are skipped.</p>
+	 *
+	 * @param	folder		the folder
+	 * @param	pool		the pool in which to read the headers
+	 * @throws	IOException	if the folder cannot be walked
+	 */
+	public void addAllInFolder(File folder,ForkJoinPool pool) throws IOException {
+		new DicomFileHeaderIndex(pool).readHeaders(folder,header -> {
+			if (header.isDicom()) {
+				add(header.getFileName(),header.getSOPClassUID(),header.getSOPInstanceUID(),header.getTransferSyntaxUID());
+			}
+		});
+	}
+
 	/**
 	 * <p>Get the attribute lists for all files, if they were kept during creation.</p>
 	 *
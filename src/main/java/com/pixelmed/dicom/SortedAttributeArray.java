@@ -0,0 +1,174 @@
+package com.pixelmed.dicom;
+
+import java.io.Serializable;
+
+import java.util.Arrays;
+
+/**
+ * <p>The storage behind an {@link com.pixelmed.dicom.AttributeList AttributeList}, a sorted array of tags packed into
+ * ints with a parallel array of {@link com.pixelmed.dicom.Attribute Attribute} slots.</p>
+ *
+ * <p>Each entry costs two array slots, rather than a map entry object, and lookups are a binary search over ints rather
+ * than a comparator walk. Attributes are normally added in ascending tag order when a dataset is parsed, in which case
+ * each insertion is an append.</p>
+ *
+ * <p>Tags are packed as group in the upper and element in the lower 16 bits, with the sign bit flipped so that signed
+ * int comparison gives the same order as {@link com.pixelmed.dicom.AttributeTag#compareTo(Object) AttributeTag.compareTo()}
+ * for all 16 bit groups and elements.</p>
+ *
+ * <p>Not thread safe; the structural modification count is used by the iterators of
+ * {@link com.pixelmed.dicom.AttributeList AttributeList} to fail fast.</p>
+ */
+final class SortedAttributeArray implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int[] EMPTY_KEYS = new int[0];
+	private static final Attribute[] EMPTY_VALUES = new Attribute[0];
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private int[] keys = EMPTY_KEYS;
+	private Attribute[] values = EMPTY_VALUES;
+	private int size;
+
+	/**
+	 * <p>Incremented on every insertion or removal, but not when the attribute of an existing tag is replaced.</p>
+	 */
+	int modCount;
+
+	/**
+	 * @param	tag	the tag
+	 * @return		the packed sort key of the tag
+	 */
+	static int key(AttributeTag tag) {
+		return ((tag.getGroup()<<16) | (tag.getElement()&0xffff)) ^ 0x80000000;
+	}
+
+	/**
+	 * @param	key	a packed sort key
+	 * @return		the tag for the key, shared if it is a standard tag
+	 */
+	static AttributeTag tag(int key) {
+		key ^= 0x80000000;
+		return AttributeTag.valueOf(key>>>16,key&0xffff);
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * <p>Find the index of a tag.</p>
+	 *
+	 * @param	key	the packed sort key of the tag
+	 * @return		the index if present, else (-(insertion point) - 1) as for {@link java.util.Arrays#binarySearch(int[],int) Arrays.binarySearch()}
+	 */
+	int indexOf(int key) {
+		if (size == 0 || key > keys[size-1]) {
+			return -size-1;
+		}
+		return Arrays.binarySearch(keys,0,size,key);
+	}
+
+	int keyAt(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * <p>The tag at the index, which is the tag of the attribute unless it was put under a different but equal tag.</p>
+	 *
+	 * @param	index	the index
+	 * @return			the tag
+	 */
+	AttributeTag tagAt(int index) {
+		AttributeTag tag = values[index].getTag();
+		return tag != null && key(tag) == keys[index] ? tag : tag(keys[index]);
+	}
+
+	Attribute valueAt(int index) {
+		return values[index];
+	}
+
+	Attribute setValueAt(int index,Attribute a) {
+		Attribute old = values[index];
+		values[index] = a;
+		return old;
+	}
+
+	/**
+	 * <p>Associate the attribute with the tag, replacing any existing attribute.</p>
+	 *
+	 * @param	key	the packed sort key of the tag
+	 * @param	a	the attribute
+	 * @return		the previous attribute, or null if none
+	 */
+	Attribute put(int key,Attribute a) {
+		int index = indexOf(key);
+		if (index >= 0) {
+			return setValueAt(index,a);
+		}
+		index = -index-1;
+		if (size == keys.length) {
+			int capacity = size == 0 ? INITIAL_CAPACITY : size + (size>>1);
+			keys = Arrays.copyOf(keys,capacity);
+			values = Arrays.copyOf(values,capacity);
+		}
+		if (index < size) {
+			System.arraycopy(keys,index,keys,index+1,size-index);
+			System.arraycopy(values,index,values,index+1,size-index);
+		}
+		keys[index] = key;
+		values[index] = a;
+		++size;
+		++modCount;
+		return null;
+	}
+
+	/**
+	 * @param	index	the index of the attribute to remove
+	 * @return			the removed attribute
+	 */
+	Attribute removeAt(int index) {
+		Attribute old = values[index];
+		int moved = size-index-1;
+		if (moved > 0) {
+			System.arraycopy(keys,index+1,keys,index,moved);
+			System.arraycopy(values,index+1,values,index,moved);
+		}
+		values[--size] = null;
+		++modCount;
+		return old;
+	}
+
+	void clear() {
+		if (size > 0) {
+			Arrays.fill(values,0,size,null);
+			size = 0;
+			++modCount;
+		}
+	}
+
+	/**
+	 * <p>Release unused capacity.</p>
+	 */
+	void trimToSize() {
+		if (size < keys.length) {
+			keys = size == 0 ? EMPTY_KEYS : Arrays.copyOf(keys,size);
+			values = size == 0 ? EMPTY_VALUES : Arrays.copyOf(values,size);
+		}
+	}
+
+	/**
+	 * @return	a copy with the same tags and attributes (which are not themselves copied)
+	 */
+	SortedAttributeArray copy() {
+		SortedAttributeArray copy = new SortedAttributeArray();
+		if (size > 0) {
+			copy.keys = Arrays.copyOf(keys,size);
+			copy.values = Arrays.copyOf(values,size);
+			copy.size = size;
+		}
+		return copy;
+	}
+}
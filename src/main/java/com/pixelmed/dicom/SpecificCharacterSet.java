@@ -7,6 +7,16 @@ import com.pixelmed.utils.HexDump;
 import java.io.*;
 import java.util.*;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.pixelmed.slf4j.Logger;
 import com.pixelmed.slf4j.LoggerFactory;
 
@@ -28,6 +38,16 @@ public class SpecificCharacterSet {
 	/***/
 	private boolean useISO2022=false;
 	/***/
+	private boolean useEncodingIsASCIICompatible;	// i.e., bytes 0x00-0x7f decode to the same chars, so that values with only such bytes (and no escapes for ISO 2022) need no decoder
+	/***/
+	private HashMap<String,CharsetDecoder> decodersByEncoding;	// one per escape sequence state encountered, for ISO 2022 only, created as needed
+	/***/
+	private CharBuffer decodedChars;		// re-used by the decoders
+	/***/
+	static private final ConcurrentHashMap<String,Charset> charsetsByEncoding = new ConcurrentHashMap<String,Charset>();
+	/***/
+	static private final ConcurrentHashMap<Charset,Boolean> asciiCompatibleCharsets = new ConcurrentHashMap<Charset,Boolean>();
+	/***/
 	static private boolean useOwnJIS;
 	/***/
 	static private boolean useOwnJISCheckPerformed;
@@ -66,6 +86,79 @@ public class SpecificCharacterSet {
 		return byteArrayContainsNonASCIIValues(bytes,0,bytes.length);
 	}
 
+	/**
+	 * <p>Check a byte array for the presence of non-ASCII bytes or the ISO 2022 escape character.
+	 *
+	 * @param	bytes		the bytes to check
+	 * @param	offset		the offset into the byte array
+	 * @param	length		how many bytes to check
+	 */
+	static private boolean byteArrayContainsNonASCIIOrEscapeValues(byte[] bytes,int offset,int length) {
+		for (int i=offset; i<offset+length;++i) {
+			int b = bytes[i]&0xFF;
+			if (b > 0x7F || b == 0x1b) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * <p>Get the {@link java.nio.charset.Charset Charset} for an encoding name, looking it up only once.</p>
+	 *
+	 * @param	encoding	the JRE name of the encoding
+	 * @return				the charset, or null if not supported by the JRE
+	 */
+	static private Charset getCharset(String encoding) {
+		Charset charset = charsetsByEncoding.get(encoding);
+		if (charset == null) {
+			try {
+				charset = Charset.forName(encoding);
+				charsetsByEncoding.put(encoding,charset);
+			}
+			catch (IllegalArgumentException e) {	// IllegalCharsetNameException or UnsupportedCharsetException
+				slf4jlogger.error("",e);
+			}
+		}
+		return charset;
+	}
+
+	/**
+	 * <p>Does the charset decode each of the bytes 0x00 to 0x7f to the same ASCII char?</p>
+	 *
+	 * <p>True for the single byte, UTF-8 and most of the multi-byte character sets, but not for those that use 7 bit
+	 * bytes in pairs, such as JIS X 0208.</p>
+	 *
+	 * @param	charset		the charset
+	 * @return				true if ASCII bytes decode to themselves
+	 */
+	static private boolean isASCIICompatible(Charset charset) {
+		Boolean compatible = asciiCompatibleCharsets.get(charset);
+		if (compatible == null) {
+			byte[] ascii = new byte[0x80];
+			for (int i=0; i<0x80; ++i) {
+				ascii[i]=(byte)i;
+			}
+			String decoded = new String(ascii,charset);
+			boolean same = decoded.length() == 0x80;
+			for (int i=0; same && i<0x80; ++i) {
+				same = decoded.charAt(i) == i;
+			}
+			compatible = Boolean.valueOf(same);
+			asciiCompatibleCharsets.put(charset,compatible);
+		}
+		return compatible.booleanValue();
+	}
+
+	/**
+	 * <p>Look up what is needed to decode values once the encoding is known, rather than for each value.</p>
+	 */
+	private void compileDecoder() {
+		Charset charset = useEncoding == null ? null : getCharset(useEncoding);
+		useEncodingIsASCIICompatible = charset != null && isASCIICompatible(charset);
+		slf4jlogger.trace("compileDecoder(): useEncodingIsASCIICompatible={}",useEncodingIsASCIICompatible);
+	}
+
 	/**
 	 * @return true if JIS encodings are working properly
 	 */
@@ -78,8 +171,8 @@ public class SpecificCharacterSet {
 		try {
 			String string = new String(jis0208bytes,"JIS0208");
 			byte[] utf8Bytes = string.getBytes("UTF8");
-			slf4jlogger.trace("testIfNativeJISWorking():src = {}",HexDump.byteArrayToHexString(jis0208bytes));
-			slf4jlogger.trace("testIfNativeJISWorking():dst = {}",HexDump.byteArrayToHexString(utf8Bytes));
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("testIfNativeJISWorking():src = {}",HexDump.byteArrayToHexString(jis0208bytes));
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("testIfNativeJISWorking():dst = {}",HexDump.byteArrayToHexString(utf8Bytes));
 			// if not working will come back unchanged (3b 33 45 44)
 			// if working will come back e5 b1 b1 e7 94 b0
 			success =   utf8Bytes.length == 6
@@ -117,7 +210,7 @@ slf4jlogger.trace("Read {}",line);
 						// can't use Short.decode() because some values "too large"
 						Short jisvalue = new Short(Integer.decode(tokens.nextToken()).shortValue());
 						Character univalue = new Character((char)(Integer.decode(tokens.nextToken()).shortValue()));
-slf4jlogger.trace("Decoded 0x"+Integer.toHexString(jisvalue.intValue())+" to 0x"+Integer.toHexString(univalue.charValue()));
+if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Decoded 0x"+Integer.toHexString(jisvalue.intValue())+" to 0x"+Integer.toHexString(univalue.charValue()));
 						map.put(jisvalue,univalue);
 					}
 				}
@@ -218,7 +311,7 @@ slf4jlogger.trace("getSetOfUnicodeBlocksUsedBy(): value={}",value);
 			for (int i=0; i<value.length(); ++i) {
 				char c = chars[i];
 				Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
-slf4jlogger.trace("getSetOfUnicodeBlocksUsedBy(): - character <"+c+"> block = "+block);
+if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("getSetOfUnicodeBlocksUsedBy(): - character <"+c+"> block = "+block);
 				setOfUnicodeBlocks.add(block);
 			}
 		}
@@ -308,6 +401,7 @@ slf4jlogger.trace("getSetOfUnicodeBlocksUsedBy(): - character <"+c+"> block = "+
 	public SpecificCharacterSet(Set setOfUnicodeBlocks) {
 		useEncoding=getSuitableEncodingFromSetOfUnicodeBlocks(setOfUnicodeBlocks);
 		useISO2022=false;
+		compileDecoder();
 	}
 	
 	/**
@@ -449,7 +543,7 @@ slf4jlogger.trace("SpecificCharacterSet(): firstValue={}",firstValue);
 				useEncoding="Cp949";		// IR 149 KS X 1001 - i.e. start with this before any escape sequences seen
 			}
 			else {
-				slf4jlogger.trace("Check for big5 - specific character set as bytes: {}",HexDump.dump(specificCharacterSetByteValues));
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Check for big5 - specific character set as bytes: {}",HexDump.dump(specificCharacterSetByteValues));
 				if (specificCharacterSetByteValues != null
 				 && specificCharacterSetByteValues.length == 4
 				 && (specificCharacterSetByteValues[0] & 0xff) == 0xff
@@ -475,6 +569,7 @@ slf4jlogger.trace("SpecificCharacterSet(): firstValue={}",firstValue);
 			useEncoding="ASCII";
 		}
 		slf4jlogger.trace("SpecificCharacterSet(): useEncoding={}",useEncoding);
+		compileDecoder();
 	}
 	
 	public String getValueToUseInSpecificCharacterSetAttribute() {
@@ -540,13 +635,13 @@ slf4jlogger.trace("SpecificCharacterSet(): firstValue={}",firstValue);
 	private String translateByteArrayToString(byte[] bytes,int offset,int length,HashMap useMapping) {
 		String s = null;
 		if (useMapping != null) {
-			StringBuffer buf = new StringBuffer(length/2);
+			StringBuilder buf = new StringBuilder(length/2);
 			for (int i=offset; i<offset+length;) {
 				short hibyte = (short)(((short)(bytes[i++])) & 0xff);
 				short lobyte = (short)(((short)(bytes[i++])) & 0xff);
 				short lookup = (short)((hibyte<<8) | lobyte);
 				Character c = (Character)useMapping.get(new Short(lookup));
-				slf4jlogger.trace("translateByteArrayToString(): Mapped from 0x{} to {}",Integer.toHexString(lookup),c);
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("translateByteArrayToString(): Mapped from 0x{} to {}",Integer.toHexString(lookup),c);
 				if (c != null) buf.append(c.charValue());
 			}
 			s=buf.toString();
@@ -564,7 +659,7 @@ slf4jlogger.trace("SpecificCharacterSet(): firstValue={}",firstValue);
 	 * @param	useEncoding	the encoding to use
 	 */
 	private String translateByteArrayToString(byte[] bytes,int offset,int length,String useEncoding) {
-		slf4jlogger.trace("translateByteArrayToString() useEncoding={} offset={} length={}",useEncoding,offset,length);
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("translateByteArrayToString() useEncoding={} offset={} length={}",useEncoding,offset,length);
 		String s = null;
 		if (length > 0 && useOwnJIS && useEncoding.equals("JIS0208")) {
 			slf4jlogger.trace("translateByteArrayToString() using own JIS0208");
@@ -580,22 +675,75 @@ slf4jlogger.trace("SpecificCharacterSet(): firstValue={}",firstValue);
 		//	s=translateByteArrayToString(bytes,offset,length,ownJIS0212Mapping);
 		//}
 		else {
-			try {
-				if (useEncoding.equals("ASCII") && byteArrayContainsNonASCIIValues(bytes,offset,length)) {
-					s=new String(bytes,offset,length,"ISO8859_1");		// More useful to assume that it is incorrectly Latin 1, than nothing at all
+			if (useEncoding.equals("ASCII") && byteArrayContainsNonASCIIValues(bytes,offset,length)) {
+				s=new String(bytes,offset,length,StandardCharsets.ISO_8859_1);		// More useful to assume that it is incorrectly Latin 1, than nothing at all
+			}
+			else {
+				Charset charset = getCharset(useEncoding);
+				if (charset == null) {
+					s=new String(bytes,offset,length);		// use default ... better than returning null (000307)
 				}
 				else {
-					s=new String(bytes,offset,length,useEncoding);
+					s=new String(bytes,offset,length,charset);
 				}
 			}
-			catch (UnsupportedEncodingException e) {
-				slf4jlogger.error("",e);
-				s=new String(bytes,offset,length);		// use default ... better than returning null (000307)
-			}
 		}
 		return s;
 	}
 
+	/**
+	 * <p>Translate a byte array using the specified encoding, appending to the string being built.</p>
+	 *
+	 * <p>Re-uses a {@link java.nio.charset.CharsetDecoder CharsetDecoder} per encoding, and a buffer for the decoded chars;
+	 * the caller must hold the lock on this instance.</p>
+	 *
+	 * @param	bytes		the bytes to translate
+	 * @param	offset		the offset into the byte array to start translation
+	 * @param	length		how many bytes to translate
+	 * @param	useEncoding	the encoding to use
+	 * @param	buf			the string being built
+	 */
+	private void appendTranslatedByteArray(byte[] bytes,int offset,int length,String useEncoding,StringBuilder buf) {
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("appendTranslatedByteArray() useEncoding={} offset={} length={}",useEncoding,offset,length);
+		if ((useOwnJIS && useEncoding.equals("JIS0208")) || (useEncoding.equals("ASCII") && byteArrayContainsNonASCIIValues(bytes,offset,length))) {
+			buf.append(translateByteArrayToString(bytes,offset,length,useEncoding));
+		}
+		else {
+			if (decodersByEncoding == null) {
+				decodersByEncoding = new HashMap<String,CharsetDecoder>();
+			}
+			CharsetDecoder decoder = decodersByEncoding.get(useEncoding);
+			if (decoder == null) {
+				Charset charset = getCharset(useEncoding);
+				if (charset != null) {
+					decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);	// same as new String()
+					decodersByEncoding.put(useEncoding,decoder);
+				}
+			}
+			if (decoder == null) {
+				buf.append(new String(bytes,offset,length));		// use default ... better than returning null (000307)
+			}
+			else {
+				int capacity = (int)(length * (double)decoder.maxCharsPerByte()) + 1;
+				CoderResult result;
+				do {
+					if (decodedChars == null || decodedChars.capacity() < capacity) {
+						decodedChars = CharBuffer.allocate(capacity);
+					}
+					decodedChars.clear();
+					decoder.reset();
+					result = decoder.decode(ByteBuffer.wrap(bytes,offset,length),decodedChars,true);
+					if (!result.isOverflow()) {
+						result = decoder.flush(decodedChars);
+					}
+					capacity = decodedChars.capacity() * 2;		// should not be needed given maxCharsPerByte, but start over if so
+				} while (result.isOverflow());
+				decodedChars.flip();
+				buf.append(decodedChars);
+			}
+		}
+	}
+
 	/**
 	 * <p>Translate a byte array (such as a value from a DICOM attribute), using the
 	 * specified Specific Character Set, into a {@link java.lang.String String}.
@@ -606,135 +754,152 @@ slf4jlogger.trace("SpecificCharacterSet(): firstValue={}",firstValue);
 	 * @return			the string decoded according to the specific character set
 	 */
 	public String translateByteArrayToString(byte[] bytes,int offset,int length) {
-		slf4jlogger.trace("translateByteArrayToString():  byte array is:\n{}",com.pixelmed.utils.HexDump.dump(bytes));
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("translateByteArrayToString():  byte array is:\n{}",com.pixelmed.utils.HexDump.dump(bytes));
 		slf4jlogger.trace("translateStringToByteArray(): useEncoding is {}",useEncoding);
 		String s = null;
 		if (useEncoding == null) {
-			s=new String(bytes,0,length);
+			s=new String(bytes,offset,length);
+		}
+		else if (useEncodingIsASCIICompatible && !(useISO2022 ? byteArrayContainsNonASCIIOrEscapeValues(bytes,offset,length) : byteArrayContainsNonASCIIValues(bytes,offset,length))) {
+			s=new String(bytes,offset,length,StandardCharsets.US_ASCII);		// the common case, regardless of character set, and needs no decoder
 		}
 		else {
 			if (useISO2022) {
-				// start at beginning with useEncoding (from 1st value of Specific Character Set)
-				// and use that until we see an escape sequence
-				// note that this is all a bit hokey since we are assuming a lot about what is in GL vs. GR
-				// and are using the escape sequence to switch both which is a bit naughty
-				StringBuffer sbuf = new StringBuffer();
-				int done = 0;
-				int startlast = 0;
-				int bytesperchar = 1;
-				String lastEncoding = useEncoding;
-				while (done < length) {
-					slf4jlogger.trace("translateByteArrayToString() looping startlast={} done={}",startlast,done);
-					if (bytes[done] == 0x1b) { // escape character
-						slf4jlogger.trace("translateByteArrayToString() escape character");
-						if (done > startlast) sbuf.append(translateByteArrayToString(bytes,startlast,done-startlast,lastEncoding));
-						if (bytes[done+1] == 0x28 && bytes[done+2] == 0x42) {
-							lastEncoding="ASCII";		// IR 6 ISO 646
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x41) {
-							lastEncoding="ISO8859_1";		// IR 100
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x42) {
-							lastEncoding="ISO8859_2";		// IR 101
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x43) {
-							lastEncoding="ISO8859_3";		// IR 109
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x44) {
-							lastEncoding="ISO8859_4";		// IR 110
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x4c) {
-							lastEncoding="ISO8859_5";		// IR 144
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x47) {
-							lastEncoding="ISO8859_6";		// IR 127
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x46) {
-							lastEncoding="ISO8859_7";		// IR 126
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x48) {
-							lastEncoding="ISO8859_8";		// IR 138
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x4d) {
-							lastEncoding="ISO8859_9";		// IR 148
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x54) {
-							lastEncoding="TIS620";		// IR 166
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x29 && bytes[done+2] == 0x49) {
-							lastEncoding="JIS0201";		// IR 13
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x28 && bytes[done+2] == 0x4a) {
-							lastEncoding="JIS0201";		// IR 13
-							bytesperchar=1;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x24 && bytes[done+2] == 0x42) {
-							lastEncoding="JIS0208";		// IR 87
-							bytesperchar=2;
-							done+=3;
-						}
-						else if (bytes[done+1] == 0x24 && bytes[done+2] == 0x29 && bytes[done+3] == 0x41) {
-							// encountered in Agfa SpecificCharacterSet = "\\ISO 2022 GBK"
-							lastEncoding="GBK";				// hmm :) this escape sequence really is supposed to be confined to GB2312 (EUC_CN) ... see RFC 1922
-							bytesperchar=2;
-							done+=4;
-						}
-						else if (bytes[done+1] == 0x24 && bytes[done+2] == 0x28 && bytes[done+3] == 0x44) {
-							lastEncoding="JIS0212";		// IR 159
-							bytesperchar=2;
-							done+=4;
-						}
-						else if (bytes[done+1] == 0x24 && bytes[done+2] == 0x29 && bytes[done+3] == 0x43) {
-							lastEncoding="Cp949";		// IR 149 KS X 1001
-							bytesperchar=-1;		// flag to trigger high bit based selection of 1 or 2 bytes
-							done+=4;
-						}
-						else {
-							done+=3;
-						}
-						startlast=done;
-					}
-					else {
-						done+=(bytesperchar == -1 ? ((bytes[done]&0x80) == 1 ? 2 : 1) : bytesperchar);
-					}
-				}
-				if (done > startlast) sbuf.append(translateByteArrayToString(bytes,startlast,done-startlast,lastEncoding));
-				s=sbuf.toString();
+				s=translateISO2022ByteArrayToString(bytes,offset,length);
 			}
 			else {
-				s=translateByteArrayToString(bytes,0,length,useEncoding);
+				s=translateByteArrayToString(bytes,offset,length,useEncoding);
 			}
 		}
 		slf4jlogger.trace("translateByteArrayToString(): result string is <{}>",s);
-		slf4jlogger.trace("translateByteArrayToString(): result string is:\n{}",com.pixelmed.utils.StringUtilities.dump(s));
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("translateByteArrayToString(): result string is:\n{}",com.pixelmed.utils.StringUtilities.dump(s));
 		return s;
 	}
 
+	/**
+	 * <p>Translate a byte array using ISO 2022 escape sequences to switch between encodings.</p>
+	 *
+	 * @param	bytes		the bytes to translate
+	 * @param	offset		the offset into the byte array to start translation
+	 * @param	length		how many bytes to translate
+	 * @return			the string decoded according to the specific character set
+	 */
+	private synchronized String translateISO2022ByteArrayToString(byte[] bytes,int offset,int length) {
+		// start at beginning with useEncoding (from 1st value of Specific Character Set)
+		// and use that until we see an escape sequence
+		// note that this is all a bit hokey since we are assuming a lot about what is in GL vs. GR
+		// and are using the escape sequence to switch both which is a bit naughty
+		StringBuilder sbuf = new StringBuilder(length);
+		int end = offset + length;
+		int done = offset;
+		int startlast = offset;
+		int bytesperchar = 1;
+		String lastEncoding = useEncoding;
+		while (done < end) {
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("translateByteArrayToString() looping startlast={} done={}",startlast,done);
+			if (bytes[done] == 0x1b) { // escape character
+				slf4jlogger.trace("translateByteArrayToString() escape character");
+				if (done > startlast) appendTranslatedByteArray(bytes,startlast,done-startlast,lastEncoding,sbuf);
+				if (bytes[done+1] == 0x28 && bytes[done+2] == 0x42) {
+					lastEncoding="ASCII";		// IR 6 ISO 646
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x41) {
+					lastEncoding="ISO8859_1";		// IR 100
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x42) {
+					lastEncoding="ISO8859_2";		// IR 101
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x43) {
+					lastEncoding="ISO8859_3";		// IR 109
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x44) {
+					lastEncoding="ISO8859_4";		// IR 110
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x4c) {
+					lastEncoding="ISO8859_5";		// IR 144
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x47) {
+					lastEncoding="ISO8859_6";		// IR 127
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x46) {
+					lastEncoding="ISO8859_7";		// IR 126
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x48) {
+					lastEncoding="ISO8859_8";		// IR 138
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x4d) {
+					lastEncoding="ISO8859_9";		// IR 148
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x2d && bytes[done+2] == 0x54) {
+					lastEncoding="TIS620";		// IR 166
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x29 && bytes[done+2] == 0x49) {
+					lastEncoding="JIS0201";		// IR 13
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x28 && bytes[done+2] == 0x4a) {
+					lastEncoding="JIS0201";		// IR 13
+					bytesperchar=1;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x24 && bytes[done+2] == 0x42) {
+					lastEncoding="JIS0208";		// IR 87
+					bytesperchar=2;
+					done+=3;
+				}
+				else if (bytes[done+1] == 0x24 && bytes[done+2] == 0x29 && bytes[done+3] == 0x41) {
+					// encountered in Agfa SpecificCharacterSet = "\\ISO 2022 GBK"
+					lastEncoding="GBK";				// hmm :) this escape sequence really is supposed to be confined to GB2312 (EUC_CN) ... see RFC 1922
+					bytesperchar=2;
+					done+=4;
+				}
+				else if (bytes[done+1] == 0x24 && bytes[done+2] == 0x28 && bytes[done+3] == 0x44) {
+					lastEncoding="JIS0212";		// IR 159
+					bytesperchar=2;
+					done+=4;
+				}
+				else if (bytes[done+1] == 0x24 && bytes[done+2] == 0x29 && bytes[done+3] == 0x43) {
+					lastEncoding="Cp949";		// IR 149 KS X 1001
+					bytesperchar=-1;		// flag to trigger high bit based selection of 1 or 2 bytes
+					done+=4;
+				}
+				else {
+					done+=3;
+				}
+				startlast=done;
+			}
+			else {
+				done+=(bytesperchar == -1 ? ((bytes[done]&0x80) == 1 ? 2 : 1) : bytesperchar);
+			}
+		}
+		done=Math.min(done,end);			// may have stepped past the end if the last multi-byte character is truncated
+		if (done > startlast) appendTranslatedByteArray(bytes,startlast,done-startlast,lastEncoding,sbuf);
+		return sbuf.toString();
+	}
+
 	/**
 	 * <p>Encode a string into a byte array.</p>
 	 *
@@ -746,10 +911,10 @@ slf4jlogger.trace("SpecificCharacterSet(): firstValue={}",firstValue);
 	 */
 	public byte[] translateStringToByteArray(String string) throws UnsupportedEncodingException {
 		slf4jlogger.trace("translateStringToByteArray(): string is <{}>",string);
-		slf4jlogger.trace("translateStringToByteArray(): string is:\n{}",com.pixelmed.utils.StringUtilities.dump(string));
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("translateStringToByteArray(): string is:\n{}",com.pixelmed.utils.StringUtilities.dump(string));
 		slf4jlogger.trace("translateStringToByteArray(): useEncoding is {}",useEncoding);
 		byte[] b = useEncoding == null ? string.getBytes() : string.getBytes(useEncoding);
-		slf4jlogger.trace("translateStringToByteArray(): return byte array is:\n{}",com.pixelmed.utils.HexDump.dump(b));
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("translateStringToByteArray(): return byte array is:\n{}",com.pixelmed.utils.HexDump.dump(b));
 		return b;
 	}
 
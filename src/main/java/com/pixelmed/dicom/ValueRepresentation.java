@@ -46,6 +46,8 @@ public class ValueRepresentation {
 	/***/
 	public static byte[] OL = { 'O', 'L' };
 	/***/
+	public static byte[] OV = { 'O', 'V' };
+	/***/
 	public static byte[] OW = { 'O', 'W' };
 	/***/
 	public static byte[] OX = { 'O', 'X' };		// OB or OW
@@ -194,6 +196,13 @@ public class ValueRepresentation {
 		return vr[0]=='O' &&  vr[1]=='L';
 	}
 
+	/**
+	 * @param	vr
+	 */
+	public static final boolean isOtherVeryLongVR(byte[] vr) {
+		return vr[0]=='O' &&  vr[1]=='V';
+	}
+
 	/**
 	 * @param	vr
 	 */
@@ -402,6 +411,7 @@ public class ValueRepresentation {
 		
 		if (isFloatDoubleVR(vr)
 		 || isOtherDoubleVR(vr)
+		 || isOtherVeryLongVR(vr)
 		) {
 			length=8;
 		}
@@ -1253,7 +1253,7 @@ public class BufferedImageUtilities {
 		}
 		// else should never get here, since took care of this and returned earlier
 		
-		slf4jlogger.debug("resample() elapsed: "+(System.currentTimeMillis()-startTime)+" ms");
+		if (slf4jlogger.isDebugEnabled()) slf4jlogger.debug("resample() elapsed: "+(System.currentTimeMillis()-startTime)+" ms");
 		return dstImage;
 	}
 
@@ -1270,7 +1270,7 @@ public class BufferedImageUtilities {
 			dstImage = resampleWithGraphicsDraw(srcImage,dstColorModel,selectionWidth,selectionHeight,selectionXOffset,selectionYOffset,dstWidth,dstHeight);
 		}
 		slf4jlogger.debug("resampleWithGraphicsDraw(BufferedImage,int,int,int,int,int,int): done");
-		slf4jlogger.debug("resampleWithGraphicsDraw() elapsed: "+(System.currentTimeMillis()-startTime)+" ms");
+		if (slf4jlogger.isDebugEnabled()) slf4jlogger.debug("resampleWithGraphicsDraw() elapsed: "+(System.currentTimeMillis()-startTime)+" ms");
 		return dstImage;
 	}
 	
@@ -1388,7 +1388,7 @@ public class BufferedImageUtilities {
 		AffineTransformOp transformOp=new AffineTransformOp(transform,AffineTransformOp.TYPE_BILINEAR);
  		BufferedImage dstImage = transformOp.createCompatibleDestImage(srcImage,srcImage.getColorModel());	// otherwise returns, say RGBA even if gray
 		dstImage = transformOp.filter(srcImage,dstImage);
-		slf4jlogger.debug("resampleWithAffineTransformOp() elapsed: "+(System.currentTimeMillis()-startTime)+" ms");
+		if (slf4jlogger.isDebugEnabled()) slf4jlogger.debug("resampleWithAffineTransformOp() elapsed: "+(System.currentTimeMillis()-startTime)+" ms");
 		return dstImage;
 	}
 
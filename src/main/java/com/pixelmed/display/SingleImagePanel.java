@@ -1644,8 +1644,8 @@ public class SingleImagePanel extends JComponent implements KeyListener, MouseLi
 					signMask=0xffff8000;
 				}
 			}
-			slf4jlogger.debug("signMask=0x{}",Integer.toHexString(signMask));
-			slf4jlogger.debug("signBit=0x{}",Integer.toHexString(signBit));
+			if (slf4jlogger.isDebugEnabled()) slf4jlogger.debug("signMask=0x{}",Integer.toHexString(signMask));
+			if (slf4jlogger.isDebugEnabled()) slf4jlogger.debug("signBit=0x{}",Integer.toHexString(signBit));
 		}
 		
 		this.suvTransform=sImg.getSUVTransform();
@@ -467,13 +467,13 @@ public class WindowCenterAndWidth {
 				n = redTable.length;
 			}
 			for (xi=largestGray+1,i=0; i<n;++i) {
-				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: xi="+xi+" i={}",i);
-				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: redTable[i]&0xff={}",Integer.toHexString((redTable[i])&0xff));
-				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: redTable[i]>>8={}",Integer.toHexString((redTable[i]>>8)&0xff));
-				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: greenTable[i]&0xff={}",Integer.toHexString((greenTable[i])&0xff));
-				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: greenTable[i]>>8={}",Integer.toHexString((greenTable[i]>>8)&0xff));
-				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: blueTable[i]&0xff={}",Integer.toHexString((blueTable[i])&0xff));
-				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: blueTable[i]>>8={}",Integer.toHexString((blueTable[i]>>8)&0xff));
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: xi="+xi+" i={}",i);
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: redTable[i]&0xff={}",Integer.toHexString((redTable[i])&0xff));
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: redTable[i]>>8={}",Integer.toHexString((redTable[i]>>8)&0xff));
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: greenTable[i]&0xff={}",Integer.toHexString((greenTable[i])&0xff));
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: greenTable[i]>>8={}",Integer.toHexString((greenTable[i]>>8)&0xff));
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: blueTable[i]&0xff={}",Integer.toHexString((blueTable[i])&0xff));
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: blueTable[i]>>8={}",Integer.toHexString((blueTable[i]>>8)&0xff));
 				rlut[xi&0xffff]=(byte)(redTable[i]);
 				glut[xi&0xffff]=(byte)(greenTable[i]);
 				blut[xi&0xffff]=(byte)(blueTable[i]);
@@ -490,10 +490,10 @@ public class WindowCenterAndWidth {
 			int i;
 			int xi;
 			for (xi=largestGray+1,i=0; i < numberOfEntries; ++xi,++i) {
-				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: xi="+xi+" i={}",i);
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: xi="+xi+" i={}",i);
 				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: redTable[i]={}",redTable[i]);
 				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: redTable[i]>>shiftRight={}",(redTable[i]>>shiftRight));
-				slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: redTable[i]>>shiftRight={}",Integer.toHexString((redTable[i]>>shiftRight)&0xff));
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("applyWindowCenterAndWidthWithPaletteColor: redTable[i]>>shiftRight={}",Integer.toHexString((redTable[i]>>shiftRight)&0xff));
 				rlut[xi&0xffff]=(byte)(redTable[i]>>shiftRight);
 				glut[xi&0xffff]=(byte)(greenTable[i]>>shiftRight);
 				blut[xi&0xffff]=(byte)(blueTable[i]>>shiftRight);
@@ -611,7 +611,7 @@ public class WindowCenterAndWidth {
 		ColorModel colorModel = src.getColorModel();
 		if (colorModel instanceof IndexColorModel) {
 			// We get RGB IndexColorModel from single bit images out of SourceImage and BufferedImageUtilities.resample() without convertToMostFavorableImageType(), so ignore (000996)
-			slf4jlogger.debug("applyWindowCenterAndWidthLinearToColorImage(): Unsupported colorModel "+colorModel.getClass()+", so doing nothing");
+			if (slf4jlogger.isDebugEnabled()) slf4jlogger.debug("applyWindowCenterAndWidthLinearToColorImage(): Unsupported colorModel "+colorModel.getClass()+", so doing nothing");
 			doIt = false;
 		}
 		else {
@@ -633,7 +633,7 @@ public class WindowCenterAndWidth {
 			}
 			else {
 				// e.g. might be DataBuffer.TYPE_INT if supplied with IndexColorModel image after convertToMostFavorableImageType() (000996)
-				slf4jlogger.debug("applyWindowCenterAndWidthLinearToColorImage(): Unsupported data type is "+dataType+", so doing nothing");
+				if (slf4jlogger.isDebugEnabled()) slf4jlogger.debug("applyWindowCenterAndWidthLinearToColorImage(): Unsupported data type is "+dataType+", so doing nothing");
 				doIt = false;
 			}
 		}
@@ -208,11 +208,11 @@ public abstract class Association {
 			int pduType = startBuffer[0]&0xff;
 			int pduLength = ByteArray.bigEndianToUnsignedInt(startBuffer,2,4);
 
-			slf4jlogger.trace("Association[{}]: Them: PDU Type: 0x{} (length 0x{})",associationNumber,Integer.toHexString(pduType),Integer.toHexString(pduLength));
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Them: PDU Type: 0x{} (length 0x{})",associationNumber,Integer.toHexString(pduType),Integer.toHexString(pduLength));
 
 			if (pduType == 0x06) {							//           - A-RELEASE-RP PDU
 				AReleasePDU arr = new AReleasePDU(getRestOfPDU(in,startBuffer,pduLength));
-				slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,arr.toString());
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,arr.toString());
 				slf4jlogger.trace("Association[{}]: Us: close transport connection",associationNumber);
 				socket.close();							// AR-3      - Issue A-RELEASE confirmation primitive and close transport connection
 				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Us: Transport connection is {}closed after close() request",associationNumber,(socket.isClosed() ? "" : "not "));
@@ -406,7 +406,7 @@ public abstract class Association {
 			int pduType = startBuffer[0]&0xff;
 			int pduLength = ByteArray.bigEndianToUnsignedInt(startBuffer,2,4);
 
-			slf4jlogger.trace("Association[{}]:Them: PDU Type: 0x{} (length {} dec 0x{})",associationNumber,Integer.toHexString(pduType),pduLength,Integer.toHexString(pduLength));
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]:Them: PDU Type: 0x{} (length {} dec 0x{})",associationNumber,Integer.toHexString(pduType),pduLength,Integer.toHexString(pduLength));
 
 			if (pduType == 0x04) {							//           - P-DATA PDU
 				PDataPDU pdata = new PDataPDU(getRestOfPDU(in,startBuffer,pduLength));
@@ -445,7 +445,7 @@ public abstract class Association {
 			}
 			else if (pduType == 0x07) {						//           - A-ABORT PDU
 				AAbortPDU aab = new AAbortPDU(getRestOfPDU(in,startBuffer,pduLength));
-				slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,aab.toString());
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,aab.toString());
 				slf4jlogger.trace("Association[{}]: Us: close transport connection",associationNumber);
 				socket.close();							// AA-3      - Close transport connection and indicate abort
 				throw new DicomNetworkException("A-ABORT indication - "+aab.getInfo());
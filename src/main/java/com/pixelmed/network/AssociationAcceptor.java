@@ -114,12 +114,12 @@ class AssociationAcceptor extends Association {
 			int pduType = startBuffer[0]&0xff;
 			int pduLength = ByteArray.bigEndianToUnsignedInt(startBuffer,2,4);
 
-			slf4jlogger.trace("Association[{}]: Them: PDU Type: 0x{} (length 0x{})",associationNumber,Integer.toHexString(pduType),Integer.toHexString(pduLength));
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Them: PDU Type: 0x{} (length 0x{})",associationNumber,Integer.toHexString(pduType),Integer.toHexString(pduLength));
 
 			if (pduType == 0x01) {							//           - A-ASSOCIATE-RQ PDU
 												// AE-6      - Stop ARTIM and send A-ASSOCIATE indication primitive
 				AssociateRequestPDU arq = new AssociateRequestPDU(getRestOfPDU(in,startBuffer,pduLength));
-				slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,arq.toString());
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,arq.toString());
 				presentationContexts=arq.getRequestedPresentationContexts();
 				maximumLengthReceived=arq.getMaximumLengthReceived();
 				callingAETitle=StringUtilities.removeLeadingOrTrailingWhitespaceOrISOControl(arq.getCallingAETitle());
@@ -153,7 +153,7 @@ class AssociationAcceptor extends Association {
 					presentationContextSelectionPolicy.applyPresentationContextSelectionPolicy(presentationContexts,associationNumber);
 					// we now have presentation contexts with 1 AS, 1TS if any accepted, and a result/reason
 					LinkedList presentationContextsForAssociateAcceptPDU = AssociateAcceptPDU.sanitizePresentationContextsForAcceptance(presentationContexts);
-					slf4jlogger.trace("Association[{}]: Presentation contexts for A-ASSOCIATE-AC:\n{}",associationNumber,presentationContextsForAssociateAcceptPDU.toString());
+					if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Presentation contexts for A-ASSOCIATE-AC:\n{}",associationNumber,presentationContextsForAssociateAcceptPDU.toString());
 
 					slf4jlogger.trace("Association[{}]: OurMaximumLengthReceived={}",associationNumber,ourMaximumLengthReceived);
 
@@ -168,7 +168,7 @@ class AssociationAcceptor extends Association {
 			}
 			else if (pduType == 0x07) {						//           - A-ABORT PDU
 				AAbortPDU aab = new AAbortPDU(getRestOfPDU(in,startBuffer,pduLength));
-				slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,aab.toString());
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,aab.toString());
 				socket.close();							// AA-2      - Stop ARTIM, close transport connection and indicate abort
 				//inputTransferMonitoringContext.close();
 				//outputTransferMonitoringContext.close();
@@ -128,7 +128,7 @@ class AssociationInitiator extends Association {
 		slf4jlogger.trace("Association[{}]: OurMaximumLengthReceived={}",associationNumber,ourMaximumLengthReceived);
 		AssociateRequestPDU arq = new AssociateRequestPDU(calledAETitle,callingAETitle,implementationClassUID,implementationVersionName,
 				ourMaximumLengthReceived,presentationContexts,scuSCPRoleSelections,userIdentityType,userIdentityPrimaryField,userIdentitySecondaryField);
-		slf4jlogger.trace("Association[{}]: Us:\n{}",associationNumber,arq.toString());
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Us:\n{}",associationNumber,arq.toString());
 												// State 1 - Idle
 		//TransferMonitoringContext inputTransferMonitoringContext  = new TransferMonitoringContext("Association["+associationNumber+"] Initiator Read  "+callingAETitle+"<-"+calledAETitle);
 		//TransferMonitoringContext outputTransferMonitoringContext = new TransferMonitoringContext("Association["+associationNumber+"] Initiator Wrote "+callingAETitle+"->"+calledAETitle);
@@ -175,11 +175,11 @@ class AssociationInitiator extends Association {
 			int pduType = startBuffer[0]&0xff;
 			int pduLength = ByteArray.bigEndianToUnsignedInt(startBuffer,2,4);
 
-			slf4jlogger.trace("Association[{}]: Them: PDU Type: 0x{} (length 0x{})",associationNumber,Integer.toHexString(pduType),Integer.toHexString(pduLength));
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Them: PDU Type: 0x{} (length 0x{})",associationNumber,Integer.toHexString(pduType),Integer.toHexString(pduLength));
 
 			if (pduType == 0x02) {							//           - A-ASSOCIATE-AC PDU
 				AssociateAcceptPDU aac = new AssociateAcceptPDU(getRestOfPDU(in,startBuffer,pduLength));
-				slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,aac.toString());
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,aac.toString());
 				this.presentationContexts=aac.getAcceptedPresentationContextsWithAbstractSyntaxIncludedFromRequest(this.presentationContexts);
 				
 				// this.maximumLengthReceived is used to set the size of what we send ... don't let what they
@@ -189,13 +189,13 @@ class AssociationInitiator extends Association {
 				}
 				slf4jlogger.debug("Association[{}]: We will send them PDUs of: {}",associationNumber,this.maximumLengthReceived);
 
-				slf4jlogger.trace("Association[{}]: Accepted presentation contexts:\n{}",associationNumber,this.presentationContexts.toString());
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Accepted presentation contexts:\n{}",associationNumber,this.presentationContexts.toString());
 												// AE-3      - issue confirmation indication (i.e. do nothing but return)
 												// State 6   - Data Transfer
 			}
 			else if (pduType == 0x03) {						//           - A-ASSOCIATE-RJ PDU
 				AssociateRejectPDU arj = new AssociateRejectPDU(getRestOfPDU(in,startBuffer,pduLength));
-				slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,arj.toString());
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,arj.toString());
 				socket.close();							// AE-4      - Close transport connection and indicate rejection
 				//inputTransferMonitoringContext.close();
 				//outputTransferMonitoringContext.close();
@@ -204,7 +204,7 @@ class AssociationInitiator extends Association {
 			}
 			else if (pduType == 0x07) {						//           - A-ABORT PDU
 				AAbortPDU aab = new AAbortPDU(getRestOfPDU(in,startBuffer,pduLength));
-				slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,aab.toString());
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Association[{}]: Them:\n{}",associationNumber,aab.toString());
 				socket.close();							// AA-3      - Close transport connection and indicate abort
 				//inputTransferMonitoringContext.close();
 				//outputTransferMonitoringContext.close();
@@ -97,7 +97,7 @@ abstract public class CompositeResponseHandler extends ReceivedDataHandler {
 	 * @throws	DicomNetworkException
 	 */
 	public static AttributeList getAttributeListFromCommandOrData(byte[] bytes,String transferSyntaxUID) throws DicomNetworkException, DicomException, IOException {
-		slf4jlogger.trace(HexDump.dump(bytes));
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace(HexDump.dump(bytes));
 		AttributeList list = new AttributeList();
 		list.read(new DicomInputStream(new ByteArrayInputStream(bytes),transferSyntaxUID,false));
 		slf4jlogger.trace(list.toString());
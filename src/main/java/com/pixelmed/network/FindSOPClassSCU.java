@@ -71,7 +71,7 @@ public class FindSOPClassSCU extends SOPClass {
 			//
 			// for now just treat success or warning as success (and absence as failure)
 			status = Attribute.getSingleIntegerValueOrDefault(list,TagFromName.Status,0xffff);
-			slf4jlogger.debug("CFindResponseHandler.evaluateStatusAndSetSuccess: status = 0x{}",Integer.toHexString(status));
+			if (slf4jlogger.isDebugEnabled()) slf4jlogger.debug("CFindResponseHandler.evaluateStatusAndSetSuccess: status = 0x{}",Integer.toHexString(status));
 			// possible statuses at this point are:
 			// A700 Refused - Out of Resources	
 			// A900 Failed - Identifier does not match SOP Class	
@@ -122,7 +122,7 @@ public class GetSOPClassSCU extends SOPClass {
 
 		public void sendPDataIndication(PDataPDU pdata,Association association) throws DicomNetworkException, DicomException, IOException {
 			slf4jlogger.trace("CGetResponseOrCStoreRequestHandler.sendPDataIndication(): sendPDataIndication()");
-			slf4jlogger.trace("CGetResponseOrCStoreRequestHandler.sendPDataIndication(): sendPDataIndication()",super.dumpPDVListToString(pdata.getPDVList()));
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CGetResponseOrCStoreRequestHandler.sendPDataIndication(): sendPDataIndication()",super.dumpPDVListToString(pdata.getPDVList()));
 			slf4jlogger.trace("CGetResponseOrCStoreRequestHandler.sendPDataIndication(): finished dumping PDV list from PDU");
 			// append to command ...
 			LinkedList pdvList = pdata.getPDVList();
@@ -130,13 +130,13 @@ public class GetSOPClassSCU extends SOPClass {
 			while (i.hasNext()) {
 				PresentationDataValue pdv = (PresentationDataValue)i.next();
 				presentationContextIDUsed = pdv.getPresentationContextID();
-				slf4jlogger.trace("CGetResponseOrCStoreRequestHandler.sendPDataIndication(): Presentation Context ID used = "+presentationContextIDUsed);
+				if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CGetResponseOrCStoreRequestHandler.sendPDataIndication(): Presentation Context ID used = "+presentationContextIDUsed);
 				if (pdv.isCommand()) {
 					receivedFile=null;
 					commandReceived=ByteArray.concatenate(commandReceived,pdv.getValue());	// handles null cases
 					if (pdv.isLastFragment()) {
 						slf4jlogger.trace("CGetResponseOrCStoreRequestHandler.sendPDataIndication(): last fragment of data seen");
-						slf4jlogger.trace(HexDump.dump(commandReceived));
+						if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace(HexDump.dump(commandReceived));
 						commandList = new AttributeList();
 						commandList.read(new DicomInputStream(new ByteArrayInputStream(commandReceived),TransferSyntax.Default,false));
 						commandReceived=null;
@@ -254,7 +254,7 @@ public class GetSOPClassSCU extends SOPClass {
 		 * @param	list
 		 */
 		protected void evaluateStatusAndSetSuccess(AttributeList list) {
-			slf4jlogger.trace("CGetResponseHandler.evaluateStatusAndSetSuccess:\n{}",list.toString());
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CGetResponseHandler.evaluateStatusAndSetSuccess:\n{}",list.toString());
 			// could check all sorts of things, like:
 			// - AffectedSOPClassUID is what we sent
 			// - CommandField is 0x8020 C-Find-RSP
@@ -264,7 +264,7 @@ public class GetSOPClassSCU extends SOPClass {
 			//
 			// for now just treat success or warning as success (and absence as failure)
 			status = Attribute.getSingleIntegerValueOrDefault(list,TagFromName.Status,0xffff);
-			slf4jlogger.trace("CGetResponseHandler.evaluateStatusAndSetSuccess: status = 0x{}",Integer.toHexString(status));
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CGetResponseHandler.evaluateStatusAndSetSuccess: status = 0x{}",Integer.toHexString(status));
 			// possible statuses at this point are:
 			// A700 Refused - Out of Resources	
 			// A900 Failed - Identifier does not match SOP Class	
@@ -301,7 +301,7 @@ public class GetSOPClassSCU extends SOPClass {
 		 * @param	list
 		 */
 		protected void makeUseOfDataSet(AttributeList list) {
-			slf4jlogger.trace("CGetResponseOrCStoreRequestHandler.makeUseOfDataSet:{}",list.toString());
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CGetResponseOrCStoreRequestHandler.makeUseOfDataSet:{}",list.toString());
 			try {
 				if (identifierHandler != null) {
 					identifierHandler.doSomethingWithIdentifier(list);
@@ -377,7 +377,7 @@ public class GetSOPClassSCU extends SOPClass {
 		
 		long startTime=System.currentTimeMillis();
 		
-		slf4jlogger.trace("request identifier\n{}",identifier.toString());
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("request identifier\n{}",identifier.toString());
 
 		Set setOfSOPClassUIDs = new HashSet();
 		setOfSOPClassUIDs.add(affectedSOPClass);
@@ -81,7 +81,7 @@ public class MoveSOPClassSCU extends SOPClass {
 			//
 			// for now just treat success or warning as success (and absence as failure)
 			status = Attribute.getSingleIntegerValueOrDefault(list,TagFromName.Status,0xffff);
-			slf4jlogger.trace("CMoveResponseHandler.evaluateStatusAndSetSuccess: status =0x{}",Integer.toHexString(status));
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CMoveResponseHandler.evaluateStatusAndSetSuccess: status =0x{}",Integer.toHexString(status));
 			slf4jlogger.trace(list.toString());
 			// possible statuses at this point are:
 			// A701 Refused - Out of Resources - Unable to calculate number of matches
@@ -126,7 +126,7 @@ public class MoveSOPClassSCU extends SOPClass {
 		 * @param	list
 		 */
 		protected void makeUseOfDataSet(AttributeList list) {
-			slf4jlogger.trace("CMoveResponseHandler.makeUseOfDataSet:\n{}",list.toString());
+			if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CMoveResponseHandler.makeUseOfDataSet:\n{}",list.toString());
 			// we only get here if there are failed sub-operations, in which case we get a list
 			// in Failed SOP Instance UID List (0008,0058)
 			setDone(true);
@@ -162,7 +162,7 @@ public class NetworkApplicationInformationFederated extends NetworkApplicationIn
 		catch (Exception e) {
 			slf4jlogger.error("Ignoring exception", e);
 		}
-		slf4jlogger.trace("NetworkApplicationInformationFederated.startupAllKnownSourcesAndRegister(): federatedNetworkApplicationInformation after LDAP ...\n{}",this.toString());
+		if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("NetworkApplicationInformationFederated.startupAllKnownSourcesAndRegister(): federatedNetworkApplicationInformation after LDAP ...\n{}",this.toString());
 //System.err.println("NetworkApplicationInformationFederated.startupAllKnownSourcesAndRegister(): try properties");
 		if (networkApplicationProperties != null) {
 			try {
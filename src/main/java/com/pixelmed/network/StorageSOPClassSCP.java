@@ -224,7 +224,7 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 							false,				// no dataset
 							nRemaining,nCompleted,nFailed,nWarning
 							).getBytes();
-							slf4jlogger.trace("CompositeCommandReceivedPDUHandler.CGetPendingResponseSender.updateStatus(): C-GET pending response = {}",CompositeResponseHandler.dumpAttributeListFromCommandOrData(cGetPendingResponseCommandMessage,TransferSyntax.Default));
+							if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CompositeCommandReceivedPDUHandler.CGetPendingResponseSender.updateStatus(): C-GET pending response = {}",CompositeResponseHandler.dumpAttributeListFromCommandOrData(cGetPendingResponseCommandMessage,TransferSyntax.Default));
 
 						byte presentationContextIDForResponse = association.getSuitablePresentationContextID(cgrq.getAffectedSOPClassUID());
 						association.send(presentationContextIDForResponse,cGetPendingResponseCommandMessage,null);
@@ -384,7 +384,7 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 							queryResponseGenerator.performQuery(cfrq.getAffectedSOPClassUID(),dataList,false/*relational*/);
 							int status = queryResponseGenerator.getStatus();
 							if (status != ResponseStatus.Success) {
-								slf4jlogger.trace("CompositeCommandReceivedPDUHandler.sendPDataIndication(): Query failed, status = 0x{}",Integer.toHexString(status));
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CompositeCommandReceivedPDUHandler.sendPDataIndication(): Query failed, status = 0x{}",Integer.toHexString(status));
 								response = new CFindResponseCommandMessage(
 									cfrq.getAffectedSOPClassUID(),
 									cfrq.getMessageID(),
@@ -398,7 +398,7 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 							else {
 								AttributeList responseIdentifierList;
 								while ((responseIdentifierList = queryResponseGenerator.next()) != null) {
-									slf4jlogger.trace("CompositeCommandReceivedPDUHandler.sendPDataIndication(): Building and sending pending response {}",responseIdentifierList.toString());
+									if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CompositeCommandReceivedPDUHandler.sendPDataIndication(): Building and sending pending response {}",responseIdentifierList.toString());
 									byte presentationContextIDForResponse = association.getSuitablePresentationContextID(cfrq.getAffectedSOPClassUID());
 									slf4jlogger.trace("CompositeCommandReceivedPDUHandler.sendPDataIndication(): Using context ID for response {}",presentationContextIDForResponse);
 									byte cFindResponseCommandMessage[] = new CFindResponseCommandMessage(
@@ -444,7 +444,7 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 							int status = retrieveResponseGenerator.getStatus();
 							retrieveResponseGenerator.close();
 							if (status != ResponseStatus.Success || dicomFiles == null) {
-							slf4jlogger.trace("CompositeCommandReceivedPDUHandler.sendPDataIndication(): retrieve failed or contains nothing, status = 0x{}",Integer.toHexString(status));
+							if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CompositeCommandReceivedPDUHandler.sendPDataIndication(): retrieve failed or contains nothing, status = 0x{}",Integer.toHexString(status));
 								response = new CMoveResponseCommandMessage(
 									cmrq.getAffectedSOPClassUID(),
 									cmrq.getMessageID(),
@@ -525,7 +525,7 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 								}
 								else {
 									status=ResponseStatus.RefusedMoveDestinationUnknown;
-									slf4jlogger.debug("CompositeCommandReceivedPDUHandler.sendPDataIndication(): Unrecognized move destination {}, status = 0x{}",moveDestinationAETitle,Integer.toHexString(status));
+									if (slf4jlogger.isDebugEnabled()) slf4jlogger.debug("CompositeCommandReceivedPDUHandler.sendPDataIndication(): Unrecognized move destination {}, status = 0x{}",moveDestinationAETitle,Integer.toHexString(status));
 									response = new CMoveResponseCommandMessage(
 										cmrq.getAffectedSOPClassUID(),
 										cmrq.getMessageID(),
@@ -555,7 +555,7 @@ public class StorageSOPClassSCP extends SOPClass implements Runnable {
 							int status = retrieveResponseGenerator.getStatus();
 							retrieveResponseGenerator.close();
 							if (status != ResponseStatus.Success || dicomFiles == null) {
-								slf4jlogger.trace("CompositeCommandReceivedPDUHandler.sendPDataIndication(): retrieve failed or contains nothing, status = 0x{}",Integer.toHexString(status));
+								if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("CompositeCommandReceivedPDUHandler.sendPDataIndication(): retrieve failed or contains nothing, status = 0x{}",Integer.toHexString(status));
 								response = new CGetResponseCommandMessage(
 									cgrq.getAffectedSOPClassUID(),
 									cgrq.getMessageID(),
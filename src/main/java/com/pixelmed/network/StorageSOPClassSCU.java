@@ -741,7 +741,7 @@ public class StorageSOPClassSCU extends SOPClass {
 						if (din.haveMetaHeader()) {
 							AttributeList metaList = new AttributeList();
 							metaList.readOnlyMetaInformationHeader(din);
-							slf4jlogger.trace("Meta header information = \n{}",metaList.toString());
+							if (slf4jlogger.isTraceEnabled()) slf4jlogger.trace("Meta header information = \n{}",metaList.toString());
 							affectedSOPClass=Attribute.getSingleStringValueOrNull(metaList,TagFromName.MediaStorageSOPClassUID);
 							affectedSOPInstance=Attribute.getSingleStringValueOrNull(metaList,TagFromName.MediaStorageSOPInstanceUID);
 							inputTransferSyntax=Attribute.getSingleStringValueOrNull(metaList,TagFromName.TransferSyntaxUID);
@@ -6,6 +6,8 @@ import java.text.SimpleDateFormat;
 
 import java.util.Date;
 
+import java.util.function.Supplier;
+
 /**
  * <p>This class implements a thin wrapper around a subset of methods of
  * the {@link org.slf4j.Logger Logger} class from the SLF4J facade, in order to allow
@@ -14,6 +16,9 @@ import java.util.Date;
  *
  * <p>For how to configure the logger properties, see the package description.</p>
  *
+ * <p>Messages whose construction is costly may be supplied lazily, e.g., <code>slf4jlogger.trace(() -&gt; "read(): "+a.toString())</code>,
+ * or the call guarded with {@link #isTraceEnabled() isTraceEnabled()} et al., so that nothing is built when the level is disabled.</p>
+ *
  * @see com.pixelmed.slf4j.LoggerFactory
  *
  * @author	dclunie
@@ -43,35 +48,35 @@ public class Logger {
 	 *
 	 * return	True if this Logger is enabled for the ERROR level, false otherwise.
 	 */
-	public boolean isErrorEnabled() { return errorEnabled; }
+	public boolean isErrorEnabled() { return slf4jlogger != null ? slf4jlogger.isErrorEnabled() : errorEnabled; }
 	
 	/**
 	 * <p>Is the logger instance enabled for the WARN level?</p>
 	 *
 	 * return	True if this Logger is enabled for the WARN level, false otherwise.
 	 */
-	public boolean isWarnEnabled() { return warnEnabled; }
+	public boolean isWarnEnabled() { return slf4jlogger != null ? slf4jlogger.isWarnEnabled() : warnEnabled; }
 	
 	/**
 	 * <p>Is the logger instance enabled for the INFO level?</p>
 	 *
 	 * return	True if this Logger is enabled for the INFO level, false otherwise.
 	 */
-	public boolean isInfoEnabled() { return infoEnabled; }
+	public boolean isInfoEnabled() { return slf4jlogger != null ? slf4jlogger.isInfoEnabled() : infoEnabled; }
 	
 	/**
 	 * <p>Is the logger instance enabled for the DEBUG level?</p>
 	 *
 	 * return	True if this Logger is enabled for the DEBUG level, false otherwise.
 	 */
-	public boolean isDebugEnabled() { return debugEnabled; }
+	public boolean isDebugEnabled() { return slf4jlogger != null ? slf4jlogger.isDebugEnabled() : debugEnabled; }
 	
 	/**
 	 * <p>Is the logger instance enabled for the TRACE level?</p>
 	 *
 	 * return	True if this Logger is enabled for the TRACE level, false otherwise.
 	 */
-	public boolean isTraceEnabled() { return traceEnabled; }
+	public boolean isTraceEnabled() { return slf4jlogger != null ? slf4jlogger.isTraceEnabled() : traceEnabled; }
 
 	protected void setLoggingDetailLevel(String level) {
 		switch (level) {
@@ -217,6 +222,22 @@ public class Logger {
 		}
 	}
 	
+	/**
+	 * <p>Log a message at the ERROR level, building it only if the level is enabled.</p>
+	 *
+	 * @param	msgSupplier	supplies the message string to be logged
+	 */
+	public void error(Supplier<String> msgSupplier) {
+		if (slf4jlogger != null) {
+			if (slf4jlogger.isErrorEnabled()) {
+				slf4jlogger.error(msgSupplier.get());
+			}
+		}
+		else if (errorEnabled) {
+			System.err.println(getPreamable("ERROR")+msgSupplier.get());
+		}
+	}
+	
 	/**
 	 * <p>Log a message at the WARN level.</p>
 	 *
@@ -268,6 +289,22 @@ public class Logger {
 		}
 	}
 	
+	/**
+	 * <p>Log a message at the WARN level, building it only if the level is enabled.</p>
+	 *
+	 * @param	msgSupplier	supplies the message string to be logged
+	 */
+	public void warn(Supplier<String> msgSupplier) {
+		if (slf4jlogger != null) {
+			if (slf4jlogger.isWarnEnabled()) {
+				slf4jlogger.warn(msgSupplier.get());
+			}
+		}
+		else if (warnEnabled) {
+			System.err.println(getPreamable("WARN")+msgSupplier.get());
+		}
+	}
+	
 	/**
 	 * <p>Log a message at the INFO level.</p>
 	 *
@@ -319,6 +356,22 @@ public class Logger {
 		}
 	}
 	
+	/**
+	 * <p>Log a message at the INFO level, building it only if the level is enabled.</p>
+	 *
+	 * @param	msgSupplier	supplies the message string to be logged
+	 */
+	public void info(Supplier<String> msgSupplier) {
+		if (slf4jlogger != null) {
+			if (slf4jlogger.isInfoEnabled()) {
+				slf4jlogger.info(msgSupplier.get());
+			}
+		}
+		else if (infoEnabled) {
+			System.err.println(getPreamable("INFO")+msgSupplier.get());
+		}
+	}
+	
 	/**
 	 * <p>Log a message at the DEBUG level.</p>
 	 *
@@ -370,6 +423,22 @@ public class Logger {
 		}
 	}
 	
+	/**
+	 * <p>Log a message at the DEBUG level, building it only if the level is enabled.</p>
+	 *
+	 * @param	msgSupplier	supplies the message string to be logged
+	 */
+	public void debug(Supplier<String> msgSupplier) {
+		if (slf4jlogger != null) {
+			if (slf4jlogger.isDebugEnabled()) {
+				slf4jlogger.debug(msgSupplier.get());
+			}
+		}
+		else if (debugEnabled) {
+			System.err.println(getPreamable("DEBUG")+msgSupplier.get());
+		}
+	}
+	
 	/**
 	 * <p>Log a message at the TRACE level.</p>
 	 *
@@ -421,6 +490,22 @@ public class Logger {
 		}
 	}
 	
+	/**
+	 * <p>Log a message at the TRACE level, building it only if the level is enabled.</p>
+	 *
+	 * @param	msgSupplier	supplies the message string to be logged
+	 */
+	public void trace(Supplier<String> msgSupplier) {
+		if (slf4jlogger != null) {
+			if (slf4jlogger.isTraceEnabled()) {
+				slf4jlogger.trace(msgSupplier.get());
+			}
+		}
+		else if (traceEnabled) {
+			System.err.println(getPreamable("TRACE")+msgSupplier.get());
+		}
+	}
+	
 	protected String getPreamable(String level) {
 		String dateTime = "";
 		if (showDateTime) {
@@ -0,0 +1,85 @@
+package com.blezek.nifi.dicom;
+
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.util.NoOpProcessor;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DICOMRecordReaderTest {
+  private TestRunner runner;
+  private DICOMRecordReader readerFactory;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    runner = TestRunners.newTestRunner(NoOpProcessor.class);
+    readerFactory = new DICOMRecordReader();
+    runner.addControllerService("reader", readerFactory);
+  }
+
+  @Test
+  public void readInstance() throws Exception {
+    runner.setProperty(readerFactory, DICOMRecordReader.TAGS, "Modality, PatientID, 00180050, StudyID");
+    runner.enableControllerService(readerFactory);
+
+    try (InputStream in = getClass().getResourceAsStream("/dicom/LGG-104_SPGR_000.dcm");
+        RecordReader reader = readerFactory.createRecordReader(Collections.emptyMap(), in, -1, runner.getLogger())) {
+      assertEquals(4, reader.getSchema().getFieldCount(), "number of fields");
+      Record record = reader.nextRecord();
+      assertNotNull(record);
+      assertEquals("MR", record.getAsString("Modality"));
+      assertEquals("LGG-104", record.getAsString("PatientID"));
+      assertNotNull(record.getAsString("SliceThickness"), "hex tag is named by keyword");
+      assertNull(reader.nextRecord(), "one record per instance");
+    }
+  }
+
+  @Test
+  public void readConcatenatedInstances() throws Exception {
+    runner.setProperty(readerFactory, DICOMRecordReader.TAGS, "SOPInstanceUID,Modality");
+    runner.setProperty(readerFactory, DICOMRecordReader.CONCATENATED, "true");
+    runner.enableControllerService(readerFactory);
+
+    ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+    for (String path : new String[] { "/dicom/LGG-104_SPGR_000.dcm", "/dicom/LGG-104_SPGR_001.dcm",
+        "/dicom/LGG-104_SPGR_002.dcm" }) {
+      try (InputStream in = getClass().getResourceAsStream(path)) {
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+          bundle.write(buffer, 0, count);
+        }
+      }
+    }
+
+    Set<String> uids = new HashSet<>();
+    try (RecordReader reader = readerFactory.createRecordReader(Collections.emptyMap(),
+        new ByteArrayInputStream(bundle.toByteArray()), bundle.size(), runner.getLogger())) {
+      Record record;
+      while ((record = reader.nextRecord()) != null) {
+        assertEquals("MR", record.getAsString("Modality"));
+        uids.add(record.getAsString("SOPInstanceUID"));
+      }
+    }
+    assertEquals(3, uids.size(), "one record per concatenated instance");
+  }
+
+  @Test
+  public void invalidTag() {
+    runner.setProperty(readerFactory, DICOMRecordReader.TAGS, "Modality,NotADicomTag");
+    runner.assertNotValid(readerFactory);
+  }
+
+}
@@ -102,6 +102,26 @@ public class DeidentifyDICOMTest {
         assertEquals(6, getNumberOfMappings(), "Number of UID mappings");
     }
 
+    @Test
+    public void statistics() throws IOException {
+        runner.enqueue(getClass().getResourceAsStream("/dicom/LGG-104_SPGR_000.dcm"));
+        runner.enqueue(getClass().getResourceAsStream("/dicom/LGG-104_SPGR_001.dcm"));
+        runner.enqueue(getClass().getResourceAsStream("/dicom/LGG-104_SPGR_002.dcm"));
+        setCSVFile("/map.csv");
+
+        runner.run(3);
+        runner.assertAllFlowFilesTransferred(DeidentifyDICOM.RELATIONSHIP_SUCCESS, 3);
+
+        DeidentificationStatistics statistics = deidentificationController.getStatistics();
+        assertEquals(6, statistics.uidMapRows, "uid_map rows");
+        assertEquals(6, statistics.loads, "one load per distinct UID");
+        assertEquals(statistics.requests - 6, statistics.hits, "repeated UIDs are cache hits");
+        assertEquals(12, statistics.databaseRoundTrips, "merge and select per load");
+        assertEquals(1, statistics.identityMapSize, "identity map entries");
+        assertTrue(statistics.loadLatencyMillis.get("p99") > 0, "load latency");
+        assertEquals(3, statistics.windows.size(), "1, 5 and 15 minute windows");
+    }
+
     @Test
     public void notMatched() throws IOException {
         // Queue up a DICOM file
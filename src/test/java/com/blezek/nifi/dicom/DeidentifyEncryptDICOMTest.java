@@ -3,15 +3,23 @@ package com.blezek.nifi.dicom;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import com.blezek.nifi.dicom.util.DerivedKeyCache;
 import com.blezek.nifi.dicom.util.Encryption;
 
 import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
+import org.bouncycastle.asn1.BEROctetString;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.cms.ContentInfo;
+import org.bouncycastle.asn1.cms.EncryptedContentInfo;
+import org.bouncycastle.asn1.cms.EnvelopedData;
+import org.bouncycastle.cms.CMSException;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
 import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
 import org.dcm4che3.io.DicomOutputStream;
@@ -25,7 +33,9 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 public class DeidentifyEncryptDICOMTest {
@@ -94,6 +104,31 @@ public class DeidentifyEncryptDICOMTest {
     }
   }
 
+  @Test
+  public void testStudySalt() throws Exception {
+    DeidentifyEncryptDICOM processor = new DeidentifyEncryptDICOM();
+    TestRunner runner = TestRunners.newTestRunner(processor);
+    for (int i = 0; i < 3; i++) {
+      runner.enqueue(getClass().getResourceAsStream("/dicom/LGG-104_SPGR_00" + i + ".dcm"));
+    }
+    runner.setProperty(DeidentifyEncryptDICOM.PASSWORD, password);
+    runner.setProperty(DeidentifyEncryptDICOM.ITERATIONS, "10000");
+    runner.setProperty(DeidentifyEncryptDICOM.SALT_SCOPE, DeidentifyEncryptDICOM.SALT_PER_STUDY);
+    runner.assertValid();
+    runner.run(3);
+    runner.assertAllFlowFilesTransferred(DeidentifyEncryptDICOM.RELATIONSHIP_SUCCESS, 3);
+    assertEquals(1, processor.keyCache.size(), "one derived key for the study");
+
+    // Decrypt all of them
+    TestRunner decryptRunner = TestRunners.newTestRunner(DecryptReidentifyDICOM.class);
+    for (MockFlowFile flowFile : runner.getFlowFilesForRelationship(DeidentifyEncryptDICOM.RELATIONSHIP_SUCCESS)) {
+      decryptRunner.enqueue(flowFile.toByteArray());
+    }
+    decryptRunner.setProperty(DecryptReidentifyDICOM.PASSWORD, password);
+    decryptRunner.run();
+    decryptRunner.assertAllFlowFilesTransferred(DecryptReidentifyDICOM.RELATIONSHIP_SUCCESS, 3);
+  }
+
   @Test
   public void testSimpleDecrypt() throws Exception {
     TestRunner runner = TestRunners.newTestRunner(DecryptReidentifyDICOM.class);
@@ -122,6 +157,110 @@ public class DeidentifyEncryptDICOMTest {
     }
   }
 
+  @Test
+  public void testBatchDecrypt() {
+    TestRunner runner = TestRunners.newTestRunner(DecryptReidentifyDICOM.class);
+    for (int i = 0; i < 5; i++) {
+      runner.enqueue(getClass().getResourceAsStream("/dicom/deidentified.dcm"));
+    }
+    runner.setProperty(DeidentifyEncryptDICOM.PASSWORD, password);
+    runner.setProperty(DecryptReidentifyDICOM.THREADS, "3");
+    runner.assertValid();
+    runner.run();
+    runner.assertAllFlowFilesTransferred(DecryptReidentifyDICOM.RELATIONSHIP_SUCCESS, 5);
+  }
+
+  @Test
+  @DisplayName("the pixel data is streamed to the reidentified file unchanged")
+  public void testDecryptKeepsPixelData() throws Exception {
+    TestRunner runner = TestRunners.newTestRunner(DecryptReidentifyDICOM.class);
+    runner.enqueue(getClass().getResourceAsStream("/dicom/deidentified.dcm"));
+    runner.setProperty(DeidentifyEncryptDICOM.PASSWORD, password);
+    runner.run();
+    runner.assertAllFlowFilesTransferred(DecryptReidentifyDICOM.RELATIONSHIP_SUCCESS, 1);
+
+    MockFlowFile flowFile = runner.getFlowFilesForRelationship(DecryptReidentifyDICOM.RELATIONSHIP_SUCCESS).get(0);
+    Attributes expected;
+    try (DicomInputStream dis = new DicomInputStream(getClass().getResourceAsStream("/dicom/deidentified.dcm"))) {
+      dis.setIncludeBulkData(IncludeBulkData.YES);
+      expected = dis.readDataset(-1, -1);
+    }
+    Attributes actual;
+    try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(flowFile.toByteArray()))) {
+      dis.setIncludeBulkData(IncludeBulkData.YES);
+      actual = dis.readDataset(-1, -1);
+    }
+    assertArrayEquals(expected.getBytes(Tag.PixelData), actual.getBytes(Tag.PixelData));
+    assertFalse(actual.contains(Tag.PatientIdentityRemoved));
+    assertEquals("1.3.6.1.4.1.14519.5.2.1.3344.2526.291265840929678567019499305523",
+        actual.getString(Tag.StudyInstanceUID));
+  }
+
+  @Test
+  @DisplayName("original attributes that follow the pixel data are written after it")
+  public void testDecryptOriginalAttributesAfterPixelData() throws Exception {
+    Attributes deidentified;
+    String tsuid;
+    try (DicomInputStream dis = new DicomInputStream(getClass().getResourceAsStream("/dicom/deidentified.dcm"))) {
+      dis.setIncludeBulkData(IncludeBulkData.YES);
+      deidentified = dis.readDataset(-1, -1);
+      tsuid = dis.getTransferSyntax();
+    }
+
+    // Add a private original attribute in a group after the pixel data, and encrypt again
+    Attributes ea = deidentified.getSequence(Tag.EncryptedAttributesSequence).get(0);
+    byte[] content = Encryption.extractPasswordEnvelopedData(password.toCharArray(), ea.getBytes(Tag.EncryptedContent));
+    Attributes wrapper;
+    try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(content), UID.ExplicitVRLittleEndian)) {
+      wrapper = dis.readDataset(-1, -1);
+    }
+    wrapper.getSequence(Tag.ModifiedAttributesSequence).get(0).setString("TEST", 0x7FE11001, VR.LO, "original");
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (DicomOutputStream dos = new DicomOutputStream(bos, UID.ExplicitVRLittleEndian)) {
+      dos.writeDataset(null, wrapper);
+    }
+    byte[] salt = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    ea.setBytes(Tag.EncryptedContent, VR.OB,
+        Encryption.createPasswordEnvelopedObject(password.toCharArray(), salt, 1000, bos.toByteArray()));
+    bos = new ByteArrayOutputStream();
+    try (DicomOutputStream dos = new DicomOutputStream(bos, UID.ExplicitVRLittleEndian)) {
+      dos.writeDataset(deidentified.createFileMetaInformation(tsuid), deidentified);
+    }
+
+    TestRunner runner = TestRunners.newTestRunner(DecryptReidentifyDICOM.class);
+    runner.enqueue(bos.toByteArray());
+    runner.setProperty(DeidentifyEncryptDICOM.PASSWORD, password);
+    runner.run();
+    runner.assertAllFlowFilesTransferred(DecryptReidentifyDICOM.RELATIONSHIP_SUCCESS, 1);
+
+    byte[] reidentified = runner.getFlowFilesForRelationship(DecryptReidentifyDICOM.RELATIONSHIP_SUCCESS).get(0)
+        .toByteArray();
+    try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(reidentified))) {
+      Attributes beforePixelData = dis.readDataset(-1, Tag.PixelData);
+      assertEquals(Tag.PixelData, dis.tag());
+      assertFalse(beforePixelData.contains("TEST", 0x7FE11001), "original attribute written before the pixel data");
+    }
+    Attributes actual;
+    try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(reidentified))) {
+      dis.setIncludeBulkData(IncludeBulkData.YES);
+      actual = dis.readDataset(-1, -1);
+    }
+    assertEquals("original", actual.getString("TEST", 0x7FE11001));
+    assertArrayEquals(deidentified.getBytes(Tag.PixelData), actual.getBytes(Tag.PixelData));
+    assertEquals("1.3.6.1.4.1.14519.5.2.1.3344.2526.291265840929678567019499305523",
+        actual.getString(Tag.StudyInstanceUID));
+  }
+
+  @Test
+  public void testWrongPassword() {
+    TestRunner runner = TestRunners.newTestRunner(DecryptReidentifyDICOM.class);
+    runner.enqueue(getClass().getResourceAsStream("/dicom/deidentified.dcm"));
+    runner.enqueue(getClass().getResourceAsStream("/dicom/deidentified.dcm"));
+    runner.setProperty(DeidentifyEncryptDICOM.PASSWORD, "not the password");
+    runner.run();
+    runner.assertAllFlowFilesTransferred(DecryptReidentifyDICOM.RELATIONSHIP_NOT_DECRYPTED, 2);
+  }
+
   @Test
   public void testRejectOfNewSeries() {
     TestRunner runner = TestRunners.newTestRunner(DecryptReidentifyDICOM.class);
@@ -184,4 +323,40 @@ public class DeidentifyEncryptDICOMTest {
     runner.assertValid();
 
   }
+
+  @Test
+  @DisplayName("a corrupt envelope does not prevent decrypting others with the same salt")
+  public void testCorruptEnvelopeWithSameSalt() throws Exception {
+    DerivedKeyCache cache = new DerivedKeyCache(10);
+    byte[] salt = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    byte[] data = new byte[100];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    byte[] corrupt = corruptPadding(
+        Encryption.createPasswordEnvelopedObject(password.toCharArray(), salt, 1000, data, cache));
+    byte[] valid = Encryption.createPasswordEnvelopedObject(password.toCharArray(), salt, 1000, data, cache);
+    assertEquals(1, cache.size(), "one derived key for the salt");
+
+    assertThrows(CMSException.class,
+        () -> Encryption.extractPasswordEnvelopedData(password.toCharArray(), corrupt, cache));
+    assertArrayEquals(data, Encryption.extractPasswordEnvelopedData(password.toCharArray(), valid, cache));
+    assertEquals(1, cache.size(), "derived key kept after the corrupt envelope");
+  }
+
+  /*
+   * corruptPadding flips the last byte of the second to last cipher block, so
+   * the key unwraps but the CBC padding of the content is always invalid
+   */
+  private static byte[] corruptPadding(byte[] envelope) throws Exception {
+    EnvelopedData envelopedData = EnvelopedData.getInstance(ContentInfo.getInstance(envelope).getContent());
+    EncryptedContentInfo info = envelopedData.getEncryptedContentInfo();
+    byte[] cipherText = info.getEncryptedContent().getOctets();
+    cipherText[cipherText.length - 17] ^= (byte) 0xff;
+    EncryptedContentInfo corruptInfo = new EncryptedContentInfo(info.getContentType(),
+        info.getContentEncryptionAlgorithm(), new BEROctetString(cipherText));
+    EnvelopedData corruptData = new EnvelopedData(envelopedData.getOriginatorInfo(),
+        envelopedData.getRecipientInfos(), corruptInfo, envelopedData.getUnprotectedAttrs());
+    return new ContentInfo(CMSObjectIdentifiers.envelopedData, corruptData).getEncoded();
+  }
 }
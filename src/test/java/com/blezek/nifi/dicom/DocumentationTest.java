@@ -21,7 +21,7 @@ class DocumentationTest {
   void testDocs() {
     System.out.println("Starting");
     List<Processor> processors = Arrays.asList(new DeidentifyDICOM(), new ExtractDICOMTags(), new ListenDICOM(),
-        new PutDICOM(), new ModifyDICOMTags(), new DeidentifyEncryptDICOM(), new DecryptReidentifyDICOM(),
+        new PutDICOM(), new ModifyDICOMTags(), new TranscodeDICOM(), new DeidentifyEncryptDICOM(), new DecryptReidentifyDICOM(),
         new DeidentifyEncryptDICOM());
     processors.forEach(processor -> {
       TestRunners.newTestRunner(processor);
@@ -1,5 +1,6 @@
 package com.blezek.nifi.dicom;
 
+import com.blezek.nifi.dicom.util.ProcessorMetrics;
 
 import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
@@ -78,5 +79,24 @@ public class ExtractDICOMTagsTest {
 
   }
 
+  @Test
+  public void metrics() {
+    runner.setProperty(ExtractDICOMTags.ALL_TAGS, "true");
+    runner.enqueue(getClass().getResourceAsStream("/dicom/LGG-104_SPGR_000.dcm"));
+    runner.enqueue("I am not a DICOM file!");
+    runner.run();
+
+    assertEquals(1, runner.getCounterValue("FlowFiles to success").longValue(), "success counter");
+    assertEquals(1, runner.getCounterValue("FlowFiles to failure").longValue(), "failure counter");
+    assertTrue(runner.getCounterValue("Bytes in") > 0, "bytes in");
+    assertNotNull(runner.getCounterValue("Parse time (us)"), "parse time");
+
+    String id = runner.getProcessor().getIdentifier();
+    ProcessorMetrics.Snapshot snapshot = ProcessorMetrics.snapshots().stream()
+        .filter(s -> s.processorId.equals(id)).findFirst().get();
+    assertEquals(1, snapshot.flowFiles, "timed FlowFiles");
+    assertEquals(2, snapshot.relationships.values().stream().mapToLong(Long::longValue).sum(), "transferred FlowFiles");
+  }
+
 }
 //
\ No newline at end of file
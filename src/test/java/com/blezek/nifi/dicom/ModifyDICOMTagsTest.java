@@ -6,14 +6,21 @@ import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class ModifyDICOMTagsTest {
@@ -61,4 +68,83 @@ public class ModifyDICOMTagsTest {
         }
     }
 
+    @Test
+    public void batch() throws IOException {
+        runner.setProperty("Modality", "CT");
+        runner.setProperty("StudyID", "${StudyID}");
+        for (int i = 0; i < 3; i++) {
+            runner.enqueue(getClass().getResourceAsStream("/dicom/LGG-104_SPGR_00" + i + ".dcm"),
+                    ImmutableMap.of("StudyID", "study" + i));
+        }
+        runner.run();
+        runner.assertAllFlowFilesTransferred(DeidentifyDICOM.RELATIONSHIP_SUCCESS, 3);
+
+        for (MockFlowFile flowFile : runner.getFlowFilesForRelationship(DeidentifyDICOM.RELATIONSHIP_SUCCESS)) {
+            Attributes actualAttributes = TestUtil.getAttributes(flowFile);
+            assertEquals("CT", actualAttributes.getString(Tag.Modality), "Modified modality");
+            assertEquals(flowFile.getAttribute("StudyID"), actualAttributes.getString(Tag.StudyID), "Evaluated StudyID");
+        }
+    }
+
+    @Test
+    public void streamingKeepsPixelData() throws IOException {
+        Attributes original;
+        try (DicomInputStream dis = new DicomInputStream(getClass().getResourceAsStream("/dicom/LGG-104_SPGR_000.dcm"))) {
+            original = dis.readDataset(-1, -1);
+        }
+
+        for (String streaming : new String[]{"true", "false"}) {
+            runner.clearTransferState();
+            runner.setProperty(ModifyDICOMTags.STREAMING, streaming);
+            runner.setProperty("SeriesDescription", "modified");
+            runner.enqueue(getClass().getResourceAsStream("/dicom/LGG-104_SPGR_000.dcm"));
+            runner.run();
+            runner.assertAllFlowFilesTransferred(DeidentifyDICOM.RELATIONSHIP_SUCCESS, 1);
+
+            MockFlowFile flowFile = runner.getFlowFilesForRelationship(DeidentifyDICOM.RELATIONSHIP_SUCCESS).get(0);
+            try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(flowFile.toByteArray()))) {
+                Attributes actualAttributes = dis.readDataset(-1, -1);
+                assertEquals(UID.ExplicitVRLittleEndian, dis.getTransferSyntax(), "Transfer syntax, streaming " + streaming);
+                assertEquals("modified", actualAttributes.getString(Tag.SeriesDescription), "Modified SeriesDescription");
+                assertArrayEquals(original.getBytes(Tag.PixelData), actualAttributes.getBytes(Tag.PixelData),
+                        "Pixel data, streaming " + streaming);
+            }
+        }
+    }
+
+    @Test
+    public void streamingModifiesTagsAfterPixelData() throws IOException {
+        // A private creator after the Pixel Data, so it is in the trailing attributes when streaming
+        int trailingTag = 0x7FE10010;
+        Attributes original;
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        try (DicomInputStream dis = new DicomInputStream(getClass().getResourceAsStream("/dicom/LGG-104_SPGR_000.dcm"))) {
+            Attributes fmi = dis.readFileMetaInformation();
+            original = dis.readDataset(-1, -1);
+            original.setString(trailingTag, VR.LO, "ORIGINAL");
+            try (DicomOutputStream dos = new DicomOutputStream(input, UID.ExplicitVRLittleEndian)) {
+                dos.writeDataset(fmi, original);
+            }
+        }
+
+        for (String streaming : new String[]{"true", "false"}) {
+            runner.clearTransferState();
+            runner.setProperty(ModifyDICOMTags.STREAMING, streaming);
+            runner.setProperty("7FE10010", "MODIFIED");
+            runner.setProperty("SeriesDescription", "modified");
+            runner.enqueue(input.toByteArray());
+            runner.run();
+            runner.assertAllFlowFilesTransferred(DeidentifyDICOM.RELATIONSHIP_SUCCESS, 1);
+
+            MockFlowFile flowFile = runner.getFlowFilesForRelationship(DeidentifyDICOM.RELATIONSHIP_SUCCESS).get(0);
+            try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(flowFile.toByteArray()))) {
+                Attributes actualAttributes = dis.readDataset(-1, -1);
+                assertEquals("MODIFIED", actualAttributes.getString(trailingTag), "Modified trailing tag, streaming " + streaming);
+                assertEquals("modified", actualAttributes.getString(Tag.SeriesDescription), "Modified SeriesDescription, streaming " + streaming);
+                assertArrayEquals(original.getBytes(Tag.PixelData), actualAttributes.getBytes(Tag.PixelData),
+                        "Pixel data, streaming " + streaming);
+            }
+        }
+    }
+
 }
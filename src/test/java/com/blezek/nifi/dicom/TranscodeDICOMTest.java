@@ -0,0 +1,267 @@
+package com.blezek.nifi.dicom;
+
+import com.google.common.io.ByteStreams;
+import com.pixelmed.dicom.TransferSyntax;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.util.UIDUtils;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TranscodeDICOMTest {
+
+    private static MockFlowFile transcode(byte[] content, String transferSyntax) {
+        TestRunner runner = TestRunners.newTestRunner(new TranscodeDICOM());
+        runner.setProperty(TranscodeDICOM.TRANSFER_SYNTAX, transferSyntax);
+        runner.enqueue(content);
+        runner.run();
+        runner.assertAllFlowFilesTransferred(TranscodeDICOM.RELATIONSHIP_SUCCESS, 1);
+        return runner.getFlowFilesForRelationship(TranscodeDICOM.RELATIONSHIP_SUCCESS).get(0);
+    }
+
+    private static Attributes read(byte[] content, String expectedTransferSyntax) throws IOException {
+        try (DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(content))) {
+            Attributes attributes = dis.readDataset(-1, -1);
+            assertEquals(expectedTransferSyntax, dis.getTransferSyntax(), "Transfer syntax");
+            return attributes;
+        }
+    }
+
+    /**
+     * The attributes of a secondary capture image, without Pixel Data.
+     */
+    private static Attributes image(int rows, int columns, int samplesPerPixel, int bitsAllocated, int numberOfFrames,
+            String photometricInterpretation) {
+        Attributes attributes = new Attributes();
+        attributes.setString(Tag.SOPClassUID, VR.UI, UID.SecondaryCaptureImageStorage);
+        attributes.setString(Tag.SOPInstanceUID, VR.UI, UIDUtils.createUID());
+        attributes.setInt(Tag.Rows, VR.US, rows);
+        attributes.setInt(Tag.Columns, VR.US, columns);
+        attributes.setInt(Tag.SamplesPerPixel, VR.US, samplesPerPixel);
+        attributes.setInt(Tag.BitsAllocated, VR.US, bitsAllocated);
+        attributes.setInt(Tag.BitsStored, VR.US, bitsAllocated);
+        attributes.setInt(Tag.HighBit, VR.US, bitsAllocated - 1);
+        attributes.setInt(Tag.PixelRepresentation, VR.US, 0);
+        attributes.setInt(Tag.NumberOfFrames, VR.IS, numberOfFrames);
+        attributes.setString(Tag.PhotometricInterpretation, VR.CS, photometricInterpretation);
+        return attributes;
+    }
+
+    private static byte[] write(Attributes attributes, String transferSyntax) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DicomOutputStream dos = new DicomOutputStream(bytes, UID.ExplicitVRLittleEndian)) {
+            dos.writeDataset(attributes.createFileMetaInformation(transferSyntax), attributes);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int numberOfFragments(Attributes attributes) {
+        Object value = attributes.getValue(Tag.PixelData);
+        assertTrue(value instanceof Fragments, "Encapsulated Pixel Data");
+        return ((Fragments) value).size();
+    }
+
+    @Test
+    public void rleRoundTrip() throws IOException {
+        byte[] original;
+        try (InputStream is = getClass().getResourceAsStream("/dicom/LGG-104_SPGR_000.dcm")) {
+            original = ByteStreams.toByteArray(is);
+        }
+        Attributes originalAttributes = read(original, UID.ExplicitVRLittleEndian);
+
+        byte[] compressed = transcode(original, TranscodeDICOM.RLE_LOSSLESS.getValue()).toByteArray();
+        Attributes compressedAttributes = read(compressed, UID.RLELossless);
+        assertEquals(originalAttributes.getString(Tag.SOPInstanceUID), compressedAttributes.getString(Tag.SOPInstanceUID),
+                "SOP Instance UID");
+
+        byte[] decompressed = transcode(compressed, TranscodeDICOM.EXPLICIT_VR_LITTLE_ENDIAN.getValue()).toByteArray();
+        Attributes decompressedAttributes = read(decompressed, UID.ExplicitVRLittleEndian);
+        assertArrayEquals(originalAttributes.getBytes(Tag.PixelData), decompressedAttributes.getBytes(Tag.PixelData),
+                "Pixel data");
+    }
+
+    @Test
+    public void sameTransferSyntaxIsCopied() throws IOException {
+        TestRunner runner = TestRunners.newTestRunner(new TranscodeDICOM());
+        runner.enqueue(getClass().getResourceAsStream("/dicom/LGG-104_SPGR_000.dcm"));
+        runner.run();
+        runner.assertAllFlowFilesTransferred(TranscodeDICOM.RELATIONSHIP_SUCCESS, 1);
+
+        Attributes expected = TestUtil.getAttributes("/dicom/LGG-104_SPGR_000.dcm");
+        MockFlowFile flowFile = runner.getFlowFilesForRelationship(TranscodeDICOM.RELATIONSHIP_SUCCESS).get(0);
+        Attributes actual = read(flowFile.toByteArray(), UID.ExplicitVRLittleEndian);
+        assertEquals(expected.getString(Tag.SOPInstanceUID), actual.getString(Tag.SOPInstanceUID), "SOP Instance UID");
+    }
+
+    @Test
+    public void notDicomIsRejected() {
+        TestRunner runner = TestRunners.newTestRunner(new TranscodeDICOM());
+        runner.setProperty(TranscodeDICOM.TRANSFER_SYNTAX, TranscodeDICOM.RLE_LOSSLESS.getValue());
+        runner.enqueue("not a DICOM file".getBytes());
+        runner.run();
+        runner.assertAllFlowFilesTransferred(TranscodeDICOM.RELATIONSHIP_REJECT, 1);
+    }
+
+    @Test
+    public void colorPlanarRoundTrip() throws IOException {
+        int rows = 6;
+        int columns = 8;
+        int numberOfFrames = 2;
+        int pixelsPerFrame = rows * columns;
+        byte[] planar = new byte[pixelsPerFrame * 3 * numberOfFrames];
+        byte[] interleaved = new byte[planar.length];
+        for (int f = 0; f < numberOfFrames; f++) {
+            for (int sample = 0; sample < 3; sample++) {
+                for (int i = 0; i < pixelsPerFrame; i++) {
+                    byte value = (byte) (f * 97 + sample * 61 + i * 5);
+                    planar[(f * 3 + sample) * pixelsPerFrame + i] = value;
+                    interleaved[(f * pixelsPerFrame + i) * 3 + sample] = value;
+                }
+            }
+        }
+        Attributes attributes = image(rows, columns, 3, 8, numberOfFrames, "RGB");
+        attributes.setInt(Tag.PlanarConfiguration, VR.US, 1);
+        attributes.setBytes(Tag.PixelData, VR.OB, planar);
+
+        byte[] compressed = transcode(write(attributes, UID.ExplicitVRLittleEndian), TranscodeDICOM.RLE_LOSSLESS.getValue())
+                .toByteArray();
+        Attributes compressedAttributes = read(compressed, UID.RLELossless);
+        assertEquals(numberOfFrames + 1, numberOfFragments(compressedAttributes), "Offset table and a fragment per frame");
+        assertEquals(1, compressedAttributes.getInt(Tag.PlanarConfiguration, -1), "RLE separates the bands");
+
+        byte[] decompressed = transcode(compressed, TranscodeDICOM.EXPLICIT_VR_LITTLE_ENDIAN.getValue()).toByteArray();
+        Attributes decompressedAttributes = read(decompressed, UID.ExplicitVRLittleEndian);
+        assertEquals("RGB", decompressedAttributes.getString(Tag.PhotometricInterpretation), "Photometric interpretation");
+        assertEquals(0, decompressedAttributes.getInt(Tag.PlanarConfiguration, -1), "Decompressed color by pixel");
+        assertArrayEquals(interleaved, decompressedAttributes.getBytes(Tag.PixelData), "Pixel data");
+    }
+
+    @Test
+    public void multiFrameRoundTrip() throws IOException {
+        int rows = 8;
+        int columns = 10;
+        int numberOfFrames = 3;
+        byte[] pixelData = new byte[rows * columns * 2 * numberOfFrames];
+        for (int i = 0; i < pixelData.length / 2; i++) {
+            int value = (i * 523) & 0xffff;
+            pixelData[i * 2] = (byte) value;
+            pixelData[i * 2 + 1] = (byte) (value >> 8);
+        }
+        Attributes attributes = image(rows, columns, 1, 16, numberOfFrames, "MONOCHROME2");
+        attributes.setBytes(Tag.PixelData, VR.OW, pixelData);
+
+        byte[] compressed = transcode(write(attributes, UID.ExplicitVRLittleEndian), TranscodeDICOM.RLE_LOSSLESS.getValue())
+                .toByteArray();
+        Attributes compressedAttributes = read(compressed, UID.RLELossless);
+        assertEquals(numberOfFrames, compressedAttributes.getInt(Tag.NumberOfFrames, 0), "Number of frames");
+        assertEquals(numberOfFrames + 1, numberOfFragments(compressedAttributes), "Offset table and a fragment per frame");
+
+        byte[] decompressed = transcode(compressed, TranscodeDICOM.EXPLICIT_VR_LITTLE_ENDIAN.getValue()).toByteArray();
+        Attributes decompressedAttributes = read(decompressed, UID.ExplicitVRLittleEndian);
+        assertEquals(attributes.getString(Tag.SOPInstanceUID), decompressedAttributes.getString(Tag.SOPInstanceUID),
+                "SOP Instance UID");
+        assertArrayEquals(pixelData, decompressedAttributes.getBytes(Tag.PixelData), "Pixel data");
+    }
+
+    /**
+     * A JPEG Baseline image, with each frame as a fragment after an empty Basic Offset Table.
+     *
+     * @param expected receives what each frame decodes to, since the compression is lossy
+     */
+    private static Attributes jpegImage(int rows, int columns, int numberOfFrames, byte[] expected) throws IOException {
+        Attributes attributes = image(rows, columns, 1, 8, numberOfFrames, "MONOCHROME2");
+        Fragments fragments = attributes.newFragments(Tag.PixelData, VR.OB, numberOfFrames + 1);
+        fragments.add(new byte[0]);
+        for (int f = 0; f < numberOfFrames; f++) {
+            BufferedImage frame = new BufferedImage(columns, rows, BufferedImage.TYPE_BYTE_GRAY);
+            byte[] pixels = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = (byte) ((i % columns) * 8 + f * 40);
+            }
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            assertTrue(ImageIO.write(frame, "jpeg", jpeg), "JPEG written");
+            fragments.add(jpeg.toByteArray());
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg.toByteArray()));
+            byte[] decodedPixels = (byte[]) decoded.getRaster().getDataElements(0, 0, columns, rows, null);
+            System.arraycopy(decodedPixels, 0, expected, f * rows * columns, rows * columns);
+        }
+        return attributes;
+    }
+
+    @Test
+    public void encapsulatedToEncapsulated() throws IOException {
+        int rows = 16;
+        int columns = 24;
+        int numberOfFrames = 2;
+        byte[] expected = new byte[rows * columns * numberOfFrames];
+        Attributes attributes = jpegImage(rows, columns, numberOfFrames, expected);
+
+        byte[] compressed = transcode(write(attributes, TransferSyntax.JPEGBaseline), TranscodeDICOM.RLE_LOSSLESS.getValue())
+                .toByteArray();
+        Attributes compressedAttributes = read(compressed, UID.RLELossless);
+        assertEquals(numberOfFrames + 1, numberOfFragments(compressedAttributes), "Offset table and a fragment per frame");
+        assertEquals("01", compressedAttributes.getString(Tag.LossyImageCompression), "Lossy compression recorded");
+
+        byte[] decompressed = transcode(compressed, TranscodeDICOM.EXPLICIT_VR_LITTLE_ENDIAN.getValue()).toByteArray();
+        Attributes decompressedAttributes = read(decompressed, UID.ExplicitVRLittleEndian);
+        assertArrayEquals(expected, decompressedAttributes.getBytes(Tag.PixelData), "Pixel data");
+    }
+
+
+    @Test
+    public void extendedOffsetTableIsRemoved() throws IOException {
+        int rows = 16;
+        int columns = 24;
+        int numberOfFrames = 3;
+        Attributes attributes = jpegImage(rows, columns, numberOfFrames, new byte[rows * columns * numberOfFrames]);
+        // the offset of the item of each frame from the first byte of the first fragment, and the length of each frame
+        Fragments fragments = (Fragments) attributes.getValue(Tag.PixelData);
+        ByteBuffer offsets = ByteBuffer.allocate(numberOfFrames * 8).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer lengths = ByteBuffer.allocate(numberOfFrames * 8).order(ByteOrder.LITTLE_ENDIAN);
+        long offset = 0;
+        for (int f = 0; f < numberOfFrames; f++) {
+            int length = ((byte[]) fragments.get(f + 1)).length;
+            offsets.putLong(offset);
+            lengths.putLong(length);
+            offset += 8 + ((length + 1) & ~1);
+        }
+        attributes.setBytes(Tag.ExtendedOffsetTable, VR.OV, offsets.array());
+        attributes.setBytes(Tag.ExtendedOffsetTableLengths, VR.OV, lengths.array());
+        byte[] source = write(attributes, TransferSyntax.JPEGBaseline);
+        assertTrue(read(source, TransferSyntax.JPEGBaseline).contains(Tag.ExtendedOffsetTable), "Source has an Extended Offset Table");
+
+        Attributes compressedAttributes = read(transcode(source, TranscodeDICOM.RLE_LOSSLESS.getValue()).toByteArray(), UID.RLELossless);
+        assertEquals(numberOfFrames + 1, numberOfFragments(compressedAttributes), "Offset table and a fragment per frame");
+        assertFalse(compressedAttributes.contains(Tag.ExtendedOffsetTable), "No Extended Offset Table after re-encoding");
+        assertFalse(compressedAttributes.contains(Tag.ExtendedOffsetTableLengths), "No Extended Offset Table Lengths after re-encoding");
+
+        Attributes decompressedAttributes = read(transcode(source, TranscodeDICOM.EXPLICIT_VR_LITTLE_ENDIAN.getValue()).toByteArray(),
+                UID.ExplicitVRLittleEndian);
+        assertEquals(rows * columns * numberOfFrames, decompressedAttributes.getBytes(Tag.PixelData).length, "Native Pixel Data");
+        assertFalse(decompressedAttributes.contains(Tag.ExtendedOffsetTable), "No Extended Offset Table after decoding");
+        assertFalse(decompressedAttributes.contains(Tag.ExtendedOffsetTableLengths), "No Extended Offset Table Lengths after decoding");
+    }
+}
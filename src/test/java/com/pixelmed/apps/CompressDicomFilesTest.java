@@ -0,0 +1,194 @@
+package com.pixelmed.apps;
+
+import com.pixelmed.dicom.Attribute;
+import com.pixelmed.dicom.AttributeList;
+import com.pixelmed.dicom.EncapsulatedFrameIndex;
+import com.pixelmed.dicom.IntegerStringAttribute;
+import com.pixelmed.dicom.OtherByteAttributeMultipleCompressedFrames;
+import com.pixelmed.dicom.OtherWordAttribute;
+import com.pixelmed.dicom.TagFromName;
+import com.pixelmed.dicom.TransferSyntax;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressDicomFilesTest {
+    private static final String[] RESOURCES = {"LGG-104_SPGR_000.dcm", "LGG-104_SPGR_001.dcm", "LGG-104_SPGR_002.dcm",
+            "deidentified.dcm", "deidentified_new_series.dcm"};
+    private static final int COPIES = 3;
+
+    private File folder;
+    private File input;
+
+    /**
+     * Records the threads on which files are compressed and written, and how
+     * far compression gets ahead of writing, with a slow writer.
+     */
+    static class RecordingCompressDicomFiles extends CompressDicomFiles {
+        final Set<Thread> compressingThreads = Collections.synchronizedSet(new HashSet<>());
+        final Set<Thread> writingThreads = Collections.synchronizedSet(new HashSet<>());
+        final AtomicInteger compressed = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicInteger maximumAhead = new AtomicInteger();
+        final long writeDelay;
+
+        RecordingCompressDicomFiles(File output, int numberOfThreads, long writeDelay) {
+            super(null);
+            this.outputPath = output.getPath();
+            this.outputFormat = "rle";
+            this.transferSyntaxUID = TransferSyntax.RLE;
+            this.reuseSameBaseFileName = true;
+            this.numberOfThreads = numberOfThreads;
+            this.writeDelay = writeDelay;
+        }
+
+        @Override
+        protected void compressDicomFile(String mediaFileName) {
+            compressingThreads.add(Thread.currentThread());
+            super.compressDicomFile(mediaFileName);		// returns once the file is queued to be written
+            int ahead = compressed.incrementAndGet() - written.get();
+            maximumAhead.accumulateAndGet(ahead, Math::max);
+        }
+
+        @Override
+        protected void writeCompressedDicomFile(String mediaFileName, AttributeList list, File outputFile, File[] frameFiles) {
+            writingThreads.add(Thread.currentThread());
+            try {
+                Thread.sleep(writeDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.writeCompressedDicomFile(mediaFileName, list, outputFile, frameFiles);
+            written.incrementAndGet();
+        }
+    }
+
+    @BeforeEach
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("CompressDicomFilesTest").toFile();
+        input = new File(folder, "input");
+        input.mkdir();
+        for (String resource : RESOURCES) {
+            for (int copy = 0; copy < COPIES; copy++) {
+                try (InputStream is = getClass().getResourceAsStream("/dicom/" + resource)) {
+                    Files.copy(is, new File(input, copy + "_" + resource).toPath());
+                }
+            }
+        }
+    }
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        Files.walk(folder.toPath()).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    private RecordingCompressDicomFiles compress(String outputName, int numberOfThreads, long writeDelay) throws Exception {
+        File output = new File(folder, outputName);
+        output.mkdir();
+        RecordingCompressDicomFiles importer = new RecordingCompressDicomFiles(output, numberOfThreads, writeDelay);
+        importer.importDicomFiles(input.getPath());
+        return importer;
+    }
+
+    @Test
+    public void parallelSameAsSerial() throws Exception {
+        RecordingCompressDicomFiles serial = compress("serial", 1, 0);
+        RecordingCompressDicomFiles parallel = compress("parallel", 3, 0);
+
+        String[] serialNames = new File(folder, "serial").list();
+        String[] parallelNames = new File(folder, "parallel").list();
+        Arrays.sort(serialNames);
+        Arrays.sort(parallelNames);
+        assertEquals(RESOURCES.length * COPIES, serialNames.length, "Number of files compressed serially");
+        assertArrayEquals(serialNames, parallelNames, "Same files compressed in parallel");
+        for (String name : serialNames) {
+            assertArrayEquals(Files.readAllBytes(new File(folder, "serial/" + name).toPath()),
+                    Files.readAllBytes(new File(folder, "parallel/" + name).toPath()), "Same content of " + name);
+        }
+        assertEquals(Collections.singleton(Thread.currentThread()), serial.compressingThreads, "Serial compression on the calling thread");
+        assertFalse(parallel.compressingThreads.contains(Thread.currentThread()), "Parallel compression not on the calling thread");
+    }
+
+    @Test
+    public void boundedQueuesAndSingleWriter() throws Exception {
+        int numberOfThreads = 2;
+        RecordingCompressDicomFiles parallel = compress("parallel", numberOfThreads, 50);
+
+        assertEquals(RESOURCES.length * COPIES, parallel.written.get(), "All files written once import returns");
+        assertEquals(RESOURCES.length * COPIES, new File(folder, "parallel").list().length, "Number of files compressed");
+        assertEquals(1, parallel.writingThreads.size(), "Single writer thread");
+        assertFalse(parallel.writingThreads.contains(Thread.currentThread()), "Not written on the calling thread");
+        assertTrue(parallel.compressingThreads.size() <= numberOfThreads, "At most " + numberOfThreads + " compressing threads");
+        // at most a full writing queue plus the file being written
+        assertTrue(parallel.maximumAhead.get() <= numberOfThreads + 1,
+                "Compression ahead of writing by at most " + (numberOfThreads + 1) + " but was " + parallel.maximumAhead.get());
+    }
+
+    @Test
+    public void multiFrameOutputHasExtendedOffsetTable() throws Exception {
+        // a multi-frame image made of the frames of the single frame images of a series
+        AttributeList multiFrame = new AttributeList();
+        multiFrame.read(new File(input, "0_" + RESOURCES[0]));
+        short[][] frames = new short[3][];
+        for (int f = 0; f < frames.length; f++) {
+            AttributeList list = new AttributeList();
+            list.read(new File(input, "0_" + RESOURCES[f]));
+            frames[f] = list.get(TagFromName.PixelData).getShortValues();
+        }
+        short[] pixels = new short[frames.length * frames[0].length];
+        for (int f = 0; f < frames.length; f++) {
+            System.arraycopy(frames[f], 0, pixels, f * frames[0].length, frames[f].length);
+        }
+        { Attribute a = new OtherWordAttribute(TagFromName.PixelData); a.setValues(pixels); multiFrame.put(a); }
+        { Attribute a = new IntegerStringAttribute(TagFromName.NumberOfFrames); a.addValue(frames.length); multiFrame.put(a); }
+        File multiFrameInput = new File(folder, "multiframe");
+        multiFrameInput.mkdir();
+        multiFrame.write(new File(multiFrameInput, "multiframe.dcm"), TransferSyntax.ExplicitVRLittleEndian, true, true);
+        Files.copy(new File(input, "0_" + RESOURCES[0]).toPath(), new File(multiFrameInput, "singleframe.dcm").toPath());
+
+        File output = new File(folder, "output");
+        output.mkdir();
+        new RecordingCompressDicomFiles(output, 1, 0).importDicomFiles(multiFrameInput.getPath());
+
+        File compressed = new File(output, "multiframe.dcm");
+        AttributeList list = new AttributeList();
+        list.setDecompressPixelData(false);
+        list.read(compressed);
+        assertNotNull(list.get(EncapsulatedFrameIndex.ExtendedOffsetTable), "Extended Offset Table added to multi-frame image");
+        assertEquals(frames.length, list.get(EncapsulatedFrameIndex.ExtendedOffsetTable).getLongValues().length, "Extended Offset Table entries");
+        byte[][] compressedFrames = ((OtherByteAttributeMultipleCompressedFrames) list.get(TagFromName.PixelData)).getFrames();
+        try (EncapsulatedFrameIndex index = EncapsulatedFrameIndex.getIndex(compressed)) {
+            for (int f = 0; f < frames.length; f++) {
+                byte[] frame = index.getFrame(f);
+                assertArrayEquals(compressedFrames[f], Arrays.copyOf(frame, compressedFrames[f].length), "Frame " + f + " located by the Extended Offset Table");
+            }
+        }
+
+        AttributeList decompressed = new AttributeList();
+        decompressed.read(compressed);
+        assertArrayEquals(pixels, decompressed.get(TagFromName.PixelData).getShortValues(), "Decompressed pixels");
+        decompressed.correctDecompressedImagePixelModule();
+        assertNull(decompressed.get(EncapsulatedFrameIndex.ExtendedOffsetTable), "Extended Offset Table removed when the decompressed Image Pixel Module is corrected");
+
+        AttributeList singleFrame = new AttributeList();
+        singleFrame.read(new File(output, "singleframe.dcm"));
+        assertNull(singleFrame.get(EncapsulatedFrameIndex.ExtendedOffsetTable), "No Extended Offset Table for a single frame");
+    }
+}
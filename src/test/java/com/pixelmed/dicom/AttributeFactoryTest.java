@@ -0,0 +1,149 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AttributeFactoryTest {
+
+    private static final AttributeTag otherTag = new AttributeTag(0x0009, 0x1010);
+
+    // the class of each value representation that does not depend on the context, as chosen by reflection before the constructor table
+    private static final Object[][] fixedValueRepresentations = {
+            { "AE", ApplicationEntityAttribute.class },
+            { "AS", AgeStringAttribute.class },
+            { "AT", AttributeTagAttribute.class },
+            { "CS", CodeStringAttribute.class },
+            { "DA", DateAttribute.class },
+            { "DS", DecimalStringAttribute.class },
+            { "DT", DateTimeAttribute.class },
+            { "FD", FloatDoubleAttribute.class },
+            { "FL", FloatSingleAttribute.class },
+            { "IS", IntegerStringAttribute.class },
+            { "LO", LongStringAttribute.class },
+            { "LT", LongTextAttribute.class },
+            { "OD", OtherDoubleAttribute.class },
+            { "OF", OtherFloatAttribute.class },
+            { "OL", OtherLongAttribute.class },
+            { "OV", OtherVeryLongAttribute.class },
+            { "PN", PersonNameAttribute.class },
+            { "SH", ShortStringAttribute.class },
+            { "SL", SignedLongAttribute.class },
+            { "SQ", SequenceAttribute.class },
+            { "SS", SignedShortAttribute.class },
+            { "ST", ShortTextAttribute.class },
+            { "TM", TimeAttribute.class },
+            { "UC", UnlimitedCharactersAttribute.class },
+            { "UI", UniqueIdentifierAttribute.class },
+            { "UL", UnsignedLongAttribute.class },
+            { "UN", UnknownAttribute.class },
+            { "UR", UniversalResourceAttribute.class },
+            { "US", UnsignedShortAttribute.class },
+            { "UT", UnlimitedTextAttribute.class },
+            { "ZZ", UnknownAttribute.class },    // unrecognized
+    };
+
+    private static Attribute read(AttributeTag tag, byte[] vr, boolean explicit, int bytesPerSample, boolean isSignedPixelRepresentation) throws Exception {
+        DicomInputStream i = new DicomInputStream(new ByteArrayInputStream(new byte[0]), TransferSyntax.ExplicitVRLittleEndian, false);
+        return AttributeFactory.newAttribute(tag, vr, 0, i, null, explicit, bytesPerSample, 0, isSignedPixelRepresentation);
+    }
+
+    @Test
+    public void classOfFixedValueRepresentations() throws Exception {
+        SpecificCharacterSet specificCharacterSet = new SpecificCharacterSet(new String[] { "ISO_IR 100" });
+        for (Object[] fixed : fixedValueRepresentations) {
+            byte[] vr = ((String) fixed[0]).getBytes("US-ASCII");
+            Class expected = (Class) fixed[1];
+            for (AttributeTag tag : new AttributeTag[] { TagFromName.PixelData, otherTag }) {
+                for (int bytesPerSample = 1; bytesPerSample <= 2; bytesPerSample++) {
+                    String description = fixed[0] + " " + tag + " " + bytesPerSample + " bytes per sample";
+                    assertSame(expected, AttributeFactory.getClassOfAttributeFromValueRepresentation(tag, vr, false, bytesPerSample, true, true), description + ": class");
+                    Attribute a = AttributeFactory.newAttribute(tag, vr, specificCharacterSet, false, bytesPerSample, true);
+                    assertSame(expected, a.getClass(), description + ": class of new attribute");
+                    assertSame(tag, a.getTag(), description + ": tag of new attribute");
+                    if (ValueRepresentation.isAffectedBySpecificCharacterSet(vr) && a instanceof StringAttribute) {    // text attributes do not tell
+                        assertSame(specificCharacterSet, ((StringAttribute) a).getSpecificCharacterSet(), description + ": Specific Character Set of new attribute");
+                    }
+                    if (expected != SequenceAttribute.class) {
+                        assertSame(expected, read(tag, vr, true, bytesPerSample, true).getClass(), description + ": class of attribute read");
+                    }
+                }
+            }
+            if (expected != UnknownAttribute.class) {
+                assertArrayEquals(vr, AttributeFactory.newAttribute(otherTag, vr).getVR(), fixed[0] + ": VR of new attribute");
+            }
+        }
+        assertThrows(DicomException.class, () -> read(otherTag, ValueRepresentation.SQ, true, 1, false), "Sequence not read as a single value");
+    }
+
+    /**
+     * The class of OB, OW and the value representations of the dictionary that are either one or another, which depends on the context.
+     */
+    @Test
+    public void classOfContextDependentValueRepresentations() throws Exception {
+        Object[][] cases = {
+                // VR, tag, explicit, bytes per sample, signed pixel representation, expected class
+                { ValueRepresentation.OB, TagFromName.PixelData, true, 1, false, OtherByteAttribute.class },
+                { ValueRepresentation.OB, TagFromName.PixelData, true, 2, false, OtherWordAttribute.class },
+                { ValueRepresentation.OB, otherTag, true, 2, false, OtherByteAttribute.class },
+                { ValueRepresentation.OW, TagFromName.PixelData, true, 1, false, OtherWordAttribute.class },
+                { ValueRepresentation.OW, TagFromName.PixelData, false, 1, false, OtherByteAttribute.class },
+                { ValueRepresentation.OW, TagFromName.PixelData, false, 2, false, OtherWordAttribute.class },
+                { ValueRepresentation.OW, otherTag, false, 1, false, OtherWordAttribute.class },
+                { ValueRepresentation.OX, TagFromName.PixelData, false, 1, false, OtherByteAttribute.class },
+                { ValueRepresentation.OX, TagFromName.PixelData, true, 1, false, OtherByteAttribute.class },
+                { ValueRepresentation.OX, TagFromName.PixelData, false, 2, false, OtherWordAttribute.class },
+                { ValueRepresentation.OX, otherTag, false, 1, false, OtherWordAttribute.class },
+                { ValueRepresentation.XS, otherTag, true, 2, false, UnsignedShortAttribute.class },
+                { ValueRepresentation.XS, otherTag, true, 2, true, SignedShortAttribute.class },
+                { ValueRepresentation.XO, otherTag, true, 2, false, UnsignedShortAttribute.class },
+                { ValueRepresentation.XO, otherTag, true, 2, true, SignedShortAttribute.class },
+        };
+        for (Object[] c : cases) {
+            byte[] vr = (byte[]) c[0];
+            AttributeTag tag = (AttributeTag) c[1];
+            boolean explicit = (Boolean) c[2];
+            int bytesPerSample = (Integer) c[3];
+            boolean signed = (Boolean) c[4];
+            Class expected = (Class) c[5];
+            String description = new String(vr, "US-ASCII") + " " + tag + (explicit ? " explicit " : " implicit ") + bytesPerSample + " bytes per sample" + (signed ? " signed" : "");
+            assertSame(expected, AttributeFactory.getClassOfAttributeFromValueRepresentation(tag, vr, explicit, bytesPerSample, false, signed), description + ": class");
+            assertSame(expected, AttributeFactory.newAttribute(tag, vr, null, explicit, bytesPerSample, signed).getClass(), description + ": class of new attribute");
+            assertSame(expected, read(tag, vr, explicit, bytesPerSample, signed).getClass(), description + ": class of attribute read");
+
+            Class onDisk = expected == OtherByteAttribute.class ? OtherByteAttributeOnDisk.class : expected == OtherWordAttribute.class ? OtherWordAttributeOnDisk.class : expected;
+            assertSame(onDisk, AttributeFactory.getClassOfAttributeFromValueRepresentation(tag, vr, explicit, bytesPerSample, true, signed), description + ": class left on disk");
+        }
+    }
+
+    @Test
+    public void largeValuesReadFromFileLeftOnDisk() throws Exception {
+        long vl = 4096 * 4096 * 2 + 2;    // just more than is read into memory
+        File file = File.createTempFile("AttributeFactoryTest", ".bin");
+        try {
+            try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+                f.setLength(vl * 2);
+            }
+            for (Object[] c : new Object[][] { { ValueRepresentation.OB, OtherByteAttributeOnDisk.class }, { ValueRepresentation.OW, OtherWordAttributeOnDisk.class } }) {
+                Attribute a;
+                try (DicomInputStream i = new DicomInputStream(file, TransferSyntax.ExplicitVRLittleEndian, false)) {
+                    a = AttributeFactory.newAttribute(otherTag, (byte[]) c[0], vl, i, null, true, 1, 0, false);
+                }
+                assertSame(c[1], a.getClass(), new String((byte[]) c[0], "US-ASCII") + " read from a file");
+                assertEquals(vl, a.getVL(), new String((byte[]) c[0], "US-ASCII") + " value length");
+                ((OtherAttributeOnDisk) a).closeFileChannel();
+            }
+            DicomInputStream i = new DicomInputStream(new ByteArrayInputStream(new byte[(int) vl]), TransferSyntax.ExplicitVRLittleEndian, false);
+            assertSame(OtherByteAttribute.class, AttributeFactory.newAttribute(otherTag, ValueRepresentation.OB, vl, i, null, true, 1, 0, false).getClass(), "OB read from a stream that is not a file");
+        } finally {
+            file.delete();
+        }
+    }
+}
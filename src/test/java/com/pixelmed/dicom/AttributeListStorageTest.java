@@ -0,0 +1,261 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the compact storage of AttributeList against a TreeMap with the same contents.
+ */
+public class AttributeListStorageTest {
+
+    // including groups and elements with the top bit set, which the packed sort key must still order correctly
+    private static final int[] groups = { 0x0002, 0x0008, 0x0009, 0x0010, 0x0028, 0x7FDF, 0x7FE0, 0x7FFF, 0x8000, 0x8001, 0xFFFE, 0xFFFF };
+    private static final int[] elements = { 0x0000, 0x0001, 0x0010, 0x1000, 0x7FFF, 0x8000, 0xFFFE, 0xFFFF };
+
+    private static List<AttributeTag> makeTags() {
+        List<AttributeTag> tags = new ArrayList<AttributeTag>();
+        for (int group : groups) {
+            for (int element : elements) {
+                tags.add(new AttributeTag(group, element));
+            }
+        }
+        return tags;
+    }
+
+    private static Attribute makeAttribute(AttributeTag tag, int value) throws DicomException {
+        Attribute a = new LongStringAttribute(tag);
+        a.addValue(Integer.toString(value));
+        return a;
+    }
+
+    private static void fill(AttributeList list, TreeMap<AttributeTag, Attribute> reference, List<AttributeTag> tags) throws DicomException {
+        for (int i = 0; i < tags.size(); i++) {
+            Attribute a = makeAttribute(tags.get(i), i);
+            list.put(tags.get(i), a);
+            reference.put(tags.get(i), a);
+        }
+    }
+
+    private static void assertSameContents(TreeMap<AttributeTag, Attribute> reference, AttributeList list, String description) {
+        assertEquals(reference.size(), list.size(), description + ": size");
+        assertEquals(reference.isEmpty(), list.isEmpty(), description + ": isEmpty");
+        assertEquals(new ArrayList<Map.Entry<AttributeTag, Attribute>>(reference.entrySet()),
+                new ArrayList<Map.Entry<AttributeTag, Attribute>>(list.entrySet()), description + ": entries in order");
+        assertEquals(new ArrayList<AttributeTag>(reference.keySet()), new ArrayList<AttributeTag>(list.keySet()), description + ": keys in order");
+        assertEquals(new ArrayList<Attribute>(reference.values()), new ArrayList<Attribute>(list.values()), description + ": values in order");
+        assertEquals(reference.firstEntry(), list.firstEntry(), description + ": first entry");
+        assertEquals(reference.lastEntry(), list.lastEntry(), description + ": last entry");
+    }
+
+    private static void assertSameNavigation(TreeMap<AttributeTag, Attribute> reference, AttributeList list, AttributeTag probe) {
+        String description = "probe " + probe;
+        assertEquals(reference.get(probe), list.get(probe), description + ": get");
+        assertEquals(reference.containsKey(probe), list.containsKey(probe), description + ": containsKey");
+        assertEquals(reference.lowerEntry(probe), list.lowerEntry(probe), description + ": lowerEntry");
+        assertEquals(reference.floorEntry(probe), list.floorEntry(probe), description + ": floorEntry");
+        assertEquals(reference.ceilingEntry(probe), list.ceilingEntry(probe), description + ": ceilingEntry");
+        assertEquals(reference.higherEntry(probe), list.higherEntry(probe), description + ": higherEntry");
+        assertEquals(reference.lowerKey(probe), list.lowerKey(probe), description + ": lowerKey");
+        assertEquals(reference.higherKey(probe), list.higherKey(probe), description + ": higherKey");
+        assertEquals(new ArrayList<Map.Entry<AttributeTag, Attribute>>(reference.headMap(probe).entrySet()),
+                new ArrayList<Map.Entry<AttributeTag, Attribute>>(list.headMap(probe).entrySet()), description + ": headMap");
+        assertEquals(new ArrayList<Map.Entry<AttributeTag, Attribute>>(reference.headMap(probe, true).entrySet()),
+                new ArrayList<Map.Entry<AttributeTag, Attribute>>(list.headMap(probe, true).entrySet()), description + ": inclusive headMap");
+        assertEquals(new ArrayList<Map.Entry<AttributeTag, Attribute>>(reference.tailMap(probe).entrySet()),
+                new ArrayList<Map.Entry<AttributeTag, Attribute>>(list.tailMap(probe).entrySet()), description + ": tailMap");
+        assertEquals(new ArrayList<Map.Entry<AttributeTag, Attribute>>(reference.tailMap(probe, false).entrySet()),
+                new ArrayList<Map.Entry<AttributeTag, Attribute>>(list.tailMap(probe, false).entrySet()), description + ": exclusive tailMap");
+        assertEquals(new ArrayList<AttributeTag>(reference.descendingKeySet()), new ArrayList<AttributeTag>(list.descendingKeySet()),
+                description + ": descendingKeySet");
+    }
+
+    @Test
+    public void emptyListSameAsTreeMap() {
+        AttributeList list = new AttributeList();
+        TreeMap<AttributeTag, Attribute> reference = new TreeMap<AttributeTag, Attribute>();
+        assertSameContents(reference, list, "empty");
+        assertSameNavigation(reference, list, TagFromName.PatientName);
+        assertThrows(NoSuchElementException.class, () -> list.firstKey(), "firstKey of empty list");
+        assertThrows(NoSuchElementException.class, () -> list.lastKey(), "lastKey of empty list");
+        assertNull(list.pollFirstEntry(), "pollFirstEntry of empty list");
+        assertThrows(NoSuchElementException.class, () -> list.keySet().iterator().next(), "next on exhausted iterator");
+    }
+
+    @Test
+    public void putGetRemoveSameAsTreeMap() throws Exception {
+        List<AttributeTag> tags = makeTags();
+        AttributeList list = new AttributeList();
+        TreeMap<AttributeTag, Attribute> reference = new TreeMap<AttributeTag, Attribute>();
+        Random random = new Random(0x5eed);
+        for (int operation = 0; operation < 4000; operation++) {
+            AttributeTag tag = tags.get(random.nextInt(tags.size()));
+            // a different but equal tag, to check that the key is matched by value
+            AttributeTag equalTag = new AttributeTag(tag.getGroup(), tag.getElement());
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1: {
+                    Attribute a = makeAttribute(tag, operation);
+                    assertSame(reference.put(tag, a), list.put(equalTag, a), "put " + tag);
+                    break;
+                }
+                case 2:
+                    assertSame(reference.remove(tag), list.remove(equalTag), "remove " + tag);
+                    break;
+                default:
+                    assertSame(reference.get(tag), list.get(equalTag), "get " + tag);
+                    break;
+            }
+            if (operation % 100 == 0) {
+                assertSameContents(reference, list, "after " + operation + " operations");
+                assertSameNavigation(reference, list, tags.get(random.nextInt(tags.size())));
+                assertSameNavigation(reference, list, new AttributeTag(random.nextInt(0x10000), random.nextInt(0x10000)));
+            }
+        }
+        assertSameContents(reference, list, "at end");
+        while (!reference.isEmpty()) {
+            assertEquals(reference.pollFirstEntry(), list.pollFirstEntry(), "pollFirstEntry");
+            assertEquals(reference.pollLastEntry(), list.pollLastEntry(), "pollLastEntry");
+        }
+        assertSameContents(reference, list, "after polling");
+    }
+
+    @Test
+    public void entrySetValueWritesThrough() throws Exception {
+        List<AttributeTag> tags = makeTags();
+        AttributeList list = new AttributeList();
+        TreeMap<AttributeTag, Attribute> reference = new TreeMap<AttributeTag, Attribute>();
+        fill(list, reference, tags);
+        Iterator<Map.Entry<AttributeTag, Attribute>> referenceEntries = reference.entrySet().iterator();
+        Iterator<Map.Entry<AttributeTag, Attribute>> listEntries = list.entrySet().iterator();
+        int i = 0;
+        while (referenceEntries.hasNext()) {
+            assertTrue(listEntries.hasNext(), "Entry " + i);
+            Map.Entry<AttributeTag, Attribute> referenceEntry = referenceEntries.next();
+            Map.Entry<AttributeTag, Attribute> listEntry = listEntries.next();
+            assertEquals(referenceEntry, listEntry, "Entry " + i);
+            assertEquals(referenceEntry.hashCode(), listEntry.hashCode(), "Hash code of entry " + i);
+            if (i % 3 == 0) {
+                Attribute a = makeAttribute(listEntry.getKey(), -i);
+                assertSame(referenceEntry.setValue(a), listEntry.setValue(a), "Previous value of entry " + i);
+                assertSame(a, listEntry.getValue(), "New value of entry " + i);
+                assertSame(a, list.get(listEntry.getKey()), "New value in list for entry " + i);
+            }
+            ++i;
+        }
+        assertFalse(listEntries.hasNext(), "No more entries");
+        assertSameContents(reference, list, "after setValue");
+    }
+
+    @Test
+    public void removeDuringIterationSameAsTreeMap() throws Exception {
+        List<AttributeTag> tags = makeTags();
+        AttributeList list = new AttributeList();
+        TreeMap<AttributeTag, Attribute> reference = new TreeMap<AttributeTag, Attribute>();
+        fill(list, reference, tags);
+
+        removeEvery(reference.entrySet().iterator(), 3, 0);
+        removeEvery(list.entrySet().iterator(), 3, 0);
+        assertSameContents(reference, list, "after removing entries");
+
+        removeEvery(reference.keySet().iterator(), 2, 1);
+        removeEvery(list.keySet().iterator(), 2, 1);
+        assertSameContents(reference, list, "after removing keys");
+
+        removeEvery(reference.values().iterator(), 4, 3);
+        removeEvery(list.values().iterator(), 4, 3);
+        assertSameContents(reference, list, "after removing values");
+
+        Iterator<AttributeTag> i = list.keySet().iterator();
+        assertThrows(IllegalStateException.class, () -> i.remove(), "remove before next");
+        i.next();
+        i.remove();
+        assertThrows(IllegalStateException.class, () -> i.remove(), "remove twice");
+        reference.remove(reference.firstKey());
+        assertSameContents(reference, list, "after removing first");
+
+        removeEvery(reference.keySet().iterator(), 1, 0);
+        removeEvery(list.keySet().iterator(), 1, 0);
+        assertSameContents(reference, list, "after removing all");
+    }
+
+    private static void removeEvery(Iterator<?> i, int every, int offset) {
+        int n = 0;
+        while (i.hasNext()) {
+            i.next();
+            if (n++ % every == offset) {
+                i.remove();
+            }
+        }
+    }
+
+    @Test
+    public void concurrentModificationDetected() throws Exception {
+        List<AttributeTag> tags = makeTags();
+        AttributeList list = new AttributeList();
+        TreeMap<AttributeTag, Attribute> reference = new TreeMap<AttributeTag, Attribute>();
+        fill(list, reference, tags.subList(0, tags.size() / 2));
+
+        // replacing the value of an existing tag is not a structural modification, for either
+        Iterator<AttributeTag> referenceKeys = reference.keySet().iterator();
+        Iterator<AttributeTag> listKeys = list.keySet().iterator();
+        AttributeTag first = referenceKeys.next();
+        assertEquals(first, listKeys.next(), "First key");
+        Attribute replacement = makeAttribute(first, -1);
+        reference.put(first, replacement);
+        list.put(first, replacement);
+        assertEquals(referenceKeys.next(), listKeys.next(), "Iteration continues after replacing a value");
+
+        // adding or removing a tag is
+        AttributeTag added = tags.get(tags.size() - 1);
+        Attribute a = makeAttribute(added, -2);
+        reference.put(added, a);
+        list.put(added, a);
+        assertThrows(ConcurrentModificationException.class, () -> referenceKeys.next(), "TreeMap fails fast after put");
+        assertThrows(ConcurrentModificationException.class, () -> listKeys.next(), "AttributeList fails fast after put");
+
+        Iterator<Attribute> values = list.values().iterator();
+        values.next();
+        list.remove(first);
+        assertThrows(ConcurrentModificationException.class, () -> values.next(), "AttributeList fails fast after remove");
+
+        Iterator<Map.Entry<AttributeTag, Attribute>> entries = list.entrySet().iterator();
+        entries.next();
+        Iterator<AttributeTag> other = list.keySet().iterator();
+        other.next();
+        other.remove();
+        assertThrows(ConcurrentModificationException.class, () -> entries.remove(), "Fails fast after removal through another iterator");
+
+        assertThrows(ConcurrentModificationException.class,
+                () -> list.forEach((tag, attribute) -> list.remove(tag)), "forEach fails fast");
+    }
+
+    @Test
+    public void cloneIsIndependent() throws Exception {
+        List<AttributeTag> tags = makeTags();
+        AttributeList list = new AttributeList();
+        TreeMap<AttributeTag, Attribute> reference = new TreeMap<AttributeTag, Attribute>();
+        fill(list, reference, tags);
+        AttributeList clone = (AttributeList) list.clone();
+        assertSameContents(reference, clone, "clone");
+        clone.remove(tags.get(0));
+        clone.put(tags.get(1), makeAttribute(tags.get(1), -1));
+        assertSameContents(reference, list, "original after changing the clone");
+        list.clear();
+        assertEquals(tags.size() - 1, clone.size(), "clone after clearing the original");
+    }
+}
@@ -0,0 +1,118 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AttributeTagTest {
+
+    /**
+     * The constant in {@link TagFromName} for the tag, or null if there is none.
+     */
+    private static AttributeTag getConstant(DicomDictionary dictionary, AttributeTag tag) throws IllegalAccessException {
+        String name = dictionary.getNameFromTag(tag);
+        if (name != null) {
+            try {
+                Field field = TagFromName.class.getField(name);
+                AttributeTag constant = (AttributeTag) field.get(null);
+                if (constant.equals(tag)) {
+                    return constant;
+                }
+            } catch (NoSuchFieldException e) {
+                // not all of the dictionary is in TagFromName
+            }
+        }
+        return null;
+    }
+
+    private static void checkSameAsNew(AttributeTag tag, int group, int element, String description) {
+        AttributeTag unshared = new AttributeTag(group, element);
+        assertEquals(group, tag.getGroup(), description + ": group");
+        assertEquals(element, tag.getElement(), description + ": element");
+        assertTrue(tag.equals(unshared) && unshared.equals(tag), description + ": equals a new tag");
+        assertEquals(unshared.hashCode(), tag.hashCode(), description + ": hash code of a new tag");
+        assertEquals(0, tag.compareTo(unshared), description + ": compares equal to a new tag");
+        assertEquals(unshared.toString(), tag.toString(), description + ": string of a new tag");
+    }
+
+    @Test
+    public void standardTagsShared() throws Exception {
+        DicomDictionary dictionary = new DicomDictionary();
+        int shared = 0;
+        Iterator i = dictionary.getTagIterator();
+        while (i.hasNext()) {
+            AttributeTag tag = (AttributeTag) i.next();
+            int group = tag.getGroup();
+            int element = tag.getElement();
+            AttributeTag value = AttributeTag.valueOf(group, element);
+            checkSameAsNew(value, group, element, tag.toString());
+            assertSame(value, AttributeTag.valueOf(group, element), tag + ": same instance each time");
+            AttributeTag constant = getConstant(dictionary, tag);
+            if (constant != null) {
+                assertSame(constant, value, tag + ": the constant from TagFromName");
+                ++shared;
+            }
+        }
+        assertTrue(shared > 4000, "Most of the dictionary is shared, not " + shared);
+        // including groups with the top bit set, whose hash codes are negative
+        assertSame(TagFromName.Item, AttributeTag.valueOf(0xfffe, 0xe000), "Item");
+        assertSame(TagFromName.SequenceDelimitationItem, AttributeTag.valueOf(0xfffe, 0xe0dd), "Sequence Delimitation Item");
+        assertSame(TagFromName.DigitalSignaturesSequence, AttributeTag.valueOf(0xfffa, 0xfffa), "Digital Signatures Sequence");
+    }
+
+    @Test
+    public void otherTagsNotShared() throws Exception {
+        int[][] others = {
+                { 0x0009, 0x0010 },    // private creator
+                { 0x0009, 0x1010 },    // private
+                { 0x6002, 0x3000 },    // repeating group other than the one in TagFromName
+                { 0x0010, 0x0011 },    // not in the dictionary
+                { 0xffff, 0xffff },
+                { 0x0001, 0x0001 },
+        };
+        for (int[] other : others) {
+            AttributeTag tag = AttributeTag.valueOf(other[0], other[1]);
+            String description = String.format("(0x%04x,0x%04x)", other[0], other[1]);
+            checkSameAsNew(tag, other[0], other[1], description);
+            assertNotSame(tag, AttributeTag.valueOf(other[0], other[1]), description + ": a new instance each time");
+        }
+        assertSame(TagFromName.OverlayData, AttributeTag.valueOf(0x6000, 0x3000), "Overlay Data in the group in TagFromName");
+    }
+
+    @Test
+    public void parsedTagsShared() throws Exception {
+        File file = File.createTempFile("AttributeTagTest", ".dcm");
+        try {
+            try (InputStream in = getClass().getResourceAsStream("/dicom/LGG-104_SPGR_000.dcm")) {
+                Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            AttributeList list = new AttributeList();
+            list.read(file);
+            DicomDictionary dictionary = new DicomDictionary();
+            int shared = 0;
+            for (Object o : list.values()) {
+                AttributeTag tag = ((Attribute) o).getTag();
+                AttributeTag constant = getConstant(dictionary, tag);
+                if (constant != null) {
+                    assertSame(constant, tag, tag + ": parsed tag is the constant from TagFromName");
+                    ++shared;
+                }
+            }
+            assertTrue(shared > 50, "Parsed tags shared, not " + shared);
+            assertSame(TagFromName.PatientName, list.get(TagFromName.PatientName).getTag(), "Patient Name");
+            assertSame(TagFromName.PixelData, list.get(new AttributeTag(0x7fe0, 0x0010)).getTag(), "Pixel Data looked up with a new tag");
+        } finally {
+            file.delete();
+        }
+    }
+}
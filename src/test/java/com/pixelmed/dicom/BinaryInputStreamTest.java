@@ -0,0 +1,209 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BinaryInputStreamTest {
+
+    // more than two chunks of the bulk read buffer (32768 bytes) of each type, not a multiple of it
+    private static final int numberOf16BitValues = 40000;
+    private static final int numberOf32BitValues = 20000;
+    private static final int numberOfFloatValues = 17000;
+    private static final int numberOf64BitValues = 9000;
+
+    private static final int marker = 0xABCD;
+
+    /**
+     * A byte that leaves the arrays unaligned, the arrays, and a marker.
+     */
+    private static byte[] encode(boolean bigEndian, short[] w16, int[] w32, float[] f) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + w16.length * 2 + w32.length * 4 + f.length * 4 + 2)
+                .order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 0x7f);
+        buffer.asShortBuffer().put(w16);
+        buffer.position(buffer.position() + w16.length * 2);
+        buffer.asIntBuffer().put(w32);
+        buffer.position(buffer.position() + w32.length * 4);
+        buffer.asFloatBuffer().put(f);
+        buffer.position(buffer.position() + f.length * 4);
+        buffer.putShort((short) marker);
+        return buffer.array();
+    }
+
+    private static short[] make16BitValues() {
+        short[] w = new short[numberOf16BitValues];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = (short) (i * 7919);
+        }
+        return w;
+    }
+
+    private static int[] make32BitValues() {
+        int[] w = new int[numberOf32BitValues];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = i * 104729 + 0x80000000;
+        }
+        return w;
+    }
+
+    private static float[] makeFloatValues() {
+        float[] f = new float[numberOfFloatValues];
+        for (int i = 0; i < f.length; i++) {
+            f[i] = (i - 8000) / 3.0f;
+        }
+        return f;
+    }
+
+    /**
+     * Returns fewer bytes than requested, so that a chunk needs more than one read.
+     */
+    private static class ShortReadInputStream extends FilterInputStream {
+        ShortReadInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1000));
+        }
+    }
+
+    private static void check(BinaryInputStream i, String description) throws IOException {
+        short[] w16 = make16BitValues();
+        int[] w32 = make32BitValues();
+        float[] f = makeFloatValues();
+
+        assertEquals(0x7f, i.readUnsigned8(), description + ": leading byte");
+
+        short[] r16 = new short[numberOf16BitValues + 3];
+        i.readUnsigned16(r16, 3, numberOf16BitValues);
+        for (int j = 0; j < numberOf16BitValues; j++) {
+            assertEquals(w16[j], r16[j + 3], description + ": 16 bit value " + j);
+        }
+
+        int[] r32 = new int[numberOf32BitValues];
+        i.readUnsigned32(r32, numberOf32BitValues);
+        assertArrayEquals(w32, r32, description + ": 32 bit values");
+
+        float[] rf = new float[numberOfFloatValues];
+        i.readFloat(rf, numberOfFloatValues);
+        assertArrayEquals(f, rf, description + ": float values");
+
+        assertEquals(marker, i.readUnsigned16(), description + ": marker after the arrays");
+    }
+
+    @Test
+    public void readArraysAcrossChunksFromStream() throws Exception {
+        for (boolean bigEndian : new boolean[] { false, true }) {
+            byte[] bytes = encode(bigEndian, make16BitValues(), make32BitValues(), makeFloatValues());
+            String order = bigEndian ? "big endian" : "little endian";
+            check(new BinaryInputStream(new ByteArrayInputStream(bytes), bigEndian), order + " stream");
+            check(new BinaryInputStream(new ShortReadInputStream(new ByteArrayInputStream(bytes)), bigEndian), order + " stream with short reads");
+        }
+    }
+
+    @Test
+    public void readArraysAcrossChunksFromMappedFile() throws Exception {
+        for (boolean bigEndian : new boolean[] { false, true }) {
+            File file = File.createTempFile("BinaryInputStreamTest", ".bin");
+            try {
+                Files.write(file.toPath(), encode(bigEndian, make16BitValues(), make32BitValues(), makeFloatValues()));
+                String order = bigEndian ? "big endian" : "little endian";
+                MappedFileInputStream mapped = new MappedFileInputStream(file);
+                try {
+                    check(new BinaryInputStream(mapped, bigEndian), order + " mapped file");
+                } finally {
+                    mapped.close();
+                }
+                BinaryInputStream buffered = new BinaryInputStream(file, bigEndian);
+                try {
+                    check(buffered, order + " file");
+                } finally {
+                    buffered.close();
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private static long[] make64BitValues() {
+        long[] w = new long[numberOf64BitValues];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = i * 0x9E3779B97F4A7C15L;		// all bit patterns, including those negative as a signed long
+        }
+        return w;
+    }
+
+    private static double[] makeDoubleValues() {
+        double[] d = new double[numberOf64BitValues];
+        for (int i = 0; i < d.length; i++) {
+            d[i] = (i - 4500) / 7.0;
+        }
+        return d;
+    }
+
+    /**
+     * A byte that leaves the arrays unaligned, one value, the arrays of values, and a marker, as encoded by the JRE.
+     */
+    private static byte[] encode64(boolean bigEndian, long[] w, double[] d) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + w.length * 8 + d.length * 8 + 2)
+                .order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 0x7f);
+        buffer.putLong(w[w.length - 1]);
+        buffer.asLongBuffer().put(w);
+        buffer.position(buffer.position() + w.length * 8);
+        buffer.asDoubleBuffer().put(d);
+        buffer.position(buffer.position() + d.length * 8);
+        buffer.putShort((short) marker);
+        return buffer.array();
+    }
+
+    @Test
+    public void writeAndRead64BitValues() throws Exception {
+        long[] w = make64BitValues();
+        double[] d = makeDoubleValues();
+        for (boolean bigEndian : new boolean[] { false, true }) {
+            String order = bigEndian ? "big endian" : "little endian";
+            byte[] expected = encode64(bigEndian, w, d);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BinaryOutputStream o = new BinaryOutputStream(bytes, bigEndian);
+            o.writeUnsigned8(0x7f);
+            o.writeUnsigned64(w[w.length - 1]);
+            o.writeUnsigned64(w, w.length);
+            o.writeDouble(d, d.length);
+            o.writeUnsigned16(marker);
+            o.flush();
+            assertArrayEquals(expected, bytes.toByteArray(), order + ": bytes written");
+
+            for (boolean shortReads : new boolean[] { false, true }) {
+                String description = order + (shortReads ? " stream with short reads" : " stream");
+                InputStream in = new ByteArrayInputStream(expected);
+                BinaryInputStream i = new BinaryInputStream(shortReads ? new ShortReadInputStream(in) : in, bigEndian);
+                assertEquals(0x7f, i.readUnsigned8(), description + ": leading byte");
+                long[] single = new long[1];
+                i.readUnsigned64(single, 1);
+                assertEquals(w[w.length - 1], single[0], description + ": single 64 bit value");
+                long[] rw = new long[w.length];
+                i.readUnsigned64(rw, rw.length);
+                assertArrayEquals(w, rw, description + ": 64 bit values");
+                double[] rd = new double[d.length];
+                i.readDouble(rd, rd.length);
+                assertArrayEquals(d, rd, description + ": double values");
+                assertEquals(marker, i.readUnsigned16(), description + ": marker after the arrays");
+            }
+        }
+    }
+}
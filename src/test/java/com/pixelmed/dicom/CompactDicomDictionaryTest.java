@@ -0,0 +1,30 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class CompactDicomDictionaryTest {
+
+    /**
+     * Fails when DicomDictionary has changed without the image being regenerated with CompactDicomDictionary.main().
+     */
+    @Test
+    public void shippedImageIsCurrent() throws Exception {
+        ByteArrayOutputStream shipped = new ByteArrayOutputStream();
+        try (InputStream in = CompactDicomDictionary.class.getResourceAsStream("DicomDictionary.dat")) {
+            assertNotNull(in, "DicomDictionary.dat resource present");
+            byte[] buffer = new byte[65536];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                shipped.write(buffer, 0, count);
+            }
+        }
+        assertArrayEquals(CompactDicomDictionary.createImage(new DicomDictionary()), shipped.toByteArray(),
+                "DicomDictionary.dat is the image of DicomDictionary, regenerate it with CompactDicomDictionary.main()");
+    }
+}
@@ -0,0 +1,141 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class CompressedFrameDecoderTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static byte[][] makeJPEGFrames(int numberOfFrames) throws IOException {
+        return makeJPEGFrames(numberOfFrames, WIDTH, HEIGHT);
+    }
+
+    private static byte[][] makeJPEGFrames(int numberOfFrames, int width, int height) throws IOException {
+        byte[][] frames = new byte[numberOfFrames][];
+        for (int f = 0; f < numberOfFrames; f++) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = (byte) ((i % width) * 4 + (i / width) * 3 + f * 16);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(ImageIO.write(image, "jpeg", out), "JPEG writer available");
+            frames[f] = out.toByteArray();
+        }
+        return frames;
+    }
+
+    private static CompressedFrameDecoder newDecoder(byte[][] frames) throws DicomException {
+        return new CompressedFrameDecoder(TransferSyntax.JPEGBaseline, frames, 1, WIDTH, HEIGHT, 1,
+                ColorSpace.getInstance(ColorSpace.CS_GRAY));
+    }
+
+    private static byte[] corruptFrame() {
+        return new byte[]{(byte) 0xFF, (byte) 0xD8, 0x01, 0x02, 0x03, 0x04, (byte) 0xFF, (byte) 0xD9};
+    }
+
+    /**
+     * Whether any thread of the pool is in the body of a frame task, from a snapshot of the stacks of all threads.
+     */
+    private static boolean isDecompressingFrame(ForkJoinPool pool) {
+        for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+            if (entry.getKey() instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) entry.getKey()).getPool() == pool) {
+                for (StackTraceElement element : entry.getValue()) {
+                    if (element.getClassName().equals(CompressedFrameDecoder.class.getName())
+                            && element.getMethodName().equals("decompressFrameWithIdleReader")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static byte[] getPixels(BufferedImage image) {
+        return (byte[]) image.getRaster().getDataElements(0, 0, image.getWidth(), image.getHeight(), null);
+    }
+
+    @Test
+    public void decompressMultiFrameInParallel() throws Exception {
+        byte[][] frames = makeJPEGFrames(9);
+        CompressedFrameDecoder decoder = newDecoder(frames);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            List<Integer> order = new ArrayList<>();
+            List<byte[]> parallel = new ArrayList<>();
+            Thread caller = Thread.currentThread();
+            decoder.decompressFrames(0, frames.length, pool, 2, (f, image) -> {
+                assertEquals(caller, Thread.currentThread(), "Frames delivered on the calling thread");
+                order.add(f);
+                parallel.add(getPixels(image));
+            });
+            assertEquals(frames.length, order.size(), "Number of frames");
+            for (int f = 0; f < frames.length; f++) {
+                assertEquals(f, order.get(f).intValue(), "Frames delivered in order");
+                assertArrayEquals(getPixels(decoder.getDecompressedFrameAsBufferedImage(f)), parallel.get(f),
+                        "Frame " + f + " same as serial decompression");
+            }
+
+            BufferedImage[] all = decoder.getDecompressedFramesAsBufferedImages();
+            assertEquals(frames.length, all.length, "Number of frames");
+            assertArrayEquals(parallel.get(frames.length - 1), getPixels(all[frames.length - 1]), "Last frame");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void corruptFrameThrowsDeclaredException() throws Exception {
+        byte[][] frames = makeJPEGFrames(6);
+        frames[3] = corruptFrame();
+        CompressedFrameDecoder decoder = newDecoder(frames);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            List<Integer> delivered = new ArrayList<>();
+            Exception e = assertThrows(Exception.class,
+                    () -> decoder.decompressFrames(0, frames.length, pool, 4, (f, image) -> delivered.add(f)));
+            assertTrue(e instanceof DicomException || e instanceof IOException,
+                    "Declared exception rather than " + e);
+            assertEquals(3, delivered.size(), "Frames before the corrupt one delivered");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void failureWaitsForFramesAlreadyStarted() throws Exception {
+        // large frames, so that the others are still being decompressed when the corrupt first one fails
+        byte[][] frames = makeJPEGFrames(8, 2048, 2048);
+        frames[0] = corruptFrame();
+        CompressedFrameDecoder decoder = newDecoder(frames);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int attempt = 0; attempt < 5; attempt++) {
+                assertThrows(Exception.class,
+                        () -> decoder.decompressFrames(0, frames.length, pool, 6, (f, image) -> fail("Frame " + f + " delivered")));
+                assertFalse(isDecompressingFrame(pool), "No frame still being decompressed once the exception is thrown");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressedFrameEncoderTest {
+
+    private static AttributeList makeList(int bitsStored) throws DicomException {
+        AttributeList list = new AttributeList();
+        { Attribute a = new UnsignedShortAttribute(TagFromName.SamplesPerPixel); a.addValue(1); list.put(a); }
+        { Attribute a = new UnsignedShortAttribute(TagFromName.BitsAllocated); a.addValue(8); list.put(a); }
+        { Attribute a = new UnsignedShortAttribute(TagFromName.BitsStored); a.addValue(bitsStored); list.put(a); }
+        return list;
+    }
+
+    private static BufferedImage makeFrame(int f) {
+        return makeFrame(f, 40, 30);
+    }
+
+    private static BufferedImage makeFrame(int f, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) ((i / 7) * (f + 1));
+        }
+        return image;
+    }
+
+    private static File[] makeTemporaryFiles(File folder, String prefix, int numberOfFrames) {
+        File[] files = new File[numberOfFrames];
+        for (int f = 0; f < numberOfFrames; f++) {
+            files[f] = new File(folder, prefix + f);
+        }
+        return files;
+    }
+
+    /**
+     * Whether any thread of the pool is in the body of a frame task, from a snapshot of the stacks of all threads.
+     */
+    private static boolean isCompressingFrame(ForkJoinPool pool) {
+        for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+            if (entry.getKey() instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) entry.getKey()).getPool() == pool) {
+                for (StackTraceElement element : entry.getValue()) {
+                    if (element.getClassName().equals(CompressedFrameEncoder.class.getName())
+                            && element.getMethodName().equals("getCompressedFrameAsFile")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void parallelSameAsSerial() throws Exception {
+        File folder = Files.createTempDirectory("CompressedFrameEncoderTest").toFile();
+        int numberOfFrames = 7;
+        AttributeList list = makeList(8);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            File[] parallel = CompressedFrameEncoder.getCompressedFramesAsFiles(list, f -> makeFrame(f), "rle",
+                    makeTemporaryFiles(folder, "parallel", numberOfFrames), pool, 2);
+            assertEquals(numberOfFrames, parallel.length, "Number of frames");
+            for (int f = 0; f < numberOfFrames; f++) {
+                File serial = CompressedFrameEncoder.getCompressedFrameAsFile(list, makeFrame(f), "rle", new File(folder, "serial" + f));
+                assertArrayEquals(Files.readAllBytes(serial.toPath()), Files.readAllBytes(parallel[f].toPath()),
+                        "Frame " + f + " same as serial compression");
+            }
+        } finally {
+            pool.shutdown();
+            for (File file : folder.listFiles()) {
+                file.delete();
+            }
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void frameThatCannotBeCompressedThrowsDeclaredException() throws Exception {
+        File folder = Files.createTempDirectory("CompressedFrameEncoderTest").toFile();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            // RLE does not support single bit images
+            assertThrows(DicomException.class, () -> CompressedFrameEncoder.getCompressedFramesAsFiles(makeList(1),
+                    f -> makeFrame(f), "rle", makeTemporaryFiles(folder, "frame", 3), pool, 2));
+            // cannot create the file for a frame
+            File missingFolder = new File(folder, "missing");
+            assertThrows(IOException.class, () -> CompressedFrameEncoder.getCompressedFramesAsFiles(makeList(8),
+                    f -> makeFrame(f), "rle", makeTemporaryFiles(missingFolder, "frame", 3), pool, 2));
+        } finally {
+            pool.shutdown();
+            for (File file : folder.listFiles()) {
+                file.delete();
+            }
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void failureWaitsForFramesAlreadyStarted() throws Exception {
+        File folder = Files.createTempDirectory("CompressedFrameEncoderTest").toFile();
+        AttributeList list = makeList(8);
+        int failingFrame = 3;
+        // large frames, so that the earlier ones are still being compressed when the source fails
+        BufferedImage[] images = new BufferedImage[failingFrame];
+        for (int f = 0; f < failingFrame; f++) {
+            images[f] = makeFrame(f, 4096, 2048);
+        }
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int attempt = 0; attempt < 5; attempt++) {
+                File[] tmpFrameFiles = makeTemporaryFiles(folder, "frame" + attempt + "_", failingFrame + 2);
+                assertThrows(DicomException.class, () -> CompressedFrameEncoder.getCompressedFramesAsFiles(list, f -> {
+                    if (f == failingFrame) {
+                        throw new DicomException("Cannot get frame " + f);
+                    }
+                    return images[f];
+                }, "rle", tmpFrameFiles, pool, 4));
+                assertFalse(isCompressingFrame(pool), "No frame still being compressed once the exception is thrown");
+                for (File tmpFrameFile : tmpFrameFiles) {
+                    // the caller may now remove the files without any task still writing to them
+                    if (tmpFrameFile.exists()) {
+                        assertTrue(tmpFrameFile.delete(), "Deleted " + tmpFrameFile);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+            for (File file : folder.listFiles()) {
+                file.delete();
+            }
+            folder.delete();
+        }
+    }
+}
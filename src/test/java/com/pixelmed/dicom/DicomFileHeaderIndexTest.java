@@ -0,0 +1,295 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DicomFileHeaderIndexTest {
+
+    private static final String[] resources = { "LGG-104_SPGR_000.dcm", "LGG-104_SPGR_001.dcm", "LGG-104_SPGR_002.dcm",
+            "deidentified.dcm", "deidentified_new_series.dcm" };
+
+    private File folder;
+    private List<File> files;
+    private ForkJoinPool pool;
+
+    /**
+     * Each resource in a sub-folder, with the meta information header and without it, and a file that is not DICOM.
+     */
+    @BeforeEach
+    public void createFiles() throws Exception {
+        folder = Files.createTempDirectory("DicomFileHeaderIndexTest").toFile();
+        files = new ArrayList<File>();
+        for (String resource : resources) {
+            File sub = new File(folder, resource.replace(".dcm", ""));
+            assertTrue(sub.mkdir(), "Sub-folder created");
+            File withMeta = new File(sub, "meta.dcm");
+            try (InputStream in = getClass().getResourceAsStream("/dicom/" + resource)) {
+                Files.copy(in, withMeta.toPath());
+            }
+            files.add(withMeta);
+            AttributeList list = new AttributeList();
+            list.read(withMeta);
+            list.removeMetaInformationHeaderAttributes();
+            File withoutMeta = new File(sub, "dataset.dcm");
+            list.write(withoutMeta, TransferSyntax.ImplicitVRLittleEndian, false, true);
+            files.add(withoutMeta);
+        }
+        File notDicom = new File(folder, "readme.txt");
+        Files.write(notDicom.toPath(), "not DICOM".getBytes("US-ASCII"));
+        files.add(notDicom);
+        pool = new ForkJoinPool(3);
+    }
+
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        pool.shutdown();
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void readHeader() throws Exception {
+        DicomFileHeaderIndex.Header withMeta = DicomFileHeaderIndex.readHeader(files.get(0), null);
+        AttributeList list = new AttributeList();
+        list.read(files.get(0));
+        assertTrue(withMeta.isDicom(), "DICOM file");
+        assertTrue(withMeta.hasMetaInformationHeader(), "Meta information header");
+        assertFalse(withMeta.isIdentifiedFromDataSet(), "Identified from meta information header");
+        assertEquals(Attribute.getSingleStringValueOrNull(list, TagFromName.SOPInstanceUID), withMeta.getSOPInstanceUID(), "SOP Instance UID");
+        assertEquals(Attribute.getSingleStringValueOrNull(list, TagFromName.SOPClassUID), withMeta.getSOPClassUID(), "SOP Class UID");
+        assertEquals(files.get(0).length(), withMeta.getSize(), "Size");
+        assertEquals(files.get(0).lastModified(), withMeta.getLastModified(), "Last modified");
+        assertNotNull(withMeta.getAttributeList(), "Attributes read");
+
+        DicomFileHeaderIndex.Header withoutMeta = DicomFileHeaderIndex.readHeader(files.get(1), MediaImporter.terminateAfterIdentifyingGroup);
+        assertTrue(withoutMeta.isDicom(), "DICOM file without meta information header");
+        assertFalse(withoutMeta.hasMetaInformationHeader(), "No meta information header");
+        assertTrue(withoutMeta.isIdentifiedFromDataSet(), "Identified from data set");
+        assertEquals(withMeta.getSOPInstanceUID(), withoutMeta.getSOPInstanceUID(), "SOP Instance UID from data set");
+        assertEquals(TransferSyntax.ImplicitVRLittleEndian, withoutMeta.getTransferSyntaxUID(), "Transfer Syntax UID");
+        assertNull(withoutMeta.getAttributeList().get(TagFromName.PixelData), "Pixel data not read");
+
+        DicomFileHeaderIndex.Header notDicom = DicomFileHeaderIndex.readHeader(files.get(files.size() - 1), null);
+        assertFalse(notDicom.isDicom(), "Not a DICOM file");
+        assertNull(notDicom.getSOPClassUID(), "No SOP Class UID");
+        assertNull(DicomFileHeaderIndex.readHeader(new File(folder, "missing.dcm"), null).getAttributeList(), "Missing file not read");
+    }
+
+    @Test
+    public void readHeadersInOrderOfFiles() throws Exception {
+        List<File> many = new ArrayList<File>();
+        for (int i = 0; i < 5; i++) {
+            many.addAll(files);
+        }
+        List<String> expected = new ArrayList<String>();
+        for (File file : many) {
+            expected.add(file.getPath() + " " + DicomFileHeaderIndex.readHeader(file, null).getSOPInstanceUID());
+        }
+        List<String> actual = new ArrayList<String>();
+        Thread caller = Thread.currentThread();
+        new DicomFileHeaderIndex(pool, 0x0008, 4).readHeaders(many, header -> {
+            assertSame(caller, Thread.currentThread(), "Consumer called on the calling thread");
+            actual.add(header.getFileName() + " " + header.getSOPInstanceUID());
+        });
+        assertEquals(expected, actual, "Headers in order of files");
+
+        List<String> walked = new ArrayList<String>();
+        new DicomFileHeaderIndex(pool).readHeaders(folder, header -> walked.add(header.getFileName()));
+        List<String> listed = new ArrayList<String>();
+        for (File file : DicomFileHeaderIndex.listFiles(folder)) {
+            listed.add(file.getPath());
+        }
+        assertEquals(listed, walked, "Headers in order in which files are found");
+    }
+
+    /**
+     * Counts the files taken for reading, so that the consumer can see how far reading has got ahead of it.
+     */
+    private static class CountingFiles implements Iterable<File> {
+        private final List<File> files;
+        int taken;
+
+        CountingFiles(List<File> files) {
+            this.files = files;
+        }
+
+        public Iterator<File> iterator() {
+            Iterator<File> i = files.iterator();
+            return new Iterator<File>() {
+                public boolean hasNext() { return i.hasNext(); }
+                public File next() { ++taken; return i.next(); }
+            };
+        }
+    }
+
+    @Test
+    public void readAheadIsBounded() throws Exception {
+        int maximumFilesInFlight = 3;
+        List<File> many = new ArrayList<File>();
+        for (int i = 0; i < 4; i++) {
+            many.addAll(files);
+        }
+        CountingFiles counting = new CountingFiles(many);
+        int[] consumed = new int[1];
+        int[] maximumAhead = new int[1];
+        new DicomFileHeaderIndex(pool, 0x0008, maximumFilesInFlight).readHeaders(counting, header -> {
+            // the file being submitted has been taken but not yet read
+            maximumAhead[0] = Math.max(maximumAhead[0], counting.taken - consumed[0]);
+            ++consumed[0];
+        });
+        assertEquals(many.size(), consumed[0], "All headers consumed");
+        assertEquals(maximumFilesInFlight + 1, maximumAhead[0], "Files taken ahead of the consumer");
+    }
+
+    @Test
+    public void indexRetainsOnlyIdentifyingValues() throws Exception {
+        ConcurrentMap<String, DicomFileHeaderIndex.Header> index = new DicomFileHeaderIndex(pool).index(folder);
+        assertEquals(files.size() - 1, index.size(), "DICOM files indexed, other file not");
+        for (File file : files.subList(0, files.size() - 1)) {
+            DicomFileHeaderIndex.Header header = index.get(file.getPath());
+            assertNotNull(header, "Indexed " + file);
+            assertEquals(DicomFileHeaderIndex.readHeader(file, null).getSOPInstanceUID(), header.getSOPInstanceUID(), "SOP Instance UID of " + file);
+            assertNull(header.getAttributeList(), "Attributes not retained for " + file);
+        }
+    }
+
+    /**
+     * Records the handler calls made for each file.
+     */
+    private static class RecordingMediaImporter extends MediaImporter {
+        final Map<String, String> calls = new TreeMap<String, String>();
+        final Thread caller = Thread.currentThread();
+
+        RecordingMediaImporter(int numberOfThreads) {
+            super(null);
+            this.numberOfThreads = numberOfThreads;
+        }
+
+        private void record(String mediaFileName, String call) {
+            assertSame(caller, Thread.currentThread(), "Handler called on the calling thread");
+            assertNull(calls.put(mediaFileName, call), "Handler called once for " + mediaFileName);
+        }
+
+        protected void doSomethingWithDicomFileOnMedia(String mediaFileName, String transferSyntaxUID, String sopClassUID) {
+            record(mediaFileName, "wanted " + transferSyntaxUID + " " + sopClassUID);
+        }
+
+        protected void doSomethingWithUnwantedFileOnMedia(String mediaFileName, String transferSyntaxUID, String sopClassUID) {
+            record(mediaFileName, "unwanted " + transferSyntaxUID + " " + sopClassUID);
+        }
+    }
+
+    @Test
+    public void mediaImporterParallelSameAsSerial() throws Exception {
+        RecordingMediaImporter serial = new RecordingMediaImporter(1);
+        serial.importDicomFiles(folder.getPath());
+        RecordingMediaImporter parallel = new RecordingMediaImporter(4);
+        parallel.importDicomFiles(folder.getPath());
+        assertEquals(files.size(), serial.calls.size(), "Handler called for each file");
+        assertEquals(serial.calls, parallel.calls, "Same handler calls in parallel as serial");
+    }
+
+    /**
+     * Whether the file is mapped into this process, or null if that cannot be told on this platform.
+     */
+    private static Boolean isMapped(File file) throws IOException {
+        Path maps = Paths.get("/proc/self/maps");
+        if (!Files.isReadable(maps)) {
+            return null;
+        }
+        String path = file.getCanonicalPath();
+        for (String line : Files.readAllLines(maps)) {
+            if (line.endsWith(" " + path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void onlyLargeFilesAreMappedAndOnlyIfAllowed() throws Exception {
+        File large = new File(folder, "large.dcm");
+        Files.copy(files.get(0).toPath(), large.toPath());
+        Files.write(large.toPath(), new byte[(int) DicomFileHeaderIndex.minimumSizeToMap], StandardOpenOption.APPEND);	// trailing padding, which the header read does not reach
+        List<File> one = Collections.singletonList(large);
+        String expected = DicomFileHeaderIndex.readHeader(files.get(0), null).getSOPInstanceUID();
+        if (isMapped(large) == null) {
+            return;		// cannot tell on this platform
+        }
+
+        assertEquals(expected, DicomFileHeaderIndex.readHeader(large, null).getSOPInstanceUID(), "Header of large file");
+        assertFalse(isMapped(large), "Single header read does not map the file");
+
+        List<String> read = new ArrayList<String>();
+        new DicomFileHeaderIndex(pool, 0x0008, 4, false).readHeaders(one, header -> read.add(header.getSOPInstanceUID()));
+        assertFalse(isMapped(large), "Index constructed not to map files does not map the file");
+
+        new DicomFileHeaderIndex(pool, 0x0008, 4).readHeaders(files, header -> read.add(header.getSOPInstanceUID()));
+        for (File file : files) {
+            assertFalse(isMapped(file), "Small file " + file + " not mapped");
+        }
+
+        new DicomFileHeaderIndex(pool).readHeaders(one, header -> read.add(header.getSOPInstanceUID()));
+        assertTrue(isMapped(large), "Large file mapped by default");
+        assertEquals(expected, read.get(read.size() - 1), "Header of mapped large file");
+    }
+
+    private static boolean isReadingHeader(ForkJoinPool pool) {
+        for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+            if (entry.getKey() instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) entry.getKey()).getPool() == pool) {
+                for (StackTraceElement element : entry.getValue()) {
+                    if (element.getClassName().equals(DicomFileHeaderIndex.class.getName()) && element.getMethodName().equals("readHeader")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void failureWaitsForHeadersAlreadyBeingRead() throws Exception {
+        List<File> many = new ArrayList<File>();
+        for (int i = 0; i < 40; i++) {
+            many.addAll(files);
+        }
+        for (int attempt = 0; attempt < 5; attempt++) {
+            int[] consumed = new int[1];
+            assertThrows(IllegalStateException.class, () -> new DicomFileHeaderIndex(pool, 0x0008, 12, false).readHeaders(many, header -> {
+                if (++consumed[0] == 20) {
+                    throw new IllegalStateException("consumer failed");
+                }
+            }), "Exception from consumer rethrown");
+            assertFalse(isReadingHeader(pool), "No header still being read once the exception is thrown");
+        }
+    }
+}
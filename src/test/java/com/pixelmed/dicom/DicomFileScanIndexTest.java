@@ -0,0 +1,216 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DicomFileScanIndexTest {
+
+    private static final String[] resources = { "LGG-104_SPGR_000.dcm", "LGG-104_SPGR_001.dcm", "LGG-104_SPGR_002.dcm" };
+
+    private File folder;
+
+    @BeforeEach
+    public void createFolder() throws IOException {
+        folder = Files.createTempDirectory("DicomFileScanIndexTest").toFile();
+    }
+
+    @AfterEach
+    public void deleteFolder() throws IOException {
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private File copyResource(String name, File to) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/dicom/" + name)) {
+            Files.copy(in, to.toPath());
+        }
+        return to;
+    }
+
+    private static List<File> put(DicomFileScanIndex index, List<File> files) {
+        for (File file : files) {
+            index.put(DicomFileHeaderIndex.readHeader(file, null));
+        }
+        return files;
+    }
+
+    @Test
+    public void saveAndLoad() throws Exception {
+        File sidecar = new File(folder, "scan.idx");
+        File dicomFile = new File(folder, "a.dcm");
+        File otherFile = new File(folder, "b.txt");
+        DicomFileScanIndex index = new DicomFileScanIndex(sidecar);
+        assertEquals(0, index.size(), "New index is empty");
+        index.put(dicomFile, 1234, 5678, "1.2.3", "1.2.3.4", TransferSyntax.ExplicitVRLittleEndian);
+        index.put(otherFile, 10, 20, null, null, null);
+        index.save();
+        assertTrue(sidecar.exists(), "Sidecar written");
+
+        DicomFileScanIndex loaded = new DicomFileScanIndex(sidecar);
+        assertEquals(2, loaded.size(), "Entries loaded");
+        DicomFileScanIndex.Entry entry = loaded.get(dicomFile);
+        assertNotNull(entry, "DICOM file entry loaded");
+        assertEquals(dicomFile.getAbsolutePath(), entry.getFileName(), "File name");
+        assertEquals(1234, entry.getSize(), "Size");
+        assertEquals(5678, entry.getLastModified(), "Last modified");
+        assertEquals("1.2.3", entry.getSOPClassUID(), "SOP Class UID");
+        assertEquals("1.2.3.4", entry.getSOPInstanceUID(), "SOP Instance UID");
+        assertEquals(TransferSyntax.ExplicitVRLittleEndian, entry.getTransferSyntaxUID(), "Transfer Syntax UID");
+        assertTrue(entry.isDicom(), "DICOM file");
+        assertFalse(loaded.get(otherFile).isDicom(), "Other file is not DICOM");
+        assertNull(loaded.get(otherFile).getSOPInstanceUID(), "Empty value loaded as null");
+        assertTrue(loaded.isUnchanged(dicomFile, 1234, 5678), "Unchanged");
+        assertFalse(loaded.isUnchanged(dicomFile, 1235, 5678), "Size changed");
+        assertFalse(loaded.isUnchanged(dicomFile, 1234, 5679), "Modification time changed");
+
+        Files.write(sidecar.toPath(), new byte[] { 0, 5, 'x' });
+        assertEquals(0, new DicomFileScanIndex(sidecar).size(), "Corrupt sidecar gives an empty index");
+
+        DicomFileScanIndex inMemory = new DicomFileScanIndex(null);
+        inMemory.put(dicomFile, 1, 2, null, null, null);
+        inMemory.save();
+        assertEquals(1, inMemory.size(), "Index without sidecar kept in memory");
+    }
+
+    @Test
+    public void listNewOrChangedFiles() throws Exception {
+        File sub = new File(folder, "sub");
+        assertTrue(sub.mkdir(), "Sub-folder created");
+        List<File> files = new ArrayList<File>();
+        files.add(copyResource(resources[0], new File(folder, "a.dcm")));
+        files.add(copyResource(resources[1], new File(sub, "b.dcm")));
+        files.add(copyResource(resources[2], new File(sub, "c.dcm")));
+        File notDicom = new File(folder, "d.txt");
+        Files.write(notDicom.toPath(), new byte[] { 1, 2, 3 });
+        files.add(notDicom);
+
+        File sidecar = new File(folder.getParentFile(), folder.getName() + ".idx");
+        try {
+            DicomFileScanIndex index = new DicomFileScanIndex(sidecar);
+            List<DicomFileScanIndex.Entry> removed = new ArrayList<DicomFileScanIndex.Entry>();
+            List<File> found = put(index, index.listNewOrChangedFiles(folder, removed));
+            assertEquals(new HashSet<File>(files), new HashSet<File>(found), "All files new");
+            assertTrue(removed.isEmpty(), "Nothing removed");
+            assertTrue(index.get(files.get(1)).isDicom(), "DICOM file indexed");
+            assertFalse(index.get(notDicom).isDicom(), "Other file indexed as not DICOM");
+            index.save();
+
+            index = new DicomFileScanIndex(sidecar);
+            assertTrue(index.listNewOrChangedFiles(folder, removed).isEmpty(), "Nothing changed after reloading");
+            assertTrue(removed.isEmpty(), "Nothing removed after reloading");
+
+            File changed = files.get(1);
+            assertTrue(changed.setLastModified(changed.lastModified() + 5000), "Modification time changed");
+            File added = copyResource(resources[0], new File(sub, "e.dcm"));
+            File deleted = files.get(2);
+            assertTrue(deleted.delete(), "File deleted");
+            found = put(index, index.listNewOrChangedFiles(folder, removed));
+            assertEquals(new HashSet<File>(Arrays.asList(changed, added)), new HashSet<File>(found), "Changed and new files");
+            assertEquals(1, removed.size(), "Deleted file removed");
+            assertEquals(deleted.getAbsolutePath(), removed.get(0).getFileName(), "Deleted file entry");
+            assertNull(index.get(deleted), "Deleted file no longer indexed");
+            assertEquals(4, index.size(), "Files indexed");
+
+            List<DicomFileScanIndex.Entry> removedFolder = index.removeAll(sub);
+            assertEquals(2, removedFolder.size(), "Files in sub-folder removed");
+            assertEquals(2, index.size(), "Files outside sub-folder kept");
+        } finally {
+            sidecar.delete();
+        }
+    }
+
+    @Test
+    public void watch() throws Exception {
+        File sub = new File(folder, "sub");
+        assertTrue(sub.mkdir(), "Sub-folder created");
+        DicomFileScanIndex index = new DicomFileScanIndex(null);
+        BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        CountDownLatch registered = new CountDownLatch(1);
+        Thread watcher = new Thread(() -> {
+            try {
+                index.watch(Arrays.asList(folder), 200,
+                        file -> {
+                            index.put(DicomFileHeaderIndex.readHeader(file, null));
+                            events.add("changed " + file.getName());
+                        },
+                        entry -> events.add("removed " + new File(entry.getFileName()).getName()),
+                        () -> events.add("batch"),
+                        registered::countDown);
+                events.add("returned");
+            } catch (Exception e) {
+                events.add("failed " + e);
+            }
+        });
+        watcher.start();
+        Set<String> handedOver = new HashSet<String>();
+        try {
+            assertTrue(registered.await(30, TimeUnit.SECONDS), "Folders registered");
+            copyResource(resources[0], new File(folder, "a.dcm"));
+            copyResource(resources[1], new File(sub, "b.dcm"));
+            assertEquals(new HashSet<String>(Arrays.asList("changed a.dcm", "changed b.dcm")), awaitEvents(events, handedOver, "changed a.dcm", "changed b.dcm"),
+                    "Created files handed over");
+            assertEquals(2, index.size(), "Created files indexed");
+
+            File newFolder = new File(folder, "new");
+            assertTrue(newFolder.mkdir(), "New folder created");
+            copyResource(resources[2], new File(newFolder, "c.dcm"));
+            assertEquals(new HashSet<String>(Arrays.asList("changed c.dcm")), awaitEvents(events, handedOver, "changed c.dcm"), "File in new folder handed over");
+
+            assertTrue(new File(sub, "b.dcm").delete(), "File deleted");
+            assertEquals(new HashSet<String>(Arrays.asList("removed b.dcm")), awaitEvents(events, handedOver, "removed b.dcm"), "Deleted file handed over");
+            assertNull(index.get(new File(sub, "b.dcm")), "Deleted file no longer indexed");
+            assertEquals(2, index.size(), "Remaining files indexed");
+        } finally {
+            index.stopWatching();
+            watcher.join(10000);
+        }
+        assertFalse(watcher.isAlive(), "Watching stopped");
+        String event;
+        while ((event = events.poll()) != null && !event.equals("returned")) {
+            assertTrue(event.equals("batch") || handedOver.contains(event), "Only late events for files already handed over, not " + event);
+        }
+        assertEquals("returned", event, "Watch returned");
+    }
+
+    /**
+     * Waits for the expected events, which may be spread over several batches, and returns those handed over until then, other than
+     * those already handed over, since a file that is still being written when a batch settles is handed over again once complete.
+     */
+    private static Set<String> awaitEvents(BlockingQueue<String> events, Set<String> handedOver, String... expected) throws InterruptedException {
+        Set<String> seen = new HashSet<String>();
+        while (!seen.containsAll(Arrays.asList(expected))) {
+            String event = events.poll(30, TimeUnit.SECONDS);
+            assertNotNull(event, "Events handed over in time, after " + seen);
+            if (!event.equals("batch") && !handedOver.contains(event)) {
+                seen.add(event);
+            }
+        }
+        handedOver.addAll(seen);
+        return seen;
+    }
+}
@@ -0,0 +1,267 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EncapsulatedFrameIndexTest {
+
+    private static final int numberOfFrames = 4;
+
+    private File file;
+
+    @BeforeEach
+    public void createFile() throws IOException {
+        file = File.createTempFile("EncapsulatedFrameIndexTest", ".dcm");
+    }
+
+    @AfterEach
+    public void deleteFile() {
+        file.delete();
+    }
+
+    /**
+     * A frame that starts with a JPEG start of image marker, of odd length unless even is requested, so that the fragments are padded.
+     */
+    private static byte[] makeFrame(int f, boolean even) {
+        byte[] frame = new byte[1000 + f * 38 + (even ? 0 : 1)];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) (i * 31 + f);
+        }
+        frame[0] = (byte) 0xff;
+        frame[1] = (byte) 0xd8;
+        return frame;
+    }
+
+    /**
+     * Splits a frame into fragments, of which only the first starts with a start of image marker, so the fragments may differ from the frame.
+     */
+    private static List<byte[]> split(byte[] frame, int numberOfFragments) {
+        List<byte[]> fragments = new ArrayList<byte[]>();
+        int length = frame.length / numberOfFragments & ~1;	// all but the last of even length, so none needs padding
+        for (int i = 0; i < numberOfFragments; i++) {
+            int start = i * length;
+            int end = i == numberOfFragments - 1 ? frame.length : start + length;
+            byte[] fragment = new byte[end - start];
+            System.arraycopy(frame, start, fragment, 0, fragment.length);
+            if (i > 0) {
+                fragment[0] = 0x00;
+            }
+            fragments.add(fragment);
+        }
+        return fragments;
+    }
+
+    private static byte[] concatenate(List<byte[]> fragments) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        for (byte[] fragment : fragments) {
+            frame.write(fragment);
+        }
+        return frame.toByteArray();
+    }
+
+    private static void writeItem(OutputStream o, byte[] value) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        header.putShort((short) 0xfffe).putShort((short) 0xe000).putInt(value.length + value.length % 2);
+        o.write(header.array());
+        o.write(value);
+        if (value.length % 2 != 0) {
+            o.write(0);
+        }
+    }
+
+    private static AttributeList makeList(int frames) throws DicomException {
+        AttributeList list = new AttributeList();
+        { Attribute a = new UniqueIdentifierAttribute(TagFromName.SOPClassUID); a.addValue(SOPClass.MultiframeGrayscaleByteSecondaryCaptureImageStorage); list.put(a); }
+        { Attribute a = new UniqueIdentifierAttribute(TagFromName.SOPInstanceUID); a.addValue("1.2.3.4"); list.put(a); }
+        { Attribute a = new IntegerStringAttribute(TagFromName.NumberOfFrames); a.addValue(frames); list.put(a); }
+        FileMetaInformation.addFileMetaInformation(list, TransferSyntax.JPEGBaseline, "OURAETITLE");
+        return list;
+    }
+
+    /**
+     * Writes the data set, then the encapsulated Pixel Data with the specified Basic Offset Table and fragments.
+     */
+    private void write(AttributeList list, byte[] basicOffsetTable, List<byte[]> fragments) throws IOException, DicomException {
+        list.write(file, TransferSyntax.JPEGBaseline, true, true);
+        try (OutputStream o = new FileOutputStream(file, true)) {
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            header.putShort((short) 0x7fe0).putShort((short) 0x0010).put((byte) 'O').put((byte) 'B').putShort((short) 0).putInt(0xffffffff);
+            o.write(header.array());
+            writeItem(o, basicOffsetTable);
+            for (byte[] fragment : fragments) {
+                writeItem(o, fragment);
+            }
+            ByteBuffer delimiter = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            delimiter.putShort((short) 0xfffe).putShort((short) 0xe0dd).putInt(0);
+            o.write(delimiter.array());
+        }
+    }
+
+    /**
+     * The frames as read from the index, which are padded to even length as the fragments are.
+     */
+    private void checkFrames(byte[][] frames, String description) throws Exception {
+        try (EncapsulatedFrameIndex index = EncapsulatedFrameIndex.getIndex(file)) {
+            assertEquals(frames.length, index.getNumberOfFrames(), description + ": number of frames");
+            for (int f = frames.length - 1; f >= 0; f--) {	// in reverse, so that no frame depends on those before it having been read
+                byte[] expected = frames[f];
+                byte[] actual = index.getFrame(f);
+                assertEquals(expected.length + expected.length % 2, actual.length, description + ": length of frame " + f);
+                for (int i = 0; i < expected.length; i++) {
+                    if (expected[i] != actual[i]) {
+                        assertEquals(expected[i], actual[i], description + ": byte " + i + " of frame " + f);
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[][] makeFrames(boolean even) {
+        byte[][] frames = new byte[numberOfFrames][];
+        for (int f = 0; f < numberOfFrames; f++) {
+            frames[f] = makeFrame(f, even);
+        }
+        return frames;
+    }
+
+    @Test
+    public void extendedOffsetTable() throws Exception {
+        byte[][] frames = makeFrames(false);
+        AttributeList list = makeList(numberOfFrames);
+        OtherByteAttributeMultipleCompressedFrames pixelData = new OtherByteAttributeMultipleCompressedFrames(TagFromName.PixelData, frames);
+        list.put(pixelData);
+        pixelData.addExtendedOffsetTable(list);
+
+        long[] offsets = list.get(EncapsulatedFrameIndex.ExtendedOffsetTable).getLongValues();
+        long[] lengths = list.get(EncapsulatedFrameIndex.ExtendedOffsetTableLengths).getLongValues();
+        long offset = 0;
+        for (int f = 0; f < numberOfFrames; f++) {
+            assertEquals(offset, offsets[f], "Extended offset of frame " + f);
+            assertEquals(frames[f].length, lengths[f], "Extended length of frame " + f);
+            offset += 8 + frames[f].length + frames[f].length % 2;
+        }
+
+        list.write(file, TransferSyntax.JPEGBaseline, true, true);
+        AttributeList read = new AttributeList();
+        read.setDecompressPixelData(false);
+        read.read(file);
+        assertTrue(read.get(EncapsulatedFrameIndex.ExtendedOffsetTable) instanceof OtherVeryLongAttribute, "Extended Offset Table read as OV");
+        assertArrayEquals(offsets, read.get(EncapsulatedFrameIndex.ExtendedOffsetTable).getLongValues(), "Extended Offset Table read");
+        assertArrayEquals(lengths, read.get(EncapsulatedFrameIndex.ExtendedOffsetTableLengths).getLongValues(), "Extended Offset Table Lengths read");
+
+        checkFrames(frames, "Extended Offset Table");
+    }
+
+    @Test
+    public void extendedOffsetTableIsUsed() throws Exception {
+        // all fragments start a frame, but the Extended Offset Table makes two fragments of each frame, which only it can tell
+        byte[][] frames = makeFrames(true);
+        List<byte[]> fragments = new ArrayList<byte[]>();
+        byte[][] expected = new byte[numberOfFrames / 2][];
+        long[] offsets = new long[expected.length];
+        long[] lengths = new long[expected.length];
+        long offset = 0;
+        for (int f = 0; f < numberOfFrames; f++) {
+            fragments.add(frames[f]);
+            if (f % 2 == 0) {
+                offsets[f / 2] = offset;
+                expected[f / 2] = new byte[frames[f].length + frames[f + 1].length];
+                System.arraycopy(frames[f], 0, expected[f / 2], 0, frames[f].length);
+                System.arraycopy(frames[f + 1], 0, expected[f / 2], frames[f].length, frames[f + 1].length);
+                lengths[f / 2] = expected[f / 2].length;
+            }
+            offset += 8 + frames[f].length;
+        }
+        AttributeList list = makeList(expected.length);
+        { OtherVeryLongAttribute a = new OtherVeryLongAttribute(EncapsulatedFrameIndex.ExtendedOffsetTable); a.setValues(offsets); list.put(a); }
+        write(list, new byte[0], fragments);
+        checkFrames(expected, "Extended Offset Table without lengths");
+    }
+
+    @Test
+    public void basicOffsetTable() throws Exception {
+        byte[][] frames = makeFrames(true);
+        List<byte[]> fragments = new ArrayList<byte[]>();
+        ByteBuffer basicOffsetTable = ByteBuffer.allocate(numberOfFrames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = 0;
+        for (int f = 0; f < numberOfFrames; f++) {
+            basicOffsetTable.putInt(offset);
+            for (byte[] fragment : split(frames[f], f + 1)) {
+                fragments.add(fragment);
+                offset += 8 + fragment.length;
+            }
+        }
+        // every fragment starts with a marker, so only the Basic Offset Table tells which fragments make up each frame
+        for (byte[] fragment : fragments) {
+            fragment[0] = (byte) 0xff;
+            fragment[1] = (byte) 0xd8;
+        }
+        write(makeList(numberOfFrames), basicOffsetTable.array(), fragments);
+
+        byte[][] expected = new byte[numberOfFrames][];
+        int fragment = 0;
+        for (int f = 0; f < numberOfFrames; f++) {
+            expected[f] = concatenate(fragments.subList(fragment, fragment + f + 1));
+            fragment += f + 1;
+        }
+        checkFrames(expected, "Basic Offset Table");
+    }
+
+    @Test
+    public void fragmentsWithoutOffsetTable() throws Exception {
+        byte[][] frames = makeFrames(true);
+
+        List<byte[]> onePerFrame = new ArrayList<byte[]>();
+        for (byte[] frame : frames) {
+            onePerFrame.add(frame);
+        }
+        write(makeList(numberOfFrames), new byte[0], onePerFrame);
+        checkFrames(frames, "One fragment per frame");
+
+        List<byte[]> several = new ArrayList<byte[]>();
+        byte[][] expected = new byte[numberOfFrames][];
+        for (int f = 0; f < numberOfFrames; f++) {
+            List<byte[]> fragments = split(frames[f], 3 - f % 2);
+            several.addAll(fragments);
+            expected[f] = concatenate(fragments);
+        }
+        write(makeList(numberOfFrames), new byte[0], several);
+        checkFrames(expected, "Several fragments per frame");
+
+        List<byte[]> single = split(frames[0], 3);
+        write(makeList(1), new byte[0], single);
+        checkFrames(new byte[][] { concatenate(single) }, "Several fragments of a single frame");
+
+        write(makeList(numberOfFrames + 1), new byte[0], several);
+        assertThrows(DicomException.class, () -> EncapsulatedFrameIndex.getIndex(file), "Fewer frames than Number of Frames");
+    }
+
+    @Test
+    public void notEncapsulated() throws Exception {
+        AttributeList list = makeList(1);
+        { Attribute a = new OtherByteAttribute(TagFromName.PixelData); a.setValues(new byte[16]); list.put(a); }
+        list.write(file, TransferSyntax.ExplicitVRLittleEndian, true, true);
+        assertThrows(DicomException.class, () -> EncapsulatedFrameIndex.getIndex(file), "Native Pixel Data");
+
+        list.remove(TagFromName.PixelData);
+        list.write(file, TransferSyntax.ExplicitVRLittleEndian, true, true);
+        assertThrows(DicomException.class, () -> EncapsulatedFrameIndex.getIndex(file), "No Pixel Data");
+    }
+}
@@ -0,0 +1,242 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OtherAttributeOnDiskTest {
+
+    // odd, so that the value is not aligned in the file
+    private static final int byteOffset = 131;
+    private static final int numberOfFrames = 5;
+    private static final int frameSize = 2 * 71 * 67;
+
+    private File file;
+
+    /**
+     * Bytes that are not part of the value, then the value, then more bytes that are not.
+     */
+    @BeforeEach
+    public void createFile() throws IOException {
+        file = File.createTempFile("OtherAttributeOnDiskTest", ".bin");
+        byte[] bytes = new byte[byteOffset + numberOfFrames * frameSize + 17];
+        new Random(47).nextBytes(bytes);
+        Files.write(file.toPath(), bytes);
+    }
+
+    @AfterEach
+    public void deleteFile() {
+        file.delete();
+    }
+
+    private OtherByteAttributeOnDisk newByteAttribute() throws IOException {
+        OtherByteAttributeOnDisk a = new OtherByteAttributeOnDisk(TagFromName.PixelData);
+        a.setFile(file, byteOffset);
+        a.valueLength = numberOfFrames * frameSize;	// not to the end of the file
+        return a;
+    }
+
+    private OtherWordAttributeOnDisk newWordAttribute(boolean bigEndian) throws IOException {
+        OtherWordAttributeOnDisk a = new OtherWordAttributeOnDisk(TagFromName.PixelData, bigEndian);
+        a.setFile(file, byteOffset);
+        a.valueLength = numberOfFrames * frameSize;
+        return a;
+    }
+
+    /**
+     * The number of open file descriptors of this process for the file, or -1 if that cannot be told on this platform.
+     */
+    private static int countOpen(File file) throws IOException {
+        Path fds = Paths.get("/proc/self/fd");
+        if (!Files.isDirectory(fds)) {
+            return -1;
+        }
+        Path path = file.toPath().toRealPath();
+        int count = 0;
+        try (Stream<Path> links = Files.list(fds)) {
+            for (Path link : (Iterable<Path>) links::iterator) {
+                try {
+                    if (Files.readSymbolicLink(link).equals(path)) {
+                        ++count;
+                    }
+                } catch (IOException e) {
+                    // closed while listing
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void byteFramesSameAsWholeValue() throws Exception {
+        OtherByteAttributeOnDisk a = newByteAttribute();
+        byte[] value = a.getByteValues();
+        assertEquals(numberOfFrames * frameSize, value.length, "Length of whole value");
+        for (int f = numberOfFrames - 1; f >= 0; f--) {
+            byte[] expected = Arrays.copyOfRange(value, f * frameSize, (f + 1) * frameSize);
+            assertArrayEquals(expected, a.getByteValuesForSelectedFrame(f, numberOfFrames), "Bytes of frame " + f);
+            ByteBuffer buffer = a.getByteBufferForSelectedFrame(f, numberOfFrames);
+            assertTrue(buffer.isReadOnly(), "Buffer of frame " + f + " is read only");
+            assertEquals(0, buffer.position(), "Position of buffer of frame " + f);
+            assertEquals(frameSize, buffer.remaining(), "Size of buffer of frame " + f);
+            byte[] bytes = new byte[frameSize];
+            buffer.get(bytes);
+            assertArrayEquals(expected, bytes, "Buffer of frame " + f);
+        }
+        assertThrows(DicomException.class, () -> a.getByteBufferForSelectedFrame(numberOfFrames, numberOfFrames), "Frame beyond the value");
+        a.closeFileChannel();
+    }
+
+    @Test
+    public void wordFramesInByteOrderOfFile() throws Exception {
+        byte[] bytes = newByteAttribute().getByteValues();
+        short[] previous = null;
+        for (boolean bigEndian : new boolean[] { false, true }) {
+            String order = bigEndian ? "big endian" : "little endian";
+            OtherWordAttributeOnDisk a = newWordAttribute(bigEndian);
+            short[] value = a.getShortValues();
+            short[] expected = new short[value.length];
+            ByteBuffer.wrap(bytes).order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(expected);
+            assertArrayEquals(expected, value, order + ": whole value");
+            for (int f = 0; f < numberOfFrames; f++) {
+                short[] frame = Arrays.copyOfRange(value, f * frameSize / 2, (f + 1) * frameSize / 2);
+                assertArrayEquals(frame, a.getShortValuesForSelectedFrame(f, numberOfFrames), order + ": values of frame " + f);
+                ByteBuffer buffer = a.getByteBufferForSelectedFrame(f, numberOfFrames);
+                assertEquals(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN, buffer.order(), order + ": order of buffer of frame " + f);
+                short[] values = new short[frameSize / 2];
+                buffer.asShortBuffer().get(values);
+                assertArrayEquals(frame, values, order + ": buffer of frame " + f);
+            }
+            if (previous != null) {
+                assertNotEquals(previous[0], value[0], "Byte order makes a difference to the values");
+            }
+            previous = value;
+            a.closeFileChannel();
+        }
+    }
+
+    @Test
+    public void buffersValidAfterClose() throws Exception {
+        OtherByteAttributeOnDisk a = newByteAttribute();
+        byte[] value = a.getByteValues();
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+        for (int f = 0; f < numberOfFrames; f++) {
+            buffers.add(a.getByteBufferForSelectedFrame(f, numberOfFrames));
+        }
+        int open = countOpen(file);
+        assertTrue(open == -1 || open == 1, "One file descriptor while frames are being accessed");
+
+        a.closeFileChannel();
+        assertTrue(countOpen(file) <= 0, "No file descriptor once closed");
+        for (int f = 0; f < numberOfFrames; f++) {
+            byte[] bytes = new byte[frameSize];
+            buffers.get(f).get(bytes);
+            assertArrayEquals(Arrays.copyOfRange(value, f * frameSize, (f + 1) * frameSize), bytes, "Buffer of frame " + f + " after close");
+        }
+
+        assertArrayEquals(Arrays.copyOfRange(value, frameSize, 2 * frameSize), a.getByteValuesForSelectedFrame(1, numberOfFrames), "Frame after reopening");
+        a.removeValues();
+        assertTrue(countOpen(file) <= 0, "No file descriptor once values removed");
+    }
+
+    @Test
+    public void closeDuringConcurrentReads() throws Exception {
+        OtherByteAttributeOnDisk a = newByteAttribute();
+        byte[] value = a.getByteValues();
+        int numberOfThreads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads + 1);
+        AtomicBoolean reading = new AtomicBoolean(true);
+        try {
+            List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < numberOfThreads; t++) {
+                int thread = t;
+                readers.add(executor.submit((Callable<Integer>) () -> {
+                    for (int i = 0; i < 5000; i++) {
+                        int f = (i + thread) % numberOfFrames;
+                        ByteBuffer buffer = a.getByteBufferForSelectedFrame(f, numberOfFrames);
+                        assertEquals(value[f * frameSize], buffer.get(0), "First byte of frame " + f + " on thread " + thread);
+                        assertEquals(value[(f + 1) * frameSize - 1], buffer.get(frameSize - 1), "Last byte of frame " + f + " on thread " + thread);
+                    }
+                    return 5000;
+                }));
+            }
+            Future<Integer> closer = executor.submit((Callable<Integer>) () -> {
+                int closed = 0;
+                while (reading.get()) {
+                    a.closeFileChannel();
+                    ++closed;
+                }
+                return closed;
+            });
+            for (Future<Integer> reader : readers) {
+                assertEquals(5000, reader.get().intValue(), "Frames read while being closed");
+            }
+            reading.set(false);
+            assertTrue(closer.get() > 0, "Closed while reading");
+        } finally {
+            reading.set(false);
+            executor.shutdown();
+        }
+        a.closeFileChannel();
+        assertTrue(countOpen(file) <= 0, "No file descriptor once closed after concurrent reads");
+    }
+
+    /**
+     * A sparse file with a value longer than 2 GB, in which frame 7 straddles 2 GB, and frames are mapped in windows of three.
+     */
+    @Test
+    public void valueLongerThan2GB() throws Exception {
+        long largeFrameSize = 300000007l;	// three frames to a window, which is then not a power of two
+        int largeNumberOfFrames = 11;
+        long valueLength = largeNumberOfFrames * largeFrameSize;
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.setLength(byteOffset + valueLength);
+            for (int frame = 0; frame < largeNumberOfFrames; frame++) {
+                long start = byteOffset + frame * largeFrameSize;
+                f.seek(start);
+                f.write(frame + 1);
+                f.seek(start + largeFrameSize - 1);
+                f.write(0x80 | frame);
+            }
+        }
+        OtherByteAttributeOnDisk a = new OtherByteAttributeOnDisk(TagFromName.PixelData);
+        a.setFile(file, byteOffset);
+        assertEquals(valueLength, a.getVL(), "Value length");
+        try {
+            for (int frame = largeNumberOfFrames - 1; frame >= 0; frame--) {
+                ByteBuffer buffer = a.getByteBufferForSelectedFrame(frame, largeNumberOfFrames);
+                assertEquals(largeFrameSize, buffer.remaining(), "Size of frame " + frame);
+                assertEquals(frame + 1, buffer.get(0), "First byte of frame " + frame);
+                assertEquals((byte) (0x80 | frame), buffer.get((int) largeFrameSize - 1), "Last byte of frame " + frame);
+                assertEquals(0, buffer.get((int) largeFrameSize / 2), "Byte in the middle of frame " + frame);
+            }
+        } finally {
+            a.closeFileChannel();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OtherVeryLongAttributeTest {
+
+    // including values that are negative as a signed long, i.e., 2^63 or more unsigned
+    private static final long[] values = { 0L, 1L, 0x0123456789ABCDEFL, 0x8000000000000000L, -1L, 0x00000000FFFFFFFFL };
+
+    private static byte[] write(AttributeList list, String transferSyntaxUID) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        list.write(new DicomOutputStream(bytes, null, transferSyntaxUID));
+        return bytes.toByteArray();
+    }
+
+    private static AttributeList read(byte[] bytes, String transferSyntaxUID) throws Exception {
+        AttributeList list = new AttributeList();
+        list.read(new DicomInputStream(new ByteArrayInputStream(bytes), transferSyntaxUID, false));
+        return list;
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        for (String transferSyntaxUID : new String[] { TransferSyntax.ExplicitVRLittleEndian, TransferSyntax.ExplicitVRBigEndian }) {
+            boolean bigEndian = transferSyntaxUID.equals(TransferSyntax.ExplicitVRBigEndian);
+            AttributeList list = new AttributeList();
+            OtherVeryLongAttribute a = new OtherVeryLongAttribute(EncapsulatedFrameIndex.ExtendedOffsetTable);
+            a.setValues(values.clone());
+            list.put(a);
+            assertEquals(values.length * 8l, a.getVL(), transferSyntaxUID + ": VL");
+            assertEquals(1, a.getVM(), transferSyntaxUID + ": VM");
+
+            byte[] bytes = write(list, transferSyntaxUID);
+            // tag, VR, reserved and 32 bit VL, then the values
+            ByteBuffer expected = ByteBuffer.allocate(values.length * 8).order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            expected.asLongBuffer().put(values);
+            assertEquals(12 + values.length * 8, bytes.length, transferSyntaxUID + ": length written");
+            assertArrayEquals(new byte[] { 'O', 'V', 0, 0 }, Arrays.copyOfRange(bytes, 4, 8), transferSyntaxUID + ": VR and reserved bytes");
+            assertArrayEquals(expected.array(), Arrays.copyOfRange(bytes, 12, bytes.length), transferSyntaxUID + ": values written");
+
+            Attribute read = read(bytes, transferSyntaxUID).get(EncapsulatedFrameIndex.ExtendedOffsetTable);
+            assertTrue(read instanceof OtherVeryLongAttribute, transferSyntaxUID + ": read as OV");
+            assertArrayEquals(ValueRepresentation.OV, read.getVR(), transferSyntaxUID + ": VR read");
+            assertEquals(values.length * 8l, read.getVL(), transferSyntaxUID + ": VL read");
+            assertArrayEquals(values, read.getLongValues(), transferSyntaxUID + ": values read");
+        }
+    }
+
+    @Test
+    public void empty() throws Exception {
+        AttributeList list = new AttributeList();
+        list.put(new OtherVeryLongAttribute(EncapsulatedFrameIndex.ExtendedOffsetTable));
+        byte[] bytes = write(list, TransferSyntax.ExplicitVRLittleEndian);
+        assertEquals(12, bytes.length, "Empty attribute written without values");
+        Attribute read = read(bytes, TransferSyntax.ExplicitVRLittleEndian).get(EncapsulatedFrameIndex.ExtendedOffsetTable);
+        assertTrue(read instanceof OtherVeryLongAttribute, "Empty attribute read as OV");
+        assertEquals(0, read.getVL(), "Empty attribute VL");
+        assertNull(read.getLongValues(), "Empty attribute has no values");
+
+        OtherVeryLongAttribute removed = new OtherVeryLongAttribute(EncapsulatedFrameIndex.ExtendedOffsetTable);
+        removed.setValues(values);
+        removed.removeValues();
+        assertEquals(0, removed.getVL(), "VL after values removed");
+        assertNull(removed.getLongValues(), "No values after values removed");
+    }
+}
@@ -0,0 +1,179 @@
+package com.pixelmed.dicom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SpecificCharacterSetTest {
+
+    private static final byte ESC = 0x1b;
+
+    // PS3.5 H.3.1, ISO 2022 IR 87 with the ideographic and phonetic names in JIS X 0208
+    private static final String h31Name = "Yamada^Tarou=\u5c71\u7530^\u592a\u90ce=\u3084\u307e\u3060^\u305f\u308d\u3046";
+
+    private static final byte[] h31Bytes = {
+            0x59, 0x61, 0x6d, 0x61, 0x64, 0x61, 0x5e, 0x54, 0x61, 0x72, 0x6f, 0x75, 0x3d, ESC,
+            0x24, 0x42, 0x3b, 0x33, 0x45, 0x44, ESC, 0x28, 0x42, 0x5e, ESC, 0x24, 0x42, 0x42,
+            0x40, 0x4f, 0x3a, ESC, 0x28, 0x42, 0x3d, ESC, 0x24, 0x42, 0x24, 0x64, 0x24, 0x5e,
+            0x24, 0x40, ESC, 0x28, 0x42, 0x5e, ESC, 0x24, 0x42, 0x24, 0x3f, 0x24, 0x6d, 0x24,
+            0x26, ESC, 0x28, 0x42
+    };
+
+    // PS3.5 H.3.2, as H.3.1 but with the alphabetic name in JIS X 0201 katakana
+    private static final String h32Name = "\uff94\uff8f\uff80\uff9e^\uff80\uff9b\uff73=\u5c71\u7530^\u592a\u90ce=\u3084\u307e\u3060^\u305f\u308d\u3046";
+
+    private static final byte[] h32Bytes = {
+            (byte) 0xd4, (byte) 0xcf, (byte) 0xc0, (byte) 0xde, 0x5e, (byte) 0xc0, (byte) 0xdb, (byte) 0xb3, 0x3d, ESC, 0x24, 0x42, 0x3b, 0x33,
+            0x45, 0x44, ESC, 0x28, 0x4a, 0x5e, ESC, 0x24, 0x42, 0x42, 0x40, 0x4f, 0x3a, ESC,
+            0x28, 0x4a, 0x3d, ESC, 0x24, 0x42, 0x24, 0x64, 0x24, 0x5e, 0x24, 0x40, ESC, 0x28,
+            0x4a, 0x5e, ESC, 0x24, 0x42, 0x24, 0x3f, 0x24, 0x6d, 0x24, 0x26, ESC, 0x28, 0x4a
+    };
+
+    // PS3.5 I.2, ISO 2022 IR 149 with the ideographic and phonetic names in KS X 1001
+    private static final String i2Name = "Hong^Gildong=\u6d2a^\u5409\u6d1e=\ud64d^\uae38\ub3d9";
+
+    private static final byte[] i2Bytes = {
+            0x48, 0x6f, 0x6e, 0x67, 0x5e, 0x47, 0x69, 0x6c, 0x64, 0x6f, 0x6e, 0x67, 0x3d,
+            ESC, 0x24, 0x29, 0x43, (byte) 0xfb, (byte) 0xf3, 0x5e, ESC, 0x24, 0x29, 0x43, (byte) 0xd1, (byte) 0xce,
+            (byte) 0xd4, (byte) 0xd7, 0x3d, ESC, 0x24, 0x29, 0x43, (byte) 0xc8, (byte) 0xab, 0x5e, ESC, 0x24, 0x29,
+            0x43, (byte) 0xb1, (byte) 0xe6, (byte) 0xb5, (byte) 0xbf
+    };
+
+    private static SpecificCharacterSet characterSet(String... values) {
+        return new SpecificCharacterSet(values);
+    }
+
+    private static String decode(SpecificCharacterSet characterSet, byte[] bytes) {
+        return characterSet.translateByteArrayToString(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Encodes each run of non-ASCII characters in EUC-KR after the escape sequence that designates KS X 1001 to G1, as in PS3.5 I.2.
+     */
+    private static byte[] encodeISO2022IR149(String value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < value.length()) {
+            int start = i;
+            if (value.charAt(i) < 0x80) {
+                while (i < value.length() && value.charAt(i) < 0x80) {
+                    ++i;
+                }
+                out.write(value.substring(start, i).getBytes("US-ASCII"));
+            } else {
+                while (i < value.length() && value.charAt(i) >= 0x80) {
+                    ++i;
+                }
+                out.write(new byte[] { ESC, 0x24, 0x29, 0x43 });
+                out.write(value.substring(start, i).getBytes("EUC-KR"));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void iso2022IR87RoundTrip() throws Exception {
+        SpecificCharacterSet characterSet = characterSet("", "ISO 2022 IR 87");
+        assertEquals(h31Name, decode(characterSet, h31Bytes), "H.3.1 decoded");
+        // the standard example is what the JRE ISO-2022-JP encoder produces for the decoded value
+        assertArrayEquals(h31Bytes, decode(characterSet, h31Bytes).getBytes("ISO-2022-JP"), "H.3.1 encoded again");
+
+        assertEquals(h32Name, decode(characterSet("ISO 2022 IR 13", "ISO 2022 IR 87"), h32Bytes), "H.3.2 decoded");
+    }
+
+    @Test
+    public void iso2022IR149RoundTrip() throws Exception {
+        SpecificCharacterSet characterSet = characterSet("", "ISO 2022 IR 149");
+        assertEquals(i2Name, decode(characterSet, i2Bytes), "I.2 decoded");
+        assertArrayEquals(i2Bytes, encodeISO2022IR149(decode(characterSet, i2Bytes)), "I.2 encoded again");
+    }
+
+    @Test
+    public void nonZeroOffset() throws Exception {
+        String latin1 = "Buc^J\u00e9r\u00f4me";
+        String utf8 = "Wang^XiaoDong=\u738b^\u5c0f\u6771=";
+        String[][] cases = {
+                // the value of Specific Character Set, and the value encoded in it
+                { "", "Doe^John" },
+                { "ISO_IR 100", latin1 },
+                { "ISO_IR 192", utf8 },
+                { "ISO 2022 IR 100", latin1 },
+        };
+        for (String[] c : cases) {
+            SpecificCharacterSet characterSet = characterSet(c[0]);
+            byte[] bytes = c[1].getBytes(c[0].equals("ISO_IR 192") ? Charset.forName("UTF-8") : Charset.forName("ISO-8859-1"));
+            checkOffsets(characterSet, bytes, c[1], "\"" + c[0] + "\"");
+        }
+        checkOffsets(characterSet("", "ISO 2022 IR 87"), h31Bytes, h31Name, "ISO 2022 IR 87");
+        checkOffsets(characterSet("ISO 2022 IR 13", "ISO 2022 IR 87"), h32Bytes, h32Name, "ISO 2022 IR 13 and 87");
+        checkOffsets(characterSet("", "ISO 2022 IR 149"), i2Bytes, i2Name, "ISO 2022 IR 149");
+    }
+
+    /**
+     * Decodes the value from within a larger array, surrounded by bytes that are not part of it, including an escape.
+     */
+    private static void checkOffsets(SpecificCharacterSet characterSet, byte[] value, String expected, String description) {
+        byte[] before = { 'X', (byte) 0xe9, ESC, 0x24, 0x42, 0x30, 0x21 };
+        byte[] after = { ESC, 0x24, 0x29, 0x43, (byte) 0xb1, (byte) 0xe6, 'Y' };
+        byte[] surrounded = new byte[before.length + value.length + after.length];
+        System.arraycopy(before, 0, surrounded, 0, before.length);
+        System.arraycopy(value, 0, surrounded, before.length, value.length);
+        System.arraycopy(after, 0, surrounded, before.length + value.length, after.length);
+        assertEquals(expected, characterSet.translateByteArrayToString(surrounded, before.length, value.length), description + " at an offset");
+        assertEquals(expected, characterSet.translateByteArrayToString(value, 0, value.length), description + " at offset 0");
+        // a prefix of the value, which stops short of the end of the array
+        int prefix = 4;
+        assertEquals(expected.substring(0, prefix), characterSet.translateByteArrayToString(surrounded, before.length, prefix),
+                description + " prefix at an offset");
+    }
+
+    @Test
+    public void decodeFromSeveralThreads() throws Exception {
+        // shared, as they are by the attributes of a list
+        SpecificCharacterSet japanese = characterSet("ISO 2022 IR 13", "ISO 2022 IR 87");
+        SpecificCharacterSet korean = characterSet("", "ISO 2022 IR 149");
+        SpecificCharacterSet mixed = characterSet("", "ISO 2022 IR 87", "ISO 2022 IR 149");
+        int numberOfThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < numberOfThreads; t++) {
+                int thread = t;
+                results.add(executor.submit((Callable<Integer>) () -> {
+                    start.await();
+                    int decoded = 0;
+                    for (int i = 0; i < 2000; i++) {
+                        switch ((i + thread) % 5) {
+                            case 0: assertEquals(h32Name, decode(japanese, h32Bytes), "H.3.2 on thread " + thread); break;
+                            case 1: assertEquals(i2Name, decode(korean, i2Bytes), "I.2 on thread " + thread); break;
+                            case 2: assertEquals(h31Name, decode(mixed, h31Bytes), "H.3.1 on thread " + thread); break;
+                            case 3: assertEquals(i2Name, decode(mixed, i2Bytes), "I.2 with mixed sets on thread " + thread); break;
+                            default: assertEquals("Doe^John", decode(mixed, "Doe^John".getBytes("US-ASCII")), "ASCII on thread " + thread); break;
+                        }
+                        ++decoded;
+                    }
+                    return decoded;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(2000, result.get().intValue(), "Values decoded");
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}